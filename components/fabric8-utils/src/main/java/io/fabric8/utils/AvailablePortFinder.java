@@ -18,6 +18,7 @@ package io.fabric8.utils;
 import java.io.IOException;
 import java.net.DatagramSocket;
 import java.net.ServerSocket;
+import java.util.BitSet;
 import java.util.NoSuchElementException;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -92,10 +93,15 @@ public final class AvailablePortFinder {
      * @throws NoSuchElementException if there are no ports available
      * @return the available port
      */
-    public static synchronized int getNextAvailable() {
-        int next = getNextAvailable(currentMinPort.get());
-        currentMinPort.set(next + 1);
-        return next;
+    public static int getNextAvailable() {
+        while (true) {
+            int fromPort = currentMinPort.get();
+            int next = findNextAvailable(fromPort);
+            // if another thread has claimed a port in the meantime lets search again from its next port
+            if (currentMinPort.compareAndSet(fromPort, next + 1)) {
+                return next;
+            }
+        }
     }
 
     /**
@@ -106,13 +112,24 @@ public final class AvailablePortFinder {
      * @throws NoSuchElementException if there are no ports available
      * @return the available port
      */
-    public static synchronized int getNextAvailable(int fromPort) {
+    public static int getNextAvailable(int fromPort) {
         if (fromPort < currentMinPort.get() || fromPort > MAX_PORT_NUMBER) {
             throw new IllegalArgumentException("From port number not in valid range: " + fromPort);
         }
+        return findNextAvailable(fromPort);
+    }
 
+    private static int findNextAvailable(int fromPort) {
+        // lets skip the ports we know are in use and only bind to the candidates
+        BitSet usedPorts = Ports.getLocalUsedPorts(fromPort, MAX_PORT_NUMBER);
         for (int i = fromPort; i <= MAX_PORT_NUMBER; i++) {
-            if (available(i)) {
+            if (usedPorts != null) {
+                i = usedPorts.nextClearBit(i);
+                if (i > MAX_PORT_NUMBER) {
+                    break;
+                }
+            }
+            if (Ports.isPortFree(i)) {
                 LOG.info("getNextAvailable({}) -> {}", fromPort, i);
                 return i;
             }
@@ -0,0 +1,173 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable trie of strings with optional Aho-Corasick failure links which is used to match a string
+ * against many prefixes or substrings in a single pass over its characters.
+ * <p/>
+ * The children of each node are stored as a sorted array of characters so lookups are a binary search.
+ */
+final class CharTrie {
+    private static final int ROOT = 0;
+    private static final char[] NO_KEYS = new char[0];
+    private static final int[] NO_TARGETS = new int[0];
+
+    private final char[][] keys;
+    private final int[][] targets;
+    private final boolean[] terminal;
+    private final int[] failure;
+
+    /**
+     * Creates a trie of the given words; failure links are only needed for {@link #containsAny(String)}
+     */
+    CharTrie(Iterable<String> words, boolean failureLinks) {
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<Boolean> ends = new ArrayList<>();
+        children.add(new TreeMap<Character, Integer>());
+        ends.add(Boolean.FALSE);
+        for (String word : words) {
+            int state = ROOT;
+            for (int i = 0; i < word.length(); i++) {
+                Character c = word.charAt(i);
+                Integer next = children.get(state).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.add(new TreeMap<Character, Integer>());
+                    ends.add(Boolean.FALSE);
+                    children.get(state).put(c, next);
+                }
+                state = next;
+            }
+            ends.set(state, Boolean.TRUE);
+        }
+
+        int size = children.size();
+        keys = new char[size][];
+        targets = new int[size][];
+        terminal = new boolean[size];
+        for (int state = 0; state < size; state++) {
+            TreeMap<Character, Integer> map = children.get(state);
+            if (map.isEmpty()) {
+                keys[state] = NO_KEYS;
+                targets[state] = NO_TARGETS;
+            } else {
+                keys[state] = new char[map.size()];
+                targets[state] = new int[map.size()];
+                int i = 0;
+                for (Map.Entry<Character, Integer> entry : map.entrySet()) {
+                    keys[state][i] = entry.getKey();
+                    targets[state][i++] = entry.getValue();
+                }
+            }
+            terminal[state] = ends.get(state);
+        }
+        failure = failureLinks ? createFailureLinks() : null;
+    }
+
+    /**
+     * Returns true if the value starts with any of the words
+     */
+    boolean startsWithAny(String value) {
+        int state = ROOT;
+        for (int i = 0, length = value.length(); i < length; i++) {
+            if (terminal[state]) {
+                return true;
+            }
+            state = next(state, value.charAt(i));
+            if (state < 0) {
+                return false;
+            }
+        }
+        return terminal[state];
+    }
+
+    /**
+     * Returns true if the value contains any of the words
+     */
+    boolean containsAny(String value) {
+        if (failure == null) {
+            throw new IllegalStateException("The trie was created without failure links");
+        }
+        if (terminal[ROOT]) {
+            return true;
+        }
+        int state = ROOT;
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            int next;
+            while ((next = next(state, c)) < 0 && state != ROOT) {
+                state = failure[state];
+            }
+            state = next < 0 ? ROOT : next;
+            if (terminal[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of nodes in the trie
+     */
+    int size() {
+        return terminal.length;
+    }
+
+    private int next(int state, char c) {
+        char[] stateKeys = keys[state];
+        int index = stateKeys.length == 1 ? (stateKeys[0] == c ? 0 : -1) : Arrays.binarySearch(stateKeys, c);
+        return index < 0 ? -1 : targets[state][index];
+    }
+
+    /**
+     * Creates the failure links in breadth first order so that each node also matches the words ending at its
+     * longest proper suffix which is in the trie
+     */
+    private int[] createFailureLinks() {
+        int[] answer = new int[terminal.length];
+        int[] queue = new int[terminal.length];
+        int head = 0;
+        int tail = 0;
+        for (int child : targets[ROOT]) {
+            answer[child] = ROOT;
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            char[] stateKeys = keys[state];
+            int[] stateTargets = targets[state];
+            for (int i = 0; i < stateKeys.length; i++) {
+                int child = stateTargets[i];
+                int fallback = answer[state];
+                int next;
+                while ((next = next(fallback, stateKeys[i])) < 0 && fallback != ROOT) {
+                    fallback = answer[fallback];
+                }
+                answer[child] = next < 0 ? ROOT : next;
+                terminal[child] |= terminal[answer[child]];
+                queue[tail++] = child;
+            }
+        }
+        return answer;
+    }
+}
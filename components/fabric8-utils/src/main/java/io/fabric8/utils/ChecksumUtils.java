@@ -19,11 +19,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -34,6 +37,13 @@ import java.util.zip.CRC32;
 public class ChecksumUtils {
     public static final String FOLDER_CHECKSUM_CACHE = ".fabric8.checksums.properties";
 
+    /**
+     * Files at least this big are memory mapped rather than read into a buffer to calculate their checksum
+     */
+    public static final long MAPPED_CHECKSUM_THRESHOLD = 1024 * 1024;
+
+    private static final long MAPPED_CHECKSUM_WINDOW = 64 * 1024 * 1024;
+
     private static final transient Logger LOG = LoggerFactory.getLogger(ChecksumUtils.class);
 
     private ChecksumUtils() {
@@ -68,7 +78,32 @@ public class ChecksumUtils {
 
 
     public static long checksumFile(File file) throws IOException {
-        return checksum(new FileInputStream(file));
+        return checksumFile(file.toPath(), ByteBuffer.allocate(64 * 1024));
+    }
+
+    /**
+     * Computes the CRC32 checksum of the file using the given buffer, or memory mapping the file if it is
+     * at least {@link #MAPPED_CHECKSUM_THRESHOLD} bytes
+     */
+    public static long checksumFile(Path path, ByteBuffer buffer) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAPPED_CHECKSUM_THRESHOLD) {
+                for (long position = 0; position < size; position += MAPPED_CHECKSUM_WINDOW) {
+                    long length = Math.min(MAPPED_CHECKSUM_WINDOW, size - position);
+                    crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+                }
+            } else {
+                buffer.clear();
+                while (channel.read(buffer) >= 0) {
+                    buffer.flip();
+                    crc.update(buffer);
+                    buffer.clear();
+                }
+            }
+        }
+        return crc.getValue();
     }
 
     /**
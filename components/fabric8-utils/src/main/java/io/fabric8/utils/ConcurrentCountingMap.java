@@ -0,0 +1,317 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A thread safe variant of {@link CountingMap} which counts String keys using a {@link LongAdder} per key so
+ * that many threads can increment the same keys without contention.
+ * <p/>
+ * For keys with a high cardinality, such as URLs or pod names, a bounded map can be created which counts the keys
+ * in a fixed amount of memory using a Count-Min sketch and only remembers the top K keys. The sketch never
+ * under counts a key; with a probability of at least <tt>confidence</tt> it over counts a key by at most
+ * <tt>errorRate * total()</tt>.
+ * <p/>
+ * For example
+ * <code>
+ *     ConcurrentCountingMap urls = new ConcurrentCountingMap(100, 0.001, 0.99);
+ *     urls.increment(url);
+ *     List&lt;Map.Entry&lt;String, Long&gt;&gt; busiest = urls.top(10);
+ * </code>
+ */
+public class ConcurrentCountingMap {
+    private static final Function<String, LongAdder> NEW_ADDER = new Function<String, LongAdder>() {
+        @Override
+        public LongAdder apply(String key) {
+            return new LongAdder();
+        }
+    };
+
+    private final LongAdder total = new LongAdder();
+    private final ConcurrentHashMap<String, LongAdder> counts;
+    private final CountMinSketch sketch;
+    private final int topK;
+    private final Set<String> heavyHitters;
+    private final Object heavyHittersLock = new Object();
+    private volatile long heavyHitterThreshold;
+
+    /**
+     * Creates an unbounded map which counts every key exactly
+     */
+    public ConcurrentCountingMap() {
+        this.counts = new ConcurrentHashMap<>();
+        this.sketch = null;
+        this.topK = 0;
+        this.heavyHitters = null;
+    }
+
+    /**
+     * Creates a bounded map which estimates the counts of the keys and remembers the top K keys
+     *
+     * @param topK       the number of the most frequent keys to remember
+     * @param errorRate  the maximum over count of a key as a fraction of the total count such as 0.001
+     * @param confidence the probability that a count is within the error rate such as 0.99
+     */
+    public ConcurrentCountingMap(int topK, double errorRate, double confidence) {
+        if (topK < 1) {
+            throw new IllegalArgumentException("topK must be at least 1 but was " + topK);
+        }
+        this.counts = null;
+        this.sketch = new CountMinSketch(errorRate, confidence);
+        this.topK = topK;
+        this.heavyHitters = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    }
+
+    @Override
+    public String toString() {
+        if (isBounded()) {
+            return "ConcurrentCountingMap{top" + topK + "=" + top(topK) + '}';
+        }
+        return "ConcurrentCountingMap{" + counts + '}';
+    }
+
+    /**
+     * Returns true if the counts are estimated in a fixed amount of memory
+     */
+    public boolean isBounded() {
+        return sketch != null;
+    }
+
+    /**
+     * Increments the counter of all the given keys
+     */
+    public void incrementAll(Iterable<String> keys) {
+        for (String key : keys) {
+            add(key, 1);
+        }
+    }
+
+    /**
+     * Increments the given key
+     */
+    public void increment(String key) {
+        add(key, 1);
+    }
+
+    /**
+     * Adds the amount to the counter of the given key; a bounded map can only count up
+     */
+    public void add(String key, long amount) {
+        Objects.notNull(key, "key");
+        if (sketch == null) {
+            // computeIfAbsent locks the bin even when the key is present on Java 8 so only use it for new keys
+            LongAdder adder = counts.get(key);
+            if (adder == null) {
+                adder = counts.computeIfAbsent(key, NEW_ADDER);
+            }
+            adder.add(amount);
+        } else {
+            if (amount < 0) {
+                throw new IllegalArgumentException("A bounded map can not count down but the amount was " + amount);
+            }
+            long estimate = sketch.add(key, amount);
+            if (estimate >= heavyHitterThreshold && !heavyHitters.contains(key)) {
+                offerHeavyHitter(key, estimate);
+            }
+        }
+        total.add(amount);
+    }
+
+    /**
+     * Returns the count, or for a bounded map the estimated count, of the given key
+     */
+    public long count(String key) {
+        if (sketch == null) {
+            LongAdder answer = counts.get(key);
+            return answer == null ? 0 : answer.sum();
+        }
+        return sketch.estimate(key);
+    }
+
+    /**
+     * Returns all the keys which have been counted or for a bounded map the top K keys
+     */
+    public Set<String> keySet() {
+        if (sketch == null) {
+            return Collections.unmodifiableSet(counts.keySet());
+        }
+        return Collections.unmodifiableSet(heavyHitters);
+    }
+
+    /**
+     * Returns the total of all counters
+     */
+    public long total() {
+        return total.sum();
+    }
+
+    /**
+     * Returns up to the given number of keys with the highest counts along with their counts, highest first
+     */
+    public List<Map.Entry<String, Long>> top(int size) {
+        Iterable<String> keys = sketch == null ? counts.keySet() : new HashSet<>(heavyHitters);
+        List<Map.Entry<String, Long>> answer = new ArrayList<>();
+        for (String key : keys) {
+            answer.add(new AbstractMap.SimpleImmutableEntry<>(key, count(key)));
+        }
+        Collections.sort(answer, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> e1, Map.Entry<String, Long> e2) {
+                int answer = Long.compare(e2.getValue(), e1.getValue());
+                return answer != 0 ? answer : e1.getKey().compareTo(e2.getKey());
+            }
+        });
+        return answer.size() > size ? new ArrayList<>(answer.subList(0, size)) : answer;
+    }
+
+    /**
+     * Adds the key to the heavy hitters if there is room or its estimate is more than the smallest one
+     */
+    private void offerHeavyHitter(String key, long estimate) {
+        synchronized (heavyHittersLock) {
+            if (heavyHitters.contains(key)) {
+                return;
+            }
+            if (heavyHitters.size() < topK) {
+                heavyHitters.add(key);
+                if (heavyHitters.size() == topK) {
+                    heavyHitterThreshold = smallestHeavyHitter().getValue();
+                }
+                return;
+            }
+            // the estimates keep growing so lets find the current smallest
+            Map.Entry<String, Long> smallest = smallestHeavyHitter();
+            if (estimate > smallest.getValue()) {
+                heavyHitters.remove(smallest.getKey());
+                heavyHitters.add(key);
+                heavyHitterThreshold = smallestHeavyHitter().getValue();
+            } else {
+                heavyHitterThreshold = smallest.getValue();
+            }
+        }
+    }
+
+    private Map.Entry<String, Long> smallestHeavyHitter() {
+        String smallestKey = null;
+        long smallest = Long.MAX_VALUE;
+        for (String key : heavyHitters) {
+            long estimate = sketch.estimate(key);
+            if (estimate < smallest) {
+                smallest = estimate;
+                smallestKey = key;
+            }
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(smallestKey, smallest);
+    }
+
+    /**
+     * A Count-Min sketch of <tt>depth</tt> rows of <tt>width</tt> counters; each key increments one counter per row
+     * and its estimate is the smallest of those counters. A width of <tt>e / errorRate</tt> and a depth of
+     * <tt>ln(1 / (1 - confidence))</tt> bound the error as described above.
+     */
+    static final class CountMinSketch {
+        private final int depth;
+        private final int mask;
+        private final AtomicLongArray counters;
+
+        CountMinSketch(double errorRate, double confidence) {
+            if (errorRate <= 0 || errorRate >= 1) {
+                throw new IllegalArgumentException("errorRate must be between 0 and 1 but was " + errorRate);
+            }
+            if (confidence <= 0 || confidence >= 1) {
+                throw new IllegalArgumentException("confidence must be between 0 and 1 but was " + confidence);
+            }
+            int width = Integer.highestOneBit((int) Math.ceil(Math.E / errorRate) - 1) << 1;
+            this.depth = (int) Math.ceil(Math.log(1 / (1 - confidence)));
+            this.mask = width - 1;
+            this.counters = new AtomicLongArray(width * depth);
+        }
+
+        /**
+         * Adds the amount to the key's counters and returns its new estimate
+         */
+        long add(String key, long amount) {
+            long hash = hash(key);
+            long answer = Long.MAX_VALUE;
+            for (int row = 0; row < depth; row++) {
+                answer = Math.min(answer, counters.addAndGet(index(hash, row), amount));
+            }
+            return answer;
+        }
+
+        long estimate(String key) {
+            long hash = hash(key);
+            long answer = Long.MAX_VALUE;
+            for (int row = 0; row < depth; row++) {
+                answer = Math.min(answer, counters.get(index(hash, row)));
+            }
+            return answer;
+        }
+
+        int getWidth() {
+            return mask + 1;
+        }
+
+        int getDepth() {
+            return depth;
+        }
+
+        /**
+         * Returns the index of the key's counter in the row; each row mixes the hash with a different seed so that
+         * keys which share a counter in one row are unlikely to share one in the others
+         */
+        private int index(long hash, int row) {
+            return row * (mask + 1) + ((int) mix(hash + row * 0x9E3779B97F4A7C15L) & mask);
+        }
+
+        /**
+         * Returns a 64 bit FNV-1a hash of the key; the 32 bit {@link String#hashCode()} has too many collisions
+         * for keys with a high cardinality
+         */
+        private static long hash(String key) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0, length = key.length(); i < length; i++) {
+                h ^= key.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            return h;
+        }
+
+        /**
+         * The MurmurHash3 finalizer which spreads the bits of the hash
+         */
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A filter which matches a string if it contains any of the given text values.
+ * <p/>
+ * The text values are compiled into an Aho-Corasick automaton so a match is a single pass over the string
+ * no matter how many text values there are.
+ */
+public class ContainsAnyStringFilter implements Filter<String> {
+    private final List<String> textValues;
+    private final CharTrie trie;
+
+    public ContainsAnyStringFilter(String... textValues) {
+        this.textValues = new ArrayList<>(textValues.length);
+        Collections.addAll(this.textValues, textValues);
+        this.trie = new CharTrie(this.textValues, true);
+    }
+
+    @Override
+    public boolean matches(String s) {
+        return s != null && !textValues.isEmpty() && trie.containsAny(s);
+    }
+
+    @Override
+    public String toString() {
+        return "ContainsAny" + textValues;
+    }
+}
@@ -0,0 +1,360 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the CRC32 checksums of all the files in a directory tree up to date, only reading the files whose
+ * size, modified time or file key (the device and inode on Unix) have changed since the last scan.
+ * <p/>
+ * The changed files are checksummed in parallel and the cache can be saved to a compact binary file which is
+ * written atomically so that a crash never leaves a partial cache behind.
+ * <p/>
+ * Instances are not thread safe.
+ */
+public class DirectoryChecksums {
+    private static final transient Logger LOG = LoggerFactory.getLogger(DirectoryChecksums.class);
+
+    public static final String CACHE_FILE_NAME = ".fabric8.checksums.bin";
+
+    private static final int MAGIC = 0x46384353;
+    private static final int VERSION = 1;
+
+    private final File dir;
+    private final File cacheFile;
+    private final int threads;
+    private Map<String, Entry> entries;
+    private List<String> changedPaths = Collections.emptyList();
+    private List<String> removedPaths = Collections.emptyList();
+
+    public DirectoryChecksums(File dir) {
+        this(dir, new File(dir, CACHE_FILE_NAME), Runtime.getRuntime().availableProcessors());
+    }
+
+    public DirectoryChecksums(File dir, File cacheFile, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1 but was " + threads);
+        }
+        this.dir = dir;
+        this.cacheFile = cacheFile;
+        this.threads = threads;
+    }
+
+    /**
+     * Scans the directory returning the checksums of all the files indexed by their path relative to the directory
+     * using <tt>/</tt> as the separator; the cache file is loaded on the first scan if it exists.
+     */
+    public Map<String, Long> scan() throws IOException {
+        if (entries == null) {
+            entries = loadCache();
+        }
+        final Map<String, Entry> previous = entries;
+        final Map<String, Entry> current = new HashMap<>(previous.size() * 4 / 3 + 16);
+        final List<Entry> changed = new ArrayList<>();
+        final Path root = dir.toPath();
+        final String cachePath = toRelativePath(root, cacheFile);
+        final String tempPath = toRelativePath(root, getTempFile());
+        if (dir.isDirectory()) {
+            java.nio.file.Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                // the relative path of each directory being visited so we don't need to relativize every file
+                private final Deque<String> prefixes = new ArrayDeque<>();
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attrs) throws IOException {
+                    prefixes.push(prefixes.isEmpty() ? "" : prefixes.peek() + directory.getFileName() + "/");
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+                    prefixes.pop();
+                    return super.postVisitDirectory(directory, e);
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (!attrs.isRegularFile()) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    String path = prefixes.peek() + file.getFileName();
+                    if (path.equals(cachePath) || path.equals(tempPath)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    Object key = attrs.fileKey();
+                    Entry entry = new Entry(path, attrs.size(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                            key != null ? key.hashCode() : 0);
+                    Entry old = previous.get(path);
+                    if (old != null && old.hasSameMetadata(entry)) {
+                        entry.checksum = old.checksum;
+                    } else {
+                        changed.add(entry);
+                    }
+                    current.put(path, entry);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                    // the file may have been deleted while we were scanning
+                    LOG.debug("Failed to read " + file + ". " + e, e);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        checksumFiles(root, changed);
+        // drop the files which were deleted after they were found
+        for (Iterator<Entry> iter = changed.iterator(); iter.hasNext(); ) {
+            Entry entry = iter.next();
+            if (entry.deleted) {
+                iter.remove();
+                current.remove(entry.path);
+            }
+        }
+
+        List<String> changedPaths = new ArrayList<>(changed.size());
+        for (Entry entry : changed) {
+            changedPaths.add(entry.path);
+        }
+        List<String> removedPaths = new ArrayList<>();
+        for (String path : previous.keySet()) {
+            if (!current.containsKey(path)) {
+                removedPaths.add(path);
+            }
+        }
+        Collections.sort(changedPaths);
+        Collections.sort(removedPaths);
+        this.entries = current;
+        this.changedPaths = Collections.unmodifiableList(changedPaths);
+        this.removedPaths = Collections.unmodifiableList(removedPaths);
+        return getChecksums();
+    }
+
+    /**
+     * Returns the checksums of the last scan indexed by relative path
+     */
+    public Map<String, Long> getChecksums() {
+        Map<String, Long> answer = new HashMap<>(entries != null ? entries.size() * 4 / 3 + 16 : 16);
+        if (entries != null) {
+            for (Entry entry : entries.values()) {
+                answer.put(entry.path, entry.checksum);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the sorted paths of the files which were added or changed, and so checksummed, in the last scan
+     */
+    public List<String> getChangedPaths() {
+        return changedPaths;
+    }
+
+    /**
+     * Returns the sorted paths of the files which were removed since the previous scan
+     */
+    public List<String> getRemovedPaths() {
+        return removedPaths;
+    }
+
+    /**
+     * Writes the metadata and checksums of the last scan to the cache file
+     */
+    public void save() throws IOException {
+        if (entries == null) {
+            throw new IllegalStateException("The directory has not been scanned");
+        }
+        File tempFile = getTempFile();
+        tempFile.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Entry entry : entries.values()) {
+                out.writeUTF(entry.path);
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastModified);
+                out.writeInt(entry.fileKey);
+                out.writeInt((int) entry.checksum);
+            }
+        }
+        try {
+            java.nio.file.Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            java.nio.file.Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    protected Map<String, Entry> loadCache() {
+        Map<String, Entry> answer = new HashMap<>();
+        if (!cacheFile.isFile()) {
+            return answer;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOG.warn("Ignoring checksum cache file " + cacheFile + " as it has an unknown format");
+                return answer;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readLong(), in.readLong(), in.readInt());
+                entry.checksum = in.readInt() & 0xffffffffL;
+                answer.put(entry.path, entry);
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to load checksum cache file " + cacheFile + ". " + e, e);
+            answer.clear();
+        }
+        return answer;
+    }
+
+    protected void checksumFiles(Path root, List<Entry> changed) throws IOException {
+        int workers = Math.min(threads, changed.size());
+        ChecksumTask task = new ChecksumTask(root, changed, new AtomicInteger());
+        if (workers <= 1) {
+            task.call();
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory("DirectoryChecksums"));
+        try {
+            List<Future<Void>> futures = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while calculating checksums of " + dir);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to calculate checksums of " + dir + ". " + cause, cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Calculates the checksum of the next unclaimed entry until there are none left, so each thread reuses a single buffer
+     */
+    private final class ChecksumTask implements Callable<Void> {
+        private final Path root;
+        private final List<Entry> changed;
+        private final AtomicInteger nextIndex;
+
+        ChecksumTask(Path root, List<Entry> changed, AtomicInteger nextIndex) {
+            this.root = root;
+            this.changed = changed;
+            this.nextIndex = nextIndex;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+            int index;
+            while ((index = nextIndex.getAndIncrement()) < changed.size()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted while calculating checksums of " + dir);
+                }
+                Entry entry = changed.get(index);
+                try {
+                    entry.checksum = ChecksumUtils.checksumFile(root.resolve(entry.path), buffer);
+                } catch (NoSuchFileException e) {
+                    // the file was deleted after it was found
+                    entry.deleted = true;
+                }
+            }
+            return null;
+        }
+    }
+
+    private File getTempFile() {
+        return new File(cacheFile.getPath() + ".tmp");
+    }
+
+    /**
+     * Returns the path of the file relative to the root or null if it is not inside the root
+     */
+    private static String toRelativePath(Path root, File file) {
+        Path absoluteRoot = root.toAbsolutePath().normalize();
+        Path path = file.toPath().toAbsolutePath().normalize();
+        if (!path.startsWith(absoluteRoot)) {
+            return null;
+        }
+        String answer = absoluteRoot.relativize(path).toString();
+        return File.separatorChar == '/' ? answer : answer.replace(File.separatorChar, '/');
+    }
+
+    protected static final class Entry {
+        final String path;
+        final long size;
+        final long lastModified;
+        final int fileKey;
+        // written by the checksum threads before the executor futures complete
+        long checksum;
+        boolean deleted;
+
+        Entry(String path, long size, long lastModified, int fileKey) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+        }
+
+        boolean hasSameMetadata(Entry that) {
+            return size == that.size && lastModified == that.lastModified && fileKey == that.fileKey;
+        }
+    }
+}
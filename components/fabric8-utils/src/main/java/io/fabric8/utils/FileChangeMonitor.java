@@ -0,0 +1,506 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a directory tree and notifies listeners when files are created, modified or deleted.
+ * <p/>
+ * Changes are detected using a {@link WatchService} which is registered on every directory in the tree, including
+ * directories created while watching. The events for a file are coalesced until no more arrive within the
+ * debounce time and the file's {@link FileChangeInfo} is then compared to the cached one so that listeners are
+ * only notified of real content changes.
+ * <p/>
+ * If the directories cannot all be watched, such as when the operating system limit on inotify watches is reached,
+ * or if polling is requested, the tree is scanned instead every poll interval; only the files whose length or
+ * modified time have changed are checksummed.
+ * <p/>
+ * Listeners are called on the monitor thread. For example
+ * <code>
+ *     FileChangeMonitor monitor = new FileChangeMonitor(configDir).debounce(200);
+ *     monitor.addListener(listener);
+ *     monitor.start();
+ * </code>
+ */
+public class FileChangeMonitor implements Closeable {
+    private static final transient Logger LOG = LoggerFactory.getLogger(FileChangeMonitor.class);
+
+    private static final LinkOption[] NO_FOLLOW_LINKS = {LinkOption.NOFOLLOW_LINKS};
+    private static final long IDLE_WAIT_MILLIS = 1000;
+
+    public enum ChangeType {
+        CREATED, MODIFIED, DELETED
+    }
+
+    /**
+     * Is notified of the changes to the monitored files
+     */
+    public interface Listener {
+        void onChange(File file, ChangeType type);
+    }
+
+    private final File root;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private long debounceMillis = 100;
+    private long pollMillis = 2000;
+    private volatile boolean polling;
+    private Filter<File> filter;
+
+    // the following are only used by the monitor thread once started
+    private final Map<Path, Entry> entries = new HashMap<>();
+    // the watch key of each directory, which is null when polling
+    private final Map<Path, WatchKey> directories = new HashMap<>();
+    private final Map<Path, Long> pending = new HashMap<>();
+    private WatchService watchService;
+    private Thread thread;
+    private volatile boolean closed;
+
+    public FileChangeMonitor(File root) {
+        Objects.notNull(root, "root");
+        this.root = root;
+    }
+
+    /**
+     * How long to wait for more events for a file before checking it for changes; defaults to 100 milliseconds
+     */
+    public FileChangeMonitor debounce(long debounceMillis) {
+        this.debounceMillis = debounceMillis;
+        return this;
+    }
+
+    /**
+     * How often to scan the tree when polling; defaults to 2 seconds
+     */
+    public FileChangeMonitor pollInterval(long pollMillis) {
+        this.pollMillis = pollMillis;
+        return this;
+    }
+
+    /**
+     * Whether to scan the tree every poll interval rather than using a {@link WatchService}; defaults to false
+     */
+    public FileChangeMonitor polling(boolean polling) {
+        this.polling = polling;
+        return this;
+    }
+
+    /**
+     * Only monitors the files which match the filter
+     */
+    public FileChangeMonitor filter(Filter<File> filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns true if the tree is being scanned every poll interval rather than watched
+     */
+    public boolean isPolling() {
+        return polling;
+    }
+
+    /**
+     * Records the current state of the files then starts monitoring them on a background thread
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            throw new IllegalStateException("Already started");
+        }
+        if (!root.isDirectory()) {
+            throw new IOException("Not a directory: " + root);
+        }
+        if (!polling) {
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+            } catch (IOException | UnsupportedOperationException e) {
+                LOG.warn("Could not create a watch service so polling " + root + " instead. " + e);
+                polling = true;
+            }
+        }
+        for (Map.Entry<Path, BasicFileAttributes> entry : registerTree(root.toPath()).entrySet()) {
+            FileChangeInfo info = FileChangeInfo.newInstance(entry.getKey().toFile());
+            if (info != null) {
+                entries.put(entry.getKey(), new Entry(entry.getValue(), info));
+            }
+        }
+
+        thread = new ThreadFactory("FileChangeMonitor").newThread(new Runnable() {
+            @Override
+            public void run() {
+                monitor();
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            Closeables.closeQuietly(watchService);
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Registers the directory with the watch service; an exception switches the monitor to polling
+     */
+    protected WatchKey register(Path directory) throws IOException {
+        return directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    protected void monitor() {
+        try {
+            while (!closed && !polling) {
+                watch();
+            }
+            while (!closed) {
+                poll();
+                Thread.sleep(pollMillis);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // we are closing
+        } catch (RuntimeException e) {
+            if (!closed) {
+                LOG.error("Stopped monitoring " + root + " due to " + e, e);
+            }
+        }
+    }
+
+    /**
+     * Waits for the watch events until the next pending file is due, then checks the due files for changes
+     */
+    protected void watch() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        long timeout = IDLE_WAIT_MILLIS;
+        for (Long deadline : pending.values()) {
+            timeout = Math.min(timeout, deadline - now);
+        }
+        WatchKey key = watchService.poll(Math.max(timeout, 1), TimeUnit.MILLISECONDS);
+        boolean overflow = false;
+        while (key != null) {
+            overflow |= processEvents(key);
+            key = polling ? null : watchService.poll();
+        }
+        if (overflow && !polling) {
+            LOG.debug("Events were lost while watching " + root + " so scanning it");
+            poll();
+        }
+        if (polling) {
+            // we ran out of watches so lets let the polling scan find the pending changes
+            pending.clear();
+            return;
+        }
+
+        now = System.currentTimeMillis();
+        List<Path> due = new ArrayList<>();
+        for (Iterator<Map.Entry<Path, Long>> iter = pending.entrySet().iterator(); iter.hasNext(); ) {
+            Map.Entry<Path, Long> entry = iter.next();
+            if (entry.getValue() <= now) {
+                due.add(entry.getKey());
+                iter.remove();
+            }
+        }
+        for (Path path : due) {
+            checkForChange(path);
+        }
+    }
+
+    /**
+     * Adds the paths in the events to the pending files, returning true if events were lost
+     */
+    protected boolean processEvents(WatchKey key) {
+        Path directory = (Path) key.watchable();
+        long deadline = System.currentTimeMillis() + debounceMillis;
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            pending.put(path, deadline);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE && directories.containsKey(path)) {
+                // the directory may be recreated before its files are checked so lets stop watching it now
+                unregisterTree(path, deadline);
+            }
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && java.nio.file.Files.isDirectory(path, NO_FOLLOW_LINKS)) {
+                // files may have been added before we could watch the new directory
+                for (Path file : registerTree(path).keySet()) {
+                    pending.put(file, deadline);
+                }
+                if (polling) {
+                    return overflow;
+                }
+            }
+        }
+        if (!key.reset() && directories.get(directory) == key) {
+            // the directory is no longer accessible so lets register it again if it comes back
+            directories.remove(directory);
+        }
+        return overflow;
+    }
+
+    /**
+     * Scans the tree for files whose length or modified time have changed, checking them for changes once they have
+     * not been modified for the debounce time
+     */
+    protected void poll() {
+        List<Path> newDirectories = new ArrayList<>();
+        Set<Path> seenDirectories = new HashSet<>();
+        Map<Path, BasicFileAttributes> found = scanTree(root.toPath(), newDirectories, seenDirectories);
+        registerDirectories(newDirectories);
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Path, BasicFileAttributes> entry : found.entrySet()) {
+            Path path = entry.getKey();
+            Entry old = entries.get(path);
+            if (old == null || !old.hasSameMetadata(entry.getValue())) {
+                if (now - entry.getValue().lastModifiedTime().toMillis() < debounceMillis) {
+                    // the file is still being written so lets look again once it settles
+                    if (!polling) {
+                        pending.put(path, now + debounceMillis);
+                    }
+                } else {
+                    checkForChange(path);
+                }
+            }
+        }
+        List<Path> deleted = new ArrayList<>();
+        for (Path path : entries.keySet()) {
+            if (!found.containsKey(path)) {
+                deleted.add(path);
+            }
+        }
+        for (Path path : deleted) {
+            entries.remove(path);
+            fireChange(path, ChangeType.DELETED);
+        }
+        directories.keySet().retainAll(seenDirectories);
+    }
+
+    /**
+     * Compares the file to the cached information, notifying the listeners if it has been created, modified or deleted
+     */
+    protected void checkForChange(Path path) {
+        Entry old = entries.get(path);
+        BasicFileAttributes attributes = readAttributes(path);
+        if (attributes == null || attributes.isDirectory()) {
+            if (old != null) {
+                entries.remove(path);
+                fireChange(path, ChangeType.DELETED);
+            }
+            if (attributes == null && directories.containsKey(path)) {
+                directories.remove(path);
+                deleteChildren(path);
+            }
+            return;
+        }
+        if (!matches(path.toFile())) {
+            return;
+        }
+        FileChangeInfo info;
+        try {
+            info = FileChangeInfo.newInstance(path.toFile());
+        } catch (IOException e) {
+            LOG.debug("Could not checksum " + path + ". " + e);
+            info = null;
+        }
+        if (info == null) {
+            // deleted while we looked at it; we will get another event
+            return;
+        }
+        entries.put(path, new Entry(attributes, info));
+        if (old == null) {
+            fireChange(path, ChangeType.CREATED);
+        } else if (!old.info.equals(info)) {
+            fireChange(path, ChangeType.MODIFIED);
+        }
+    }
+
+    protected void fireChange(Path path, ChangeType type) {
+        File file = path.toFile();
+        for (Listener listener : listeners) {
+            try {
+                listener.onChange(file, type);
+            } catch (RuntimeException e) {
+                LOG.warn("Listener " + listener + " failed on " + type + " of " + file + ". " + e, e);
+            }
+        }
+    }
+
+    private void deleteChildren(Path directory) {
+        List<Path> deleted = new ArrayList<>();
+        for (Path path : entries.keySet()) {
+            if (path.startsWith(directory)) {
+                deleted.add(path);
+            }
+        }
+        for (Path path : deleted) {
+            entries.remove(path);
+            fireChange(path, ChangeType.DELETED);
+        }
+        for (Iterator<Path> iter = directories.keySet().iterator(); iter.hasNext(); ) {
+            if (iter.next().startsWith(directory)) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Stops watching the deleted directory and the directories below it, then checks the files below it once the
+     * debounce time has passed so that they are reported as deleted unless the directory has been recreated with them
+     */
+    private void unregisterTree(Path directory, long deadline) {
+        for (Iterator<Map.Entry<Path, WatchKey>> iter = directories.entrySet().iterator(); iter.hasNext(); ) {
+            Map.Entry<Path, WatchKey> entry = iter.next();
+            if (entry.getKey().startsWith(directory)) {
+                if (entry.getValue() != null) {
+                    entry.getValue().cancel();
+                }
+                iter.remove();
+            }
+        }
+        for (Path path : entries.keySet()) {
+            if (path.startsWith(directory)) {
+                pending.put(path, deadline);
+            }
+        }
+    }
+
+    /**
+     * Registers the directories below the start directory then returns the matching files; the tree is scanned again
+     * after registering so that we find the files and directories added before we could watch them
+     */
+    private Map<Path, BasicFileAttributes> registerTree(Path start) {
+        List<Path> newDirectories = new ArrayList<>();
+        Map<Path, BasicFileAttributes> answer = scanTree(start, newDirectories, null);
+        while (!newDirectories.isEmpty()) {
+            registerDirectories(newDirectories);
+            if (polling) {
+                break;
+            }
+            newDirectories.clear();
+            answer = scanTree(start, newDirectories, null);
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the matching files below the start directory, adding the directories we have not seen before to the list
+     * and all the directories to the optional set
+     */
+    private Map<Path, BasicFileAttributes> scanTree(Path start, final List<Path> newDirectories, final Set<Path> allDirectories) {
+        final Map<Path, BasicFileAttributes> answer = new HashMap<>();
+        new FileWalker(start.toFile()).walk(new FileWalker.Visitor() {
+            @Override
+            public void visit(File file, BasicFileAttributes attributes) {
+                Path path = file.toPath();
+                if (attributes.isDirectory()) {
+                    if (allDirectories != null) {
+                        allDirectories.add(path);
+                    }
+                    WatchKey key = directories.get(path);
+                    if (key == null ? !directories.containsKey(path) : !key.isValid()) {
+                        newDirectories.add(path);
+                    }
+                } else if (attributes.isRegularFile() && matches(file)) {
+                    answer.put(path, attributes);
+                }
+            }
+        });
+        return answer;
+    }
+
+    private void registerDirectories(List<Path> newDirectories) {
+        for (Path directory : newDirectories) {
+            WatchKey key = null;
+            if (!polling) {
+                try {
+                    key = register(directory);
+                } catch (IOException e) {
+                    LOG.warn("Could not watch " + directory + " so polling " + root + " every " + pollMillis + " millis instead. " + e);
+                    polling = true;
+                    Closeables.closeQuietly(watchService);
+                }
+            }
+            directories.put(directory, key);
+        }
+    }
+
+    private boolean matches(File file) {
+        return filter == null || filter.matches(file);
+    }
+
+    private static BasicFileAttributes readAttributes(Path path) {
+        try {
+            return java.nio.file.Files.readAttributes(path, BasicFileAttributes.class, NO_FOLLOW_LINKS);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static final class Entry {
+        final long length;
+        final long lastModified;
+        final FileChangeInfo info;
+
+        Entry(BasicFileAttributes attributes, FileChangeInfo info) {
+            this.length = attributes.size();
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+            this.info = info;
+        }
+
+        boolean hasSameMetadata(BasicFileAttributes attributes) {
+            return length == attributes.size() && lastModified == attributes.lastModifiedTime().toMillis();
+        }
+    }
+}
@@ -0,0 +1,307 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copies files and directory trees using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * so that the operating system can copy the data without passing it through the heap.
+ * <p/>
+ * The files of a directory tree are copied by a number of threads. Targets with the same size and modified time as
+ * their source can be skipped, which together with preserving the modified time makes copying the same tree again
+ * cheap. Files which are never modified in place, such as the jars in a Maven repository, can be hard linked
+ * rather than copied; if a link cannot be created, such as across file systems, the file is copied instead.
+ * <p/>
+ * For example
+ * <code>
+ *     new FileCopier().threads(4).skipUnchanged(true).copy(sourceDir, targetDir);
+ * </code>
+ */
+public class FileCopier {
+    private static final transient Logger LOG = LoggerFactory.getLogger(FileCopier.class);
+
+    private static final LinkOption[] NO_FOLLOW_LINKS = {LinkOption.NOFOLLOW_LINKS};
+
+    private int threads = 1;
+    private boolean hardLinks;
+    private boolean skipUnchanged;
+    private boolean preserveAttributes = true;
+    private final AtomicInteger copiedFiles = new AtomicInteger();
+    private final AtomicInteger linkedFiles = new AtomicInteger();
+    private final AtomicInteger skippedFiles = new AtomicInteger();
+
+    /**
+     * The number of threads used to copy the files of a directory tree; defaults to 1
+     */
+    public FileCopier threads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1 but was " + threads);
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Whether to hard link the target files to the source files rather than copying them; defaults to false
+     */
+    public FileCopier hardLinks(boolean hardLinks) {
+        this.hardLinks = hardLinks;
+        return this;
+    }
+
+    /**
+     * Whether to skip copying files whose target has the same size and modified time; defaults to false
+     */
+    public FileCopier skipUnchanged(boolean skipUnchanged) {
+        this.skipUnchanged = skipUnchanged;
+        return this;
+    }
+
+    /**
+     * Whether to copy the modified time and, where supported, the POSIX permissions of each file; defaults to true
+     */
+    public FileCopier preserveAttributes(boolean preserveAttributes) {
+        this.preserveAttributes = preserveAttributes;
+        return this;
+    }
+
+    /**
+     * Copies the source file, or directory tree, to the target, creating the target directories as required
+     */
+    public void copy(File source, File target) throws IOException {
+        copiedFiles.set(0);
+        linkedFiles.set(0);
+        skippedFiles.set(0);
+        if (!source.exists()) {
+            throw new FileNotFoundException("Source file not found:" + source.getAbsolutePath());
+        }
+        File parent = target.getAbsoluteFile().getParentFile();
+        if (!target.exists() && parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Can't create target directory:" + parent.getAbsolutePath());
+        }
+        if (!source.isDirectory()) {
+            BasicFileAttributes attributes = java.nio.file.Files.readAttributes(source.toPath(), BasicFileAttributes.class);
+            copyFile(source.toPath(), attributes, target.toPath());
+            return;
+        }
+
+        // lets create the directories first so the files can be copied in any order
+        final List<FileEntry> directories = new ArrayList<>();
+        final List<FileEntry> files = new ArrayList<>();
+        final int prefixLength = source.getPath().length() + 1;
+        final Path targetRoot = target.toPath();
+        new FileWalker(source).followLinks(true).walk(new FileWalker.Visitor() {
+            @Override
+            public void visit(File file, BasicFileAttributes attributes) {
+                String path = file.getPath();
+                Path targetPath = path.length() < prefixLength ? targetRoot : targetRoot.resolve(path.substring(prefixLength));
+                FileEntry entry = new FileEntry(file.toPath(), attributes, targetPath);
+                if (attributes.isDirectory()) {
+                    directories.add(entry);
+                } else {
+                    files.add(entry);
+                }
+            }
+        });
+        for (FileEntry directory : directories) {
+            java.nio.file.Files.createDirectories(directory.target);
+        }
+        copyFiles(files);
+        if (preserveAttributes) {
+            // the directory times change as we add files so they are set last
+            for (FileEntry directory : directories) {
+                copyAttributes(directory.source, directory.attributes, directory.target);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of files copied by the last call to {@link #copy(File, File)}
+     */
+    public int getCopiedFiles() {
+        return copiedFiles.get();
+    }
+
+    /**
+     * Returns the number of files hard linked by the last call to {@link #copy(File, File)}
+     */
+    public int getLinkedFiles() {
+        return linkedFiles.get();
+    }
+
+    /**
+     * Returns the number of unchanged files skipped by the last call to {@link #copy(File, File)}
+     */
+    public int getSkippedFiles() {
+        return skippedFiles.get();
+    }
+
+    private void copyFiles(List<FileEntry> files) throws IOException {
+        CopyTask task = new CopyTask(files, new AtomicInteger());
+        int workers = Math.min(threads, files.size());
+        if (workers <= 1) {
+            task.call();
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory("FileCopier"));
+        try {
+            List<Future<Void>> futures = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while copying files");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to copy files. " + cause, cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    protected void copyFile(Path source, BasicFileAttributes attributes, Path target) throws IOException {
+        if (skipUnchanged && isUnchanged(attributes, target)) {
+            skippedFiles.incrementAndGet();
+            return;
+        }
+        if (isSameFile(source, target)) {
+            // the target is already a link to the source so replacing or truncating it would lose the source data
+            skippedFiles.incrementAndGet();
+            return;
+        }
+        if (hardLinks) {
+            try {
+                java.nio.file.Files.deleteIfExists(target);
+                java.nio.file.Files.createLink(target, source);
+                linkedFiles.incrementAndGet();
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                LOG.debug("Could not link " + target + " to " + source + " so copying it. " + e);
+            }
+        }
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long count = in.transferTo(position, size - position, out);
+                if (count <= 0) {
+                    // the file has been truncated while we were copying it
+                    break;
+                }
+                position += count;
+            }
+        }
+        if (preserveAttributes) {
+            copyAttributes(source, attributes, target);
+        }
+        copiedFiles.incrementAndGet();
+    }
+
+    protected static boolean isUnchanged(BasicFileAttributes attributes, Path target) {
+        try {
+            BasicFileAttributes targetAttributes = java.nio.file.Files.readAttributes(target, BasicFileAttributes.class, NO_FOLLOW_LINKS);
+            return targetAttributes.isRegularFile() && targetAttributes.size() == attributes.size() &&
+                    targetAttributes.lastModifiedTime().equals(attributes.lastModifiedTime());
+        } catch (IOException e) {
+            // the target does not exist
+            return false;
+        }
+    }
+
+    protected static boolean isSameFile(Path source, Path target) {
+        try {
+            return java.nio.file.Files.isSameFile(source, target);
+        } catch (IOException e) {
+            // the target does not exist
+            return false;
+        }
+    }
+
+    protected static void copyAttributes(Path source, BasicFileAttributes attributes, Path target) throws IOException {
+        PosixFileAttributeView view = java.nio.file.Files.getFileAttributeView(target, PosixFileAttributeView.class);
+        if (view != null) {
+            view.setPermissions(java.nio.file.Files.getPosixFilePermissions(source));
+        }
+        java.nio.file.Files.setLastModifiedTime(target, attributes.lastModifiedTime());
+    }
+
+    /**
+     * Copies the next unclaimed file until there are none left
+     */
+    private final class CopyTask implements Callable<Void> {
+        private final List<FileEntry> files;
+        private final AtomicInteger nextIndex;
+
+        CopyTask(List<FileEntry> files, AtomicInteger nextIndex) {
+            this.files = files;
+            this.nextIndex = nextIndex;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            int index;
+            while ((index = nextIndex.getAndIncrement()) < files.size()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted while copying files");
+                }
+                FileEntry entry = files.get(index);
+                copyFile(entry.source, entry.attributes, entry.target);
+            }
+            return null;
+        }
+    }
+
+    private static final class FileEntry {
+        final Path source;
+        final BasicFileAttributes attributes;
+        final Path target;
+
+        FileEntry(Path source, BasicFileAttributes attributes, Path target) {
+            this.source = source;
+            this.attributes = attributes;
+            this.target = target;
+        }
+    }
+}
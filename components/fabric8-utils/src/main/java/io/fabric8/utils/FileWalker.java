@@ -0,0 +1,510 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Walks a tree of files using the attributes read by NIO for each file rather than calling {@link File#isDirectory()}
+ * for every file as recursing with {@link File#listFiles()} does.
+ * <p/>
+ * The {@link #filter(Filter)} chooses which files and directories are returned while the
+ * {@link #directoryFilter(Filter)} prunes the directories below the root which are neither returned nor walked.
+ * Wide trees can be walked by a {@link ForkJoinPool} using {@link #parallel(ForkJoinPool)}, in which case the
+ * visitor is called concurrently and the order of the files is undefined. Directories which cannot be read are skipped.
+ * <p/>
+ * For example
+ * <code>
+ *     List&lt;File&gt; poms = new FileWalker(dir).filter(Filters.isFileNamed("pom.xml")).list();
+ * </code>
+ */
+public class FileWalker {
+    private static final transient Logger LOG = LoggerFactory.getLogger(FileWalker.class);
+
+    private static final LinkOption[] FOLLOW_LINKS = {};
+    private static final LinkOption[] NO_FOLLOW_LINKS = {LinkOption.NOFOLLOW_LINKS};
+
+    /**
+     * Receives the files found by the walker along with their attributes
+     */
+    public interface Visitor {
+        void visit(File file, BasicFileAttributes attributes);
+    }
+
+    private final File root;
+    private Filter<File> filter;
+    private Filter<File> directoryFilter;
+    private boolean followLinks;
+    private ForkJoinPool pool;
+
+    public FileWalker(File root) {
+        Objects.notNull(root, "root");
+        this.root = root;
+    }
+
+    /**
+     * Only returns the files and directories which match the filter
+     */
+    public FileWalker filter(Filter<File> filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * Only returns or walks into the directories below the root which match the filter
+     */
+    public FileWalker directoryFilter(Filter<File> directoryFilter) {
+        this.directoryFilter = directoryFilter;
+        return this;
+    }
+
+    /**
+     * Whether symbolic links to directories are walked into; defaults to false
+     */
+    public FileWalker followLinks(boolean followLinks) {
+        this.followLinks = followLinks;
+        return this;
+    }
+
+    /**
+     * Walks each directory as a task in the given pool; the visitors must then be thread safe
+     */
+    public FileWalker parallel(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Walks the tree passing each matching file to the visitor
+     */
+    public void walk(final Visitor visitor) {
+        Path start = root.toPath();
+        if (pool != null) {
+            BasicFileAttributes attributes = readAttributes(start);
+            if (attributes != null) {
+                visitMatching(root, attributes, visitor);
+                if (attributes.isDirectory()) {
+                    Set<Object> visited = followLinks ? Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>()) : null;
+                    addVisited(visited, attributes);
+                    pool.invoke(new WalkTask(start, visitor, visited));
+                }
+            }
+            return;
+        }
+        EnumSet<FileVisitOption> options = followLinks ? EnumSet.of(FileVisitOption.FOLLOW_LINKS) : EnumSet.noneOf(FileVisitOption.class);
+        try {
+            java.nio.file.Files.walkFileTree(start, options, Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    File file = dir.toFile();
+                    if (directoryFilter != null && !file.equals(root) && !directoryFilter.matches(file)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    visitMatching(file, attrs, visitor);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                    visitMatching(path.toFile(), attrs, visitor);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path path, IOException e) {
+                    logFailure(path, e);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                    if (e != null) {
+                        logFailure(dir, e);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            // the visitor never throws so this should not happen
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns all the matching files
+     */
+    public List<File> list() {
+        if (pool == null) {
+            final List<File> answer = new ArrayList<>();
+            walk(new Visitor() {
+                @Override
+                public void visit(File file, BasicFileAttributes attributes) {
+                    answer.add(file);
+                }
+            });
+            return answer;
+        }
+        final ConcurrentLinkedQueue<File> queue = new ConcurrentLinkedQueue<>();
+        walk(new Visitor() {
+            @Override
+            public void visit(File file, BasicFileAttributes attributes) {
+                queue.add(file);
+            }
+        });
+        return new ArrayList<>(queue);
+    }
+
+    /**
+     * Returns a lazy iterator over the matching files which reads each directory as it is reached, in which case the
+     * iterator should be closed if it is not fully consumed. The parallel pool is not used.
+     */
+    public FileIterator iterator() {
+        return new FileIterator();
+    }
+
+    /**
+     * Returns a lazy stream of the matching files which should be closed if it is not fully consumed
+     *
+     * @see #iterator()
+     */
+    public Stream<File> stream() {
+        final FileIterator iterator = iterator();
+        Spliterator<File> spliterator = Spliterators.spliteratorUnknownSize(iterator, Spliterator.DISTINCT | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+            @Override
+            public void run() {
+                iterator.close();
+            }
+        });
+    }
+
+    /**
+     * Deletes the root and everything below it which matches the filters, deleting the children of each directory
+     * before the directory itself, and returns the number of files and directories deleted.
+     * Symbolic links are deleted rather than followed.
+     */
+    public int delete() {
+        BasicFileAttributes attributes = readAttributes(root.toPath(), NO_FOLLOW_LINKS);
+        if (attributes == null) {
+            return 0;
+        }
+        DeleteTask task = new DeleteTask(root.toPath(), attributes);
+        return pool != null ? pool.invoke(task) : task.compute();
+    }
+
+    protected void visitMatching(File file, BasicFileAttributes attributes, Visitor visitor) {
+        if (filter == null || filter.matches(file)) {
+            visitor.visit(file, attributes);
+        }
+    }
+
+    /**
+     * Returns true if the directory below the root should be walked
+     */
+    protected boolean isWalked(File file) {
+        return directoryFilter == null || directoryFilter.matches(file);
+    }
+
+    private LinkOption[] linkOptions() {
+        return followLinks ? FOLLOW_LINKS : NO_FOLLOW_LINKS;
+    }
+
+    private BasicFileAttributes readAttributes(Path path) {
+        return readAttributes(path, linkOptions());
+    }
+
+    private static BasicFileAttributes readAttributes(Path path, LinkOption[] options) {
+        try {
+            return java.nio.file.Files.readAttributes(path, BasicFileAttributes.class, options);
+        } catch (IOException e) {
+            if (followLinks(options)) {
+                // lets treat a broken link as a file
+                return readAttributes(path, NO_FOLLOW_LINKS);
+            }
+            logFailure(path, e);
+            return null;
+        }
+    }
+
+    private static boolean followLinks(LinkOption[] options) {
+        return options.length == 0;
+    }
+
+    /**
+     * Returns false if the directory has already been visited by following a link
+     */
+    private static boolean addVisited(Set<Object> visited, BasicFileAttributes attributes) {
+        Object key = attributes.fileKey();
+        return visited == null || key == null || visited.add(key);
+    }
+
+    private static void logFailure(Path path, IOException e) {
+        if (e instanceof NoSuchFileException) {
+            // the file was deleted while we were walking
+            return;
+        }
+        LOG.debug("Failed to read " + path + ". " + e, e);
+    }
+
+    /**
+     * Reads a directory then walks its subdirectories as forked tasks
+     */
+    private final class WalkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final Visitor visitor;
+        private final Set<Object> visited;
+
+        WalkTask(Path dir, Visitor visitor, Set<Object> visited) {
+            this.dir = dir;
+            this.visitor = visitor;
+            this.visited = visited;
+        }
+
+        @Override
+        protected void compute() {
+            List<WalkTask> tasks = new ArrayList<>();
+            try (DirectoryStream<Path> stream = java.nio.file.Files.newDirectoryStream(dir)) {
+                for (Path path : stream) {
+                    BasicFileAttributes attributes = readAttributes(path);
+                    if (attributes == null) {
+                        continue;
+                    }
+                    File file = path.toFile();
+                    if (attributes.isDirectory()) {
+                        if (!isWalked(file) || !addVisited(visited, attributes)) {
+                            continue;
+                        }
+                        tasks.add(new WalkTask(path, visitor, visited));
+                    }
+                    visitMatching(file, attributes, visitor);
+                }
+            } catch (IOException e) {
+                logFailure(dir, e);
+            } catch (DirectoryIteratorException e) {
+                logFailure(dir, e.getCause());
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    /**
+     * Deletes the children of a directory, walking its subdirectories as forked tasks, then the directory itself
+     */
+    private final class DeleteTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path path;
+        private final BasicFileAttributes attributes;
+
+        DeleteTask(Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.attributes = attributes;
+        }
+
+        @Override
+        protected Integer compute() {
+            int answer = 0;
+            if (attributes.isDirectory()) {
+                List<DeleteTask> tasks = new ArrayList<>();
+                try (DirectoryStream<Path> stream = java.nio.file.Files.newDirectoryStream(path)) {
+                    for (Path child : stream) {
+                        BasicFileAttributes childAttributes = readAttributes(child, NO_FOLLOW_LINKS);
+                        if (childAttributes == null) {
+                            continue;
+                        }
+                        if (childAttributes.isDirectory()) {
+                            if (isWalked(child.toFile())) {
+                                tasks.add(new DeleteTask(child, childAttributes));
+                            }
+                        } else if (filter == null || filter.matches(child.toFile())) {
+                            answer += deleteFile(child);
+                        }
+                    }
+                } catch (IOException e) {
+                    logFailure(path, e);
+                } catch (DirectoryIteratorException e) {
+                    logFailure(path, e.getCause());
+                }
+                if (pool != null) {
+                    for (DeleteTask task : invokeAll(tasks)) {
+                        answer += task.join();
+                    }
+                } else {
+                    for (DeleteTask task : tasks) {
+                        answer += task.compute();
+                    }
+                }
+            }
+            if (filter == null || filter.matches(path.toFile())) {
+                answer += deleteFile(path);
+            }
+            return answer;
+        }
+
+        private int deleteFile(Path file) {
+            try {
+                java.nio.file.Files.delete(file);
+                return 1;
+            } catch (IOException e) {
+                // such as a directory we didn't empty
+                logFailure(file, e);
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * A lazy iterator which reads each directory as it is reached
+     */
+    public final class FileIterator implements Iterator<File>, Closeable {
+        private final Deque<DirectoryStream<Path>> streams = new ArrayDeque<>();
+        private final Deque<Iterator<Path>> iterators = new ArrayDeque<>();
+        private final Set<Object> visited = followLinks ? new HashSet<>() : null;
+        private File next;
+        private boolean started;
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = findNext();
+            }
+            return next != null;
+        }
+
+        @Override
+        public File next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            File answer = next;
+            next = null;
+            return answer;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            while (!streams.isEmpty()) {
+                closeDirectory();
+            }
+        }
+
+        private File findNext() {
+            if (!started) {
+                started = true;
+                BasicFileAttributes attributes = readAttributes(root.toPath());
+                if (attributes != null) {
+                    if (attributes.isDirectory()) {
+                        addVisited(visited, attributes);
+                        openDirectory(root.toPath());
+                    }
+                    if (filter == null || filter.matches(root)) {
+                        return root;
+                    }
+                }
+            }
+            while (!iterators.isEmpty()) {
+                Iterator<Path> iter = iterators.peek();
+                Path path;
+                try {
+                    if (!iter.hasNext()) {
+                        closeDirectory();
+                        continue;
+                    }
+                    path = iter.next();
+                } catch (DirectoryIteratorException e) {
+                    logFailure(root.toPath(), e.getCause());
+                    closeDirectory();
+                    continue;
+                }
+                BasicFileAttributes attributes = readAttributes(path);
+                if (attributes == null) {
+                    continue;
+                }
+                File file = path.toFile();
+                if (attributes.isDirectory()) {
+                    if (!isWalked(file) || !addVisited(visited, attributes)) {
+                        continue;
+                    }
+                    openDirectory(path);
+                }
+                if (filter == null || filter.matches(file)) {
+                    return file;
+                }
+            }
+            return null;
+        }
+
+        private void openDirectory(Path dir) {
+            try {
+                DirectoryStream<Path> stream = java.nio.file.Files.newDirectoryStream(dir);
+                streams.push(stream);
+                iterators.push(stream.iterator());
+            } catch (IOException e) {
+                logFailure(dir, e);
+            }
+        }
+
+        private void closeDirectory() {
+            iterators.pop();
+            try {
+                streams.pop().close();
+            } catch (IOException e) {
+                logFailure(root.toPath(), e);
+            }
+        }
+    }
+}
@@ -31,8 +31,13 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -50,6 +55,7 @@ public final class Files {
     private static final AtomicLong lastTmpFileId = new AtomicLong(System.currentTimeMillis());
 
     private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
     private static boolean windowsOs = initWindowsOs();
 
     private Files() {
@@ -209,6 +215,16 @@ public final class Files {
      * Reads a {@link File} and returns the list of lines
      */
     public static List<String> readLines(File file) throws IOException {
+        if (StandardCharsets.UTF_8.equals(Charset.defaultCharset())) {
+            // split the lines on the heap rather than mapping the file; a mapping is only released once garbage
+            // collected which stops the file being rewritten or deleted on Windows and is slower for small files
+            List<String> lines = new ArrayList<>();
+            LineIterator iter = new LineIterator(ByteBuffer.wrap(readBytes(file)));
+            while (iter.hasNext()) {
+                lines.add(iter.next());
+            }
+            return lines;
+        }
         BufferedReader reader = new BufferedReader(new FileReader(file));
         List<String> answer = new ArrayList<String>();
         try {
@@ -241,26 +257,83 @@ public final class Files {
     }
 
     /**
-     * Reads a {@link File} and returns the data as a byte array
+     * Returns an iterator over the lines of a UTF-8 {@link File} which must be closed if it is not fully consumed.
+     * The file is memory mapped so on Windows it cannot be rewritten or deleted until the iterator is garbage collected;
+     * use {@link #readLines(File)} for small files.
+     */
+    public static LineIterator lineIterator(File file) throws IOException {
+        if (file == null) {
+            throw new FileNotFoundException("No file specified");
+        }
+        return new LineIterator(file);
+    }
+
+    /**
+     * Reads a {@link File} and returns the data as a byte array.
+     * <p/>
+     * The array is allocated once using the length of the file; files whose length is not known up front,
+     * such as those in <tt>/proc</tt>, are read until the end.
      */
     public static byte[] readBytes(File file) throws IOException {
-        FileInputStream fis = null;
-        ByteArrayOutputStream bos = null;
         if (file == null) {
             throw new FileNotFoundException("No file specified");
         }
-        try {
-            fis = new FileInputStream(file);
-            bos = new ByteArrayOutputStream();
-            byte[] buffer = new byte[BUFFER_SIZE];
-            int remaining;
-            while ((remaining = fis.read(buffer)) > 0) {
-                bos.write(buffer, 0, remaining);
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            long size = channel.size();
+            if (size > MAX_ARRAY_SIZE) {
+                throw new IOException("File " + file + " is too large to read into a byte array: " + size + " bytes");
+            }
+            byte[] answer = new byte[(int) size];
+            ByteBuffer buffer = ByteBuffer.wrap(answer);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading
+            }
+            if (buffer.hasRemaining()) {
+                // the file was truncated while we read it
+                return Arrays.copyOf(answer, buffer.position());
+            }
+            ByteBuffer extra = ByteBuffer.allocate(BUFFER_SIZE);
+            int count = channel.read(extra);
+            if (count < 0) {
+                return answer;
+            }
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(answer.length + 2 * BUFFER_SIZE);
+            bos.write(answer);
+            while (count >= 0) {
+                bos.write(extra.array(), 0, extra.position());
+                extra.clear();
+                count = channel.read(extra);
             }
             return bos.toByteArray();
-        } finally {
-            Closeables.closeQuietly(fis);
-            Closeables.closeQuietly(bos);
+        }
+    }
+
+    /**
+     * Returns a read only memory mapped view of a {@link File} of up to 2GB which avoids copying the data onto the heap.
+     * The mapping remains valid until the buffer is garbage collected.
+     */
+    public static MappedByteBuffer map(File file) throws IOException {
+        if (file == null) {
+            throw new FileNotFoundException("No file specified");
+        }
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File " + file + " is too large to map in one buffer: " + size + " bytes");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * Returns a read only memory mapped view of a region of a {@link File}
+     */
+    public static MappedByteBuffer map(File file, long position, long size) throws IOException {
+        if (file == null) {
+            throw new FileNotFoundException("No file specified");
+        }
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
         }
     }
 
@@ -338,26 +411,7 @@ public final class Files {
      * Copy the source {@link File} to the target {@link File}.
      */
     public static void copy(File source, File target) throws IOException {
-        if (!source.exists()) {
-            throw new FileNotFoundException("Source file not found:" + source.getAbsolutePath());
-        }
-
-        if (!target.exists() && !target.getParentFile().exists() && !target.getParentFile().mkdirs()) {
-            throw new IOException("Can't create target directory:" + target.getParentFile().getAbsolutePath());
-        }
-        if (source.isDirectory()) {
-            target.mkdirs();
-            File[] files = source.listFiles();
-            if (files != null) {
-                for (File child : files) {
-                    copy(child, new File(target, child.getName()));
-                }
-            }
-        } else {
-            FileInputStream is = new FileInputStream(source);
-            FileOutputStream os = new FileOutputStream(target);
-            copy(is, os);
-        }
+        new FileCopier().preserveAttributes(false).copy(source, target);
     }
 
     /**
@@ -422,15 +476,26 @@ public final class Files {
         }
     }
 
-    public static Set<File> recursiveList(File root, FilenameFilter filter) {
+    /**
+     * Returns the root and all the files below it which are accepted by the optional filter, only walking into
+     * the directories which are accepted
+     *
+     * @see FileWalker
+     */
+    public static Set<File> recursiveList(File root, final FilenameFilter filter) {
         Set<File> result = new HashSet<>();
         if (root != null) {
             result.add(root);
-            if (root.isDirectory()) {
-                for (File child : root.listFiles(filter)) {
-                    result.addAll(recursiveList(child, filter));
-                }
+            Filter<File> fileFilter = null;
+            if (filter != null) {
+                fileFilter = new Filter<File>() {
+                    @Override
+                    public boolean matches(File file) {
+                        return filter.accept(file.getParentFile(), file.getName());
+                    }
+                };
             }
+            result.addAll(new FileWalker(root).followLinks(true).filter(fileFilter).directoryFilter(fileFilter).list());
         }
         return result;
     }
@@ -438,39 +503,27 @@ public final class Files {
 
     /**
      * Recursively deletes the given file whether its a file or directory returning the number
-     * of files deleted
+     * of files deleted. Symbolic links are deleted rather than followed.
+     *
+     * @see FileWalker#delete()
      */
     public static int recursiveDelete(File file) {
-        int answer = 0;
-        if (file.isDirectory()) {
-            File[] files = file.listFiles();
-            if (files != null) {
-                for (File child : files) {
-                    answer += recursiveDelete(child);
-                }
-            }
-        }
-        if (file.delete()) {
-            answer += 1;
-        }
-        return answer;
+        return new FileWalker(file).delete();
     }
 
     /**
      * Recursively finds all files matching the given filter and adds them to the collection
+     *
+     * @see FileWalker
      */
     public static void findRecursive(File file, Filter<File> filter, Collection<File> collection) {
-        if (filter.matches(file)) {
-            collection.add(file);
-        }
-        if (file.isDirectory()) {
-            File[] files = file.listFiles();
-            if (files != null) {
-                for (File child : files) {
-                    findRecursive(child, filter, collection);
-                }
+        if (!file.exists()) {
+            if (filter.matches(file)) {
+                collection.add(file);
             }
+            return;
         }
+        collection.addAll(new FileWalker(file).followLinks(true).filter(filter).list());
     }
 
     /**
@@ -136,6 +136,9 @@ public class Filters {
      * Returns a filter which returns true if the String contains any of the given text values
      */
     public static Filter<String> containsAnyString(String... textValues) {
+        if (textValues.length > 1) {
+            return new ContainsAnyStringFilter(textValues);
+        }
         List<Filter<String>> filters = new ArrayList<>();
         for (String text : textValues) {
             filters.add(containsString(text));
@@ -194,15 +197,11 @@ public class Filters {
     }
 
     /**
-     * Returns a filter if any of the String patterns match (using ! for not and * for any characters)
+     * Returns a filter if any of the String patterns match (using ! for not and * for any characters).
+     * The patterns are compiled into a single {@link StringPatternFilter} so large lists stay cheap to match.
      */
     public static Filter<String> createStringFilters(Iterable<String> patterns) {
-        List<Filter<String>> filters = new ArrayList<>();
-        for (String pattern : patterns) {
-            Filter<String> filter = createStringFilter(pattern);
-            filters.add(filter);
-        }
-        return or(filters);
+        return new StringPatternFilter(patterns);
     }
 
 
@@ -23,7 +23,6 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -157,8 +156,7 @@ public class IOHelpers {
         if (!file.isFile()) {
             return null;
         }
-        InputStream in = new FileInputStream(file);
-        return readFully(in);
+        return Files.toString(file);
     }
 
     public static String readFully(InputStream in) throws IOException {
@@ -191,20 +189,10 @@ public class IOHelpers {
     }
 
     public static List<String> readLines(File file) throws IOException {
-        List<String> overrides = new ArrayList<String>();
         if (file.exists()) {
-            InputStream is = new FileInputStream(file);
-            try {
-                BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-                String line = null;
-                while ((line = reader.readLine()) != null) {
-                    overrides.add(line);
-                }
-            } finally {
-                is.close();
-            }
+            return Files.readLines(file);
         }
-        return overrides;
+        return new ArrayList<String>();
     }
 
     public static void writeLines(File file, List<String> lines) throws IOException {
@@ -0,0 +1,343 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An Executor which runs the tasks for the same key in the order they were submitted while running
+ * the tasks for different keys in parallel on a fixed pool of threads.
+ * <p/>
+ * Unlike using a {@link SerialExecutorService} per key this scales to very large numbers of keys; a key only has
+ * state while it has tasks queued or running and that state is removed as soon as its queue drains. The keys are
+ * spread over a number of lock stripes so that producers for different keys rarely contend.
+ * <p/>
+ * If coalescing is enabled a task replaces any task for the same key which has not yet started running, which is
+ * useful when each task processes the latest state of the key such as a watch event for a resource.
+ */
+public class KeyedSerialExecutor<K> implements Closeable {
+
+    static int MAX_TASKS_PER_DRAIN = Integer.getInteger("io.fabric8.utils.KeyedSerialExecutor.MAX_TASKS_PER_DRAIN", 64);
+
+    // the queue the current thread is submitting to the target again
+    private static final ThreadLocal<KeyQueue<?>> HANDING_OVER = new ThreadLocal<>();
+
+    private final Executor target;
+    private final ExecutorService ownedPool;
+    private final boolean coalesce;
+    private final List<Stripe<K>> stripes;
+    private final int stripeMask;
+    private final LongAdder executedCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+    private volatile int maxTasksPerDrain = MAX_TASKS_PER_DRAIN;
+    private volatile boolean shutdown;
+
+    /**
+     * Creates an executor with a fixed pool of the given number of threads which is shut down when this
+     * executor is closed
+     */
+    public KeyedSerialExecutor(String name, int threads, boolean coalesce) {
+        this(Executors.newFixedThreadPool(threads, new ThreadFactory(name)), true, threads, coalesce);
+    }
+
+    /**
+     * Creates an executor which runs the tasks on the given executor
+     */
+    public KeyedSerialExecutor(Executor target, int concurrencyLevel, boolean coalesce) {
+        this(target, false, concurrencyLevel, coalesce);
+    }
+
+    private KeyedSerialExecutor(Executor target, boolean ownsTarget, int concurrencyLevel, boolean coalesce) {
+        Objects.notNull(target, "target");
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("concurrencyLevel must be at least 1 but was " + concurrencyLevel);
+        }
+        this.target = target;
+        this.ownedPool = ownsTarget ? (ExecutorService) target : null;
+        this.coalesce = coalesce;
+        // use a few stripes per thread so that producers rarely contend with the running tasks
+        int size = Integer.highestOneBit(Math.min(concurrencyLevel, 1 << 14) * 4 - 1) << 1;
+        this.stripes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            stripes.add(new Stripe<K>());
+        }
+        this.stripeMask = size - 1;
+    }
+
+    /**
+     * Queues the task to run after all the tasks previously queued for the same key; if coalescing is enabled
+     * it replaces any task for the key which has not yet started.
+     * <p/>
+     * If the target rejects the key's queue the exception is thrown and any tasks other threads queued for the key
+     * in the meantime are passed to {@link #rejected(Object, List, RuntimeException)}.
+     */
+    public void execute(K key, Runnable task) {
+        if (key == null)
+            throw new NullPointerException("key cannot be null");
+        if (task == null)
+            throw new NullPointerException("task cannot be null");
+        if (shutdown)
+            throw new RejectedExecutionException("shutdown");
+
+        Stripe<K> stripe = stripeFor(key);
+        KeyQueue<K> queue;
+        synchronized (stripe) {
+            queue = stripe.keys.get(key);
+            if (queue != null) {
+                if (coalesce && !queue.tasks.isEmpty()) {
+                    queue.tasks.clear();
+                    coalescedCount.increment();
+                }
+                queue.tasks.add(task);
+                return;
+            }
+            queue = new KeyQueue<>(this, stripe, key);
+            queue.tasks.add(task);
+            stripe.keys.put(key, queue);
+        }
+        try {
+            target.execute(queue);
+        } catch (RuntimeException e) {
+            List<Runnable> rejected = new ArrayList<>();
+            synchronized (stripe) {
+                stripe.keys.remove(key);
+                for (Runnable queued : queue.tasks) {
+                    if (queued != task) {
+                        rejected.add(queued);
+                    }
+                }
+                queue.tasks.clear();
+            }
+            if (!rejected.isEmpty()) {
+                rejected(key, rejected, e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Is called with the tasks other threads queued for a key whose queue the target rejected; as those threads
+     * were not told the tasks were rejected any tasks which are {@link Future}s are cancelled
+     */
+    protected void rejected(K key, List<Runnable> tasks, RuntimeException cause) {
+        for (Runnable task : tasks) {
+            if (task instanceof Future) {
+                ((Future<?>) task).cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting new tasks and, if this executor created its own pool, shuts down the pool once the
+     * queued tasks have run
+     */
+    public void shutdown() {
+        shutdown = true;
+        if (ownedPool != null) {
+            ownedPool.shutdown();
+        }
+    }
+
+    /**
+     * Waits for the owned pool to terminate after {@link #shutdown()}
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        if (ownedPool != null) {
+            return ownedPool.awaitTermination(timeout, unit);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        shutdown();
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+
+    public int getMaxTasksPerDrain() {
+        return maxTasksPerDrain;
+    }
+
+    /**
+     * Sets the maximum number of tasks run for a key before the thread is given to another key
+     */
+    public void setMaxTasksPerDrain(int maxTasksPerDrain) {
+        if (maxTasksPerDrain < 1) {
+            throw new IllegalArgumentException("maxTasksPerDrain must be at least 1 but was " + maxTasksPerDrain);
+        }
+        this.maxTasksPerDrain = maxTasksPerDrain;
+    }
+
+    // Statistics
+    //-------------------------------------------------------------------------
+
+    /**
+     * Returns the number of keys which have tasks queued or running
+     */
+    public int getActiveKeyCount() {
+        int answer = 0;
+        for (Stripe<K> stripe : stripes) {
+            synchronized (stripe) {
+                answer += stripe.keys.size();
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the number of tasks queued which have not yet started
+     */
+    public int getQueueSize() {
+        int answer = 0;
+        for (Stripe<K> stripe : stripes) {
+            synchronized (stripe) {
+                for (KeyQueue<K> queue : stripe.keys.values()) {
+                    answer += queue.tasks.size();
+                }
+            }
+        }
+        return answer;
+    }
+
+    public long getExecutedCount() {
+        return executedCount.sum();
+    }
+
+    /**
+     * Returns the number of tasks which were replaced by a newer task for the same key before they started
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    protected Stripe<K> stripeFor(K key) {
+        int h = key.hashCode();
+        // spread the higher bits as HashMap does
+        h ^= h >>> 16;
+        return stripes.get(h & stripeMask);
+    }
+
+    /**
+     * Runs up to {@link #getMaxTasksPerDrain()} tasks for the key then either removes the key if its queue
+     * is empty or submits the queue to the target again so that other keys get a turn.
+     * <p/>
+     * If the target rejects the queue or runs it on the submitting thread, as a full pool with a
+     * {@link java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy} does, this drain carries on in a loop
+     * rather than nesting another drain.
+     */
+    void drain(KeyQueue<K> queue) {
+        Thread thread = Thread.currentThread();
+        if (HANDING_OVER.get() == queue) {
+            // the target is running the queue on the thread handing it over so let that drain carry on
+            queue.callerRanOn = thread;
+            return;
+        }
+        Stripe<K> stripe = queue.stripe;
+        int max = maxTasksPerDrain;
+        for (int count = 0; ; count++) {
+            Runnable task;
+            synchronized (stripe) {
+                task = queue.tasks.poll();
+                if (task == null) {
+                    stripe.keys.remove(queue.key);
+                    return;
+                }
+                if (count >= max) {
+                    queue.tasks.addFirst(task);
+                    task = null;
+                }
+            }
+            if (task == null) {
+                queue.callerRanOn = null;
+                HANDING_OVER.set(queue);
+                try {
+                    target.execute(queue);
+                } catch (RejectedExecutionException e) {
+                    // keep running the tasks on this thread
+                    queue.callerRanOn = thread;
+                } finally {
+                    HANDING_OVER.remove();
+                }
+                // once handed over another thread owns the queue so we must not touch it again
+                if (queue.callerRanOn != thread) {
+                    return;
+                }
+                count = -1;
+                continue;
+            }
+            try {
+                task.run();
+            } catch (Throwable e) {
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+            executedCount.increment();
+        }
+    }
+
+    /**
+     * A lock protecting the queues of the keys which hash to it
+     */
+    static final class Stripe<K> {
+        final Map<K, KeyQueue<K>> keys = new HashMap<>();
+    }
+
+    /**
+     * The pending tasks of a key which is submitted to the target to run them
+     */
+    static final class KeyQueue<K> implements Runnable {
+        final KeyedSerialExecutor<K> executor;
+        final Stripe<K> stripe;
+        final K key;
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>(2);
+        // the thread which found the target ran the queue on the thread submitting it
+        volatile Thread callerRanOn;
+
+        KeyQueue(KeyedSerialExecutor<K> executor, Stripe<K> stripe, K key) {
+            this.executor = executor;
+            this.stripe = stripe;
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            executor.drain(this);
+        }
+
+        @Override
+        public String toString() {
+            return "KeyQueue(" + key + ")";
+        }
+    }
+}
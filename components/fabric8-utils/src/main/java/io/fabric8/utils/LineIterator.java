@@ -0,0 +1,196 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the lines of a UTF-8 file, or of a {@link ByteBuffer}, decoding each line straight from the bytes
+ * rather than reading the whole file into a list.
+ * <p/>
+ * Files are memory mapped a window at a time so files larger than 2GB can be read; pipes and files which report
+ * no size, such as those in <tt>/proc</tt>, are read onto the heap instead. Lines end with
+ * <tt>\n</tt>, <tt>\r</tt> or <tt>\r\n</tt> in the same way as {@link java.io.BufferedReader#readLine()}.
+ * <p/>
+ * Instances are not thread safe and must be closed when not fully consumed.
+ */
+public class LineIterator implements Iterator<String>, Closeable {
+    private static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE - 8;
+
+    private final FileChannel channel;
+    private final long size;
+    private int windowSize;
+    private long windowStart;
+    private ByteBuffer buffer;
+    private int position;
+    private byte[] lineBytes = new byte[256];
+    private String next;
+    private boolean closed;
+
+    /**
+     * Creates an iterator over the lines of the given UTF-8 file
+     */
+    public LineIterator(File file) throws IOException {
+        this(new FileInputStream(file).getChannel(), DEFAULT_WINDOW_SIZE, !file.isFile());
+    }
+
+    /**
+     * Creates an iterator over the lines in the remaining bytes of the given buffer, which may be direct or mapped
+     */
+    public LineIterator(ByteBuffer buffer) {
+        this.channel = null;
+        this.buffer = buffer.slice();
+        this.size = this.buffer.limit();
+        this.windowSize = this.buffer.limit();
+    }
+
+    protected LineIterator(FileChannel channel, int windowSize) throws IOException {
+        this(channel, windowSize, false);
+    }
+
+    private LineIterator(FileChannel channel, int windowSize, boolean unmappable) throws IOException {
+        this.windowSize = windowSize;
+        try {
+            long channelSize = channel.size();
+            if (unmappable || channelSize == 0) {
+                // pipes can't be mapped and files such as those in /proc report no size so they are read until the end
+                this.channel = null;
+                this.buffer = ByteBuffer.wrap(Files.readBytes(Channels.newInputStream(channel)));
+                this.size = buffer.limit();
+                this.windowSize = buffer.limit();
+            } else {
+                this.channel = channel;
+                this.size = channelSize;
+                map(0);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !closed) {
+            try {
+                next = readNext();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read lines. " + e, e);
+            }
+            if (next == null) {
+                close();
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String answer = next;
+        next = null;
+        return answer;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            // the mapped windows are released when they are garbage collected
+            buffer = null;
+            Closeables.closeQuietly(channel);
+        }
+    }
+
+    protected String readNext() throws IOException {
+        while (true) {
+            ByteBuffer window = buffer;
+            int limit = window.limit();
+            boolean lastWindow = windowStart + limit >= size;
+            int end = position;
+            byte b = 0;
+            while (end < limit) {
+                b = window.get(end);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                end++;
+            }
+            if (end < limit && (b == '\n' || end + 1 < limit || lastWindow)) {
+                String line = decode(window, position, end);
+                position = end + 1;
+                if (b == '\r' && position < limit && window.get(position) == '\n') {
+                    position++;
+                }
+                return line;
+            }
+            if (lastWindow) {
+                if (position < limit) {
+                    String line = decode(window, position, limit);
+                    position = limit;
+                    return line;
+                }
+                return null;
+            }
+            // the line, or a \r\n, spans the end of the window so lets map the next one from the start of the line
+            if (position == 0) {
+                if (windowSize >= MAX_WINDOW_SIZE) {
+                    throw new IOException("Line at offset " + windowStart + " is longer than " + MAX_WINDOW_SIZE + " bytes");
+                }
+                windowSize = (int) Math.min(2L * windowSize, MAX_WINDOW_SIZE);
+            }
+            map(windowStart + position);
+        }
+    }
+
+    protected void map(long start) throws IOException {
+        windowStart = start;
+        position = 0;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, windowSize));
+    }
+
+    private String decode(ByteBuffer window, int start, int end) {
+        int length = end - start;
+        if (window.hasArray()) {
+            return new String(window.array(), window.arrayOffset() + start, length, StandardCharsets.UTF_8);
+        }
+        if (lineBytes.length < length) {
+            lineBytes = new byte[Math.max(length, 2 * lineBytes.length)];
+        }
+        ByteBuffer view = window.duplicate();
+        view.position(start);
+        view.get(lineBytes, 0, length);
+        return new String(lineBytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds which local ports are in use without binding a socket to each one.
+ * <p/>
+ * On Linux the TCP and UDP sockets are read from <tt>/proc/net/tcp</tt>, <tt>tcp6</tt>, <tt>udp</tt> and
+ * <tt>udp6</tt> in one pass; on other platforms the ports are checked by binding to them in parallel on a small pool.
+ * As another process can open a port at any time the callers which need a free port should still confirm it
+ * with {@link Ports#isPortFree(int)}.
+ */
+public class PortScanner {
+    private static final transient Logger LOG = LoggerFactory.getLogger(PortScanner.class);
+
+    private static final String[] PROC_NET_FILES = {"tcp", "tcp6", "udp", "udp6"};
+    private static final int TCP_TIME_WAIT = 0x06;
+    private static final int TCP_CLOSE = 0x07;
+    private static final int PROBE_THREADS = 4;
+    private static final int PROBE_CHUNK_SIZE = 256;
+
+    private static final PortScanner INSTANCE = new PortScanner(new File("/proc/net"));
+
+    private final File procNetDir;
+
+    public PortScanner(File procNetDir) {
+        this.procNetDir = procNetDir;
+    }
+
+    /**
+     * Returns the scanner of the <tt>/proc/net</tt> file system which probes ports when it is not available
+     */
+    public static PortScanner getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns true if the used ports can be read from the <tt>/proc/net</tt> file system
+     */
+    public boolean isSupported() {
+        return new File(procNetDir, "tcp").canRead();
+    }
+
+    /**
+     * Returns the used ports between the given ports inclusive, indexed by port number
+     */
+    public BitSet getUsedPorts(int fromPort, int toPort) {
+        if (fromPort < Ports.MIN_PORT_NUMBER || toPort > Ports.MAX_PORT_NUMBER || fromPort > toPort) {
+            throw new IllegalArgumentException("Invalid port range: " + fromPort + " to " + toPort);
+        }
+        if (isSupported()) {
+            BitSet answer = readUsedPorts();
+            answer.clear(0, fromPort);
+            answer.clear(toPort + 1, Ports.MAX_PORT_NUMBER + 1);
+            return answer;
+        }
+        return probeUsedPorts(fromPort, toPort);
+    }
+
+    /**
+     * Reads all the ports with an open TCP or UDP socket
+     */
+    protected BitSet readUsedPorts() {
+        BitSet answer = new BitSet(Ports.MAX_PORT_NUMBER + 1);
+        for (String name : PROC_NET_FILES) {
+            File file = new File(procNetDir, name);
+            if (!file.exists()) {
+                continue;
+            }
+            try {
+                parseProcNet(java.nio.file.Files.readAllBytes(file.toPath()), name.startsWith("tcp"), answer);
+            } catch (IOException e) {
+                LOG.warn("Failed to read " + file + ". " + e, e);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Parses the lines of a <tt>/proc/net</tt> socket table such as
+     * <tt>0: 0100007F:1F90 00000000:0000 0A ...</tt> adding the local ports to the bit set.
+     * TCP sockets which are closed or in <tt>TIME_WAIT</tt> are ignored as they do not stop a server binding to the port.
+     */
+    protected static void parseProcNet(byte[] data, boolean tcp, BitSet usedPorts) {
+        int pos = 0;
+        int length = data.length;
+        // skip the header line
+        while (pos < length && data[pos] != '\n') {
+            pos++;
+        }
+        while (pos < length) {
+            int lineEnd = pos + 1;
+            while (lineEnd < length && data[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            // the fields are the slot, local address, remote address and state
+            int field = 0;
+            int port = -1;
+            int state = -1;
+            int i = pos;
+            while (i < lineEnd && field < 4) {
+                while (i < lineEnd && data[i] <= ' ') {
+                    i++;
+                }
+                int start = i;
+                while (i < lineEnd && data[i] > ' ') {
+                    i++;
+                }
+                if (start == i) {
+                    break;
+                }
+                if (field == 1) {
+                    int colon = i - 1;
+                    while (colon > start && data[colon] != ':') {
+                        colon--;
+                    }
+                    port = parseHex(data, colon + 1, i);
+                } else if (field == 3) {
+                    state = parseHex(data, start, i);
+                }
+                field++;
+            }
+            if (port >= 0 && port <= Ports.MAX_PORT_NUMBER && field == 4) {
+                if (!tcp || (state != TCP_TIME_WAIT && state != TCP_CLOSE)) {
+                    usedPorts.set(port);
+                }
+            }
+            pos = lineEnd;
+        }
+    }
+
+    /**
+     * Checks each port by binding to it using a small thread pool
+     */
+    protected BitSet probeUsedPorts(int fromPort, int toPort) {
+        int count = toPort - fromPort + 1;
+        int threads = Math.min(PROBE_THREADS, (count + PROBE_CHUNK_SIZE - 1) / PROBE_CHUNK_SIZE);
+        if (threads <= 1) {
+            return probe(fromPort, toPort);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory("PortScanner"));
+        try {
+            List<Future<BitSet>> futures = new ArrayList<>();
+            for (int start = fromPort; start <= toPort; start += PROBE_CHUNK_SIZE) {
+                final int from = start;
+                final int to = Math.min(toPort, start + PROBE_CHUNK_SIZE - 1);
+                futures.add(executor.submit(new Callable<BitSet>() {
+                    @Override
+                    public BitSet call() {
+                        return probe(from, to);
+                    }
+                }));
+            }
+            BitSet answer = new BitSet(toPort + 1);
+            for (Future<BitSet> future : futures) {
+                answer.or(future.get());
+            }
+            return answer;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while checking ports " + fromPort + " to " + toPort, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to check ports " + fromPort + " to " + toPort + ". " + e.getCause(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static BitSet probe(int fromPort, int toPort) {
+        BitSet answer = new BitSet(toPort + 1);
+        for (int port = fromPort; port <= toPort; port++) {
+            if (!Ports.isPortFree(port)) {
+                answer.set(port);
+            }
+        }
+        return answer;
+    }
+
+    private static int parseHex(byte[] data, int start, int end) {
+        if (start >= end) {
+            return -1;
+        }
+        int answer = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(data[i], 16);
+            if (digit < 0) {
+                return -1;
+            }
+            answer = (answer << 4) | digit;
+        }
+        return answer;
+    }
+}
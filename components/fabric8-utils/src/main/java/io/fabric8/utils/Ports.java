@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.net.DatagramSocket;
 import java.net.ServerSocket;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -50,17 +51,19 @@ public class Ports {
 
 
     /**
-     * Returns a {@link Set} of used ports within the range.
+     * Returns a {@link Set} of used ports within the range using the {@link PortScanner}.
      * @param fromPort
      * @param toPort
      * @return
      */
     public static Set<Integer> findUsedPorts(int fromPort, int toPort) {
         Set<Integer> usedPorts = new HashSet<Integer>();
-        for (int port = fromPort; port <= toPort; port++) {
-            if (!isPortFree(port)) {
-                usedPorts.add(port);
-            }
+        if (fromPort > toPort) {
+            return usedPorts;
+        }
+        BitSet used = PortScanner.getInstance().getUsedPorts(fromPort, toPort);
+        for (int port = used.nextSetBit(fromPort); port >= 0 && port <= toPort; port = used.nextSetBit(port + 1)) {
+            usedPorts.add(port);
         }
         return usedPorts;
     }
@@ -90,6 +93,9 @@ public class Ports {
 
     /**
      * Finds a the next free local port, based on the list of used ports and the ability to directly check if port is free.
+     * <p/>
+     * When checking if the port is available the ports in use are read from the {@link PortScanner} where it is supported
+     * so that only the chosen port needs to be confirmed by binding to it.
      *
      * @param usedPorts
      * @param fromPort
@@ -98,16 +104,29 @@ public class Ports {
      * @return
      */
     public static int findFreeLocalPort(Set<Integer> usedPorts, int fromPort, int toPort, boolean checkIfAvailable) {
+        BitSet localPorts = checkIfAvailable ? getLocalUsedPorts(fromPort, toPort - 1) : null;
         for (int port = fromPort; port < toPort; port++) {
-            if (checkIfAvailable && !isPortFree(port)) {
+            if (usedPorts.contains(port) || (localPorts != null && localPorts.get(port))) {
                 continue;
-            } else if (!usedPorts.contains(port)) {
+            } else if (!checkIfAvailable || isPortFree(port)) {
                 return port;
             }
         }
         throw new RuntimeException("No port available within range");
     }
 
+    /**
+     * Returns the ports in use from the {@link PortScanner} or null if it is not supported on this platform,
+     * in which case it is quicker to probe the ports one at a time until we find a free one
+     */
+    static BitSet getLocalUsedPorts(int fromPort, int toPort) {
+        PortScanner scanner = PortScanner.getInstance();
+        if (fromPort > toPort || !scanner.isSupported()) {
+            return null;
+        }
+        return scanner.getUsedPorts(fromPort, toPort);
+    }
+
     /**
      * Maps the target port inside a port range.
      *
@@ -0,0 +1,242 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the process table from the <tt>/proc</tt> file system on Linux so that checking or listing processes
+ * does not need to fork <tt>ps</tt> or <tt>jps</tt>.
+ * <p/>
+ * Liveness is checked directly against <tt>/proc/&lt;pid&gt;</tt> while the lists of processes are read into a
+ * snapshot which is shared by all callers until it is older than the maximum age, so that code polling in a loop
+ * only scans the process table a few times a second.
+ */
+public class ProcessTable {
+    public static final long DEFAULT_MAX_AGE_MILLIS = 100;
+
+    private static final ProcessTable INSTANCE = new ProcessTable(new File("/proc"), DEFAULT_MAX_AGE_MILLIS);
+
+    private final File procDir;
+    private final long maxAgeNanos;
+    private final Cached<long[]> processIds = new Cached<long[]>() {
+        @Override
+        protected long[] load() {
+            return readProcessIds();
+        }
+    };
+    private final Cached<Map<Long, String>> javaProcesses = new Cached<Map<Long, String>>() {
+        @Override
+        protected Map<Long, String> load() {
+            return readJavaProcesses();
+        }
+    };
+
+    public ProcessTable(File procDir, long maxAgeMillis) {
+        this.procDir = procDir;
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+    }
+
+    /**
+     * Returns the shared process table of the <tt>/proc</tt> file system
+     */
+    public static ProcessTable getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns true if this table can be used on the current platform
+     */
+    public boolean isSupported() {
+        return new File(procDir, "self/cmdline").canRead();
+    }
+
+    /**
+     * Returns true if the given PID is still alive
+     */
+    public boolean isAlive(long pid) {
+        return pid > 0 && new File(procDir, Long.toString(pid)).isDirectory();
+    }
+
+    /**
+     * Returns the sorted PIDs of the current processes
+     */
+    public List<Long> getProcessIds() {
+        long[] pids = processIds.get();
+        List<Long> answer = new ArrayList<>(pids.length);
+        for (long pid : pids) {
+            answer.add(pid);
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the main class, or jar file if started with <tt>-jar</tt>, of each java process indexed by PID
+     * in the same format as <tt>jps -l</tt>
+     */
+    public Map<Long, String> getJavaProcesses() {
+        return javaProcesses.get();
+    }
+
+    /**
+     * Returns the command line arguments of the given process or an empty list if it is not available
+     */
+    public List<String> getCommandLine(long pid) {
+        byte[] data;
+        try {
+            data = java.nio.file.Files.readAllBytes(new File(procDir, pid + "/cmdline").toPath());
+        } catch (IOException e) {
+            // the process has exited or we are not allowed to see it
+            return Collections.emptyList();
+        }
+        List<String> answer = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == 0) {
+                answer.add(new String(data, start, i - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        if (start < data.length) {
+            answer.add(new String(data, start, data.length - start, StandardCharsets.UTF_8));
+        }
+        return answer;
+    }
+
+    /**
+     * Returns true if the command line is for a java virtual machine
+     */
+    protected static boolean isJavaCommand(List<String> commandLine) {
+        if (commandLine.isEmpty()) {
+            return false;
+        }
+        String executable = commandLine.get(0);
+        String name = executable.substring(executable.lastIndexOf('/') + 1);
+        return name.equals("java") || name.equals("javaw");
+    }
+
+    /**
+     * Returns the main class, jar file or module of a java command line in the same way as <tt>jps -l</tt>
+     */
+    protected static String getMainClass(List<String> commandLine) {
+        for (int i = 1, size = commandLine.size(); i < size; i++) {
+            String arg = commandLine.get(i);
+            switch (arg) {
+                case "-jar":
+                    return i + 1 < size ? commandLine.get(i + 1) : "";
+                case "-m":
+                case "--module":
+                    if (i + 1 < size) {
+                        String module = commandLine.get(i + 1);
+                        return module.substring(module.indexOf('/') + 1);
+                    }
+                    return "";
+                case "-cp":
+                case "-classpath":
+                case "--class-path":
+                case "-p":
+                case "--module-path":
+                case "--add-modules":
+                case "--add-opens":
+                case "--add-exports":
+                case "--add-reads":
+                    i++;
+                    break;
+                default:
+                    if (!arg.startsWith("-")) {
+                        return arg;
+                    }
+            }
+        }
+        return "";
+    }
+
+    protected long[] readProcessIds() {
+        String[] names = procDir.list();
+        if (names == null) {
+            return new long[0];
+        }
+        long[] answer = new long[names.length];
+        int count = 0;
+        for (String name : names) {
+            long pid = parsePid(name);
+            if (pid > 0) {
+                answer[count++] = pid;
+            }
+        }
+        answer = Arrays.copyOf(answer, count);
+        Arrays.sort(answer);
+        return answer;
+    }
+
+    protected Map<Long, String> readJavaProcesses() {
+        Map<Long, String> answer = new LinkedHashMap<>();
+        for (long pid : processIds.get()) {
+            List<String> commandLine = getCommandLine(pid);
+            if (isJavaCommand(commandLine)) {
+                answer.put(pid, getMainClass(commandLine));
+            }
+        }
+        return Collections.unmodifiableMap(answer);
+    }
+
+    private static long parsePid(String name) {
+        long answer = 0;
+        for (int i = 0, length = name.length(); i < length; i++) {
+            char ch = name.charAt(i);
+            if (ch < '0' || ch > '9') {
+                return -1;
+            }
+            answer = answer * 10 + (ch - '0');
+        }
+        return answer;
+    }
+
+    /**
+     * A value which is reloaded by the first caller to find it older than the maximum age while any concurrent
+     * callers wait for and share the new value
+     */
+    private abstract class Cached<T> {
+        private volatile T value;
+        private volatile long loadedAt;
+
+        T get() {
+            T answer = value;
+            if (answer == null || System.nanoTime() - loadedAt > maxAgeNanos) {
+                synchronized (this) {
+                    answer = value;
+                    if (answer == null || System.nanoTime() - loadedAt > maxAgeNanos) {
+                        answer = load();
+                        loadedAt = System.nanoTime();
+                        value = answer;
+                    }
+                }
+            }
+            return answer;
+        }
+
+        protected abstract T load();
+    }
+}
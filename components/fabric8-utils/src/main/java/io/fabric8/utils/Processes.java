@@ -24,22 +24,31 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 
 import static java.lang.String.format;
 
 /**
  * Platform, Java and Docker specific process utilities.
+ * <p/>
+ * On Linux the processes are found using the {@link ProcessTable} of the <tt>/proc</tt> file system; other
+ * platforms run <tt>ps</tt>, <tt>tasklist</tt> or <tt>jps</tt>.
  */
 public class Processes {
     private static final transient Logger LOG = LoggerFactory.getLogger(Processes.class);
 
     private static boolean isWindows = System.getProperty("os.name").toLowerCase().contains("windows");
 
+    private static final ProcessTable processTable = !isWindows && ProcessTable.getInstance().isSupported() ? ProcessTable.getInstance() : null;
+
     /**
      * Returns true if the given PID is still alive
      */
     public static boolean isProcessAlive(long pid) {
+        if (processTable != null) {
+            return processTable.isAlive(pid);
+        }
         List<Long> processIds = getProcessIds();
         if (processIds.isEmpty()) {
             // we must be on a platform that the PID list doesn't work like windows
@@ -52,7 +61,9 @@ public class Processes {
      * Returns the list of current active PIDs
      */
     public static List<Long> getProcessIds() {
-        if (isWindows) {
+        if (processTable != null) {
+            return processTable.getProcessIds();
+        } else if (isWindows) {
             return getProcessIdsWindows();
         } else {
             return getProcessIdsUnix();
@@ -77,7 +88,7 @@ public class Processes {
         return answer;
     }
 
-    private static List<Long> getProcessIdsUnix() {
+    protected static List<Long> getProcessIdsUnix() {
         String commands = "ps -e";
         String message = commands;
         LOG.debug("Executing commands: " + message);
@@ -98,6 +109,21 @@ public class Processes {
      * that has a main class which contains any of the given bits of text
      */
     public static List<Long> getJavaProcessIds(String... classNameFilter) {
+        if (processTable == null) {
+            return getJavaProcessIdsUsingJps(classNameFilter);
+        }
+        List<Long> answer = new ArrayList<Long>();
+        Filter<String> filter = Filters.containsAnyString(classNameFilter);
+        for (Map.Entry<Long, String> entry : processTable.getJavaProcesses().entrySet()) {
+            // lets match against the same line as jps -l outputs
+            if (filter.matches(entry.getKey() + " " + entry.getValue())) {
+                answer.add(entry.getKey());
+            }
+        }
+        return answer;
+    }
+
+    protected static List<Long> getJavaProcessIdsUsingJps(String... classNameFilter) {
         String commands = "jps -l";
         String message = commands;
         LOG.debug("Executing commands: " + message);
@@ -15,81 +15,87 @@
  */
 package io.fabric8.utils;
 
-import java.util.Collections;
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.*;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * An ExecutorService which ensures serial execution of the Runnable
  * objects which it is asked to execute.  By default it delegates
  * execution of those tasks to a thread pool, but can be configured
  * to use any Executor.
+ * <p/>
+ * Tasks are added to a lock free multi producer, single consumer queue; a single atomic state of
+ * <i>idle</i>, <i>scheduled</i> or <i>running</i> ensures that at most one drain is pending or running at a time.
+ * Each drain runs at most {@link #getMaxTasksPerDrain()} tasks before it gives its thread back to the target executor so that busy executors sharing a pool take turns.
+ * Tasks executed from within a running task are run before those queued by other threads.
  */
 public class SerialExecutorService extends AbstractExecutorService {
 
     static long THREAD_POOL_KEEP_ALIVE = Integer.getInteger("io.fabric8.utils.THREAD_POOL_KEEP_ALIVE", 5000);
+    static int THREAD_POOL_MAX_THREADS = Integer.getInteger("io.fabric8.utils.THREAD_POOL_MAX_THREADS",
+            Math.max(8, 2 * Runtime.getRuntime().availableProcessors()));
+    static int THREAD_POOL_QUEUE_SIZE = Integer.getInteger("io.fabric8.utils.THREAD_POOL_QUEUE_SIZE", 10000);
+    static int MAX_TASKS_PER_DRAIN = Integer.getInteger("io.fabric8.utils.MAX_TASKS_PER_DRAIN", 1024);
+    /**
+     * Latency is measured for one in this many tasks as reading the clock twice per task would cost
+     * more than running a small task
+     */
+    static int LATENCY_SAMPLE_RATE = Math.max(1, Integer.getInteger("io.fabric8.utils.LATENCY_SAMPLE_RATE", 16));
     static final ThreadGroup group = new ThreadGroup("Fabric Tasks");
 
-    static final Executor threadPool = new Executor() {
-        SynchronousQueue<Runnable> queue = new SynchronousQueue<Runnable>();
-
-        @Override
-        public void execute(final Runnable task) {
-
-            if (task == null) {
-                throw new NullPointerException();
-            }
-
-            // Lets try to give the task to a running thread..
-            if (!queue.offer(task)) {
-
-                // Existing thread did not take the task, so spin
-                // up a thread to execute the task..
-                new Thread(group, "Fabric Task") {
-                    @Override
-                    public void run() {
-                        while (true) {
-                            Runnable task;
-                            try {
-                                task = queue.poll(THREAD_POOL_KEEP_ALIVE, TimeUnit.MILLISECONDS);
-                            } catch (InterruptedException e) {
-                                return;
-                            }
-                            if (task == null) {
-                                return;
-                            }
-                            task.run();
-                        }
-                    }
-                }.start();
-
-                // Now wait till a thread picks it up..
-                try {
-                    queue.put(task);
-                } catch (InterruptedException e) {
-                    throw new RejectedExecutionException(e);
-                }
-            }
-        }
-    };
+    /**
+     * The shared pool has a bounded number of threads and a bounded queue; as each SerialExecutorService
+     * has at most one drain queued at a time the queue only fills if there are that many busy executors,
+     * in which case the drain is run by the thread which triggered it.
+     */
+    static final ThreadPoolExecutor threadPool = createThreadPool();
 
     protected Executor target;
     protected volatile String label;
     protected AtomicBoolean shutdown = new AtomicBoolean(false);
     protected AtomicBoolean terminated = new AtomicBoolean(false);
     protected CountDownLatch terminatedLatch = new CountDownLatch(1);
-    protected final AtomicBoolean triggered = new AtomicBoolean();
-    protected final ConcurrentLinkedQueue<Runnable> externalQueue = new ConcurrentLinkedQueue<Runnable>();
-    protected final LinkedList<Runnable> localQueue = new LinkedList<Runnable>();
-    protected final ThreadLocal<Boolean> draining = new ThreadLocal<Boolean>();
+    private final TaskQueue externalQueue = new TaskQueue();
+    protected volatile int maxTasksPerDrain = MAX_TASKS_PER_DRAIN;
     protected final Runnable drainTask = new Runnable() {
         public void run() {
-            drain();
+            drainBatch();
         }
     };
 
+    private static final int IDLE = 0;
+    private static final int SCHEDULED = 1;
+    private static final int RUNNING = 2;
+
+    private final AtomicInteger state = new AtomicInteger(IDLE);
+    // only accessed by the thread running the drain
+    private final ArrayDeque<Node> localQueue = new ArrayDeque<Node>();
+    private volatile Thread drainingThread;
+    // the thread submitting the drain to the target and whether the target ran it on that thread
+    private volatile Thread handingOverThread;
+    private boolean callerRanDrain;
+    private volatile boolean aborted;
+
+    // statistics are only written by the thread running the drain
+    private volatile long executedCount;
+    private volatile long drainCount;
+    private volatile long latencySamples;
+    private volatile long totalLatencyNanos;
+    private volatile long maxLatencyNanos;
+    private volatile int maxQueueSize;
 
     public SerialExecutorService() {
         this("<no-label>");
@@ -120,9 +126,9 @@ public class SerialExecutorService extends AbstractExecutorService {
             throw new RejectedExecutionException("shutdown");
 
         if (isDraining()) {
-            localQueue.add(runnable);
+            localQueue.add(new Node(runnable, false));
         } else {
-            externalQueue.add(runnable);
+            externalQueue.offer(new Node(runnable, sampleLatency()));
             triggerDrain();
         }
     }
@@ -141,72 +147,288 @@ public class SerialExecutorService extends AbstractExecutorService {
         if (isDraining()) {
             runnable.run();
         } else {
-            externalQueue.add(runnable);
+            externalQueue.offer(new Node(runnable, sampleLatency()));
             drain();
         }
     }
 
+    /**
+     * Submits a drain to the target executor unless one is already scheduled or running.
+     * <p/>
+     * If the target rejects the drain the exception is thrown; the queued tasks are run by the next drain.
+     */
     protected void triggerDrain() {
-        if (triggered.compareAndSet(false, true)) {
-            target.execute(drainTask);
+        // only attempt the CAS when idle so that producers do not contend on the state while a drain runs
+        if (state.get() == IDLE && state.compareAndSet(IDLE, SCHEDULED)) {
+            try {
+                target.execute(drainTask);
+            } catch (RuntimeException e) {
+                state.compareAndSet(SCHEDULED, IDLE);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Takes over the drain if it is idle or scheduled but not yet running; a scheduled drain which
+     * is taken over does nothing when it is eventually run
+     */
+    private boolean tryAcquire() {
+        if (state.compareAndSet(IDLE, RUNNING) || state.compareAndSet(SCHEDULED, RUNNING)) {
+            drainingThread = Thread.currentThread();
+            return true;
         }
+        return false;
     }
 
     /**
      * This method blocks until all previously queued Runnable objects are run.
+     * <p/>
+     * If no drain is in progress the tasks are run by the calling thread, otherwise the calling thread
+     * waits for the running drain to reach the tasks queued before this call.
      */
-    synchronized public void drain() {
-        draining.set(Boolean.TRUE);
+    public void drain() {
+        if (aborted) {
+            return;
+        }
+        if (isDraining()) {
+            runTasks(Integer.MAX_VALUE);
+        } else if (tryAcquire()) {
+            try {
+                runTasks(Integer.MAX_VALUE);
+            } finally {
+                release();
+            }
+        } else {
+            DrainLatch latch = new DrainLatch();
+            externalQueue.offer(new Node(latch, false));
+            triggerDrain();
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Runs up to {@link #getMaxTasksPerDrain()} tasks on the current pool thread; if there are more tasks
+     * and other work is waiting for the target the drain is submitted to the target again rather than
+     * holding on to the thread.
+     * <p/>
+     * If the target rejects the drain or runs it on the submitting thread, as a full pool with a
+     * {@link ThreadPoolExecutor.CallerRunsPolicy} does, this drain carries on in a loop rather than nesting another drain.
+     */
+    protected void drainBatch() {
+        Thread thread = Thread.currentThread();
+        if (thread == handingOverThread) {
+            // the target is running the drain on the thread handing it over so let that drain carry on
+            callerRanDrain = true;
+            return;
+        }
+        if (!state.compareAndSet(SCHEDULED, RUNNING)) {
+            // another thread took over the drain
+            return;
+        }
+        drainingThread = thread;
+        boolean handedOver = false;
+        try {
+            while (true) {
+                boolean empty = runTasks(maxTasksPerDrain);
+                while (!empty && !aborted && !isTargetBusy()) {
+                    empty = runTasks(maxTasksPerDrain);
+                }
+                if (empty || aborted) {
+                    return;
+                }
+                drainingThread = null;
+                state.set(SCHEDULED);
+                handingOverThread = thread;
+                callerRanDrain = false;
+                try {
+                    target.execute(drainTask);
+                    handedOver = !callerRanDrain;
+                } catch (RuntimeException e) {
+                    // the target is full so carry on draining on this thread
+                } finally {
+                    handingOverThread = null;
+                }
+                if (!handedOver && !tryAcquire()) {
+                    // another thread took over the drain
+                    handedOver = true;
+                }
+                if (handedOver) {
+                    return;
+                }
+            }
+        } finally {
+            if (!handedOver) {
+                release();
+            }
+        }
+    }
+
+    /**
+     * Returns true if other work may be waiting for a thread of the target executor; only a
+     * {@link ThreadPoolExecutor} can tell us that it is not
+     */
+    protected boolean isTargetBusy() {
+        Executor executor = target;
+        return !(executor instanceof ThreadPoolExecutor) || !((ThreadPoolExecutor) executor).getQueue().isEmpty();
+    }
+
+    /**
+     * Runs queued tasks until there are none left or the maximum number have been run
+     *
+     * @return true if the queues are empty
+     */
+    private boolean runTasks(int maxTasks) {
+        int queueSize = externalQueue.size();
+        if (queueSize > maxQueueSize) {
+            maxQueueSize = queueSize;
+        }
+        int count = 0;
+        int executed = 0;
+        int samples = 0;
+        long totalLatency = 0;
+        long maxLatency = maxLatencyNanos;
         try {
-            boolean drained = false;
-            while (!drained) {
-                Runnable runnable = localQueue.poll();
-                if (runnable == null) {
-                    runnable = externalQueue.poll();
+            while (!aborted) {
+                if (count >= maxTasks) {
+                    return false;
+                }
+                Node node = localQueue.poll();
+                if (node == null) {
+                    node = externalQueue.poll();
+                    if (node == null) {
+                        return true;
+                    }
+                }
+                Runnable task = node.task;
+                node.task = null;
+                count++;
+                if (task instanceof Marker) {
+                    // markers may signal waiting threads so the statistics must be up to date first
+                    publish(executed, samples, totalLatency, maxLatency);
+                    executed = 0;
+                    samples = 0;
+                    totalLatency = 0;
+                    task.run();
+                    continue;
                 }
-                if (runnable == null) {
-                    drained = true;
-                } else {
-                    try {
-                        runnable.run();
-                    } catch (Throwable e) {
-                        Thread thread = Thread.currentThread();
-                        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                if (node.sampled) {
+                    long latency = System.nanoTime() - node.enqueuedNanos;
+                    totalLatency += latency;
+                    if (latency > maxLatency) {
+                        maxLatency = latency;
                     }
+                    samples++;
+                }
+                executed++;
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
                 }
             }
+            return true;
         } finally {
-            draining.remove();
-            triggered.set(false);
-            if (!externalQueue.isEmpty()) {
+            drainCount++;
+            publish(executed, samples, totalLatency, maxLatency);
+        }
+    }
+
+    /**
+     * Adds the statistics of the running drain; they are published once per batch rather than once per task
+     */
+    private void publish(int executed, int samples, long totalLatency, long maxLatency) {
+        executedCount += executed;
+        latencySamples += samples;
+        totalLatencyNanos += totalLatency;
+        if (maxLatency > maxLatencyNanos) {
+            maxLatencyNanos = maxLatency;
+        }
+    }
+
+    private static boolean sampleLatency() {
+        return LATENCY_SAMPLE_RATE == 1 || ThreadLocalRandom.current().nextInt(LATENCY_SAMPLE_RATE) == 0;
+    }
+
+    /**
+     * Marks the drain idle then starts another drain if a task was queued before it was marked idle
+     */
+    private void release() {
+        drainingThread = null;
+        state.set(IDLE);
+        if (!aborted && externalQueue.size() > 0) {
+            try {
                 triggerDrain();
+            } catch (RejectedExecutionException e) {
+                // the tasks stay queued until the next drain
             }
         }
     }
 
-
     @Override
     public void shutdown() {
         if (shutdown.compareAndSet(false, true)) {
-            externalQueue.add(new Runnable() {
+            externalQueue.offer(new Node(new Marker() {
                 @Override
                 public void run() {
-                    terminated.set(true);
-                    terminatedLatch.countDown();
+                    terminate();
                 }
-            });
+            }, false));
             triggerDrain();
         }
     }
 
+    /**
+     * Stops running tasks once the current task has completed and returns the tasks which were not run.
+     * <p/>
+     * This method waits for any task which is currently running to complete.
+     */
     @Override
     public List<Runnable> shutdownNow() {
-        shutdown();
-        return Collections.EMPTY_LIST;
+        shutdown.set(true);
+        aborted = true;
+        boolean owner = isDraining();
+        if (!owner) {
+            // wait for any running drain to notice we have aborted
+            while (!tryAcquire()) {
+                LockSupport.parkNanos(100000);
+            }
+        }
+        List<Runnable> answer = new ArrayList<Runnable>();
+        try {
+            Node node;
+            while ((node = localQueue.poll()) != null || (node = externalQueue.poll()) != null) {
+                Runnable task = node.task;
+                node.task = null;
+                if (task instanceof DrainLatch) {
+                    // release any threads waiting in drain()
+                    task.run();
+                } else if (task != null && !(task instanceof Marker)) {
+                    answer.add(task);
+                }
+            }
+        } finally {
+            if (!owner) {
+                drainingThread = null;
+                state.set(IDLE);
+            }
+            terminate();
+        }
+        return answer;
+    }
+
+    private void terminate() {
+        terminated.set(true);
+        terminatedLatch.countDown();
     }
 
     public boolean isDraining() {
-        return draining.get() == Boolean.TRUE;
+        return drainingThread == Thread.currentThread();
     }
 
 
@@ -245,4 +467,149 @@ public class SerialExecutorService extends AbstractExecutorService {
     public void setLabel(String label) {
         this.label = label;
     }
+
+    public int getMaxTasksPerDrain() {
+        return maxTasksPerDrain;
+    }
+
+    /**
+     * Sets the maximum number of tasks a drain runs before giving its thread back to the target executor
+     */
+    public void setMaxTasksPerDrain(int maxTasksPerDrain) {
+        if (maxTasksPerDrain < 1) {
+            throw new IllegalArgumentException("maxTasksPerDrain must be at least 1 but was " + maxTasksPerDrain);
+        }
+        this.maxTasksPerDrain = maxTasksPerDrain;
+    }
+
+    // Statistics
+    //-------------------------------------------------------------------------
+
+    /**
+     * Returns the number of tasks queued by other threads which have not yet been run
+     */
+    public int getQueueSize() {
+        return externalQueue.size();
+    }
+
+    /**
+     * Returns the largest number of tasks which were queued when a drain started
+     */
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    public long getExecutedCount() {
+        return executedCount;
+    }
+
+    /**
+     * Returns the number of times the queue has been drained; comparing it to {@link #getExecutedCount()} shows
+     * how well tasks are being batched
+     */
+    public long getDrainCount() {
+        return drainCount;
+    }
+
+    /**
+     * Returns the average time in nanoseconds between a task being queued and it starting to run
+     * for the sampled tasks
+     */
+    public long getAverageLatencyNanos() {
+        long count = latencySamples;
+        return count > 0 ? totalLatencyNanos / count : 0;
+    }
+
+    /**
+     * Returns the longest time in nanoseconds between a task being queued and it starting to run
+     * for the sampled tasks
+     */
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    private static ThreadPoolExecutor createThreadPool() {
+        ThreadPoolExecutor answer = new ThreadPoolExecutor(THREAD_POOL_MAX_THREADS, THREAD_POOL_MAX_THREADS,
+                THREAD_POOL_KEEP_ALIVE, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(THREAD_POOL_QUEUE_SIZE),
+                new java.util.concurrent.ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        return new Thread(group, r, "Fabric Task");
+                    }
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        answer.allowCoreThreadTimeOut(true);
+        return answer;
+    }
+
+    /**
+     * A queued task and, if its latency is sampled, the time it was queued
+     */
+    static final class Node {
+        Runnable task;
+        final boolean sampled;
+        final long enqueuedNanos;
+        volatile Node next;
+
+        Node(Runnable task, boolean sampled) {
+            this.task = task;
+            this.sampled = sampled;
+            this.enqueuedNanos = sampled ? System.nanoTime() : 0;
+        }
+    }
+
+    /**
+     * An unbounded, lock free, multi producer single consumer linked queue; any thread may call {@link #offer(Node)}
+     * but only the thread running the drain may call {@link #poll()}
+     */
+    static final class TaskQueue {
+        private final AtomicReference<Node> tail;
+        private final AtomicInteger size = new AtomicInteger();
+        private Node head;
+
+        TaskQueue() {
+            Node stub = new Node(null, false);
+            head = stub;
+            tail = new AtomicReference<Node>(stub);
+        }
+
+        void offer(Node node) {
+            // increment first so that a consumer which sees a size of zero can rely on the producer scheduling a drain
+            size.incrementAndGet();
+            Node previous = tail.getAndSet(node);
+            previous.next = node;
+        }
+
+        Node poll() {
+            Node next = head.next;
+            if (next == null) {
+                return null;
+            }
+            head = next;
+            size.decrementAndGet();
+            return next;
+        }
+
+        int size() {
+            return size.get();
+        }
+    }
+
+    /**
+     * Internal tasks which are not counted in the statistics nor returned from {@link #shutdownNow()}
+     */
+    abstract static class Marker implements Runnable {
+    }
+
+    static final class DrainLatch extends Marker {
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        @Override
+        public void run() {
+            latch.countDown();
+        }
+
+        void await() throws InterruptedException {
+            latch.await();
+        }
+    }
 }
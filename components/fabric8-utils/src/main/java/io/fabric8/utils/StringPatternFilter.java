@@ -0,0 +1,84 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A filter which matches a string if any of a list of patterns match using the same syntax as
+ * {@link Filters#createStringFilter(String)}; <tt>!</tt> for not, a trailing <tt>*</tt> for a prefix and
+ * a leading <tt>*</tt> or an empty pattern to match everything.
+ * <p/>
+ * Rather than testing each pattern in turn the exact patterns are kept in a hash set and the prefixes in a trie
+ * so a match costs the length of the string rather than the number of patterns. The rarely used negated patterns
+ * are still tested one at a time.
+ */
+public class StringPatternFilter implements Filter<String> {
+    private final List<String> patterns;
+    private final boolean matchAll;
+    private final Set<String> exactValues = new HashSet<>();
+    private final CharTrie prefixes;
+    private final List<Filter<String>> negatedFilters = new ArrayList<>();
+
+    public StringPatternFilter(Iterable<String> patterns) {
+        this.patterns = new ArrayList<>();
+        List<String> prefixList = new ArrayList<>();
+        boolean all = false;
+        for (String pattern : patterns) {
+            this.patterns.add(pattern);
+            if (pattern.startsWith("!")) {
+                negatedFilters.add(Filters.createStringFilter(pattern));
+            } else if (pattern.length() == 0 || pattern.startsWith("*")) {
+                all = true;
+            } else if (pattern.endsWith("*")) {
+                prefixList.add(pattern.substring(0, pattern.length() - 1));
+            } else {
+                exactValues.add(pattern);
+            }
+        }
+        this.matchAll = all;
+        this.prefixes = prefixList.isEmpty() ? null : new CharTrie(prefixList, false);
+    }
+
+    @Override
+    public boolean matches(String s) {
+        if (matchAll) {
+            return true;
+        }
+        if (s != null) {
+            if (exactValues.contains(s)) {
+                return true;
+            }
+            if (prefixes != null && prefixes.startsWithAny(s)) {
+                return true;
+            }
+        }
+        for (Filter<String> filter : negatedFilters) {
+            if (filter.matches(s)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "StringPatternFilter" + patterns;
+    }
+}
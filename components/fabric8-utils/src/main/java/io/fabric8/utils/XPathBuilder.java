@@ -15,24 +15,60 @@
  */
 package io.fabric8.utils;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.namespace.NamespaceContext;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
+import javax.xml.xpath.XPathFunctionResolver;
+import javax.xml.xpath.XPathVariableResolver;
 
 /**
- * A helper class for creating XPath expressions
+ * A helper class for creating XPath expressions.
+ * <p/>
+ * The most recently used compiled expressions are cached so that evaluating the same expression against many
+ * documents only compiles it once. Compiled expressions capture the namespace context and resolvers of the
+ * {@link XPath} so the cache is cleared if they are changed. Like the {@link XPath} it uses, a builder is not thread safe.
  */
 public class XPathBuilder {
+    public static final int MAX_CACHED_EXPRESSIONS = 256;
+
     private XPathFactory xpathFactory;
     private XPath xpath;
+    private final Map<String, XPathFacade> cache = new LinkedHashMap<String, XPathFacade>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, XPathFacade> eldest) {
+            return size() > MAX_CACHED_EXPRESSIONS;
+        }
+    };
+    // the context of the XPath the cached expressions were compiled with
+    private NamespaceContext namespaceContext;
+    private XPathFunctionResolver functionResolver;
+    private XPathVariableResolver variableResolver;
 
     /**
-     * Creates an XPath expression facade
+     * Creates an XPath expression facade, reusing the compiled expression if it has been created before
      */
     public XPathFacade xpath(String xpath) throws XPathExpressionException {
-        XPathExpression expression = getXPath().compile(xpath);
-        return new XPathFacade(this, xpath, expression);
+        XPath compiler = getXPath();
+        // the context can be changed via getXPath() so check it is the one the cached expressions were compiled with
+        if (compiler.getNamespaceContext() != namespaceContext || compiler.getXPathFunctionResolver() != functionResolver
+                || compiler.getXPathVariableResolver() != variableResolver) {
+            cache.clear();
+            namespaceContext = compiler.getNamespaceContext();
+            functionResolver = compiler.getXPathFunctionResolver();
+            variableResolver = compiler.getXPathVariableResolver();
+        }
+        XPathFacade answer = cache.get(xpath);
+        if (answer == null) {
+            XPathExpression expression = compiler.compile(xpath);
+            answer = new XPathFacade(this, xpath, expression);
+            cache.put(xpath, answer);
+        }
+        return answer;
     }
 
     public XPath getXPath() {
@@ -44,6 +80,7 @@ public class XPathBuilder {
 
     public void setXPath(XPath xpath) {
         this.xpath = xpath;
+        cache.clear();
     }
 
     public XPathFactory getXPathFactory() {
@@ -27,6 +27,10 @@ import java.util.StringTokenizer;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -37,9 +41,16 @@ import org.xml.sax.SAXException;
 
 /**
  * XML related utilities.
+ * <p/>
+ * The document builders are created once per thread from a shared, preconfigured factory and reset before each parse,
+ * as looking up and configuring a factory costs more than parsing a typical <tt>pom.xml</tt>.
  */
 public class XmlUtils {
 
+    private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDERS = new ThreadLocal<DocumentBuilder>();
+    private static final XMLInputFactory INPUT_FACTORY = createXMLInputFactory();
+    private static DocumentBuilderFactory documentBuilderFactory;
+
     private XmlUtils() {
         // utility class
     }
@@ -65,18 +76,137 @@ public class XmlUtils {
             IOException {
         try {
             BufferedInputStream in = new BufferedInputStream(is);
+            DocumentBuilder builder = getDocumentBuilder();
+            InputSource source = new InputSource(in);
+            return builder.parse(source);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Returns the document builder of the current thread which has been reset ready to parse a new document
+     */
+    protected static DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilder builder = DOCUMENT_BUILDERS.get();
+        if (builder == null) {
+            builder = newDocumentBuilder();
+            DOCUMENT_BUILDERS.set(builder);
+        } else {
+            builder.reset();
+        }
+        return builder;
+    }
+
+    private static synchronized DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+        if (documentBuilderFactory == null) {
             DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
             factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
             factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
             factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            InputSource source = new InputSource(in);
-            return builder.parse(source);
+            documentBuilderFactory = factory;
+        }
+        return documentBuilderFactory.newDocumentBuilder();
+    }
+
+    private static XMLInputFactory createXMLInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * Returns the text content of the first element at the given path of child element names, such as
+     * <tt>parent/version</tt>, relative to the document element of the XML file without building a DOM,
+     * or null if there is no such element.
+     * <p/>
+     * The element names are matched on their local name ignoring any namespaces and the file is only read
+     * until the element is found, so this is much quicker than {@link #parseDoc(File)} for extracting a few values
+     * such as the version of a <tt>pom.xml</tt>.
+     */
+    public static String streamingValueAt(File xmlFile, String path) throws IOException, XMLStreamException {
+        return streamingValueAt(new FileInputStream(xmlFile), path);
+    }
+
+    /**
+     * Returns the text content of the first element at the given path relative to the document element of the XML
+     * stream, closing the stream afterwards
+     *
+     * @see #streamingValueAt(File, String)
+     */
+    public static String streamingValueAt(InputStream is, String path) throws IOException, XMLStreamException {
+        NullArgumentException.validateNotNull(path, "Element path");
+        List<String> names = new ArrayList<String>();
+        StringTokenizer st = new StringTokenizer(path, "/", false);
+        while (st.hasMoreTokens()) {
+            names.add(st.nextToken());
+        }
+        try {
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(new BufferedInputStream(is));
+            try {
+                return streamingValueAt(reader, names);
+            } finally {
+                reader.close();
+            }
         } finally {
             is.close();
         }
     }
 
+    private static String streamingValueAt(XMLStreamReader reader, List<String> names) throws XMLStreamException {
+        // the depth of the current element where the document element is 0 and the number of names matched by
+        // the open elements
+        int depth = -1;
+        int matched = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                if (depth > 0 && depth == matched + 1 && reader.getLocalName().equals(names.get(matched))) {
+                    matched++;
+                }
+                if (depth == matched && matched == names.size()) {
+                    return readTextContent(reader);
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == matched && depth > 0) {
+                    matched--;
+                }
+                depth--;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the text of the current element and its children ignoring comments as {@link #getTextContent(Node)} does
+     */
+    private static String readTextContent(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder buffer = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    buffer.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                default:
+                    break;
+            }
+        }
+        return buffer.toString();
+    }
+
     public static Element getElement(final Document doc, final String path) {
         NullArgumentException.validateNotNull(doc, "XML document");
         return getElement(doc.getDocumentElement(), path);
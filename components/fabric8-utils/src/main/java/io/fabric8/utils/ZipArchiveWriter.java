@@ -0,0 +1,277 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a zip archive from entries whose data has already been compressed, which {@link java.util.zip.ZipOutputStream}
+ * cannot do, so that entries can be compressed in parallel and then written in order.
+ * <p/>
+ * The sizes and CRC of each entry must be known before it is written; Zip64 extensions are used when the sizes,
+ * offsets or number of entries need them.
+ */
+final class ZipArchiveWriter implements Closeable {
+    private static final long LOCAL_HEADER_SIGNATURE = 0x04034b50L;
+    private static final long CENTRAL_HEADER_SIGNATURE = 0x02014b50L;
+    private static final long END_SIGNATURE = 0x06054b50L;
+    private static final long ZIP64_END_SIGNATURE = 0x06064b50L;
+    private static final long ZIP64_LOCATOR_SIGNATURE = 0x07064b50L;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int UTF8_FLAG = 0x0800;
+    private static final int VERSION = 20;
+    private static final int ZIP64_VERSION = 45;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final int DIRECTORY_ATTRIBUTE = 0x10;
+
+    private final OutputStream out;
+    private final byte[] header = new byte[128];
+    private final List<Entry> entries = new ArrayList<>();
+    private long offset;
+    private Entry current;
+    private long currentWritten;
+    private boolean finished;
+
+    ZipArchiveWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the local header of an entry whose data of exactly <tt>compressedSize</tt> bytes must then be written
+     * using {@link #write(byte[], int, int)} before calling {@link #closeEntry()}
+     *
+     * @param method either {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}
+     */
+    void putEntry(String name, int method, long time, long crc, long compressedSize, long size) throws IOException {
+        if (current != null) {
+            closeEntry();
+        }
+        if (method == ZipEntry.STORED && compressedSize != size) {
+            throw new ZipException("Stored entry " + name + " has a compressed size of " + compressedSize + " but size of " + size);
+        }
+        Entry entry = new Entry(name.getBytes(StandardCharsets.UTF_8), method, dosTime(time), crc, compressedSize, size, offset,
+                name.endsWith("/"));
+        boolean zip64 = compressedSize >= ZIP64_MAGIC || size >= ZIP64_MAGIC;
+        int pos = 0;
+        pos = putInt(pos, LOCAL_HEADER_SIGNATURE);
+        pos = putShort(pos, zip64 ? ZIP64_VERSION : VERSION);
+        pos = putShort(pos, UTF8_FLAG);
+        pos = putShort(pos, method);
+        pos = putInt(pos, entry.dosTime);
+        pos = putInt(pos, crc);
+        pos = putInt(pos, zip64 ? ZIP64_MAGIC : compressedSize);
+        pos = putInt(pos, zip64 ? ZIP64_MAGIC : size);
+        pos = putShort(pos, entry.name.length);
+        pos = putShort(pos, zip64 ? 20 : 0);
+        writeHeader(pos);
+        writeBytes(entry.name, 0, entry.name.length);
+        if (zip64) {
+            pos = 0;
+            pos = putShort(pos, ZIP64_EXTRA_ID);
+            pos = putShort(pos, 16);
+            pos = putLong(pos, size);
+            pos = putLong(pos, compressedSize);
+            writeHeader(pos);
+        }
+        entries.add(entry);
+        current = entry;
+        currentWritten = 0;
+    }
+
+    void write(byte[] data, int off, int len) throws IOException {
+        if (current == null) {
+            throw new ZipException("No current entry");
+        }
+        currentWritten += len;
+        writeBytes(data, off, len);
+    }
+
+    void closeEntry() throws IOException {
+        Entry entry = current;
+        current = null;
+        if (entry != null && currentWritten != entry.compressedSize) {
+            throw new ZipException("Entry " + new String(entry.name, StandardCharsets.UTF_8) + " should have " + entry.compressedSize
+                    + " bytes but " + currentWritten + " were written");
+        }
+    }
+
+    /**
+     * Writes the central directory without closing the stream
+     */
+    void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        closeEntry();
+        finished = true;
+        long centralOffset = offset;
+        for (Entry entry : entries) {
+            boolean sizes64 = entry.compressedSize >= ZIP64_MAGIC || entry.size >= ZIP64_MAGIC;
+            boolean offset64 = entry.offset >= ZIP64_MAGIC;
+            int extraLength = (sizes64 ? 16 : 0) + (offset64 ? 8 : 0);
+            int pos = 0;
+            pos = putInt(pos, CENTRAL_HEADER_SIGNATURE);
+            pos = putShort(pos, extraLength > 0 ? ZIP64_VERSION : VERSION);
+            pos = putShort(pos, extraLength > 0 ? ZIP64_VERSION : VERSION);
+            pos = putShort(pos, UTF8_FLAG);
+            pos = putShort(pos, entry.method);
+            pos = putInt(pos, entry.dosTime);
+            pos = putInt(pos, entry.crc);
+            pos = putInt(pos, sizes64 ? ZIP64_MAGIC : entry.compressedSize);
+            pos = putInt(pos, sizes64 ? ZIP64_MAGIC : entry.size);
+            pos = putShort(pos, entry.name.length);
+            pos = putShort(pos, extraLength > 0 ? extraLength + 4 : 0);
+            // comment length, disk number and internal attributes
+            pos = putShort(pos, 0);
+            pos = putShort(pos, 0);
+            pos = putShort(pos, 0);
+            pos = putInt(pos, entry.directory ? DIRECTORY_ATTRIBUTE : 0);
+            pos = putInt(pos, offset64 ? ZIP64_MAGIC : entry.offset);
+            writeHeader(pos);
+            writeBytes(entry.name, 0, entry.name.length);
+            if (extraLength > 0) {
+                pos = 0;
+                pos = putShort(pos, ZIP64_EXTRA_ID);
+                pos = putShort(pos, extraLength);
+                if (sizes64) {
+                    pos = putLong(pos, entry.size);
+                    pos = putLong(pos, entry.compressedSize);
+                }
+                if (offset64) {
+                    pos = putLong(pos, entry.offset);
+                }
+                writeHeader(pos);
+            }
+        }
+        long centralSize = offset - centralOffset;
+        int count = entries.size();
+        boolean zip64 = count >= ZIP64_MAGIC_COUNT || centralOffset >= ZIP64_MAGIC || centralSize >= ZIP64_MAGIC;
+        if (zip64) {
+            long zip64EndOffset = offset;
+            int pos = 0;
+            pos = putInt(pos, ZIP64_END_SIGNATURE);
+            pos = putLong(pos, 44);
+            pos = putShort(pos, ZIP64_VERSION);
+            pos = putShort(pos, ZIP64_VERSION);
+            pos = putInt(pos, 0);
+            pos = putInt(pos, 0);
+            pos = putLong(pos, count);
+            pos = putLong(pos, count);
+            pos = putLong(pos, centralSize);
+            pos = putLong(pos, centralOffset);
+            pos = putInt(pos, ZIP64_LOCATOR_SIGNATURE);
+            pos = putInt(pos, 0);
+            pos = putLong(pos, zip64EndOffset);
+            pos = putInt(pos, 1);
+            writeHeader(pos);
+        }
+        int pos = 0;
+        pos = putInt(pos, END_SIGNATURE);
+        pos = putShort(pos, 0);
+        pos = putShort(pos, 0);
+        pos = putShort(pos, Math.min(count, ZIP64_MAGIC_COUNT));
+        pos = putShort(pos, Math.min(count, ZIP64_MAGIC_COUNT));
+        pos = putInt(pos, Math.min(centralSize, ZIP64_MAGIC));
+        pos = putInt(pos, Math.min(centralOffset, ZIP64_MAGIC));
+        pos = putShort(pos, 0);
+        writeHeader(pos);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Converts the time to the MS-DOS date and time in the default time zone as {@link ZipEntry#setTime(long)} does
+     */
+    static long dosTime(long time) {
+        LocalDateTime date = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        int year = date.getYear();
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((long) (year - 1980) << 25) | (date.getMonthValue() << 21) | (date.getDayOfMonth() << 16)
+                | (date.getHour() << 11) | (date.getMinute() << 5) | (date.getSecond() >> 1);
+    }
+
+    private void writeHeader(int length) throws IOException {
+        writeBytes(header, 0, length);
+    }
+
+    private void writeBytes(byte[] data, int off, int len) throws IOException {
+        out.write(data, off, len);
+        offset += len;
+    }
+
+    private int putShort(int pos, int value) {
+        header[pos] = (byte) value;
+        header[pos + 1] = (byte) (value >> 8);
+        return pos + 2;
+    }
+
+    private int putInt(int pos, long value) {
+        header[pos] = (byte) value;
+        header[pos + 1] = (byte) (value >> 8);
+        header[pos + 2] = (byte) (value >> 16);
+        header[pos + 3] = (byte) (value >> 24);
+        return pos + 4;
+    }
+
+    private int putLong(int pos, long value) {
+        putInt(pos, value);
+        putInt(pos + 4, value >> 32);
+        return pos + 8;
+    }
+
+    private static final class Entry {
+        final byte[] name;
+        final int method;
+        final long dosTime;
+        final long crc;
+        final long compressedSize;
+        final long size;
+        final long offset;
+        final boolean directory;
+
+        Entry(byte[] name, int method, long dosTime, long crc, long compressedSize, long size, long offset, boolean directory) {
+            this.name = name;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+            this.directory = directory;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * The options used by {@link Zips#createZipFile(org.slf4j.Logger, java.io.File, java.io.File, java.io.FileFilter, ZipOptions)}
+ * to create a zip file using a number of threads.
+ */
+public class ZipOptions {
+    /**
+     * The extensions of files which are already compressed so are stored rather than deflated again
+     */
+    public static final Set<String> DEFAULT_STORED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "jar", "war", "ear", "zip", "gz", "tgz", "bz2", "xz", "png", "jpg", "jpeg", "gif")));
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private long fixedTime = -1;
+    private Set<String> storedExtensions = DEFAULT_STORED_EXTENSIONS;
+    private int maxBufferSize = 4 * 1024 * 1024;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads which read and compress the files
+     */
+    public ZipOptions setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1 but was " + threads);
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Sets the {@link Deflater} compression level
+     */
+    public ZipOptions setLevel(int level) {
+        this.level = level;
+        return this;
+    }
+
+    public long getFixedTime() {
+        return fixedTime;
+    }
+
+    /**
+     * Sets the time in milliseconds used for every entry so that the same files always create the same archive;
+     * by default the last modified time of each file is used
+     */
+    public ZipOptions setFixedTime(long fixedTime) {
+        this.fixedTime = fixedTime;
+        return this;
+    }
+
+    public Set<String> getStoredExtensions() {
+        return storedExtensions;
+    }
+
+    /**
+     * Sets the lower case file extensions which are stored without compression
+     */
+    public ZipOptions setStoredExtensions(Set<String> storedExtensions) {
+        this.storedExtensions = storedExtensions;
+        return this;
+    }
+
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    /**
+     * Sets the largest compressed entry kept in memory until it is written; larger entries are compressed to a temporary file
+     */
+    public ZipOptions setMaxBufferSize(int maxBufferSize) {
+        this.maxBufferSize = maxBufferSize;
+        return this;
+    }
+
+    /**
+     * Returns true if the file name has one of the {@link #getStoredExtensions()}
+     */
+    public boolean isStored(String fileName) {
+        int idx = fileName.lastIndexOf('.');
+        return idx >= 0 && storedExtensions.contains(fileName.substring(idx + 1).toLowerCase());
+    }
+}
@@ -18,14 +18,41 @@ package io.fabric8.utils;
 import org.slf4j.Logger;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
@@ -99,6 +126,119 @@ public class Zips {
         }
     }
 
+    /**
+     * Creates a zip file from the given source directory using the given options.
+     * <p/>
+     * The files are read and compressed into temporary buffers, or temporary files for large files, by
+     * {@link ZipOptions#getThreads()} threads and then written to the zip file in the order of their sorted paths, so the
+     * same files always create the same archive if {@link ZipOptions#setFixedTime(long)} is used. Files which are already
+     * compressed, such as jars and images, are stored rather than deflated again.
+     */
+    public static void createZipFile(Logger log, File sourceDir, File outputZipFile, FileFilter filter, ZipOptions options) throws IOException {
+        List<ZipSource> sources = new ArrayList<>();
+        collectZipSources(sourceDir, "", filter, sources);
+
+        outputZipFile.getParentFile().mkdirs();
+        int threads = options.getThreads();
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads, new ThreadFactory("Zips")) : null;
+        Queue<Compressor> compressors = new ConcurrentLinkedQueue<>();
+        // bound the number of compressed entries waiting to be written
+        int window = threads * 2;
+        Deque<Future<CompressedEntry>> pending = new ArrayDeque<>();
+        ZipArchiveWriter writer = new ZipArchiveWriter(new BufferedOutputStream(new FileOutputStream(outputZipFile), 64 * 1024));
+        boolean success = false;
+        try {
+            for (ZipSource source : sources) {
+                if (pending.size() >= window) {
+                    writeCompressedEntry(log, writer, getResult(pending.poll(), "creating " + outputZipFile));
+                }
+                Callable<CompressedEntry> task = new CompressTask(source, options, compressors);
+                if (executor != null) {
+                    pending.add(executor.submit(task));
+                } else {
+                    FutureTask<CompressedEntry> future = new FutureTask<>(task);
+                    future.run();
+                    pending.add(future);
+                }
+            }
+            while (!pending.isEmpty()) {
+                writeCompressedEntry(log, writer, getResult(pending.poll(), "creating " + outputZipFile));
+            }
+            writer.close();
+            success = true;
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+                if (!success) {
+                    try {
+                        executor.awaitTermination(1, TimeUnit.MINUTES);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+            for (Future<CompressedEntry> future : pending) {
+                if (future.isDone() && !future.isCancelled()) {
+                    try {
+                        future.get().deleteTempFile();
+                    } catch (Exception e) {
+                        // the failure has already been reported
+                    }
+                }
+            }
+            for (Compressor compressor : compressors) {
+                compressor.deflater.end();
+            }
+            if (!success) {
+                Closeables.closeQuietly(writer);
+            }
+        }
+    }
+
+    private static void collectZipSources(File directory, String path, FileFilter filter, List<ZipSource> sources) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File f : files) {
+            if (matches(filter, f)) {
+                if (f.isDirectory()) {
+                    String prefix = path + f.getName() + "/";
+                    sources.add(new ZipSource(f, prefix, true));
+                    collectZipSources(f, prefix, filter, sources);
+                } else {
+                    sources.add(new ZipSource(f, path + f.getName(), false));
+                }
+            }
+        }
+    }
+
+    private static void writeCompressedEntry(Logger log, ZipArchiveWriter writer, CompressedEntry entry) throws IOException {
+        try {
+            writer.putEntry(entry.name, entry.method, entry.time, entry.crc, entry.compressedSize, entry.size);
+            if (entry.data != null) {
+                writer.write(entry.data.buffer(), 0, entry.data.size());
+            } else if (entry.tempFile != null || !entry.directory) {
+                // large entries are copied from the temporary file or, if stored, the file itself
+                File file = entry.tempFile != null ? entry.tempFile : entry.source;
+                byte[] buffer = new byte[64 * 1024];
+                try (InputStream in = new FileInputStream(file)) {
+                    int count;
+                    while ((count = in.read(buffer)) >= 0) {
+                        writer.write(buffer, 0, count);
+                    }
+                }
+            }
+            writer.closeEntry();
+        } finally {
+            entry.deleteTempFile();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("zipping file " + entry.name);
+        }
+    }
+
     protected static boolean matches(FileFilter filter, File f) {
         return filter == null || filter.accept(f);
     }
@@ -107,13 +247,14 @@ public class Zips {
      * Unzips the given input stream of a ZIP to the given directory
      */
     public static void unzip(InputStream in, File toDir) throws IOException {
+        Path root = toDir.toPath().toAbsolutePath().normalize();
         ZipInputStream zis = new ZipInputStream(new BufferedInputStream(in));
         try {
             ZipEntry entry = zis.getNextEntry();
             while (entry != null) {
                 if (!entry.isDirectory()) {
                     String entryName = entry.getName();
-                    File toFile = new File(toDir, entryName);
+                    File toFile = resolveEntry(root, entryName).toFile();
                     toFile.getParentFile().mkdirs();
                     OutputStream os = new FileOutputStream(toFile);
                     try {
@@ -133,6 +274,322 @@ public class Zips {
         }
     }
 
+    /**
+     * Unzips all the entries of the given zip file to the given directory using a thread per processor
+     */
+    public static List<File> unzip(File zipFile, File toDir) throws IOException {
+        return unzip(zipFile, toDir, null, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Unzips the entries of the given zip file which match the optional filter on their names to the given directory,
+     * returning the extracted files in the order of the entries.
+     * <p/>
+     * The entries are read using random access so only the matching entries are decompressed, which makes it cheap
+     * to extract a single file such as <tt>kubernetes.json</tt> from a large archive. The directories are created
+     * up front then the files are extracted by up to the given number of threads.
+     * <p/>
+     * If any matching entry would resolve to a file outside of the target directory, such as <tt>../evil.sh</tt>,
+     * an {@link IOException} is thrown before anything is written.
+     */
+    public static List<File> unzip(File zipFile, File toDir, Filter<String> filter, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1 but was " + threads);
+        }
+        Path root = toDir.toPath().toAbsolutePath().normalize();
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            List<ZipEntry> entries = new ArrayList<>();
+            List<File> files = new ArrayList<>();
+            TreeSet<Path> directories = new TreeSet<>();
+            directories.add(root);
+            Enumeration<? extends ZipEntry> iter = zip.entries();
+            while (iter.hasMoreElements()) {
+                ZipEntry entry = iter.nextElement();
+                String name = entry.getName();
+                if (filter != null && !filter.matches(name)) {
+                    continue;
+                }
+                Path path = resolveEntry(root, name);
+                if (entry.isDirectory()) {
+                    directories.add(path);
+                } else {
+                    directories.add(path.getParent());
+                    entries.add(entry);
+                    files.add(path.toFile());
+                }
+            }
+
+            for (Path directory : directories) {
+                java.nio.file.Files.createDirectories(directory);
+            }
+
+            int workers = Math.min(threads, entries.size());
+            if (workers <= 1) {
+                new UnzipTask(zip, entries, files, new AtomicInteger()).call();
+            } else {
+                ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory("Zips"));
+                try {
+                    AtomicInteger nextIndex = new AtomicInteger();
+                    List<Future<Void>> futures = new ArrayList<>(workers);
+                    for (int i = 0; i < workers; i++) {
+                        futures.add(executor.submit(new UnzipTask(zip, entries, files, nextIndex)));
+                    }
+                    for (Future<Void> future : futures) {
+                        getResult(future, "unzipping " + zipFile);
+                    }
+                } finally {
+                    executor.shutdownNow();
+                }
+            }
+            return files;
+        }
+    }
+
+    /**
+     * Returns the path of the given zip entry name in the given normalized target directory, failing if the
+     * entry would be outside of the directory
+     */
+    protected static Path resolveEntry(Path root, String entryName) throws IOException {
+        Path answer = root.resolve(entryName).normalize();
+        if (answer.equals(root) || !answer.startsWith(root)) {
+            throw new IOException("Zip entry " + entryName + " is outside of the target directory " + root);
+        }
+        return answer;
+    }
+
+    private static <T> T getResult(Future<T> future, String action) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while " + action);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed " + action + ". " + cause, cause);
+        }
+    }
+
+    /**
+     * Extracts the next unclaimed entry until there are none left, so each thread reuses a single buffer
+     */
+    private static final class UnzipTask implements Callable<Void> {
+        private final ZipFile zip;
+        private final List<ZipEntry> entries;
+        private final List<File> files;
+        private final AtomicInteger nextIndex;
+
+        UnzipTask(ZipFile zip, List<ZipEntry> entries, List<File> files, AtomicInteger nextIndex) {
+            this.zip = zip;
+            this.entries = entries;
+            this.files = files;
+            this.nextIndex = nextIndex;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            byte[] buffer = new byte[128 * 1024];
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+            int index;
+            while ((index = nextIndex.getAndIncrement()) < entries.size()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted while unzipping " + zip.getName());
+                }
+                ZipEntry entry = entries.get(index);
+                try (InputStream in = zip.getInputStream(entry);
+                     FileChannel channel = FileChannel.open(files.get(index).toPath(), StandardOpenOption.CREATE,
+                             StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    int count;
+                    while ((count = readFully(in, buffer)) > 0) {
+                        byteBuffer.clear().limit(count);
+                        while (byteBuffer.hasRemaining()) {
+                            channel.write(byteBuffer);
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Fills as much of the buffer as possible as inflater streams only return a little at a time
+         */
+        private static int readFully(InputStream in, byte[] buffer) throws IOException {
+            int total = 0;
+            int count;
+            while (total < buffer.length && (count = in.read(buffer, total, buffer.length - total)) >= 0) {
+                total += count;
+            }
+            return total;
+        }
+    }
+
+    private static final class ZipSource {
+        final File file;
+        final String name;
+        final boolean directory;
+
+        ZipSource(File file, String name, boolean directory) {
+            this.file = file;
+            this.name = name;
+            this.directory = directory;
+        }
+    }
+
+    /**
+     * The reusable deflater and buffers of a thread compressing entries
+     */
+    private static final class Compressor {
+        final Deflater deflater;
+        final CRC32 crc = new CRC32();
+        final byte[] input = new byte[64 * 1024];
+        final byte[] output = new byte[64 * 1024];
+
+        Compressor(int level) {
+            deflater = new Deflater(level, true);
+        }
+    }
+
+    /**
+     * A byte array output stream which gives access to its buffer rather than copying it
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    private static final class CompressedEntry {
+        final String name;
+        final File source;
+        final boolean directory;
+        int method = ZipEntry.STORED;
+        long time;
+        long crc;
+        long compressedSize;
+        long size;
+        Buffer data;
+        File tempFile;
+
+        CompressedEntry(ZipSource source) {
+            this.name = source.name;
+            this.source = source.file;
+            this.directory = source.directory;
+        }
+
+        void deleteTempFile() {
+            if (tempFile != null) {
+                tempFile.delete();
+                tempFile = null;
+            }
+        }
+    }
+
+    private static final class CompressTask implements Callable<CompressedEntry> {
+        private final ZipSource source;
+        private final ZipOptions options;
+        private final Queue<Compressor> compressors;
+
+        CompressTask(ZipSource source, ZipOptions options, Queue<Compressor> compressors) {
+            this.source = source;
+            this.options = options;
+            this.compressors = compressors;
+        }
+
+        @Override
+        public CompressedEntry call() throws IOException {
+            CompressedEntry entry = new CompressedEntry(source);
+            entry.time = options.getFixedTime() >= 0 ? options.getFixedTime() : source.file.lastModified();
+            if (source.directory) {
+                return entry;
+            }
+            Compressor compressor = compressors.poll();
+            if (compressor == null) {
+                compressor = new Compressor(options.getLevel());
+            }
+            try {
+                long length = source.file.length();
+                boolean inMemory = length <= options.getMaxBufferSize();
+                if (options.isStored(source.name)) {
+                    store(entry, compressor, inMemory ? new Buffer((int) length) : null);
+                } else {
+                    deflate(entry, compressor, inMemory ? new Buffer((int) Math.max(32, length / 2)) : null);
+                }
+                return entry;
+            } catch (IOException | RuntimeException e) {
+                entry.deleteTempFile();
+                throw e;
+            } finally {
+                compressors.add(compressor);
+            }
+        }
+
+        private void store(CompressedEntry entry, Compressor compressor, Buffer buffer) throws IOException {
+            CRC32 crc = compressor.crc;
+            crc.reset();
+            byte[] input = compressor.input;
+            long size = 0;
+            try (InputStream in = new FileInputStream(source.file)) {
+                int count;
+                while ((count = in.read(input)) >= 0) {
+                    crc.update(input, 0, count);
+                    if (buffer != null) {
+                        buffer.write(input, 0, count);
+                    }
+                    size += count;
+                }
+            }
+            entry.method = ZipEntry.STORED;
+            entry.crc = crc.getValue();
+            entry.size = size;
+            entry.compressedSize = size;
+            entry.data = buffer;
+        }
+
+        private void deflate(CompressedEntry entry, Compressor compressor, Buffer buffer) throws IOException {
+            OutputStream out = buffer;
+            if (buffer == null) {
+                entry.tempFile = File.createTempFile("zips-", ".deflated");
+                out = new FileOutputStream(entry.tempFile);
+            }
+            Deflater deflater = compressor.deflater;
+            deflater.reset();
+            CRC32 crc = compressor.crc;
+            crc.reset();
+            byte[] input = compressor.input;
+            byte[] output = compressor.output;
+            try (InputStream in = new FileInputStream(source.file)) {
+                int count;
+                while ((count = in.read(input)) >= 0) {
+                    crc.update(input, 0, count);
+                    deflater.setInput(input, 0, count);
+                    while (!deflater.needsInput()) {
+                        out.write(output, 0, deflater.deflate(output));
+                    }
+                }
+                deflater.finish();
+                while (!deflater.finished()) {
+                    out.write(output, 0, deflater.deflate(output));
+                }
+            } finally {
+                if (buffer == null) {
+                    out.close();
+                }
+            }
+            entry.method = ZipEntry.DEFLATED;
+            entry.crc = crc.getValue();
+            entry.size = deflater.getBytesRead();
+            entry.compressedSize = deflater.getBytesWritten();
+            entry.data = buffer;
+        }
+    }
+
     static void copy(InputStream is, OutputStream os) throws IOException {
         try {
             byte[] b = new byte[4096];
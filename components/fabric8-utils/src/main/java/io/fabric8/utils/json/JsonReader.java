@@ -15,332 +15,886 @@
  */
 package io.fabric8.utils.json;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
-public class JsonReader {
+/**
+ * A small JSON parser which can either build a tree of {@link Map}, {@link Collection}, {@link String},
+ * {@link Double}, {@link Boolean} and <tt>null</tt> values using {@link #read(Reader)}, or be used as a pull parser
+ * so that large documents can be processed without materializing them.
+ * <p/>
+ * The pull API is driven by {@link #peek()} and {@link #nextToken()} or the typed methods such as
+ * {@link #beginObject()}, {@link #readName()}, {@link #readString()}, {@link #readNumber()} and {@link #skipValue()};
+ * the tree API is implemented on top of it by {@link #readValue()}.
+ * <p/>
+ * Characters are read from the {@link Reader} in bulk into a buffer. Byte input is decoded as UTF-8 directly
+ * into the same buffer without going through a {@link java.nio.charset.CharsetDecoder}. Instances are not thread safe.
+ */
+public class JsonReader implements Closeable {
+
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, TRUE, FALSE, NULL, END_DOCUMENT
+    }
 
     public static Object read(Reader reader) throws IOException {
         return new JsonReader(reader).parse();
     }
 
+    /**
+     * Parses the UTF-8 encoded JSON stream
+     */
     public static Object read(InputStream is) throws IOException {
-        return new JsonReader(new InputStreamReader(is)).parse();
+        return new JsonReader(is).parse();
+    }
+
+    /**
+     * Parses the UTF-8 encoded JSON data
+     */
+    public static Object read(byte[] data) throws IOException {
+        return new JsonReader(data, 0, data.length).parse();
     }
 
     //
     // Implementation
     //
 
+    private static final int BUFFER_SIZE = 8192;
+
+    // the states of the values being read
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
     private final Reader reader;
-    private final StringBuilder recorder;
-    private int current;
+    private final InputStream in;
+    private byte[] bytes;
+    private int bytePos;
+    private int byteLimit;
+
+    private char[] buffer;
+    private int pos;
+    private int limit;
+    // the number of characters discarded from the front of the buffer
+    private long bufferOffset;
+    // the start of a token which must be kept in the buffer when it is refilled, or -1
+    private int tokenStart = -1;
     private int line = 1;
-    private int column = 0;
+    private long lineStart;
+
+    private int[] stack = new int[32];
+    private int stackSize;
+    private Token peeked;
+    private int valueStart;
+    private String text;
+
+    private StringBuilder builder;
+    private StringBuilder recorder;
+    private boolean recording;
+    private int recordStart;
 
-    JsonReader(Reader reader) {
+    public JsonReader(Reader reader) {
         this.reader = reader;
-        recorder = new StringBuilder();
+        this.in = null;
+        this.buffer = new char[BUFFER_SIZE];
+        stack[stackSize++] = EMPTY_DOCUMENT;
     }
 
+    /**
+     * Creates a reader of the UTF-8 encoded JSON stream
+     */
+    public JsonReader(InputStream in) {
+        this.reader = null;
+        this.in = in;
+        this.bytes = new byte[BUFFER_SIZE];
+        this.buffer = new char[BUFFER_SIZE];
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Creates a reader of the UTF-8 encoded JSON data
+     */
+    public JsonReader(byte[] data, int offset, int length) {
+        this.reader = null;
+        this.in = null;
+        this.bytes = data;
+        this.bytePos = offset;
+        this.byteLimit = offset + length;
+        // small documents do not need a full buffer as UTF-8 never decodes to more chars than bytes
+        this.buffer = new char[Math.max(16, Math.min(BUFFER_SIZE, length))];
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Parses a single JSON value into a tree, failing if there is anything but whitespace after it
+     */
     public Object parse() throws IOException {
-        read();
-        skipWhiteSpace();
+        if (peek() == Token.END_DOCUMENT) {
+            throw error("Unexpected end of input");
+        }
         Object result = readValue();
-        skipWhiteSpace();
-        if (!endOfText()) {
+        // report the position of the first character after the value whether or not it could start another value
+        if (nextNonWhiteSpace() != -1) {
             throw error("Unexpected character");
         }
+        peeked = Token.END_DOCUMENT;
         return result;
     }
 
-    private Object readValue() throws IOException {
-        switch (current) {
-            case 'n':
-                return readNull();
-            case 't':
-                return readTrue();
-            case 'f':
-                return readFalse();
-            case '"':
+    /**
+     * Reads the next value into a tree of {@link Map}, {@link Collection}, {@link String}, {@link Double},
+     * {@link Boolean} and <tt>null</tt> values
+     */
+    public Object readValue() throws IOException {
+        switch (peek()) {
+            case BEGIN_OBJECT:
+                Map<String, Object> object = new HashMap<String, Object>();
+                beginObject();
+                while (hasNext()) {
+                    String name = readName();
+                    object.put(name, readValue());
+                }
+                endObject();
+                return object;
+            case BEGIN_ARRAY:
+                Collection<Object> array = new ArrayList<Object>();
+                beginArray();
+                while (hasNext()) {
+                    array.add(readValue());
+                }
+                endArray();
+                return array;
+            case STRING:
                 return readString();
-            case '[':
-                return readArray();
-            case '{':
-                return readObject();
-            case '-':
-            case '0':
-            case '1':
-            case '2':
-            case '3':
-            case '4':
-            case '5':
-            case '6':
-            case '7':
-            case '8':
-            case '9':
+            case NUMBER:
                 return readNumber();
+            case TRUE:
+            case FALSE:
+                return readBoolean();
+            case NULL:
+                readNull();
+                return null;
             default:
                 throw expected("value");
         }
     }
 
-    private Collection<?> readArray() throws IOException {
-        read();
-        Collection<Object> array = new ArrayList<Object>();
-        skipWhiteSpace();
-        if (readChar(']')) {
-            return array;
+    // Pull API
+    //-------------------------------------------------------------------------
+
+    /**
+     * Returns the type of the next token without consuming it
+     */
+    public Token peek() throws IOException {
+        if (peeked == null) {
+            peeked = doPeek();
         }
-        do {
-            skipWhiteSpace();
-            array.add(readValue());
-            skipWhiteSpace();
-        } while (readChar(','));
-        if (!readChar(']')) {
-            throw expected("',' or ']'");
+        return peeked;
+    }
+
+    /**
+     * Consumes the next token returning its type; the text of a {@link Token#NAME}, {@link Token#STRING}
+     * or {@link Token#NUMBER} is then available from {@link #getText()}
+     */
+    public Token nextToken() throws IOException {
+        Token token = peek();
+        text = null;
+        switch (token) {
+            case BEGIN_OBJECT:
+                beginObject();
+                break;
+            case END_OBJECT:
+                endObject();
+                break;
+            case BEGIN_ARRAY:
+                beginArray();
+                break;
+            case END_ARRAY:
+                endArray();
+                break;
+            case NAME:
+                text = readName();
+                break;
+            case STRING:
+                text = readString();
+                break;
+            case NUMBER:
+                peeked = null;
+                text = readNumberText(false);
+                break;
+            case TRUE:
+            case FALSE:
+            case NULL:
+                peeked = null;
+                break;
+            default:
+                break;
         }
-        return array;
+        return token;
     }
 
-    private Map<String, Object> readObject() throws IOException {
-        read();
-        Map<String, Object> object = new HashMap<String, Object>();
-        skipWhiteSpace();
-        if (readChar('}')) {
-            return object;
+    /**
+     * Returns the text of the last name, string or number consumed by {@link #nextToken()}
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns true if the current array or object has another element
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws IOException {
+        consume(Token.BEGIN_OBJECT, "'{'");
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        consume(Token.END_OBJECT, "'}'");
+        stackSize--;
+    }
+
+    public void beginArray() throws IOException {
+        consume(Token.BEGIN_ARRAY, "'['");
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        consume(Token.END_ARRAY, "']'");
+        stackSize--;
+    }
+
+    public String readName() throws IOException {
+        consume(Token.NAME, "name");
+        return readStringContent(false);
+    }
+
+    public String readString() throws IOException {
+        consume(Token.STRING, "string");
+        return readStringContent(false);
+    }
+
+    /**
+     * Reads the next number which, as with the tree API, is returned as a {@link Double}
+     */
+    public Number readNumber() throws IOException {
+        consume(Token.NUMBER, "number");
+        return Double.parseDouble(readNumberText(false));
+    }
+
+    public boolean readBoolean() throws IOException {
+        Token token = peek();
+        if (token != Token.TRUE && token != Token.FALSE) {
+            throw expected("boolean");
         }
-        do {
-            skipWhiteSpace();
-            String name = readName();
-            skipWhiteSpace();
-            if (!readChar(':')) {
-                throw expected("':'");
+        peeked = null;
+        return token == Token.TRUE;
+    }
+
+    public void readNull() throws IOException {
+        consume(Token.NULL, "null");
+    }
+
+    /**
+     * Skips the next value, or the next name and its value, without creating any strings or numbers
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+        while (true) {
+            switch (peek()) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    if (depth == 0) {
+                        throw expected("value");
+                    }
+                    endObject();
+                    depth--;
+                    break;
+                case END_ARRAY:
+                    if (depth == 0) {
+                        throw expected("value");
+                    }
+                    endArray();
+                    depth--;
+                    break;
+                case NAME:
+                    peeked = null;
+                    readStringContent(true);
+                    // the value of the name follows
+                    continue;
+                case STRING:
+                    peeked = null;
+                    readStringContent(true);
+                    break;
+                case NUMBER:
+                    peeked = null;
+                    readNumberText(true);
+                    break;
+                case END_DOCUMENT:
+                    throw error("Unexpected end of input");
+                default:
+                    peeked = null;
+                    break;
+            }
+            if (depth == 0) {
+                return;
             }
-            skipWhiteSpace();
-            object.put(name, readValue());
-            skipWhiteSpace();
-        } while (readChar(','));
-        if (!readChar('}')) {
-            throw expected("',' or '}'");
         }
-        return object;
     }
 
-    private Object readNull() throws IOException {
-        read();
-        readRequiredChar('u');
-        readRequiredChar('l');
-        readRequiredChar('l');
-        return null;
+    /**
+     * Consumes the next value returning its JSON text exactly as it appears in the input
+     */
+    public String readRawValue() throws IOException {
+        Token token = peek();
+        if (token == Token.NAME || token == Token.END_OBJECT || token == Token.END_ARRAY || token == Token.END_DOCUMENT) {
+            throw expected("value");
+        }
+        if (recorder == null) {
+            recorder = new StringBuilder();
+        }
+        recorder.setLength(0);
+        recording = true;
+        recordStart = valueStart;
+        try {
+            skipValue();
+            recorder.append(buffer, recordStart, pos - recordStart);
+        } finally {
+            recording = false;
+        }
+        return recorder.toString();
     }
 
-    private Boolean readTrue() throws IOException {
-        read();
-        readRequiredChar('r');
-        readRequiredChar('u');
-        readRequiredChar('e');
-        return Boolean.TRUE;
+    public int getLine() {
+        return line;
     }
 
-    private Boolean readFalse() throws IOException {
-        read();
-        readRequiredChar('a');
-        readRequiredChar('l');
-        readRequiredChar('s');
-        readRequiredChar('e');
-        return Boolean.FALSE;
+    public int getColumn() {
+        return (int) (bufferOffset + pos - lineStart) + 1;
     }
 
-    private void readRequiredChar(char ch) throws IOException {
-        if (!readChar(ch)) {
-            throw expected("'" + ch + "'");
+    @Override
+    public void close() throws IOException {
+        stackSize = 0;
+        if (reader != null) {
+            reader.close();
+        } else if (in != null) {
+            in.close();
         }
     }
 
-    private String readString() throws IOException {
-        read();
-        recorder.setLength(0);
-        while (current != '"') {
-            if (current == '\\') {
-                readEscape();
-            } else if (current < 0x20) {
-                throw expected("valid string character");
-            } else {
-                recorder.append((char) current);
-                read();
+    private void consume(Token expected, String description) throws IOException {
+        if (peek() != expected) {
+            throw expected(description);
+        }
+        peeked = null;
+    }
+
+    private void push(int state) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = state;
+    }
+
+    /**
+     * Consumes any separators and the first characters of the next token; strings are left positioned after the
+     * opening quote and numbers at their first character so that they can be read or skipped
+     */
+    private Token doPeek() throws IOException {
+        if (stackSize == 0) {
+            throw new IllegalStateException("JsonReader is closed");
+        }
+        int c;
+        switch (stack[stackSize - 1]) {
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                c = nextNonWhiteSpace();
+                if (c == ']') {
+                    pos++;
+                    return Token.END_ARRAY;
+                }
+                break;
+            case NONEMPTY_ARRAY:
+                c = nextNonWhiteSpace();
+                if (c == ']') {
+                    pos++;
+                    return Token.END_ARRAY;
+                } else if (c != ',') {
+                    throw expected("',' or ']'");
+                }
+                pos++;
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                boolean empty = stack[stackSize - 1] == EMPTY_OBJECT;
+                stack[stackSize - 1] = DANGLING_NAME;
+                c = nextNonWhiteSpace();
+                if (c == '}') {
+                    pos++;
+                    return Token.END_OBJECT;
+                }
+                if (!empty) {
+                    if (c != ',') {
+                        throw expected("',' or '}'");
+                    }
+                    pos++;
+                    c = nextNonWhiteSpace();
+                }
+                if (c != '"') {
+                    throw expected("name");
+                }
+                pos++;
+                return Token.NAME;
+            case DANGLING_NAME:
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                if (nextNonWhiteSpace() != ':') {
+                    throw expected("':'");
+                }
+                pos++;
+                break;
+            default:
+                // further top level values may follow a document
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                if (nextNonWhiteSpace() == -1) {
+                    return Token.END_DOCUMENT;
+                }
+                break;
+        }
+
+        c = nextNonWhiteSpace();
+        valueStart = pos;
+        switch (c) {
+            case '{':
+                pos++;
+                return Token.BEGIN_OBJECT;
+            case '[':
+                pos++;
+                return Token.BEGIN_ARRAY;
+            case '"':
+                pos++;
+                return Token.STRING;
+            case 't':
+                readLiteral("true");
+                return Token.TRUE;
+            case 'f':
+                readLiteral("false");
+                return Token.FALSE;
+            case 'n':
+                readLiteral("null");
+                return Token.NULL;
+            case '-':
+            case '0':
+            case '1':
+            case '2':
+            case '3':
+            case '4':
+            case '5':
+            case '6':
+            case '7':
+            case '8':
+            case '9':
+                return Token.NUMBER;
+            default:
+                throw expected("value");
+        }
+    }
+
+    private void readLiteral(String literal) throws IOException {
+        // keep the literal in the buffer in case it is recorded
+        tokenStart = pos;
+        try {
+            for (int i = 0; i < literal.length(); i++) {
+                char ch = literal.charAt(i);
+                if (peekChar() != ch) {
+                    throw expected("'" + ch + "'");
+                }
+                pos++;
             }
+        } finally {
+            valueStart = tokenStart;
+            tokenStart = -1;
+        }
+    }
+
+    /**
+     * Reads the rest of a string after its opening quote; if skipping the content is validated but not kept
+     */
+    private String readStringContent(boolean skip) throws IOException {
+        StringBuilder sb = null;
+        int start = pos;
+        tokenStart = skip ? -1 : start;
+        try {
+            while (true) {
+                char[] buf = buffer;
+                int p = pos;
+                int l = limit;
+                while (p < l) {
+                    char c = buf[p];
+                    if (c == '"') {
+                        pos = p + 1;
+                        if (skip) {
+                            return null;
+                        } else if (sb == null) {
+                            return new String(buf, start, p - start);
+                        }
+                        return sb.append(buf, start, p - start).toString();
+                    } else if (c == '\\') {
+                        pos = p + 1;
+                        if (!skip) {
+                            if (sb == null) {
+                                sb = builder();
+                            }
+                            sb.append(buf, start, p - start);
+                        }
+                        tokenStart = -1;
+                        readEscape(sb);
+                        start = pos;
+                        tokenStart = skip ? -1 : start;
+                        break;
+                    } else if (c < 0x20) {
+                        pos = p;
+                        throw expected("valid string character");
+                    }
+                    p++;
+                }
+                if (p == l) {
+                    pos = p;
+                    if (!fill(1)) {
+                        throw error("Unexpected end of input");
+                    }
+                    if (!skip) {
+                        start = tokenStart;
+                    } else {
+                        start = pos;
+                    }
+                }
+            }
+        } finally {
+            tokenStart = -1;
         }
-        read();
-        return recorder.toString();
     }
 
-    private void readEscape() throws IOException {
-        read();
-        switch (current) {
+    private void readEscape(StringBuilder sb) throws IOException {
+        int c = peekChar();
+        switch (c) {
             case '"':
             case '/':
             case '\\':
-                recorder.append((char) current);
+                append(sb, (char) c);
                 break;
             case 'b':
-                recorder.append('\b');
+                append(sb, '\b');
                 break;
             case 'f':
-                recorder.append('\f');
+                append(sb, '\f');
                 break;
             case 'n':
-                recorder.append('\n');
+                append(sb, '\n');
                 break;
             case 'r':
-                recorder.append('\r');
+                append(sb, '\r');
                 break;
             case 't':
-                recorder.append('\t');
+                append(sb, '\t');
                 break;
             case 'u':
-                char[] hexChars = new char[4];
+                int value = 0;
                 for (int i = 0; i < 4; i++) {
-                    read();
-                    if (!isHexDigit(current)) {
+                    pos++;
+                    int digit = hexDigit(peekChar());
+                    if (digit < 0) {
                         throw expected("hexadecimal digit");
                     }
-                    hexChars[i] = (char) current;
+                    value = (value << 4) + digit;
                 }
-                recorder.append((char) Integer.parseInt(String.valueOf(hexChars), 16));
+                append(sb, (char) value);
                 break;
             default:
                 throw expected("valid escape sequence");
         }
-        read();
+        pos++;
     }
 
-    private Number readNumber() throws IOException {
-        recorder.setLength(0);
-        readAndAppendChar('-');
-        int firstDigit = current;
-        if (!readAndAppendDigit()) {
-            throw expected("digit");
+    private static void append(StringBuilder sb, char c) {
+        if (sb != null) {
+            sb.append(c);
         }
-        if (firstDigit != '0') {
-            while (readAndAppendDigit()) {
-            }
-        }
-        readFraction();
-        readExponent();
-        return Double.parseDouble(recorder.toString());
     }
 
-    private boolean readFraction() throws IOException {
-        if (!readAndAppendChar('.')) {
-            return false;
-        }
-        if (!readAndAppendDigit()) {
-            throw expected("digit");
-        }
-        while (readAndAppendDigit()) {
+    /**
+     * Reads a number starting at the current position returning its text unless skipping
+     */
+    private String readNumberText(boolean skip) throws IOException {
+        tokenStart = pos;
+        try {
+            if (peekChar() == '-') {
+                pos++;
+            }
+            int firstDigit = peekChar();
+            if (!isDigit(firstDigit)) {
+                throw expected("digit");
+            }
+            pos++;
+            if (firstDigit != '0') {
+                skipDigits();
+            }
+            if (peekChar() == '.') {
+                pos++;
+                if (!isDigit(peekChar())) {
+                    throw expected("digit");
+                }
+                skipDigits();
+            }
+            int c = peekChar();
+            if (c == 'e' || c == 'E') {
+                pos++;
+                c = peekChar();
+                if (c == '+' || c == '-') {
+                    pos++;
+                }
+                if (!isDigit(peekChar())) {
+                    throw expected("digit");
+                }
+                skipDigits();
+            }
+            return skip ? null : new String(buffer, tokenStart, pos - tokenStart);
+        } finally {
+            tokenStart = -1;
         }
-        return true;
     }
 
-    private boolean readExponent() throws IOException {
-        if (!readAndAppendChar('e') && !readAndAppendChar('E')) {
-            return false;
+    private void skipDigits() throws IOException {
+        while (isDigit(peekChar())) {
+            pos++;
         }
-        if (!readAndAppendChar('+')) {
-            readAndAppendChar('-');
-        }
-        if (!readAndAppendDigit()) {
-            throw expected("digit");
-        }
-        while (readAndAppendDigit()) {
-        }
-        return true;
     }
 
-    private String readName() throws IOException {
-        if (current != '"') {
-            throw expected("name");
+    private int nextNonWhiteSpace() throws IOException {
+        while (true) {
+            char[] buf = buffer;
+            int p = pos;
+            int l = limit;
+            while (p < l) {
+                char c = buf[p];
+                if (c == '\n') {
+                    line++;
+                    lineStart = bufferOffset + p + 1;
+                } else if (c != ' ' && c != '\t' && c != '\r') {
+                    pos = p;
+                    return c;
+                }
+                p++;
+            }
+            pos = p;
+            if (!fill(1)) {
+                return -1;
+            }
         }
-        readString();
-        return recorder.toString();
     }
 
-    private boolean readAndAppendChar(char ch) throws IOException {
-        if (current != ch) {
-            return false;
+    /**
+     * Returns the character at the current position without consuming it or -1 at the end of the input
+     */
+    private int peekChar() throws IOException {
+        if (pos < limit || fill(1)) {
+            return buffer[pos];
         }
-        recorder.append(ch);
-        read();
-        return true;
+        return -1;
     }
 
-    private boolean readChar(char ch) throws IOException {
-        if (current != ch) {
-            return false;
+    private StringBuilder builder() {
+        if (builder == null) {
+            builder = new StringBuilder();
         }
-        read();
-        return true;
+        builder.setLength(0);
+        return builder;
     }
 
-    private boolean readAndAppendDigit() throws IOException {
-        if (!isDigit(current)) {
-            return false;
+    /**
+     * Reads more characters into the buffer until at least the given number are available after the current position,
+     * discarding the characters before the current position unless they are part of a token being read
+     *
+     * @return false if the end of the input was reached first
+     */
+    private boolean fill(int minimum) throws IOException {
+        if (recording) {
+            recorder.append(buffer, recordStart, pos - recordStart);
+        }
+        int keep = tokenStart >= 0 ? tokenStart : pos;
+        if (keep > 0) {
+            System.arraycopy(buffer, keep, buffer, 0, limit - keep);
+            bufferOffset += keep;
+            limit -= keep;
+            pos -= keep;
+            if (tokenStart >= 0) {
+                tokenStart = 0;
+            }
+        }
+        if (recording) {
+            recordStart = pos;
+        }
+        while (limit - pos < minimum) {
+            if (buffer.length - limit < 2) {
+                // a token larger than the buffer is being read, or there is no room left for a surrogate pair
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int count = readChars(buffer, limit, buffer.length - limit);
+            if (count < 0) {
+                return false;
+            }
+            limit += count;
         }
-        recorder.append((char) current);
-        read();
         return true;
     }
 
-    private void skipWhiteSpace() throws IOException {
-        while (isWhiteSpace(current) && !endOfText()) {
-            read();
+    private int readChars(char[] chars, int offset, int length) throws IOException {
+        if (reader != null) {
+            return reader.read(chars, offset, length);
         }
+        return decodeUtf8(chars, offset, length);
     }
 
-    private void read() throws IOException {
-        if (endOfText()) {
-            throw error("Unexpected end of input");
+    /**
+     * Decodes UTF-8 bytes into the given characters returning the number decoded or -1 at the end of the input
+     */
+    private int decodeUtf8(char[] chars, int offset, int length) throws IOException {
+        if (bytePos == byteLimit && !fillBytes()) {
+            return -1;
         }
-        column++;
-        if (current == '\n') {
-            line++;
-            column = 0;
+        byte[] b = bytes;
+        int p = bytePos;
+        int l = byteLimit;
+        int i = offset;
+        int end = offset + length;
+        while (i < end && p < l) {
+            int c = b[p];
+            if (c >= 0) {
+                chars[i++] = (char) c;
+                p++;
+                continue;
+            }
+            int count;
+            int codePoint;
+            if ((c & 0xE0) == 0xC0) {
+                count = 2;
+                codePoint = c & 0x1F;
+            } else if ((c & 0xF0) == 0xE0) {
+                count = 3;
+                codePoint = c & 0x0F;
+            } else if ((c & 0xF8) == 0xF0) {
+                count = 4;
+                codePoint = c & 0x07;
+            } else {
+                throw error("Malformed UTF-8 input");
+            }
+            if (count == 4 && end - i < 2) {
+                // no room for the surrogate pair
+                break;
+            }
+            if (l - p < count) {
+                if (i > offset) {
+                    break;
+                }
+                // the sequence is split across reads
+                bytePos = p;
+                while (byteLimit - bytePos < count) {
+                    if (!fillBytes()) {
+                        throw error("Malformed UTF-8 input");
+                    }
+                }
+                b = bytes;
+                p = bytePos;
+                l = byteLimit;
+            }
+            for (int j = 1; j < count; j++) {
+                int next = b[p + j];
+                if ((next & 0xC0) != 0x80) {
+                    throw error("Malformed UTF-8 input");
+                }
+                codePoint = (codePoint << 6) | (next & 0x3F);
+            }
+            p += count;
+            if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                chars[i++] = Character.highSurrogate(codePoint);
+                chars[i++] = Character.lowSurrogate(codePoint);
+            } else {
+                chars[i++] = (char) codePoint;
+            }
         }
-        current = reader.read();
+        bytePos = p;
+        return i - offset;
     }
 
-    private boolean endOfText() {
-        return current == -1;
+    /**
+     * Reads more bytes from the stream keeping any which have not been decoded yet
+     *
+     * @return false if no more bytes could be read
+     */
+    private boolean fillBytes() throws IOException {
+        if (in == null) {
+            return false;
+        }
+        int remaining = byteLimit - bytePos;
+        System.arraycopy(bytes, bytePos, bytes, 0, remaining);
+        bytePos = 0;
+        byteLimit = remaining;
+        int count = in.read(bytes, byteLimit, bytes.length - byteLimit);
+        if (count < 0) {
+            return false;
+        }
+        byteLimit += count;
+        return true;
     }
 
-    private IOException expected(String expected) {
-        if (endOfText()) {
+    private IOException expected(String expected) throws IOException {
+        if (pos >= limit && !fill(1)) {
             return error("Unexpected end of input");
         }
         return error("Expected " + expected);
     }
 
     private IOException error(String message) {
-        return new IOException(message + " at " + line + ":" + column);
-    }
-
-    private static boolean isWhiteSpace(int ch) {
-        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r';
+        return new IOException(message + " at " + line + ":" + getColumn());
     }
 
     private static boolean isDigit(int ch) {
         return ch >= '0' && ch <= '9';
     }
 
-    private static boolean isHexDigit(int ch) {
-        return ch >= '0' && ch <= '9' || ch >= 'a' && ch <= 'f' || ch >= 'A' && ch <= 'F';
+    /**
+     * Returns the value of the ASCII hexadecimal digit or -1; unlike {@link Character#digit(int, int)} other
+     * Unicode digits such as the fullwidth ones are not accepted
+     */
+    private static int hexDigit(int ch) {
+        if (ch >= '0' && ch <= '9') {
+            return ch - '0';
+        } else if (ch >= 'a' && ch <= 'f') {
+            return ch - 'a' + 10;
+        } else if (ch >= 'A' && ch <= 'F') {
+            return ch - 'A' + 10;
+        }
+        return -1;
     }
-
 }
@@ -15,12 +15,26 @@
  */
 package io.fabric8.utils.json;
 
+import java.io.Closeable;
+import java.io.Flushable;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
 
-public class JsonWriter {
+/**
+ * Writes {@link Map}, {@link Collection}, {@link Number}, {@link String}, {@link Boolean} and <tt>null</tt> values as JSON.
+ * <p/>
+ * The static {@link #write(Writer, Object)} method writes a tree of values to a {@link Writer}. An instance is a
+ * streaming writer which encodes UTF-8 directly into a reusable byte buffer which is flushed to an {@link OutputStream};
+ * its {@link #beginObject()}, {@link #name(String)}, {@link #value(String)} and {@link #endArray()} style methods
+ * allow arbitrarily large documents to be written without building a tree first. Both produce the same output.
+ * <p/>
+ * Instances are not thread safe.
+ */
+public class JsonWriter implements Closeable, Flushable {
 
     public static void write(Writer writer, Object value) throws IOException {
         if (value instanceof Map) {
@@ -40,6 +54,15 @@ public class JsonWriter {
         }
     }
 
+    /**
+     * Writes the value as UTF-8 encoded JSON to the stream without closing it
+     */
+    public static void write(OutputStream out, Object value) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        writer.value(value);
+        writer.flush();
+    }
+
     private static void writeObject(Writer writer, Map<?, ?> value) throws IOException {
         writer.append('{');
         boolean first = true;
@@ -60,30 +83,20 @@ public class JsonWriter {
         writer.append('"');
         for (int i = 0; i < value.length(); i++) {
             char c = value.charAt(i);
-            switch (c) {
-                case '\"':
-                case '\\':
-                case '\b':
-                case '\f':
-                case '\n':
-                case '\r':
-                case '\t':
-                    writer.append('\\');
-                    writer.append(c);
-                    break;
-                default:
-                    if (c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
-                        String s = Integer.toHexString(c);
-                        writer.append('\\');
-                        writer.append('u');
-                        for (int j = s.length(); j < 4; j++) {
-                            writer.append('0');
-                        }
-                        writer.append(s);
-                    } else {
-                        writer.append(c);
-                    }
-                    break;
+            int escape = c < ESCAPES.length ? ESCAPES[c] : 0;
+            if (escape == UNICODE_ESCAPE || isUnicodeEscaped(c)) {
+                String s = Integer.toHexString(c);
+                writer.append('\\');
+                writer.append('u');
+                for (int j = s.length(); j < 4; j++) {
+                    writer.append('0');
+                }
+                writer.append(s);
+            } else if (escape != 0) {
+                writer.append('\\');
+                writer.append((char) escape);
+            } else {
+                writer.append(c);
             }
         }
         writer.append('"');
@@ -114,4 +127,385 @@ public class JsonWriter {
     private static void writeNull(Writer writer) throws IOException {
         writer.append("null");
     }
+
+    //
+    // Streaming
+    //
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final byte UNICODE_ESCAPE = 'u';
+    /**
+     * The character to write after a backslash for each ASCII character which must be escaped, {@link #UNICODE_ESCAPE}
+     * for a <tt>\\u</tt> escape or 0 if the character is written as is
+     */
+    private static final byte[] ESCAPES = new byte[128];
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+    private static final byte[] TRUE = "true".getBytes();
+    private static final byte[] FALSE = "false".getBytes();
+
+    static {
+        for (int c = 0; c < ' '; c++) {
+            ESCAPES[c] = UNICODE_ESCAPE;
+        }
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\f'] = 'f';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\r'] = 'r';
+        ESCAPES['\t'] = 't';
+    }
+
+    // the states of the values being written
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int count;
+    private int[] stack = new int[32];
+    private int stackSize;
+
+    public JsonWriter(OutputStream out) {
+        this(out, BUFFER_SIZE);
+    }
+
+    public JsonWriter(OutputStream out, int bufferSize) {
+        if (bufferSize < 64) {
+            throw new IllegalArgumentException("bufferSize must be at least 64 but was " + bufferSize);
+        }
+        this.out = out;
+        this.buffer = new byte[bufferSize];
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        beforeValue();
+        push(EMPTY_OBJECT);
+        writeByte('{');
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        int state = peekState();
+        if (state != EMPTY_OBJECT && state != NONEMPTY_OBJECT) {
+            throw new IllegalStateException(state == DANGLING_NAME ? "Missing value for name" : "Not in an object");
+        }
+        stackSize--;
+        writeByte('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        beforeValue();
+        push(EMPTY_ARRAY);
+        writeByte('[');
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        int state = peekState();
+        if (state != EMPTY_ARRAY && state != NONEMPTY_ARRAY) {
+            throw new IllegalStateException("Not in an array");
+        }
+        stackSize--;
+        writeByte(']');
+        return this;
+    }
+
+    /**
+     * Writes the name of the next value in the current object
+     */
+    public JsonWriter name(String name) throws IOException {
+        if (name == null) {
+            throw new NullPointerException("name cannot be null");
+        }
+        int state = peekState();
+        if (state == NONEMPTY_OBJECT) {
+            writeByte(',');
+        } else if (state != EMPTY_OBJECT) {
+            throw new IllegalStateException("Not expecting a name");
+        }
+        stack[stackSize - 1] = DANGLING_NAME;
+        writeQuoted(name);
+        writeByte(':');
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeQuoted(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    public JsonWriter value(double value) throws IOException {
+        beforeValue();
+        writeAscii(Double.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        writeBytes(value ? TRUE : FALSE);
+        return this;
+    }
+
+    public JsonWriter value(Number value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            writeLong(value.longValue());
+        } else {
+            writeAscii(value.toString());
+        }
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beforeValue();
+        writeBytes(NULL);
+        return this;
+    }
+
+    /**
+     * Writes a tree of {@link Map}, {@link Collection}, {@link Number}, {@link String}, {@link Boolean} and <tt>null</tt> values
+     */
+    public JsonWriter value(Object value) throws IOException {
+        if (value instanceof Map) {
+            beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                name((String) entry.getKey());
+                value(entry.getValue());
+            }
+            endObject();
+        } else if (value instanceof Collection) {
+            beginArray();
+            for (Object element : (Collection<?>) value) {
+                value(element);
+            }
+            endArray();
+        } else if (value instanceof Number) {
+            value((Number) value);
+        } else if (value instanceof String) {
+            value((String) value);
+        } else if (value instanceof Boolean) {
+            value(((Boolean) value).booleanValue());
+        } else if (value == null) {
+            nullValue();
+        } else {
+            throw new IllegalArgumentException("Unsupported value: " + value);
+        }
+        return this;
+    }
+
+    /**
+     * Writes the buffered bytes to the stream and flushes it
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * Flushes and closes the stream, failing if the document is incomplete
+     */
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        out.close();
+        if (stackSize > 1 || peekState() != NONEMPTY_DOCUMENT) {
+            throw new IOException("Incomplete document");
+        }
+    }
+
+    private void beforeValue() throws IOException {
+        int state = peekState();
+        switch (state) {
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                break;
+            case NONEMPTY_DOCUMENT:
+                // separate further top level values with a new line
+                writeByte('\n');
+                break;
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                break;
+            case NONEMPTY_ARRAY:
+                writeByte(',');
+                break;
+            case DANGLING_NAME:
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                break;
+            default:
+                throw new IllegalStateException("Expecting a name but was given a value");
+        }
+    }
+
+    private int peekState() {
+        return stack[stackSize - 1];
+    }
+
+    private void push(int state) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = state;
+    }
+
+    private void writeQuoted(String value) throws IOException {
+        byte[] buf = buffer;
+        // 6 bytes is the longest encoding of a single char
+        int limit = buf.length - 6;
+        int c = count;
+        if (c > limit) {
+            flushBuffer();
+            c = 0;
+        }
+        buf[c++] = '"';
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (c > limit) {
+                count = c;
+                flushBuffer();
+                c = 0;
+            }
+            char ch = value.charAt(i);
+            if (ch < 0x80) {
+                byte escape = ESCAPES[ch];
+                if (escape == 0) {
+                    buf[c++] = (byte) ch;
+                } else if (escape == UNICODE_ESCAPE) {
+                    c = writeUnicodeEscape(buf, c, ch);
+                } else {
+                    buf[c++] = '\\';
+                    buf[c++] = escape;
+                }
+            } else if (isUnicodeEscaped(ch)) {
+                c = writeUnicodeEscape(buf, c, ch);
+            } else if (ch < 0x800) {
+                buf[c++] = (byte) (0xC0 | (ch >> 6));
+                buf[c++] = (byte) (0x80 | (ch & 0x3F));
+            } else if (Character.isHighSurrogate(ch) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(ch, value.charAt(++i));
+                buf[c++] = (byte) (0xF0 | (codePoint >> 18));
+                buf[c++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buf[c++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buf[c++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(ch)) {
+                // unpaired surrogates are replaced as the UTF-8 charset does
+                buf[c++] = '?';
+            } else {
+                buf[c++] = (byte) (0xE0 | (ch >> 12));
+                buf[c++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+                buf[c++] = (byte) (0x80 | (ch & 0x3F));
+            }
+        }
+        if (c == buf.length) {
+            count = c;
+            flushBuffer();
+            c = 0;
+        }
+        buf[c++] = '"';
+        count = c;
+    }
+
+    private static int writeUnicodeEscape(byte[] buf, int c, char ch) {
+        buf[c++] = '\\';
+        buf[c++] = 'u';
+        buf[c++] = HEX_DIGITS[(ch >> 12) & 0xF];
+        buf[c++] = HEX_DIGITS[(ch >> 8) & 0xF];
+        buf[c++] = HEX_DIGITS[(ch >> 4) & 0xF];
+        buf[c++] = HEX_DIGITS[ch & 0xF];
+        return c;
+    }
+
+    /**
+     * Returns true for the control and formatting characters above ASCII which are written as <tt>\\u</tt> escapes
+     */
+    private static boolean isUnicodeEscaped(char c) {
+        return (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100');
+    }
+
+    /**
+     * Writes the decimal digits of the value without creating a string
+     */
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        // 20 bytes holds the sign and digits of any other long
+        if (count > buffer.length - 20) {
+            flushBuffer();
+        }
+        if (value < 0) {
+            buffer[count++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int end = count + digits;
+        for (int i = end - 1; i >= count; i--) {
+            buffer[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        count = end;
+    }
+
+    private void writeAscii(String value) throws IOException {
+        int length = value.length();
+        if (count + length > buffer.length) {
+            flushBuffer();
+        }
+        if (length > buffer.length) {
+            out.write(value.getBytes("US-ASCII"));
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            buffer[count++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (count + bytes.length > buffer.length) {
+            flushBuffer();
+        }
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
 }
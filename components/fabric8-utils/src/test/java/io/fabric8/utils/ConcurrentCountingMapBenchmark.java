@@ -0,0 +1,107 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A simple benchmark of counting a skewed stream of keys from several threads with the exact and bounded
+ * {@link ConcurrentCountingMap} compared to sharing a {@link CountingMap} by synchronizing on it.
+ * <p/>
+ * Run with optional arguments for the number of increments per thread and the maximum number of threads.
+ */
+public class ConcurrentCountingMapBenchmark {
+
+    public static void main(String... args) throws Exception {
+        int increments = 2000000;
+        int maxThreads = 8;
+        if (args.length > 0) {
+            increments = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            maxThreads = Integer.parseInt(args[1]);
+        }
+        System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+        String[] stream = ConcurrentCountingMapTest.createZipfStream(new Random(42), 1 << 20, 100000);
+
+        for (int i = 0; i < 2; i++) {
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                final CountingMap countingMap = new CountingMap();
+                run("synchronized CountingMap", threads, increments, stream, new Counter() {
+                    @Override
+                    public void increment(String key) {
+                        synchronized (countingMap) {
+                            countingMap.increment(key);
+                        }
+                    }
+                });
+                final ConcurrentCountingMap exact = new ConcurrentCountingMap();
+                run("ConcurrentCountingMap", threads, increments, stream, new Counter() {
+                    @Override
+                    public void increment(String key) {
+                        exact.increment(key);
+                    }
+                });
+                final ConcurrentCountingMap bounded = new ConcurrentCountingMap(100, 0.001, 0.99);
+                run("ConcurrentCountingMap top 100", threads, increments, stream, new Counter() {
+                    @Override
+                    public void increment(String key) {
+                        bounded.increment(key);
+                    }
+                });
+            }
+        }
+    }
+
+    protected interface Counter {
+        void increment(String key);
+    }
+
+    protected static void run(String name, int threads, final int increments, final String[] stream, final Counter counter) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < threads; i++) {
+                final int offset = i * 7919;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        int mask = stream.length - 1;
+                        for (int j = 0; j < increments; j++) {
+                            counter.increment(stream[(offset + j) & mask]);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            long nanos = System.nanoTime() - start;
+            double perSecond = (double) threads * increments * 1000000000.0 / nanos;
+            System.out.println(String.format("%-30s %2d threads %12.0f increments/sec", name, threads, perSecond));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
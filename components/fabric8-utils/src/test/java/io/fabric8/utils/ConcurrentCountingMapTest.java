@@ -0,0 +1,165 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class ConcurrentCountingMapTest {
+    private static final int THREADS = 4;
+    private static final int KEYS = 100000;
+    private static final int EVENTS = 1000000;
+
+    @Test
+    public void testExactCountsUnderContention() throws Exception {
+        final ConcurrentCountingMap map = new ConcurrentCountingMap();
+        final int perThread = 100000;
+        runConcurrently(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                for (int i = 0; i < perThread; i++) {
+                    map.increment("key-" + (i % 1000));
+                }
+                return null;
+            }
+        });
+        assertEquals(THREADS * perThread, map.total());
+        assertEquals(1000, map.keySet().size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(THREADS * perThread / 1000, map.count("key-" + i));
+        }
+        map.add("key-0", -10);
+        assertEquals(THREADS * perThread / 1000 - 10, map.count("key-0"));
+        assertEquals("key-1", map.top(1).get(0).getKey());
+    }
+
+    @Test
+    public void testSketchErrorBounds() throws Exception {
+        double errorRate = 0.001;
+        double confidence = 0.99;
+        ConcurrentCountingMap map = new ConcurrentCountingMap(20, errorRate, confidence);
+        ConcurrentCountingMap.CountMinSketch sketch = new ConcurrentCountingMap.CountMinSketch(errorRate, confidence);
+        assertEquals(4096, sketch.getWidth());
+        assertEquals(5, sketch.getDepth());
+
+        String[] stream = createZipfStream(new Random(42), EVENTS, KEYS);
+        Map<String, Long> expected = new HashMap<>();
+        for (String key : stream) {
+            map.increment(key);
+            Long count = expected.get(key);
+            expected.put(key, count == null ? 1 : count + 1);
+        }
+        assertEquals(EVENTS, map.total());
+
+        // the sketch never under counts and only over counts by more than errorRate * total with probability 1 - confidence
+        long maxError = (long) (errorRate * map.total());
+        int outsideBound = 0;
+        for (Map.Entry<String, Long> entry : expected.entrySet()) {
+            long estimate = map.count(entry.getKey());
+            assertTrue(entry.getKey(), estimate >= entry.getValue());
+            if (estimate - entry.getValue() > maxError) {
+                outsideBound++;
+            }
+        }
+        assertTrue("Too many keys outside the error bound: " + outsideBound + " of " + expected.size(),
+                outsideBound <= (1 - confidence) * expected.size());
+
+        // the top keys of a skewed stream are found with counts within the error bound
+        ConcurrentCountingMap exact = new ConcurrentCountingMap();
+        for (Map.Entry<String, Long> entry : expected.entrySet()) {
+            exact.add(entry.getKey(), entry.getValue());
+        }
+        List<Map.Entry<String, Long>> exactTop = exact.top(10);
+        List<Map.Entry<String, Long>> top = map.top(10);
+        assertEquals(20, map.keySet().size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(exactTop.get(i).getKey(), top.get(i).getKey());
+            assertTrue(top.get(i).getValue() - exactTop.get(i).getValue() <= maxError);
+        }
+    }
+
+    @Test
+    public void testTopKUnderContention() throws Exception {
+        final ConcurrentCountingMap map = new ConcurrentCountingMap(10, 0.001, 0.99);
+        final String[] stream = createZipfStream(new Random(7), EVENTS, KEYS);
+        final int perThread = stream.length / THREADS;
+        final AtomicInteger nextThread = new AtomicInteger();
+        runConcurrently(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                int start = nextThread.getAndIncrement() * perThread;
+                for (int i = start; i < start + perThread; i++) {
+                    map.increment(stream[i]);
+                }
+                return null;
+            }
+        });
+        assertEquals(EVENTS, map.total());
+        List<Map.Entry<String, Long>> top = map.top(5);
+        for (int i = 0; i < 5; i++) {
+            assertEquals("key-" + i, top.get(i).getKey());
+        }
+    }
+
+    protected static void runConcurrently(Callable<Void> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates a stream of keys whose frequencies follow a Zipf distribution so that <tt>key-0</tt> is the most frequent
+     */
+    protected static String[] createZipfStream(Random random, int events, int keys) {
+        double[] cumulative = new double[keys];
+        double sum = 0;
+        for (int i = 0; i < keys; i++) {
+            sum += 1 / Math.pow(i + 1, 1.1);
+            cumulative[i] = sum;
+        }
+        String[] answer = new String[events];
+        for (int i = 0; i < events; i++) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            answer[i] = "key-" + (index < 0 ? -index - 1 : index);
+        }
+        return answer;
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Random;
+
+/**
+ * A simple benchmark of {@link DirectoryChecksums} showing the time of the first scan of a directory of many small
+ * files, a rescan when nothing has changed using the saved cache and calculating every checksum with
+ * {@link ChecksumUtils#checksum(java.io.InputStream)} as callers had to before.
+ * <p/>
+ * Run with an optional argument for the number of files.
+ */
+public class DirectoryChecksumsBenchmark {
+
+    public static void main(String... args) throws Exception {
+        int files = 100000;
+        if (args.length > 0) {
+            files = Integer.parseInt(args[0]);
+        }
+        File dir = new File("target/checksums-benchmark");
+        Files.recursiveDelete(dir);
+        Random random = new Random(42);
+        byte[] data = new byte[2048];
+        for (int i = 0; i < files; i++) {
+            File file = new File(dir, "dir-" + (i % 200) + "/file-" + i + ".txt");
+            file.getParentFile().mkdirs();
+            random.nextBytes(data);
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(data, 0, 100 + random.nextInt(data.length - 100));
+            }
+        }
+        System.out.println("Created " + files + " files, available processors: " + Runtime.getRuntime().availableProcessors());
+
+        long start = System.nanoTime();
+        for (int i = 0; i < files; i++) {
+            ChecksumUtils.checksum(new FileInputStream(new File(dir, "dir-" + (i % 200) + "/file-" + i + ".txt")));
+        }
+        report("checksum every file", start);
+
+        start = System.nanoTime();
+        DirectoryChecksums checksums = new DirectoryChecksums(dir);
+        checksums.scan();
+        checksums.save();
+        report("first scan and save", start);
+
+        for (int i = 0; i < 3; i++) {
+            start = System.nanoTime();
+            checksums = new DirectoryChecksums(dir);
+            checksums.scan();
+            report("no change rescan " + checksums.getChangedPaths().size() + " rehashed", start);
+        }
+        Files.recursiveDelete(dir);
+    }
+
+    protected static void report(String operation, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        System.out.println(String.format("%-35s %10.1f ms", operation, nanos / 1000000.0));
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class DirectoryChecksumsTest {
+    private String basedir = System.getProperty("basedir", ".");
+
+    @Test
+    public void testOnlyChangedFilesAreRehashed() throws Exception {
+        File dir = new File(basedir, "target/test-data/checksums");
+        Files.recursiveDelete(dir);
+        writeFile(new File(dir, "a.txt"), "The quick brown fox jumps over the lazy dog");
+        writeFile(new File(dir, "b/c.txt"), "cheese");
+        writeFile(new File(dir, "b/d/e.txt"), "");
+        byte[] large = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(large);
+        writeFile(new File(dir, "large.bin"), large);
+
+        DirectoryChecksums checksums = new DirectoryChecksums(dir, new File(dir, DirectoryChecksums.CACHE_FILE_NAME), 3);
+        Map<String, Long> answer = checksums.scan();
+        assertEquals(new TreeSet<>(Arrays.asList("a.txt", "b/c.txt", "b/d/e.txt", "large.bin")), new TreeSet<>(answer.keySet()));
+        assertEquals(0x414fa339L, answer.get("a.txt").longValue());
+        assertEquals(0L, answer.get("b/d/e.txt").longValue());
+        assertEquals(ChecksumUtils.checksum(new FileInputStream(new File(dir, "large.bin"))), answer.get("large.bin").longValue());
+        assertEquals(4, checksums.getChangedPaths().size());
+        checksums.save();
+        assertTrue(new File(dir, DirectoryChecksums.CACHE_FILE_NAME).isFile());
+
+        // a new instance should load the cache and not read anything
+        checksums = new DirectoryChecksums(dir);
+        assertEquals(answer, checksums.scan());
+        assertEquals(Collections.emptyList(), checksums.getChangedPaths());
+        assertEquals(Collections.emptyList(), checksums.getRemovedPaths());
+
+        File changed = new File(dir, "b/c.txt");
+        writeFile(changed, "more cheese");
+        assertTrue(new File(dir, "b/d/e.txt").delete());
+        answer = checksums.scan();
+        assertEquals(Arrays.asList("b/c.txt"), checksums.getChangedPaths());
+        assertEquals(Arrays.asList("b/d/e.txt"), checksums.getRemovedPaths());
+        assertEquals(ChecksumUtils.checksumFile(changed), answer.get("b/c.txt").longValue());
+        assertFalse(answer.containsKey("b/d/e.txt"));
+
+        // an unchanged size and contents with a new modified time is rehashed
+        assertTrue(changed.setLastModified(changed.lastModified() - 10000));
+        checksums.scan();
+        assertEquals(Arrays.asList("b/c.txt"), checksums.getChangedPaths());
+    }
+
+    @Test
+    public void testFilesDeletedBeforeHashingAreDropped() throws Exception {
+        File dir = new File(basedir, "target/test-data/checksums-deleted");
+        Files.recursiveDelete(dir);
+        writeFile(new File(dir, "a.txt"), "cheese");
+        writeFile(new File(dir, "b.txt"), "wine");
+        final File deleted = new File(dir, "b.txt");
+
+        DirectoryChecksums checksums = new DirectoryChecksums(dir, new File(dir, DirectoryChecksums.CACHE_FILE_NAME), 1) {
+            @Override
+            protected void checksumFiles(Path root, List<Entry> changed) throws IOException {
+                // delete the file between the walk and the hashing
+                assertTrue(deleted.delete());
+                super.checksumFiles(root, changed);
+            }
+        };
+        Map<String, Long> answer = checksums.scan();
+        assertEquals(Collections.singleton("a.txt"), answer.keySet());
+        assertEquals(Arrays.asList("a.txt"), checksums.getChangedPaths());
+    }
+
+    @Test
+    public void testCorruptCacheIsIgnored() throws Exception {
+        File dir = new File(basedir, "target/test-data/checksums-corrupt");
+        Files.recursiveDelete(dir);
+        writeFile(new File(dir, "a.txt"), "The quick brown fox jumps over the lazy dog");
+        writeFile(new File(dir, DirectoryChecksums.CACHE_FILE_NAME), "not a cache");
+
+        DirectoryChecksums checksums = new DirectoryChecksums(dir);
+        assertEquals(Collections.singletonMap("a.txt", 0x414fa339L), checksums.scan());
+        assertEquals(Arrays.asList("a.txt"), checksums.getChangedPaths());
+        checksums.save();
+
+        checksums = new DirectoryChecksums(dir);
+        checksums.scan();
+        assertEquals(Collections.emptyList(), checksums.getChangedPaths());
+        assertFalse(new File(dir, DirectoryChecksums.CACHE_FILE_NAME + ".tmp").exists());
+    }
+
+    protected static void writeFile(File file, String text) throws IOException {
+        writeFile(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected static void writeFile(File file, byte[] data) throws IOException {
+        file.getParentFile().mkdirs();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+    }
+}
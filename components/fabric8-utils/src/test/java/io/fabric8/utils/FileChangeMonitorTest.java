@@ -0,0 +1,205 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class FileChangeMonitorTest {
+    private static final int FILES = 200;
+    private static final long TIMEOUT = 20000;
+
+    private String basedir = System.getProperty("basedir", ".");
+    private FileChangeMonitor monitor;
+    private final Map<File, List<FileChangeMonitor.ChangeType>> changes = new HashMap<>();
+
+    @After
+    public void tearDown() {
+        if (monitor != null) {
+            monitor.close();
+        }
+    }
+
+    @Test
+    public void testWatchCoalescesChanges() throws Exception {
+        File root = createDirectory("watch");
+        monitor = new FileChangeMonitor(root).debounce(300);
+        startMonitor(root);
+        assertFalse(monitor.isPolling());
+        assertChanges(root);
+    }
+
+    @Test
+    public void testPollingWhenWatchesRunOut() throws Exception {
+        File root = createDirectory("polling");
+        final AtomicInteger watches = new AtomicInteger();
+        monitor = new FileChangeMonitor(root) {
+            @Override
+            protected WatchKey register(Path directory) throws IOException {
+                // the tree has 5 directories when we start so we run out when the new directories are created
+                if (watches.incrementAndGet() > 5) {
+                    throw new IOException("User limit of inotify watches reached");
+                }
+                return super.register(directory);
+            }
+        }.debounce(300).pollInterval(200);
+        startMonitor(root);
+        assertFalse(monitor.isPolling());
+        assertChanges(root);
+        assertTrue(monitor.isPolling());
+    }
+
+    @Test
+    public void testWatchReplacedDirectory() throws Exception {
+        File root = createDirectory("replaced");
+        monitor = new FileChangeMonitor(root).debounce(300);
+        startMonitor(root);
+        File before = new File(root, "d/e/before.txt");
+        writeFile(before, "before");
+        awaitChanges(1);
+
+        // recreate the directory within the debounce time then add a file once it has settled
+        synchronized (changes) {
+            changes.clear();
+        }
+        Files.recursiveDelete(new File(root, "d"));
+        new File(root, "d/e").mkdirs();
+        Thread.sleep(1000);
+        File after = new File(root, "d/e/after.txt");
+        writeFile(after, "after");
+        awaitChanges(2);
+        assertEquals(listOf(FileChangeMonitor.ChangeType.DELETED), changes.get(before));
+        assertEquals(listOf(FileChangeMonitor.ChangeType.CREATED), changes.get(after));
+        assertFalse(monitor.isPolling());
+    }
+
+    protected void startMonitor(File root) throws Exception {
+        // an existing file which is only touched and deleted
+        writeFile(new File(root, "a/existing.txt"), "existing");
+        new File(root, "b/c").mkdirs();
+        new File(root, "d").mkdirs();
+        monitor.addListener(new FileChangeMonitor.Listener() {
+            @Override
+            public void onChange(File file, FileChangeMonitor.ChangeType type) {
+                synchronized (changes) {
+                    List<FileChangeMonitor.ChangeType> list = changes.get(file);
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        changes.put(file, list);
+                    }
+                    list.add(type);
+                    changes.notifyAll();
+                }
+            }
+        });
+        monitor.start();
+    }
+
+    protected void assertChanges(File root) throws Exception {
+        // create files in a burst, including in new sub directories
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < FILES; i++) {
+            File file = new File(root, (i % 4 == 0 ? "new/dir-" + (i % 3) : "b/c") + "/file-" + i + ".txt");
+            writeFile(file, "first " + i);
+            files.add(file);
+        }
+        awaitChanges(FILES);
+        for (File file : files) {
+            assertEquals(file.getPath(), listOf(FileChangeMonitor.ChangeType.CREATED), changes.get(file));
+        }
+
+        // rewrite every file several times then rewrite the existing file with the same content
+        synchronized (changes) {
+            changes.clear();
+        }
+        for (File file : files) {
+            for (int j = 0; j < 5; j++) {
+                writeFile(file, "second " + file.getName() + " " + j);
+            }
+        }
+        File existing = new File(root, "a/existing.txt");
+        writeFile(existing, "existing");
+        awaitChanges(FILES);
+        for (File file : files) {
+            List<FileChangeMonitor.ChangeType> list = changes.get(file);
+            assertTrue(file.getPath() + " " + list, !list.isEmpty() && !list.contains(FileChangeMonitor.ChangeType.CREATED)
+                    && !list.contains(FileChangeMonitor.ChangeType.DELETED));
+        }
+
+        // delete files, including a whole directory
+        synchronized (changes) {
+            changes.clear();
+        }
+        Files.recursiveDelete(new File(root, "new"));
+        for (File file : files) {
+            file.delete();
+        }
+        existing.delete();
+        awaitChanges(FILES + 1);
+        for (File file : files) {
+            assertEquals(file.getPath(), listOf(FileChangeMonitor.ChangeType.DELETED), changes.get(file));
+        }
+        assertEquals(listOf(FileChangeMonitor.ChangeType.DELETED), changes.get(existing));
+    }
+
+    protected void awaitChanges(int expectedFiles) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        synchronized (changes) {
+            while (changes.size() < expectedFiles && System.currentTimeMillis() < end) {
+                changes.wait(100);
+            }
+        }
+        // lets wait a little longer for any extra events
+        Thread.sleep(1000);
+        synchronized (changes) {
+            assertEquals("files changed " + changes.keySet(), expectedFiles, changes.size());
+        }
+    }
+
+    protected File createDirectory(String name) throws IOException {
+        File root = new File(basedir, "target/test-data/monitor/" + name);
+        Files.recursiveDelete(root);
+        root.mkdirs();
+        return root;
+    }
+
+    protected static void writeFile(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.writeToFile(file, content.getBytes("UTF-8"));
+    }
+
+    protected static List<FileChangeMonitor.ChangeType> listOf(FileChangeMonitor.ChangeType type) {
+        List<FileChangeMonitor.ChangeType> answer = new ArrayList<>();
+        answer.add(type);
+        return answer;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * A simple benchmark of copying a large file and a tree of small files with {@link FileCopier} compared to the
+ * stream copy which {@link Files#copy(File, File)} used to do.
+ * <p/>
+ * Run with optional arguments for the size of the large file in MB and the number of small files.
+ */
+public class FileCopierBenchmark {
+
+    public static void main(String... args) throws Exception {
+        int megabytes = 256;
+        int files = 10000;
+        if (args.length > 0) {
+            megabytes = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            files = Integer.parseInt(args[1]);
+        }
+        File root = new File("target/copier-benchmark");
+        Files.recursiveDelete(root);
+        root.mkdirs();
+        System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+
+        File large = new File(root, "large.bin");
+        byte[] block = new byte[1024 * 1024];
+        try (RandomAccessFile file = new RandomAccessFile(large, "rw")) {
+            for (int i = 0; i < megabytes; i++) {
+                block[i % block.length] = (byte) i;
+                file.write(block);
+            }
+        }
+        for (int i = 0; i < 2; i++) {
+            File target = new File(root, "large-stream.bin");
+            long start = System.nanoTime();
+            streamCopy(large, target);
+            report("stream copy " + megabytes + "MB", 1, start);
+            target.delete();
+
+            target = new File(root, "large-copier.bin");
+            start = System.nanoTime();
+            new FileCopier().copy(large, target);
+            report("FileCopier " + megabytes + "MB", 1, start);
+            target.delete();
+        }
+
+        File source = new File(root, "tree");
+        for (int i = 0; i < files; i++) {
+            File file = new File(source, "group-" + (i % 100) + "/artifact-" + i + ".jar");
+            file.getParentFile().mkdirs();
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(block, 0, 1024 + (i % 16) * 512);
+            }
+        }
+        for (int i = 0; i < 2; i++) {
+            File target = new File(root, "tree-stream");
+            long start = System.nanoTime();
+            streamCopy(source, target);
+            report("stream copy tree", files, start);
+            Files.recursiveDelete(target);
+
+            for (int threads : new int[]{1, 4}) {
+                target = new File(root, "tree-copier-" + threads);
+                FileCopier copier = new FileCopier().threads(threads).skipUnchanged(true);
+                start = System.nanoTime();
+                copier.copy(source, target);
+                report("FileCopier " + threads + " threads", copier.getCopiedFiles(), start);
+
+                start = System.nanoTime();
+                copier.copy(source, target);
+                report("FileCopier unchanged", copier.getSkippedFiles(), start);
+                Files.recursiveDelete(target);
+            }
+
+            target = new File(root, "tree-links");
+            FileCopier copier = new FileCopier().hardLinks(true);
+            start = System.nanoTime();
+            copier.copy(source, target);
+            report("FileCopier hard links", copier.getLinkedFiles(), start);
+            Files.recursiveDelete(target);
+        }
+        Files.recursiveDelete(root);
+    }
+
+    protected static void streamCopy(File source, File target) throws IOException {
+        if (source.isDirectory()) {
+            target.mkdirs();
+            File[] children = source.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    streamCopy(child, new File(target, child.getName()));
+                }
+            }
+        } else {
+            Files.copy(new FileInputStream(source), new FileOutputStream(target));
+        }
+    }
+
+    protected static void report(String operation, int count, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        System.out.println(String.format("%-30s %8d files %10.1f ms", operation, count, nanos / 1000000.0));
+    }
+}
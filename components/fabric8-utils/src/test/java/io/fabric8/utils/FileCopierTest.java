@@ -0,0 +1,159 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class FileCopierTest {
+    private String basedir = System.getProperty("basedir", ".");
+
+    @Test
+    public void testCopyTree() throws Exception {
+        File source = createTree("tree-source");
+        File target = new File(basedir, "target/test-data/copier/tree-target");
+        Files.recursiveDelete(target);
+
+        FileCopier copier = new FileCopier().threads(4).skipUnchanged(true);
+        copier.copy(source, target);
+        assertEquals(20, copier.getCopiedFiles());
+        assertTreeEquals(source, target);
+        File file = new File(target, "dir-3/file-13.txt");
+        assertEquals(new File(source, "dir-3/file-13.txt").lastModified(), file.lastModified());
+
+        // nothing has changed so all the files are skipped
+        copier.copy(source, target);
+        assertEquals(0, copier.getCopiedFiles());
+        assertEquals(20, copier.getSkippedFiles());
+
+        File changed = new File(source, "dir-1/file-11.txt");
+        Files.writeToFile(changed, "changed".getBytes("UTF-8"));
+        changed.setLastModified(changed.lastModified() + 2000);
+        copier.copy(source, target);
+        assertEquals(1, copier.getCopiedFiles());
+        assertEquals(19, copier.getSkippedFiles());
+        assertTreeEquals(source, target);
+
+        // the old Files.copy method copies everything
+        File legacy = new File(basedir, "target/test-data/copier/tree-legacy");
+        Files.recursiveDelete(legacy);
+        Files.copy(source, legacy);
+        assertTreeEquals(source, legacy);
+    }
+
+    @Test
+    public void testHardLinks() throws Exception {
+        File source = createTree("links-source");
+        File target = new File(basedir, "target/test-data/copier/links-target");
+        Files.recursiveDelete(target);
+
+        FileCopier copier = new FileCopier().threads(2).hardLinks(true);
+        copier.copy(source, target);
+        assertEquals(20, copier.getLinkedFiles() + copier.getCopiedFiles());
+        assertTreeEquals(source, target);
+        if (copier.getLinkedFiles() > 0) {
+            assertTrue(java.nio.file.Files.isSameFile(new File(source, "dir-0/file-0.txt").toPath(), new File(target, "dir-0/file-0.txt").toPath()));
+        }
+    }
+
+    @Test
+    public void testCopyOverExistingHardLink() throws Exception {
+        File source = createTree("relink-source");
+        File target = new File(basedir, "target/test-data/copier/relink-target");
+        Files.recursiveDelete(target);
+        File sourceFile = new File(source, "dir-0/file-0.txt");
+        File targetFile = new File(target, "dir-0/file-0.txt");
+        targetFile.getParentFile().mkdirs();
+        try {
+            java.nio.file.Files.createLink(targetFile.toPath(), sourceFile.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Assume.assumeNoException(e);
+        }
+
+        // copying without hard links must not truncate the source through the existing link
+        FileCopier copier = new FileCopier().threads(2);
+        copier.copy(source, target);
+        assertEquals(19, copier.getCopiedFiles());
+        assertEquals(1, copier.getSkippedFiles());
+        assertEquals("content of file 0", new String(Files.readBytes(sourceFile), "UTF-8"));
+        assertTreeEquals(source, target);
+
+        // copying a file onto itself leaves it alone
+        copier.copy(sourceFile, sourceFile);
+        assertEquals("content of file 0", new String(Files.readBytes(sourceFile), "UTF-8"));
+    }
+
+    @Test
+    public void testCopyLargeFile() throws Exception {
+        File source = new File(basedir, "target/test-data/copier/large.bin");
+        File target = new File(basedir, "target/test-data/copier/large-copy/large.bin");
+        Files.recursiveDelete(target.getParentFile());
+        byte[] data = new byte[5 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(data);
+        source.getParentFile().mkdirs();
+        Files.writeToFile(source, data);
+
+        FileCopier copier = new FileCopier();
+        copier.copy(source, target);
+        assertEquals(1, copier.getCopiedFiles());
+        assertArrayEquals(data, Files.readBytes(target));
+
+        // an existing, longer target is truncated
+        Files.writeToFile(target, Arrays.copyOf(data, data.length * 2));
+        copier.copy(source, target);
+        assertArrayEquals(data, Files.readBytes(target));
+        source.delete();
+    }
+
+    protected File createTree(String name) throws IOException {
+        File root = new File(basedir, "target/test-data/copier/" + name);
+        Files.recursiveDelete(root);
+        for (int i = 0; i < 20; i++) {
+            File file = new File(root, "dir-" + (i % 5) + "/file-" + i + ".txt");
+            file.getParentFile().mkdirs();
+            Files.writeToFile(file, ("content of file " + i).getBytes("UTF-8"));
+        }
+        return root;
+    }
+
+    protected static void assertTreeEquals(File expected, File actual) throws IOException {
+        assertTrue("Missing " + actual, actual.exists());
+        assertEquals(actual.getPath(), expected.isDirectory(), actual.isDirectory());
+        if (expected.isDirectory()) {
+            String[] names = expected.list();
+            Arrays.sort(names);
+            String[] actualNames = actual.list();
+            Arrays.sort(actualNames);
+            assertArrayEquals(actual.getPath(), names, actualNames);
+            for (String name : names) {
+                assertTreeEquals(new File(expected, name), new File(actual, name));
+            }
+        } else {
+            assertArrayEquals(actual.getPath(), Files.readBytes(expected), Files.readBytes(actual));
+        }
+    }
+}
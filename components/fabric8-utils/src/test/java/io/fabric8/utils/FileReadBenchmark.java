@@ -0,0 +1,143 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A simple benchmark of the time and heap allocation for reading a large file with the exact size
+ * {@link Files#readBytes(File)}, a mapped buffer and a {@link LineIterator} compared to growing buffers and
+ * line lists as {@link Files#readBytes(File)} and {@link Files#readLines(File)} used to do.
+ * <p/>
+ * Run with an optional argument for the file size in MB; reading 1GB into the heap the old way needs
+ * around <tt>-Xmx4g</tt>.
+ */
+public class FileReadBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String... args) throws Exception {
+        int megabytes = 1024;
+        if (args.length > 0) {
+            megabytes = Integer.parseInt(args[0]);
+        }
+        File file = new File("target/read-benchmark/large.txt");
+        file.getParentFile().mkdirs();
+        long size = (long) megabytes * 1024 * 1024;
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            long written = 0;
+            for (int i = 0; written < size; i++) {
+                String line = "line " + i + " of the benchmark file with some text to make it a typical length";
+                writer.write(line);
+                writer.write('\n');
+                written += line.length() + 1;
+            }
+        }
+        System.out.println("Created " + file.length() + " byte file");
+
+        for (int i = 0; i < 2; i++) {
+            long start = System.nanoTime();
+            long allocated = allocatedBytes();
+            try {
+                long bytes = readBytesWithGrowingBuffer(file).length;
+                report("growing buffer readBytes", bytes, start, allocated);
+            } catch (OutOfMemoryError e) {
+                System.out.println(String.format("%-30s %s", "growing buffer readBytes", e));
+            }
+
+            start = System.nanoTime();
+            allocated = allocatedBytes();
+            long bytes = Files.readBytes(file).length;
+            report("exact size readBytes", bytes, start, allocated);
+
+            start = System.nanoTime();
+            allocated = allocatedBytes();
+            MappedByteBuffer buffer = Files.map(file);
+            long newLines = 0;
+            for (int j = 0, limit = buffer.limit(); j < limit; j++) {
+                if (buffer.get(j) == '\n') {
+                    newLines++;
+                }
+            }
+            report("mapped scan", newLines, start, allocated);
+            buffer = null;
+
+            start = System.nanoTime();
+            allocated = allocatedBytes();
+            try {
+                long lines = readLinesWithBufferedReader(file).size();
+                report("BufferedReader line list", lines, start, allocated);
+            } catch (OutOfMemoryError e) {
+                System.out.println(String.format("%-30s %s", "BufferedReader line list", e));
+            }
+
+            start = System.nanoTime();
+            allocated = allocatedBytes();
+            long lines = 0;
+            try (LineIterator iter = Files.lineIterator(file)) {
+                while (iter.hasNext()) {
+                    iter.next();
+                    lines++;
+                }
+            }
+            report("LineIterator", lines, start, allocated);
+        }
+        file.delete();
+    }
+
+    protected static byte[] readBytesWithGrowingBuffer(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                bos.write(buffer, 0, count);
+            }
+            return bos.toByteArray();
+        }
+    }
+
+    protected static List<String> readLinesWithBufferedReader(File file) throws IOException {
+        List<String> answer = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                answer.add(line);
+            }
+        }
+        return answer;
+    }
+
+    protected static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    protected static void report(String operation, long count, long startNanos, long startAllocated) {
+        long nanos = System.nanoTime() - startNanos;
+        long allocated = allocatedBytes() - startAllocated;
+        System.out.println(String.format("%-30s %12d %10.1f ms %10.1f MB allocated", operation, count, nanos / 1000000.0, allocated / (1024.0 * 1024)));
+    }
+}
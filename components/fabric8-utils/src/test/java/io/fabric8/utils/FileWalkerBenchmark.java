@@ -0,0 +1,98 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A simple benchmark of walking a tree of files with {@link FileWalker} sequentially, in parallel and as a lazy
+ * stream compared to recursing with {@link File#listFiles()} as {@link Files#findRecursive(File, Filter)} used to do.
+ * <p/>
+ * Run with optional arguments for the number of files and the number of iterations.
+ */
+public class FileWalkerBenchmark {
+
+    public static void main(String... args) throws Exception {
+        int files = 200000;
+        int iterations = 3;
+        if (args.length > 0) {
+            files = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            iterations = Integer.parseInt(args[1]);
+        }
+        File root = new File("target/walker-benchmark");
+        Files.recursiveDelete(root);
+        for (int i = 0; i < files; i++) {
+            File file = new File(root, "module-" + (i % 50) + "/src/package-" + (i % 1000) + "/File" + i + ".java");
+            file.getParentFile().mkdirs();
+            new FileOutputStream(file).close();
+        }
+        System.out.println("Created " + files + " files, available processors: " + Runtime.getRuntime().availableProcessors());
+
+        Filter<File> filter = new Filter<File>() {
+            @Override
+            public boolean matches(File file) {
+                return file.getName().endsWith("7.java");
+            }
+        };
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            List<File> found = new ArrayList<>();
+            findRecursiveWithListFiles(root, filter, found);
+            report("File.listFiles recursion", found.size(), start);
+
+            start = System.nanoTime();
+            found = new FileWalker(root).filter(filter).list();
+            report("FileWalker", found.size(), start);
+
+            start = System.nanoTime();
+            found = new FileWalker(root).filter(filter).parallel(ForkJoinPool.commonPool()).list();
+            report("FileWalker parallel", found.size(), start);
+
+            start = System.nanoTime();
+            long count = new FileWalker(root).filter(filter).stream().count();
+            report("FileWalker stream", (int) count, start);
+        }
+        long start = System.nanoTime();
+        int deleted = Files.recursiveDelete(root);
+        report("recursiveDelete", deleted, start);
+    }
+
+    protected static void findRecursiveWithListFiles(File file, Filter<File> filter, Collection<File> collection) {
+        if (filter.matches(file)) {
+            collection.add(file);
+        }
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files != null) {
+                for (File child : files) {
+                    findRecursiveWithListFiles(child, filter, collection);
+                }
+            }
+        }
+    }
+
+    protected static void report(String operation, int count, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        System.out.println(String.format("%-30s %8d files %10.1f ms", operation, count, nanos / 1000000.0));
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class FileWalkerTest {
+    private String basedir = System.getProperty("basedir", ".");
+
+    @Test
+    public void testWalkModes() throws Exception {
+        File root = createTree("walk");
+        Set<File> expected = new HashSet<>();
+        for (String name : new String[]{"", "a.txt", "b", "b/c.txt", "b/target", "b/target/d.txt", "e", "e/f", "e/f/g.xml"}) {
+            expected.add(name.isEmpty() ? root : new File(root, name));
+        }
+
+        assertEquals(expected, new HashSet<>(new FileWalker(root).list()));
+        assertEquals(expected, new HashSet<>(new FileWalker(root).parallel(ForkJoinPool.commonPool()).list()));
+        try (Stream<File> stream = new FileWalker(root).stream()) {
+            assertEquals(expected, stream.collect(Collectors.toSet()));
+        }
+
+        Filter<File> notTarget = new Filter<File>() {
+            @Override
+            public boolean matches(File file) {
+                return !file.getName().equals("target");
+            }
+        };
+        Filter<File> isTextFile = new Filter<File>() {
+            @Override
+            public boolean matches(File file) {
+                return file.getName().endsWith(".txt");
+            }
+        };
+        Set<File> texts = new HashSet<>();
+        texts.add(new File(root, "a.txt"));
+        texts.add(new File(root, "b/c.txt"));
+        assertEquals(texts, new HashSet<>(new FileWalker(root).filter(isTextFile).directoryFilter(notTarget).list()));
+        assertEquals(texts, new HashSet<>(new FileWalker(root).filter(isTextFile).directoryFilter(notTarget).parallel(ForkJoinPool.commonPool()).list()));
+        try (Stream<File> stream = new FileWalker(root).filter(isTextFile).directoryFilter(notTarget).stream()) {
+            assertEquals(texts, stream.collect(Collectors.toSet()));
+        }
+        // without pruning the filter alone does not stop the walk
+        assertEquals(3, new FileWalker(root).filter(isTextFile).list().size());
+
+        // the iterator can be abandoned part way through
+        try (FileWalker.FileIterator iter = new FileWalker(root).iterator()) {
+            assertEquals(root, iter.next());
+            assertTrue(iter.hasNext());
+        }
+
+        assertTrue(new FileWalker(new File(root, "does-not-exist")).list().isEmpty());
+    }
+
+    @Test
+    public void testFilesDelegates() throws Exception {
+        File root = createTree("delegates");
+        Set<File> listed = Files.recursiveList(root, new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return !name.equals("target");
+            }
+        });
+        assertEquals(7, listed.size());
+        assertTrue(listed.contains(root));
+        assertFalse(listed.contains(new File(root, "b/target/d.txt")));
+
+        Set<File> found = Files.findRecursive(root, new Filter<File>() {
+            @Override
+            public boolean matches(File file) {
+                return file.getName().endsWith(".xml");
+            }
+        });
+        assertEquals(1, found.size());
+        assertTrue(found.contains(new File(root, "e/f/g.xml")));
+
+        assertEquals(9, Files.recursiveDelete(root));
+        assertFalse(root.exists());
+        assertEquals(0, Files.recursiveDelete(root));
+    }
+
+    @Test
+    public void testDeleteDoesNotFollowLinks() throws Exception {
+        File root = createTree("delete-links");
+        File outside = createTree("delete-links-outside");
+        try {
+            java.nio.file.Files.createSymbolicLink(new File(root, "link").toPath(), outside.toPath().toAbsolutePath());
+        } catch (UnsupportedOperationException | IOException e) {
+            // symbolic links are not supported on this platform
+            return;
+        }
+        assertEquals(10, new FileWalker(root).parallel(ForkJoinPool.commonPool()).delete());
+        assertFalse(root.exists());
+        assertTrue(new File(outside, "e/f/g.xml").exists());
+    }
+
+    protected File createTree(String name) throws IOException {
+        File root = new File(basedir, "target/test-data/walker/" + name);
+        Files.recursiveDelete(root);
+        for (String path : new String[]{"a.txt", "b/c.txt", "b/target/d.txt", "e/f/g.xml"}) {
+            File file = new File(root, path);
+            file.getParentFile().mkdirs();
+            Files.writeToFile(file, path.getBytes("UTF-8"));
+        }
+        return root;
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A simple benchmark of matching strings against a large list of patterns with the compiled
+ * {@link StringPatternFilter} and {@link ContainsAnyStringFilter} compared to testing a filter per pattern
+ * as {@link Filters#createStringFilters(Iterable)} and {@link Filters#containsAnyString(String...)} used to do.
+ * <p/>
+ * Run with optional arguments for the number of patterns and the number of checks.
+ */
+public class FiltersBenchmark {
+
+    public static void main(String... args) throws Exception {
+        int patternCount = 1000;
+        int checks = 1000000;
+        if (args.length > 0) {
+            patternCount = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            checks = Integer.parseInt(args[1]);
+        }
+        Random random = new Random(42);
+        List<String> patterns = new ArrayList<>(patternCount);
+        List<String> names = new ArrayList<>(patternCount);
+        for (int i = 0; i < patternCount; i++) {
+            String name = "org.example.module" + random.nextInt(patternCount) + ".component" + i;
+            names.add(name);
+            patterns.add(i % 2 == 0 ? name + ".*" : name + ".Main");
+        }
+        String[] candidates = new String[4096];
+        for (int i = 0; i < candidates.length; i++) {
+            String name = names.get(random.nextInt(names.size()));
+            candidates[i] = random.nextBoolean() ? name + ".Main" : "io.other." + name.substring(12) + ".Service";
+        }
+
+        List<Filter<String>> patternFilters = new ArrayList<>();
+        List<Filter<String>> containsFilters = new ArrayList<>();
+        for (String pattern : patterns) {
+            patternFilters.add(Filters.createStringFilter(pattern));
+            containsFilters.add(Filters.containsString(pattern.replace("*", "")));
+        }
+        String[] textValues = new String[patternCount];
+        for (int i = 0; i < patternCount; i++) {
+            textValues[i] = patterns.get(i).replace("*", "");
+        }
+
+        for (int i = 0; i < 3; i++) {
+            run("filter per pattern", Filters.or(patternFilters), candidates, checks);
+            run("StringPatternFilter", Filters.createStringFilters(patterns), candidates, checks);
+            run("contains filter per value", new CompositeFilter<>(containsFilters), candidates, checks);
+            run("ContainsAnyStringFilter", Filters.containsAnyString(textValues), candidates, checks);
+        }
+    }
+
+    protected static void run(String name, Filter<String> filter, String[] candidates, int checks) {
+        long start = System.nanoTime();
+        int matches = 0;
+        for (int i = 0; i < checks; i++) {
+            if (filter.matches(candidates[i & (candidates.length - 1)])) {
+                matches++;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.println(String.format("%-30s %8d matches %12.0f checks/sec", name, matches, checks * 1000000000.0 / nanos));
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class FiltersTest {
+    private static final String ALPHABET = "ab.*";
+
+    @Test
+    public void testStringFilters() throws Exception {
+        Filter<String> filter = Filters.createStringFilters(Arrays.asList("io.fabric8.Foo", "org.apache.*", "com.acme*", "!*"));
+        assertTrue(filter.matches("io.fabric8.Foo"));
+        assertFalse(filter.matches("io.fabric8.FooBar"));
+        assertTrue(filter.matches("org.apache."));
+        assertTrue(filter.matches("org.apache.camel.Route"));
+        assertFalse(filter.matches("org.apache"));
+        assertTrue(filter.matches("com.acme"));
+        assertFalse(filter.matches("com.acm"));
+        assertFalse(filter.matches(null));
+
+        assertTrue(Filters.createStringFilters(Arrays.asList("foo", "*bar")).matches("anything"));
+        assertTrue(Filters.createStringFilters(Arrays.asList("foo", "!bar")).matches("anything"));
+        assertFalse(Filters.createStringFilters(Arrays.asList("foo", "!bar")).matches("bar"));
+        assertFalse(Filters.createStringFilters(new ArrayList<String>()).matches("foo"));
+    }
+
+    @Test
+    public void testContainsAnyString() throws Exception {
+        Filter<String> filter = Filters.containsAnyString("he", "she", "his", "hers");
+        assertTrue(filter.matches("ushers"));
+        assertTrue(filter.matches("ahishers"));
+        assertTrue(filter.matches("sshe"));
+        assertFalse(filter.matches("hxsxe"));
+        assertFalse(filter.matches(""));
+        assertFalse(filter.matches(null));
+        assertTrue(Filters.containsAnyString("abc", "").matches(""));
+    }
+
+    @Test
+    public void testCompiledFiltersMatchPatternFilters() throws Exception {
+        Random random = new Random(1234);
+        for (int run = 0; run < 200; run++) {
+            List<String> patterns = new ArrayList<>();
+            int count = 1 + random.nextInt(20);
+            for (int i = 0; i < count; i++) {
+                String pattern = randomString(random, 5);
+                if (random.nextInt(10) == 0) {
+                    pattern = "!" + pattern;
+                }
+                patterns.add(pattern);
+            }
+            List<Filter<String>> filters = new ArrayList<>();
+            for (String pattern : patterns) {
+                filters.add(Filters.createStringFilter(pattern));
+            }
+            Filter<String> expected = Filters.or(filters);
+            Filter<String> actual = Filters.createStringFilters(patterns);
+
+            String[] textValues = patterns.toArray(new String[patterns.size()]);
+            Filter<String> expectedContains = new CompositeFilter<>(containsFilters(textValues));
+            Filter<String> actualContains = Filters.containsAnyString(textValues);
+
+            for (int i = 0; i < 200; i++) {
+                String value = randomString(random, 10);
+                assertEquals(patterns + " matches " + value, expected.matches(value), actual.matches(value));
+                assertEquals(patterns + " contains " + value, expectedContains.matches(value), actualContains.matches(value));
+            }
+        }
+    }
+
+    protected static List<Filter<String>> containsFilters(String... textValues) {
+        List<Filter<String>> answer = new ArrayList<>();
+        for (String text : textValues) {
+            answer.add(Filters.containsString(text));
+        }
+        return answer;
+    }
+
+    protected static String randomString(Random random, int maxLength) {
+        int length = random.nextInt(maxLength + 1);
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return builder.toString();
+    }
+}
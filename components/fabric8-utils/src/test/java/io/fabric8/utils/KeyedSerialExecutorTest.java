@@ -0,0 +1,226 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class KeyedSerialExecutorTest {
+
+    @Test
+    public void testHundredThousandKeysRunInOrder() throws Exception {
+        final int keys = 100000;
+        final int tasksPerKey = 5;
+        final int producers = 4;
+        final KeyedSerialExecutor<Integer> executor = new KeyedSerialExecutor<>("KeyedSerialExecutorTest", 8, false);
+        final AtomicIntegerArray lastSeen = new AtomicIntegerArray(keys);
+        final AtomicIntegerArray running = new AtomicIntegerArray(keys);
+        final AtomicInteger outOfOrder = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    // each key is owned by one producer which interleaves the tasks of its keys
+                    for (int sequence = 1; sequence <= tasksPerKey; sequence++) {
+                        for (int key = producer; key < keys; key += producers) {
+                            final int k = key;
+                            final int s = sequence;
+                            executor.execute(key, new Runnable() {
+                                @Override
+                                public void run() {
+                                    if (running.getAndIncrement(k) != 0) {
+                                        overlaps.incrementAndGet();
+                                    }
+                                    if (lastSeen.get(k) != s - 1) {
+                                        outOfOrder.incrementAndGet();
+                                    }
+                                    lastSeen.set(k, s);
+                                    running.decrementAndGet(k);
+                                }
+                            });
+                        }
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+        assertEquals("tasks for the same key run concurrently", 0, overlaps.get());
+        assertEquals("tasks run out of order", 0, outOfOrder.get());
+        for (int key = 0; key < keys; key++) {
+            assertEquals("last task of key " + key, tasksPerKey, lastSeen.get(key));
+        }
+        assertEquals(keys * tasksPerKey, executor.getExecutedCount());
+        assertEquals("key state should be reclaimed", 0, executor.getActiveKeyCount());
+        assertEquals(0, executor.getQueueSize());
+    }
+
+    @Test
+    public void testCoalescingReplacesPendingTask() throws Exception {
+        Queue<Runnable> drains = new ArrayDeque<>();
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(new SerialExecutorServiceTest.QueueingExecutor(drains), 1, true);
+        List<String> order = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            executor.execute("a", record(order, "a" + i));
+        }
+        executor.execute("b", record(order, "b1"));
+        assertEquals(2, executor.getActiveKeyCount());
+        assertEquals(2, executor.getQueueSize());
+
+        runAll(drains);
+        assertEquals("[a3, b1]", order.toString());
+        assertEquals(2, executor.getCoalescedCount());
+        assertEquals(0, executor.getActiveKeyCount());
+    }
+
+    @Test
+    public void testCoalescingKeepsRunningTask() throws Exception {
+        Queue<Runnable> drains = new ArrayDeque<>();
+        final KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(new SerialExecutorServiceTest.QueueingExecutor(drains), 1, true);
+        final List<String> order = new ArrayList<>();
+        executor.execute("a", new Runnable() {
+            @Override
+            public void run() {
+                order.add("a1");
+                // the running task cannot be replaced but the pending one can
+                executor.execute("a", record(order, "a2"));
+                executor.execute("a", record(order, "a3"));
+            }
+        });
+        runAll(drains);
+        assertEquals("[a1, a3]", order.toString());
+        assertEquals(1, executor.getCoalescedCount());
+    }
+
+    @Test
+    public void testLongQueueYieldsToOtherKeys() throws Exception {
+        Queue<Runnable> drains = new ArrayDeque<>();
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(new SerialExecutorServiceTest.QueueingExecutor(drains), 1, false);
+        executor.setMaxTasksPerDrain(2);
+        List<String> order = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            executor.execute("a", record(order, "a" + i));
+        }
+        executor.execute("b", record(order, "b1"));
+
+        runAll(drains);
+        assertEquals("[a1, a2, b1, a3, a4, a5]", order.toString());
+        assertEquals(6, executor.getExecutedCount());
+        assertEquals(0, executor.getActiveKeyCount());
+    }
+
+    @Test
+    public void testCallerRunsDrainDoesNotNest() throws Exception {
+        // like a full pool with a CallerRunsPolicy the queue is run by the thread submitting it
+        final KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }, 1, false);
+        executor.setMaxTasksPerDrain(10);
+        final int tasks = 1000;
+        final AtomicInteger minDepth = new AtomicInteger(Integer.MAX_VALUE);
+        final AtomicInteger maxDepth = new AtomicInteger();
+        final AtomicInteger count = new AtomicInteger();
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                int depth = Thread.currentThread().getStackTrace().length;
+                minDepth.set(Math.min(minDepth.get(), depth));
+                maxDepth.set(Math.max(maxDepth.get(), depth));
+                count.incrementAndGet();
+            }
+        };
+        executor.execute("a", new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < tasks; i++) {
+                    executor.execute("a", task);
+                }
+            }
+        });
+        assertEquals(tasks, count.get());
+        assertTrue("stack depth grew from " + minDepth + " to " + maxDepth, maxDepth.get() - minDepth.get() < 10);
+        assertEquals(0, executor.getActiveKeyCount());
+    }
+
+    @Test
+    public void testRejectionCancelsTasksQueuedByOtherThreads() throws Exception {
+        final FutureTask<String> other = new FutureTask<>(record(new ArrayList<String>(), "other"), "other");
+        final AtomicReference<KeyedSerialExecutor<String>> executor = new AtomicReference<>();
+        executor.set(new KeyedSerialExecutor<String>(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                // another producer queues a task for the key before the target rejects it
+                executor.get().execute("a", other);
+                throw new RejectedExecutionException("full");
+            }
+        }, 1, false));
+        try {
+            executor.get().execute("a", record(new ArrayList<String>(), "a1"));
+            fail("should have been rejected");
+        } catch (RejectedExecutionException e) {
+            assertEquals("full", e.getMessage());
+        }
+        assertTrue("the other producer's task should be cancelled", other.isCancelled());
+        assertEquals(0, executor.get().getActiveKeyCount());
+        assertEquals(0, executor.get().getQueueSize());
+    }
+
+    protected static Runnable record(final List<String> order, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+            }
+        };
+    }
+
+    protected static void runAll(Queue<Runnable> drains) {
+        Runnable drain;
+        while ((drain = drains.poll()) != null) {
+            drain.run();
+        }
+    }
+}
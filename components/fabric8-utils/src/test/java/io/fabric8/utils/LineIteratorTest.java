@@ -0,0 +1,174 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class LineIteratorTest {
+    private static final String[] TOKENS = {"a", "bc", "\u00e9", "\u20ac", "\ud83d\ude00", "\n", "\r", "\r\n", "\n\n"};
+
+    private String basedir = System.getProperty("basedir", ".");
+
+    @Test
+    public void testLinesMatchBufferedReader() throws Exception {
+        Random random = new Random(1234);
+        File file = new File(basedir, "target/test-data/lines/random.txt");
+        file.getParentFile().mkdirs();
+        for (int run = 0; run < 100; run++) {
+            StringBuilder builder = new StringBuilder();
+            int count = random.nextInt(200);
+            for (int i = 0; i < count; i++) {
+                builder.append(TOKENS[random.nextInt(TOKENS.length)]);
+            }
+            byte[] data = builder.toString().getBytes(StandardCharsets.UTF_8);
+            List<String> expected = readWithBufferedReader(data);
+
+            assertEquals(expected, toList(new LineIterator(ByteBuffer.wrap(data))));
+            ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+            direct.put(data).flip();
+            assertEquals(expected, toList(new LineIterator(direct)));
+
+            Files.writeToFile(file, data);
+            // tiny windows make lines and \r\n pairs span the windows
+            int windowSize = 1 + random.nextInt(8);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                assertEquals("window " + windowSize, expected, toList(new LineIterator(raf.getChannel(), windowSize)));
+            }
+            assertEquals(expected, toList(Files.lineIterator(file)));
+            if (StandardCharsets.UTF_8.equals(Charset.defaultCharset())) {
+                assertEquals(expected, Files.readLines(file));
+            }
+        }
+    }
+
+    @Test
+    public void testFileCanBeRewrittenAfterReadLines() throws Exception {
+        File file = new File(basedir, "target/test-data/lines/rewrite.txt");
+        file.getParentFile().mkdirs();
+        Files.writeLines(file, Arrays.asList("a", "b"));
+        List<String> lines = Files.readLines(file);
+        assertEquals(Arrays.asList("a", "b"), lines);
+
+        // a mapped file could not be rewritten or deleted on Windows until the mapping was garbage collected
+        lines.add("c");
+        Files.writeLines(file, lines);
+        assertEquals(Arrays.asList("a", "b", "c"), IOHelpers.readLines(file));
+        assertTrue("deleted " + file, file.delete());
+    }
+
+    @Test
+    public void testReadBytesAndMap() throws Exception {
+        File file = new File(basedir, "target/test-data/lines/bytes.bin");
+        file.getParentFile().mkdirs();
+        byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+        Files.writeToFile(file, data);
+
+        assertArrayEquals(data, Files.readBytes(file));
+        MappedByteBuffer buffer = Files.map(file);
+        assertEquals(data.length, buffer.remaining());
+        assertEquals(data[12345], buffer.get(12345));
+        assertEquals(data[50000], Files.map(file, 50000, 10).get(0));
+
+        // files in /proc report a size of zero but still have content
+        File status = new File("/proc/self/status");
+        if (status.isFile()) {
+            String text = new String(Files.readBytes(status), StandardCharsets.UTF_8);
+            assertTrue(text, text.contains("Pid:"));
+        }
+
+        File empty = new File(basedir, "target/test-data/lines/empty.txt");
+        Files.writeToFile(empty, new byte[0]);
+        assertEquals(0, Files.readBytes(empty).length);
+        assertFalse(Files.lineIterator(empty).hasNext());
+    }
+
+    @Test
+    public void testLinesOfUnsizedFiles() throws Exception {
+        // files in /proc report a size of zero and pipes can't be mapped so both are read until the end
+        File status = new File("/proc/self/status");
+        Assume.assumeTrue(status.isFile() && status.length() == 0);
+        List<String> lines = Files.readLines(status);
+        assertTrue(lines.toString(), lines.size() > 1);
+        assertTrue(lines.toString(), toList(Files.lineIterator(status)).get(0).startsWith("Name:"));
+        assertEquals(lines.size(), IOHelpers.readLines(status).size());
+
+        final File fifo = new File(basedir, "target/test-data/lines/lines.fifo");
+        fifo.getParentFile().mkdirs();
+        fifo.delete();
+        Assume.assumeTrue(new ProcessBuilder("mkfifo", fifo.getPath()).start().waitFor() == 0);
+        Thread writer = new Thread("LineIteratorTest-fifo") {
+            @Override
+            public void run() {
+                try {
+                    Files.writeToFile(fifo, "a\nb\r\nc".getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        writer.start();
+        assertEquals(Arrays.asList("a", "b", "c"), toList(new LineIterator(fifo)));
+        writer.join(10000);
+        fifo.delete();
+    }
+
+    protected static List<String> readWithBufferedReader(byte[] data) throws Exception {
+        List<String> answer = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            answer.add(line);
+        }
+        return answer;
+    }
+
+    protected static List<String> toList(LineIterator iter) {
+        List<String> answer = new ArrayList<>();
+        try {
+            while (iter.hasNext()) {
+                answer.add(iter.next());
+            }
+        } finally {
+            iter.close();
+        }
+        return answer;
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.net.DatagramSocket;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ */
+public class PortScannerTest {
+
+    @Test
+    public void testParseProcNet() throws Exception {
+        String tcp = "  sl  local_address rem_address   st tx_queue rx_queue tr tm->when retrnsmt   uid  timeout inode\n" +
+                "   0: 0100007F:1F90 00000000:0000 0A 00000000:00000000 00:00000000 00000000  1000        0 906 1\n" +
+                "   1: 0100007F:A3C2 0100007F:1F90 01 00000000:00000000 00:00000000 00000000  1000        0 907 1\n" +
+                "   2: 0100007F:C350 0100007F:1F90 06 00000000:00000000 00:00000000 00000000  1000        0 0 1\n";
+        String tcp6 = "  sl  local_address                         remote_address                        st tx_queue\n" +
+                "   0: 00000000000000000000000000000000:0885 00000000000000000000000000000000:0000 0A 00000000:00000000\n";
+        String udp = "   sl  local_address rem_address   st tx_queue rx_queue tr tm->when retrnsmt   uid  timeout inode\n" +
+                "  100: 00000000:0044 00000000:0000 07 00000000:00000000 00:00000000 00000000     0        0 123 2\n";
+
+        BitSet used = new BitSet();
+        PortScanner.parseProcNet(tcp.getBytes(StandardCharsets.US_ASCII), true, used);
+        PortScanner.parseProcNet(tcp6.getBytes(StandardCharsets.US_ASCII), true, used);
+        PortScanner.parseProcNet(udp.getBytes(StandardCharsets.US_ASCII), false, used);
+
+        assertTrue(used.get(8080));
+        assertTrue(used.get(0xA3C2));
+        assertTrue(used.get(2181));
+        assertTrue(used.get(68));
+        // TIME_WAIT does not stop a server binding
+        assertFalse(used.get(50000));
+        assertEquals(4, used.cardinality());
+    }
+
+    @Test
+    public void testDetectsBoundPorts() throws Exception {
+        try (ServerSocket serverSocket = new ServerSocket(0); DatagramSocket datagramSocket = new DatagramSocket(0)) {
+            int tcpPort = serverSocket.getLocalPort();
+            int udpPort = datagramSocket.getLocalPort();
+            int from = Math.min(tcpPort, udpPort);
+            int to = Math.max(tcpPort, udpPort);
+
+            BitSet used = PortScanner.getInstance().getUsedPorts(from, to);
+            assertTrue(used.get(tcpPort));
+            assertTrue(used.get(udpPort));
+            assertTrue(Ports.findUsedPorts(from, to).contains(tcpPort));
+            assertTrue(Ports.findUsedPorts(from, to).contains(udpPort));
+
+            // the probing fallback must find the same ports
+            PortScanner probing = new PortScanner(new File("target/does-not-exist"));
+            assertFalse(probing.isSupported());
+            used = probing.getUsedPorts(tcpPort, tcpPort);
+            assertTrue(used.get(tcpPort));
+            used = probing.getUsedPorts(udpPort, udpPort);
+            assertTrue(used.get(udpPort));
+
+            int port = Ports.findFreeLocalPort(Collections.<Integer>emptySet(), tcpPort, Math.min(tcpPort + 100, Ports.MAX_PORT_NUMBER), true);
+            assertNotEquals(tcpPort, port);
+            assertTrue(Ports.isPortFree(port));
+        }
+    }
+
+    @Test
+    public void testNextAvailablePortsAreUnique() throws Exception {
+        int first = AvailablePortFinder.getNextAvailable();
+        assumeTrue(Ports.isPortFree(first + 1));
+        try (ServerSocket serverSocket = new ServerSocket(first + 1)) {
+            int boundPort = serverSocket.getLocalPort();
+            int second = AvailablePortFinder.getNextAvailable();
+            assertTrue("Should skip the bound port " + boundPort + " but got " + second, second > boundPort);
+        }
+    }
+}
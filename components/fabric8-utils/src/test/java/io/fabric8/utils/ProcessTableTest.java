@@ -0,0 +1,94 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ */
+public class ProcessTableTest {
+    private String basedir = System.getProperty("basedir", ".");
+
+    @Test
+    public void testFakeProcFileSystem() throws Exception {
+        File procDir = new File(basedir, "target/test-data/proc");
+        Files.recursiveDelete(procDir);
+        writeCommandLine(procDir, 1, "/sbin/init", "splash");
+        writeCommandLine(procDir, 20, "/usr/lib/jvm/bin/java", "-Xmx1g", "-cp", "a.jar:b.jar", "-Dfoo=bar", "org.apache.karaf.main.Main", "server");
+        writeCommandLine(procDir, 300, "java", "-jar", "/opt/app/fabric8-app.jar");
+        writeCommandLine(procDir, 4000, "java", "--module-path", "mods", "-m", "com.acme/com.acme.Main");
+        writeCommandLine(procDir, 50000, "/usr/bin/javac", "Foo.java");
+        new File(procDir, "self").mkdirs();
+        new File(procDir, "net").mkdirs();
+
+        ProcessTable table = new ProcessTable(procDir, 60000);
+        assertTrue(table.isAlive(20));
+        assertFalse(table.isAlive(21));
+        assertEquals(Arrays.asList(1L, 20L, 300L, 4000L, 50000L), table.getProcessIds());
+
+        Map<Long, String> javaProcesses = table.getJavaProcesses();
+        assertEquals(3, javaProcesses.size());
+        assertEquals("org.apache.karaf.main.Main", javaProcesses.get(20L));
+        assertEquals("/opt/app/fabric8-app.jar", javaProcesses.get(300L));
+        assertEquals("com.acme.Main", javaProcesses.get(4000L));
+
+        // the snapshot is cached until it expires
+        writeCommandLine(procDir, 6, "java", "Cheese");
+        assertEquals(5, table.getProcessIds().size());
+        assertTrue(table.isAlive(6));
+        assertEquals(6, new ProcessTable(procDir, 0).getProcessIds().size());
+        assertEquals("Cheese", new ProcessTable(procDir, 0).getJavaProcesses().get(6L));
+    }
+
+    @Test
+    public void testCurrentProcess() throws Exception {
+        ProcessTable table = ProcessTable.getInstance();
+        assumeTrue(table.isSupported());
+
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        long pid = Long.parseLong(name.substring(0, name.indexOf('@')));
+        assertTrue(table.isAlive(pid));
+        assertTrue(Processes.isProcessAlive(pid));
+        assertFalse(Processes.isProcessAlive(Integer.MAX_VALUE));
+        assertTrue(table.getProcessIds().contains(pid));
+        assertTrue(table.getJavaProcesses().containsKey(pid));
+        assertTrue(Processes.getJavaProcessIds(Long.toString(pid)).contains(pid));
+    }
+
+    protected static void writeCommandLine(File procDir, long pid, String... args) throws IOException {
+        File file = new File(procDir, pid + "/cmdline");
+        file.getParentFile().mkdirs();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (String arg : args) {
+                out.write(arg.getBytes(StandardCharsets.UTF_8));
+                out.write(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+/**
+ * A simple benchmark of checking if a process is alive and finding java processes using the {@link ProcessTable}
+ * compared to forking <tt>ps -e</tt> and <tt>jps -l</tt> as {@link Processes} used to do.
+ * <p/>
+ * Run with an optional argument for the number of seconds to run each operation.
+ */
+public class ProcessesBenchmark {
+
+    public static void main(String... args) throws Exception {
+        long seconds = 3;
+        if (args.length > 0) {
+            seconds = Long.parseLong(args[0]);
+        }
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        final long pid = Long.parseLong(name.substring(0, name.indexOf('@')));
+        System.out.println("Process table supported: " + ProcessTable.getInstance().isSupported());
+
+        run("isProcessAlive ps -e", seconds, new Runnable() {
+            @Override
+            public void run() {
+                Processes.getProcessIdsUnix().contains(pid);
+            }
+        });
+        run("isProcessAlive", seconds, new Runnable() {
+            @Override
+            public void run() {
+                Processes.isProcessAlive(pid);
+            }
+        });
+        run("getProcessIds", seconds, new Runnable() {
+            @Override
+            public void run() {
+                Processes.getProcessIds();
+            }
+        });
+        run("getJavaProcessIds jps -l", seconds, new Runnable() {
+            @Override
+            public void run() {
+                Processes.getJavaProcessIdsUsingJps("karaf");
+            }
+        });
+        run("getJavaProcessIds", seconds, new Runnable() {
+            @Override
+            public void run() {
+                Processes.getJavaProcessIds("karaf");
+            }
+        });
+        run("getJavaProcessIds uncached", seconds, new Runnable() {
+            @Override
+            public void run() {
+                new ProcessTable(new File("/proc"), 0).getJavaProcesses();
+            }
+        });
+    }
+
+    protected static void run(String operation, long seconds, Runnable task) {
+        long end = System.nanoTime() + seconds * 1000000000L;
+        long start = System.nanoTime();
+        int calls = 0;
+        do {
+            task.run();
+            calls++;
+        } while (System.nanoTime() < end);
+        double perSecond = calls * 1000000000.0 / (System.nanoTime() - start);
+        System.out.println(String.format("%-30s %12.0f calls/sec", operation, perSecond));
+    }
+}
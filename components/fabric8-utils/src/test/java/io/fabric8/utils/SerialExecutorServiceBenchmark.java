@@ -0,0 +1,141 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A simple benchmark of the task throughput of {@link SerialExecutorService} with 1, 4 and 32 producer threads
+ * compared to the previous synchronized drain.
+ * <p/>
+ * Run with an optional argument for the number of tasks per run.
+ */
+public class SerialExecutorServiceBenchmark {
+
+    public static void main(String... args) throws Exception {
+        int tasks = 2000000;
+        if (args.length > 0) {
+            tasks = Integer.parseInt(args[0]);
+        }
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try {
+            // warm up
+            for (int producers : new int[]{1, 4, 32}) {
+                run(new SerialExecutorService(), producers, tasks / 10);
+                run(new LegacySerialExecutor(pool), producers, tasks / 10);
+            }
+
+            for (int producers : new int[]{1, 4, 32}) {
+                long start = System.nanoTime();
+                run(new SerialExecutorService(), producers, tasks);
+                report("SerialExecutorService", producers, tasks, start);
+
+                start = System.nanoTime();
+                run(new LegacySerialExecutor(pool), producers, tasks);
+                report("synchronized drain", producers, tasks, start);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    protected static void run(final Executor executor, int producers, int tasks) throws InterruptedException {
+        final int tasksPerProducer = tasks / producers;
+        final CountDownLatch done = new CountDownLatch(tasksPerProducer * producers);
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        };
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < tasksPerProducer; i++) {
+                        executor.execute(task);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!done.await(5, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Timed out waiting for the tasks to complete");
+        }
+    }
+
+    protected static void report(String name, int producers, int tasks, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        double perSecond = tasks * 1000000000.0 / nanos;
+        System.out.println(String.format("%-25s %3d producers %12.0f tasks/sec", name, producers, perSecond));
+    }
+
+    /**
+     * The drain loop which {@link SerialExecutorService} used before it was made lock free
+     */
+    protected static class LegacySerialExecutor implements Executor {
+        private final Executor target;
+        private final AtomicBoolean triggered = new AtomicBoolean();
+        private final ConcurrentLinkedQueue<Runnable> externalQueue = new ConcurrentLinkedQueue<Runnable>();
+        private final ThreadLocal<Boolean> draining = new ThreadLocal<Boolean>();
+        private final Runnable drainTask = new Runnable() {
+            public void run() {
+                drain();
+            }
+        };
+
+        public LegacySerialExecutor(Executor target) {
+            this.target = target;
+        }
+
+        @Override
+        public void execute(Runnable runnable) {
+            externalQueue.add(runnable);
+            if (triggered.compareAndSet(false, true)) {
+                target.execute(drainTask);
+            }
+        }
+
+        synchronized void drain() {
+            draining.set(Boolean.TRUE);
+            try {
+                Runnable runnable;
+                while ((runnable = externalQueue.poll()) != null) {
+                    runnable.run();
+                }
+            } finally {
+                draining.remove();
+                triggered.set(false);
+                if (!externalQueue.isEmpty() && triggered.compareAndSet(false, true)) {
+                    target.execute(drainTask);
+                }
+            }
+        }
+    }
+}
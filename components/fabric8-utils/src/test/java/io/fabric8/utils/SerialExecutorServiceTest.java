@@ -17,10 +17,21 @@ package io.fabric8.utils;
 
 import org.junit.Test;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  */
@@ -45,4 +56,287 @@ public class SerialExecutorServiceTest {
         assertEquals(10000, data[0]);
     }
 
+    @Test
+    public void testManyProducersRunSeriallyInOrder() throws Exception {
+        final SerialExecutorService executor = new SerialExecutorService();
+        final int producers = 8;
+        final int tasks = 20000;
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final int[] lastSeen = new int[producers];
+        final int[] outOfOrder = new int[1];
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 1; i <= tasks; i++) {
+                        final int sequence = i;
+                        executor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (running.incrementAndGet() != 1) {
+                                    overlaps.incrementAndGet();
+                                }
+                                if (lastSeen[producer] != sequence - 1) {
+                                    outOfOrder[0]++;
+                                }
+                                lastSeen[producer] = sequence;
+                                running.decrementAndGet();
+                            }
+                        });
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals("tasks run concurrently", 0, overlaps.get());
+        assertEquals("tasks run out of order", 0, outOfOrder[0]);
+        for (int p = 0; p < producers; p++) {
+            assertEquals(tasks, lastSeen[p]);
+        }
+        assertEquals(producers * tasks, executor.getExecutedCount());
+        assertEquals(0, executor.getQueueSize());
+        assertTrue(executor.getMaxQueueSize() > 0);
+    }
+
+    @Test
+    public void testDrainsAreBatched() throws Exception {
+        Queue<Runnable> drains = new ArrayDeque<Runnable>();
+        SerialExecutorService executor = new SerialExecutorService(new QueueingExecutor(drains));
+        executor.setMaxTasksPerDrain(10);
+        final AtomicInteger count = new AtomicInteger();
+        for (int i = 0; i < 25; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    count.incrementAndGet();
+                }
+            });
+        }
+        assertEquals("only one drain is scheduled", 1, drains.size());
+
+        int batches = 0;
+        Runnable drain;
+        while ((drain = drains.poll()) != null) {
+            drain.run();
+            batches++;
+        }
+        assertEquals(25, count.get());
+        assertEquals("batches", 3, batches);
+        assertEquals(3, executor.getDrainCount());
+    }
+
+    @Test
+    public void testNestedTasksRunFirst() throws Exception {
+        Queue<Runnable> drains = new ArrayDeque<Runnable>();
+        final SerialExecutorService executor = new SerialExecutorService(new QueueingExecutor(drains));
+        final List<String> order = new ArrayList<String>();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                order.add("a");
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        order.add("nested");
+                    }
+                });
+            }
+        });
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                order.add("b");
+            }
+        });
+        drains.poll().run();
+        assertEquals("[a, nested, b]", order.toString());
+    }
+
+    @Test
+    public void testExecuteAndDrainRunsOnCallingThread() throws Exception {
+        SerialExecutorService executor = new SerialExecutorService(new QueueingExecutor(new ArrayDeque<Runnable>()));
+        final Thread[] thread = new Thread[1];
+        executor.executeAndDrain(new Runnable() {
+            @Override
+            public void run() {
+                thread[0] = Thread.currentThread();
+            }
+        });
+        assertSame(Thread.currentThread(), thread[0]);
+        assertFalse(executor.isDraining());
+    }
+
+    @Test
+    public void testShutdownNowReturnsQueuedTasks() throws Exception {
+        SerialExecutorService executor = new SerialExecutorService(new QueueingExecutor(new ArrayDeque<Runnable>()));
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        for (int i = 0; i < 5; i++) {
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    fail("Should not be run");
+                }
+            };
+            tasks.add(task);
+            executor.execute(task);
+        }
+        assertEquals(5, executor.getQueueSize());
+
+        // the drain queued in the target never runs so shutdownNow must not wait for it
+        List<Runnable> answer = executor.shutdownNow();
+        assertEquals(tasks, answer);
+        assertTrue(executor.isShutdown());
+        assertTrue(executor.isTerminated());
+        try {
+            executor.execute(tasks.get(0));
+            fail("Should have rejected the task");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testShutdownNowWaitsForRunningTask() throws Exception {
+        final SerialExecutorService executor = new SerialExecutorService();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        final AtomicInteger count = new AtomicInteger();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    finish.await();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                count.incrementAndGet();
+            }
+        });
+        for (int i = 0; i < 10; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    count.incrementAndGet();
+                }
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                finish.countDown();
+            }
+        }.start();
+
+        List<Runnable> notRun = executor.shutdownNow();
+        assertEquals(10, notRun.size());
+        assertEquals(1, count.get());
+        assertTrue(executor.isTerminated());
+    }
+
+    @Test
+    public void testRejectedDrainIsRetried() throws Exception {
+        final Queue<Runnable> drains = new ArrayDeque<Runnable>();
+        final AtomicInteger rejections = new AtomicInteger(1);
+        SerialExecutorService executor = new SerialExecutorService(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (rejections.getAndDecrement() > 0) {
+                    throw new RejectedExecutionException("full");
+                }
+                drains.add(command);
+            }
+        });
+        final AtomicInteger count = new AtomicInteger();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                count.incrementAndGet();
+            }
+        };
+        try {
+            executor.execute(task);
+            fail("Should have been rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        executor.execute(task);
+        drains.poll().run();
+        assertEquals("the task queued when the drain was rejected is still run", 2, count.get());
+    }
+
+    @Test
+    public void testCallerRunsDrainDoesNotNest() throws Exception {
+        // like a full pool with a CallerRunsPolicy the drain is run by the thread submitting it
+        final SerialExecutorService executor = new SerialExecutorService(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        executor.setMaxTasksPerDrain(10);
+        final int tasks = 1000;
+        final AtomicInteger minDepth = new AtomicInteger(Integer.MAX_VALUE);
+        final AtomicInteger maxDepth = new AtomicInteger();
+        final AtomicInteger count = new AtomicInteger();
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                int depth = Thread.currentThread().getStackTrace().length;
+                minDepth.set(Math.min(minDepth.get(), depth));
+                maxDepth.set(Math.max(maxDepth.get(), depth));
+                count.incrementAndGet();
+            }
+        };
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < tasks; i++) {
+                    executor.execute(task);
+                }
+            }
+        });
+        assertEquals(tasks, count.get());
+        assertTrue("stack depth grew from " + minDepth + " to " + maxDepth, maxDepth.get() - minDepth.get() < 10);
+        assertFalse(executor.isDraining());
+    }
+
+    /**
+     * An executor which queues the commands so that the test can run them
+     */
+    protected static class QueueingExecutor implements Executor {
+        private final Queue<Runnable> commands;
+
+        public QueueingExecutor(Queue<Runnable> commands) {
+            this.commands = commands;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            commands.add(command);
+        }
+    }
 }
@@ -0,0 +1,97 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+/**
+ * A simple benchmark of extracting a zip of many small files using the streaming
+ * {@link Zips#unzip(InputStream, File)} compared to the random access {@link Zips#unzip(File, File, Filter, int)}
+ * on 1, 4 and 8 threads and extracting a single entry.
+ * <p/>
+ * Run with optional arguments for the number of entries and the number of iterations.
+ */
+public class UnzipBenchmark {
+    private static final transient Logger LOG = LoggerFactory.getLogger(UnzipBenchmark.class);
+
+    public static void main(String... args) throws Exception {
+        int files = 50000;
+        int iterations = 3;
+        if (args.length > 0) {
+            files = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            iterations = Integer.parseInt(args[1]);
+        }
+        File dir = new File("target/unzip-benchmark");
+        File sourceDir = new File(dir, "source");
+        File outputDir = new File(dir, "output");
+        File zipFile = new File(dir, "input.zip");
+        Files.recursiveDelete(dir);
+        long bytes = ZipsBenchmark.createFiles(sourceDir, files);
+        Zips.createZipFile(LOG, sourceDir, zipFile, null, new ZipOptions());
+        Files.recursiveDelete(sourceDir);
+        System.out.println("Created zip of " + files + " entries of " + bytes + " bytes, available processors: "
+                + Runtime.getRuntime().availableProcessors());
+
+        // warm up
+        Zips.unzip(zipFile, outputDir, null, 4);
+        Files.recursiveDelete(outputDir);
+
+        long nanos = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            try (InputStream in = new FileInputStream(zipFile)) {
+                Zips.unzip(in, outputDir);
+            }
+            nanos += System.nanoTime() - start;
+            Files.recursiveDelete(outputDir);
+        }
+        report("ZipInputStream", iterations, files, bytes, nanos);
+
+        for (int threads : new int[]{1, 4, 8}) {
+            nanos = 0;
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                Zips.unzip(zipFile, outputDir, null, threads);
+                nanos += System.nanoTime() - start;
+                Files.recursiveDelete(outputDir);
+            }
+            report("ZipFile " + threads + " threads", iterations, files, bytes, nanos);
+        }
+
+        String name = "dir-7/file-" + (files / 2 + 7) + ".txt";
+        nanos = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            Zips.unzip(zipFile, outputDir, name::equals, 1);
+            nanos += System.nanoTime() - start;
+        }
+        System.out.println(String.format("%-25s %10.1f ms", "single entry", nanos / iterations / 1000000.0));
+        Files.recursiveDelete(dir);
+    }
+
+    protected static void report(String operation, int iterations, int files, long bytes, long totalNanos) {
+        long nanos = totalNanos / iterations;
+        System.out.println(String.format("%-25s %10.1f ms %10.1f MB/sec %12.0f entries/sec", operation, nanos / 1000000.0,
+                bytes * 1000.0 / nanos, files * 1000000000.0 / nanos));
+    }
+}
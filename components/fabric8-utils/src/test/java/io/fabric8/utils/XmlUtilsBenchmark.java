@@ -0,0 +1,119 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import java.io.ByteArrayInputStream;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * A simple benchmark of {@link XmlUtils} comparing parsing with a new factory per document as it used to do with the
+ * pooled document builders, finding an element in the DOM with {@link XmlUtils#streamingValueAt(java.io.InputStream, String)}
+ * and compiling an XPath expression per use with the {@link XPathBuilder} cache, on a small <tt>pom.xml</tt> and a 10MB document.
+ * <p/>
+ * Run with an optional argument for the number of iterations on the small document.
+ */
+public class XmlUtilsBenchmark {
+
+    public static void main(String... args) throws Exception {
+        int iterations = 20000;
+        if (args.length > 0) {
+            iterations = Integer.parseInt(args[0]);
+        }
+        byte[] small = XmlUtilsTest.POM.getBytes("UTF-8");
+        byte[] large = createLargeDocument(10 * 1024 * 1024);
+        System.out.println("Small document " + small.length + " bytes, large document " + large.length + " bytes");
+
+        // warm up
+        run(small, "small", iterations / 10, false);
+        run(small, "small", iterations, true);
+        run(large, "10MB", 10, true);
+    }
+
+    protected static void run(byte[] data, String name, int iterations, boolean print) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.newDocumentBuilder().parse(new InputSource(new ByteArrayInputStream(data)));
+        }
+        report(print, name, "parse with new factory", iterations, start);
+
+        start = System.nanoTime();
+        Document doc = null;
+        for (int i = 0; i < iterations; i++) {
+            doc = XmlUtils.parseDoc(new ByteArrayInputStream(data));
+        }
+        report(print, name, "parse with pooled builder", iterations, start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            XmlUtils.getTextContent(XmlUtils.getElement(XmlUtils.parseDoc(new ByteArrayInputStream(data)), "parent/version"));
+        }
+        report(print, name, "DOM parent/version", iterations, start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            XmlUtils.streamingValueAt(new ByteArrayInputStream(data), "parent/version");
+        }
+        report(print, name, "streaming parent/version", iterations, start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            XmlUtils.streamingValueAt(new ByteArrayInputStream(data), "version");
+        }
+        report(print, name, "streaming version at the end", iterations, start);
+
+        int xpathIterations = iterations * 10;
+        start = System.nanoTime();
+        for (int i = 0; i < xpathIterations; i++) {
+            new XPathBuilder().xpath("/*[local-name()='project']/*[local-name()='artifactId']").elementTextContent(doc);
+        }
+        report(print, name, "XPath compiled per use", xpathIterations, start);
+
+        XPathBuilder builder = new XPathBuilder();
+        start = System.nanoTime();
+        for (int i = 0; i < xpathIterations; i++) {
+            builder.xpath("/*[local-name()='project']/*[local-name()='artifactId']").elementTextContent(doc);
+        }
+        report(print, name, "XPath cached", xpathIterations, start);
+    }
+
+    protected static byte[] createLargeDocument(int size) throws Exception {
+        String pom = XmlUtilsTest.POM;
+        int dependenciesEnd = pom.indexOf("  </dependencies>");
+        StringBuilder buffer = new StringBuilder(size + pom.length());
+        buffer.append(pom, 0, dependenciesEnd);
+        for (int i = 0; buffer.length() < size; i++) {
+            buffer.append("    <dependency><groupId>io.fabric8</groupId><artifactId>artifact-").append(i).
+                    append("</artifactId><version>1.0.").append(i).append("</version></dependency>\n");
+        }
+        buffer.append(pom, dependenciesEnd, pom.length());
+        return buffer.toString().getBytes("UTF-8");
+    }
+
+    protected static void report(boolean print, String name, String operation, int iterations, long startNanos) {
+        if (print) {
+            long nanos = System.nanoTime() - startNanos;
+            double perSecond = iterations * 1000000000.0 / nanos;
+            System.out.println(String.format("%-8s %-35s %12.1f ops/sec", name, operation, perSecond));
+        }
+    }
+}
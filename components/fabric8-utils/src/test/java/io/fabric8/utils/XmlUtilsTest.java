@@ -0,0 +1,160 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPathVariableResolver;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class XmlUtilsTest {
+    protected static final String POM = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n" +
+            "  <!-- the parent -->\n" +
+            "  <parent>\n" +
+            "    <groupId>io.fabric8</groupId>\n" +
+            "    <version>2.2.0</version>\n" +
+            "  </parent>\n" +
+            "  <artifactId>cheese</artifactId>\n" +
+            "  <description>Tom &amp; <![CDATA[Jerry]]><!-- ignored --><b>!</b></description>\n" +
+            "  <dependencies>\n" +
+            "    <dependency><groupId>a</groupId></dependency>\n" +
+            "    <dependency><groupId>b</groupId><version>1.0</version></dependency>\n" +
+            "  </dependencies>\n" +
+            "  <version>2.2.1-SNAPSHOT</version>\n" +
+            "</project>\n";
+
+    @Test
+    public void testStreamingValueAt() throws Exception {
+        assertStreamingValue("2.2.1-SNAPSHOT", "version");
+        assertStreamingValue("2.2.0", "parent/version");
+        assertStreamingValue("2.2.0", "/parent/version");
+        assertStreamingValue("cheese", "artifactId");
+        assertStreamingValue("Tom & Jerry!", "description");
+        assertStreamingValue("a", "dependencies/dependency/groupId");
+        // the first dependency has no version so we keep looking
+        assertStreamingValue("1.0", "dependencies/dependency/version");
+        assertStreamingValue(null, "groupId");
+        assertStreamingValue(null, "parent/artifactId");
+        assertStreamingValue(null, "project/version");
+
+        Document doc = XmlUtils.parseDoc(POM);
+        assertEquals(XmlUtils.getTextContent(XmlUtils.getElement(doc, "parent/version")), streamingValueAt("parent/version"));
+        assertEquals(XmlUtils.getTextContent(XmlUtils.getElement(doc, "description")), streamingValueAt("description"));
+    }
+
+    @Test
+    public void testPooledBuildersAcrossThreads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final int index = i;
+                futures.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        Document doc = XmlUtils.parseDoc("<root><value>" + index + "</value></root>");
+                        return XmlUtils.getTextContentOfElement(doc, "value");
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(Integer.toString(i), futures.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDoctypeIsStillDisallowedAfterError() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            try {
+                XmlUtils.parseDoc("<?xml version=\"1.0\"?><!DOCTYPE foo [<!ENTITY xxe SYSTEM \"file:///etc/passwd\">]><foo>&xxe;</foo>");
+                fail("Should have disallowed the DOCTYPE");
+            } catch (SAXException e) {
+                // expected
+            }
+            try {
+                XmlUtils.parseDoc("<not-closed>");
+                fail("Should have failed to parse");
+            } catch (SAXException e) {
+                // expected
+            }
+        }
+        assertEquals("ok", XmlUtils.getTextContentOfElement(XmlUtils.parseDoc("<a><b>ok</b></a>"), "b"));
+    }
+
+    @Test
+    public void testXPathCache() throws Exception {
+        XPathBuilder builder = new XPathBuilder();
+        XPathFacade facade = builder.xpath("//value");
+        assertSame(facade, builder.xpath("//value"));
+        Document doc = XmlUtils.parseDoc("<root><value>cheese</value></root>");
+        assertEquals("cheese", builder.xpath("//value").elementTextContent(doc));
+        assertNull(builder.xpath("//other").element(doc));
+    }
+
+    @Test
+    public void testXPathCacheClearedWhenResolverChanges() throws Exception {
+        XPathBuilder builder = new XPathBuilder();
+        Document doc = XmlUtils.parseDoc("<root><value>cheese</value><value>wine</value></root>");
+        builder.getXPath().setXPathVariableResolver(createVariableResolver("cheese"));
+        XPathFacade before = builder.xpath("//value[text() = $name]");
+        assertEquals("cheese", before.elementTextContent(doc));
+
+        // the compiled expression captures the resolver so it must be compiled again
+        builder.getXPath().setXPathVariableResolver(createVariableResolver("wine"));
+        XPathFacade after = builder.xpath("//value[text() = $name]");
+        assertNotSame(before, after);
+        assertEquals("wine", after.elementTextContent(doc));
+        assertSame(after, builder.xpath("//value[text() = $name]"));
+    }
+
+    protected static void assertStreamingValue(String expected, String path) throws Exception {
+        assertEquals(path, expected, streamingValueAt(path));
+    }
+
+    protected static String streamingValueAt(String path) throws Exception {
+        return XmlUtils.streamingValueAt(new ByteArrayInputStream(POM.getBytes("UTF-8")), path);
+    }
+
+    protected static XPathVariableResolver createVariableResolver(final String value) {
+        return new XPathVariableResolver() {
+            @Override
+            public Object resolveVariable(QName variableName) {
+                return value;
+            }
+        };
+    }
+}
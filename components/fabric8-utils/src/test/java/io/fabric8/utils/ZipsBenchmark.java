@@ -0,0 +1,98 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * A simple benchmark of creating a zip of a directory of many small files using the serial
+ * {@link Zips#createZipFile(Logger, File, File)} compared to the parallel version on 1, 4 and 8 threads.
+ * <p/>
+ * Run with optional arguments for the number of files and the number of iterations.
+ */
+public class ZipsBenchmark {
+    private static final transient Logger LOG = LoggerFactory.getLogger(ZipsBenchmark.class);
+
+    public static void main(String... args) throws Exception {
+        int files = 20000;
+        int iterations = 3;
+        if (args.length > 0) {
+            files = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            iterations = Integer.parseInt(args[1]);
+        }
+        File dir = new File("target/zips-benchmark");
+        File sourceDir = new File(dir, "source");
+        Files.recursiveDelete(dir);
+        long bytes = createFiles(sourceDir, files);
+        System.out.println("Created " + files + " files of " + bytes + " bytes, available processors: "
+                + Runtime.getRuntime().availableProcessors());
+
+        File zipFile = new File(dir, "output.zip");
+        // warm up
+        Zips.createZipFile(LOG, sourceDir, zipFile);
+        Zips.createZipFile(LOG, sourceDir, zipFile, null, new ZipOptions().setThreads(4));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            Zips.createZipFile(LOG, sourceDir, zipFile);
+        }
+        report("ZipOutputStream", iterations, bytes, zipFile, start);
+
+        for (int threads : new int[]{1, 4, 8}) {
+            ZipOptions options = new ZipOptions().setThreads(threads);
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                Zips.createZipFile(LOG, sourceDir, zipFile, null, options);
+            }
+            report("parallel " + threads + " threads", iterations, bytes, zipFile, start);
+        }
+        Files.recursiveDelete(dir);
+    }
+
+    protected static long createFiles(File sourceDir, int count) throws IOException {
+        Random random = new Random(42);
+        long bytes = 0;
+        for (int i = 0; i < count; i++) {
+            File file = new File(sourceDir, "dir-" + (i % 100) + "/file-" + i + (i % 10 == 0 ? ".png" : ".txt"));
+            file.getParentFile().mkdirs();
+            StringBuilder text = new StringBuilder();
+            int lines = 10 + random.nextInt(200);
+            for (int j = 0; j < lines; j++) {
+                text.append("line ").append(j).append(' ').append(random.nextInt(100000)).append('\n');
+            }
+            byte[] data = text.toString().getBytes("UTF-8");
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(data);
+            }
+            bytes += data.length;
+        }
+        return bytes;
+    }
+
+    protected static void report(String operation, int iterations, long bytes, File zipFile, long startNanos) {
+        long nanos = (System.nanoTime() - startNanos) / iterations;
+        double mbPerSecond = bytes * 1000.0 / nanos;
+        System.out.println(String.format("%-25s %10.1f ms %10.1f MB/sec %12d bytes", operation, nanos / 1000000.0, mbPerSecond, zipFile.length()));
+    }
+}
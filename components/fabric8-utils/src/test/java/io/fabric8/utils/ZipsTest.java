@@ -0,0 +1,249 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class ZipsTest {
+    private static final transient Logger LOG = LoggerFactory.getLogger(ZipsTest.class);
+
+    private String basedir = System.getProperty("basedir", ".");
+
+    @Test
+    public void testParallelZipContentsAndOrder() throws Exception {
+        File sourceDir = createSourceDir("contents");
+        File zipFile = new File(basedir, "target/test-data/zips/contents.zip");
+        Zips.createZipFile(LOG, sourceDir, zipFile, null, new ZipOptions().setThreads(4));
+
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            assertEquals(Arrays.asList("a.txt", "b/", "b/c.txt", "b/d/", "b/d/e.png", "b/large.txt", "z.jar"), entryNames(zip));
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("a.txt").getMethod());
+            assertEquals(ZipEntry.STORED, zip.getEntry("z.jar").getMethod());
+            assertEquals(ZipEntry.STORED, zip.getEntry("b/d/e.png").getMethod());
+            assertTrue(zip.getEntry("b/").isDirectory());
+            for (String name : Arrays.asList("a.txt", "b/c.txt", "b/d/e.png", "b/large.txt", "z.jar")) {
+                assertArrayEquals(name, readFile(new File(sourceDir, name)), readEntry(zip, name));
+            }
+            assertEquals(new File(sourceDir, "a.txt").lastModified() / 2000, zip.getEntry("a.txt").getTime() / 2000);
+        }
+    }
+
+    @Test
+    public void testFixedTimeIsReproducible() throws Exception {
+        File sourceDir = createSourceDir("reproducible");
+        ZipOptions options = new ZipOptions().setFixedTime(1262304000000L);
+        File serial = new File(basedir, "target/test-data/zips/serial.zip");
+        File parallel = new File(basedir, "target/test-data/zips/parallel.zip");
+        Zips.createZipFile(LOG, sourceDir, serial, null, options.setThreads(1));
+        Zips.createZipFile(LOG, sourceDir, parallel, null, options.setThreads(4));
+        assertArrayEquals(readFile(serial), readFile(parallel));
+
+        // a different modified time must not change the archive
+        new File(sourceDir, "a.txt").setLastModified(System.currentTimeMillis() - 100000);
+        Zips.createZipFile(LOG, sourceDir, parallel, null, options);
+        assertArrayEquals(readFile(serial), readFile(parallel));
+    }
+
+    @Test
+    public void testFilterAndUnzip() throws Exception {
+        File sourceDir = createSourceDir("filter");
+        File zipFile = new File(basedir, "target/test-data/zips/filter.zip");
+        Zips.createZipFile(LOG, sourceDir, zipFile, f -> !(f.isDirectory() && f.getName().equals("d")), new ZipOptions().setThreads(3));
+
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            assertEquals(Arrays.asList("a.txt", "b/", "b/c.txt", "b/large.txt", "z.jar"), entryNames(zip));
+        }
+
+        File outputDir = new File(basedir, "target/test-data/zips/unzipped");
+        Files.recursiveDelete(outputDir);
+        try (InputStream in = new FileInputStream(zipFile)) {
+            Zips.unzip(in, outputDir);
+        }
+        assertArrayEquals(readFile(new File(sourceDir, "b/large.txt")), readFile(new File(outputDir, "b/large.txt")));
+        assertFalse(new File(outputDir, "b/d").exists());
+    }
+
+    @Test
+    public void testLargeEntriesUseTemporaryFiles() throws Exception {
+        File sourceDir = createSourceDir("large");
+        File zipFile = new File(basedir, "target/test-data/zips/large.zip");
+        // lets force both the deflated and stored entries to be spooled rather than buffered
+        Zips.createZipFile(LOG, sourceDir, zipFile, null, new ZipOptions().setThreads(2).setMaxBufferSize(1024));
+
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            for (String name : Arrays.asList("a.txt", "b/c.txt", "b/d/e.png", "b/large.txt", "z.jar")) {
+                assertArrayEquals(name, readFile(new File(sourceDir, name)), readEntry(zip, name));
+            }
+        }
+    }
+
+    @Test
+    public void testZip64EntryCount() throws Exception {
+        int count = 70000;
+        File zipFile = new File(basedir, "target/test-data/zips/zip64.zip");
+        zipFile.getParentFile().mkdirs();
+        byte[] data = "x".getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(new FileOutputStream(zipFile))) {
+            for (int i = 0; i < count; i++) {
+                writer.putEntry("entry-" + i, ZipEntry.STORED, 0, crc.getValue(), data.length, data.length);
+                writer.write(data, 0, data.length);
+                writer.closeEntry();
+            }
+        }
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            assertEquals(count, zip.size());
+            assertArrayEquals(data, readEntry(zip, "entry-" + (count - 1)));
+        }
+        zipFile.delete();
+    }
+
+    @Test
+    public void testParallelUnzip() throws Exception {
+        File sourceDir = createSourceDir("unzip");
+        File zipFile = new File(basedir, "target/test-data/zips/unzip.zip");
+        Zips.createZipFile(LOG, sourceDir, zipFile, null, new ZipOptions().setThreads(2));
+
+        File outputDir = new File(basedir, "target/test-data/zips/unzip-output");
+        Files.recursiveDelete(outputDir);
+        List<File> files = Zips.unzip(zipFile, outputDir, null, 4);
+        assertEquals(5, files.size());
+        for (String name : Arrays.asList("a.txt", "b/c.txt", "b/d/e.png", "b/large.txt", "z.jar")) {
+            assertArrayEquals(name, readFile(new File(sourceDir, name)), readFile(new File(outputDir, name)));
+        }
+
+        // lets extract a single entry
+        Files.recursiveDelete(outputDir);
+        files = Zips.unzip(zipFile, outputDir, "b/large.txt"::equals, 4);
+        assertEquals(Arrays.asList(new File(outputDir, "b/large.txt").getAbsoluteFile()), files);
+        assertArrayEquals(readFile(new File(sourceDir, "b/large.txt")), readFile(files.get(0)));
+        assertFalse(new File(outputDir, "a.txt").exists());
+        assertFalse(new File(outputDir, "b/d").exists());
+    }
+
+    @Test
+    public void testUnzipRejectsEntriesOutsideOfDirectory() throws Exception {
+        File outputDir = new File(basedir, "target/test-data/zips/malicious/output");
+        for (String name : Arrays.asList("../evil.txt", "good/../../evil.txt", "/tmp/evil.txt", "..")) {
+            Files.recursiveDelete(outputDir.getParentFile());
+            File zipFile = new File(basedir, "target/test-data/zips/malicious/malicious.zip");
+            zipFile.getParentFile().mkdirs();
+            try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile))) {
+                zos.putNextEntry(new ZipEntry("good.txt"));
+                zos.write(1);
+                zos.putNextEntry(new ZipEntry(name));
+                zos.write(2);
+            }
+
+            try {
+                Zips.unzip(zipFile, outputDir, null, 2);
+                fail("Should have rejected " + name);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("outside of the target directory"));
+            }
+            // nothing should be written if the archive is rejected
+            assertFalse(new File(outputDir, "good.txt").exists());
+
+            try (InputStream in = new FileInputStream(zipFile)) {
+                Zips.unzip(in, outputDir);
+                fail("Should have rejected " + name);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("outside of the target directory"));
+            }
+            assertFalse(new File(outputDir.getParentFile(), "evil.txt").exists());
+            assertFalse(new File("/tmp/evil.txt").exists());
+        }
+
+        // the filter can skip the bad entry
+        List<File> files = Zips.unzip(new File(outputDir.getParentFile(), "malicious.zip"), outputDir, "good.txt"::equals, 2);
+        assertEquals(1, files.size());
+    }
+
+    protected File createSourceDir(String name) throws IOException {
+        File dir = new File(basedir, "target/test-data/zips/" + name);
+        Files.recursiveDelete(dir);
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append("line ").append(random.nextInt(1000)).append('\n');
+        }
+        byte[] noise = new byte[5000];
+        random.nextBytes(noise);
+
+        writeFile(new File(dir, "a.txt"), "hello world\n".getBytes(StandardCharsets.UTF_8));
+        writeFile(new File(dir, "z.jar"), noise);
+        writeFile(new File(dir, "b/c.txt"), new byte[0]);
+        writeFile(new File(dir, "b/large.txt"), text.toString().getBytes(StandardCharsets.UTF_8));
+        writeFile(new File(dir, "b/d/e.png"), noise);
+        return dir;
+    }
+
+    protected static List<String> entryNames(ZipFile zip) {
+        List<String> answer = new ArrayList<>();
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            answer.add(entries.nextElement().getName());
+        }
+        return answer;
+    }
+
+    protected static byte[] readEntry(ZipFile zip, String name) throws IOException {
+        try (InputStream in = zip.getInputStream(zip.getEntry(name))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Zips.copy(in, out);
+            return out.toByteArray();
+        }
+    }
+
+    protected static byte[] readFile(File file) throws IOException {
+        return java.nio.file.Files.readAllBytes(file.toPath());
+    }
+
+    protected static void writeFile(File file, byte[] data) throws IOException {
+        file.getParentFile().mkdirs();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils.json;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A simple benchmark of {@link JsonReader} parsing 1KB, 1MB and 100MB documents as a tree and with the pull API.
+ * <p/>
+ * The 100MB document is written to a temporary file and only streamed with the pull API, as the tree would
+ * need several times that much heap. Run with an optional argument for the number of megabytes of the large document.
+ */
+public class JsonReaderBenchmark {
+
+    public static void main(String... args) throws Exception {
+        int largeMegabytes = 100;
+        if (args.length > 0) {
+            largeMegabytes = Integer.parseInt(args[0]);
+        }
+        byte[] small = createDocument(1024);
+        byte[] medium = createDocument(1024 * 1024);
+
+        // warm up
+        run("1KB", small, 20000, false);
+        run("1MB", medium, 20, false);
+
+        run("1KB", small, 50000, true);
+        run("1MB", medium, 50, true);
+
+        File file = File.createTempFile("json-reader-benchmark", ".json");
+        try {
+            long size = writeLargeDocument(file, largeMegabytes * 1024L * 1024L);
+            long start = System.nanoTime();
+            int count;
+            try (JsonReader reader = new JsonReader(new FileInputStream(file))) {
+                count = countElements(reader);
+            }
+            report(largeMegabytes + "MB", "pull count from InputStream", size, 1, start);
+
+            start = System.nanoTime();
+            try (JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                if (countElements(reader) != count) {
+                    throw new IllegalStateException("Readers disagree on the number of elements");
+                }
+            }
+            report(largeMegabytes + "MB", "pull count from InputStreamReader", size, 1, start);
+        } finally {
+            file.delete();
+        }
+    }
+
+    protected static void run(String name, byte[] data, int iterations, boolean print) throws IOException {
+        String text = new String(data, StandardCharsets.UTF_8);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            JsonReader.read(data);
+        }
+        if (print) {
+            report(name, "tree from byte[]", data.length, iterations, start);
+        }
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            JsonReader.read(new StringReader(text));
+        }
+        if (print) {
+            report(name, "tree from Reader", data.length, iterations, start);
+        }
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            countElements(new JsonReader(data, 0, data.length));
+        }
+        if (print) {
+            report(name, "pull count from byte[]", data.length, iterations, start);
+        }
+    }
+
+    /**
+     * Counts the elements of the top level array skipping their content
+     */
+    protected static int countElements(JsonReader reader) throws IOException {
+        int count = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.skipValue();
+            count++;
+        }
+        reader.endArray();
+        return count;
+    }
+
+    protected static void report(String name, String operation, long bytes, int iterations, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        double megabytesPerSecond = bytes * (double) iterations / (1024 * 1024) / (nanos / 1000000000.0);
+        System.out.println(String.format("%-6s %-35s %10.1f MB/sec", name, operation, megabytesPerSecond));
+    }
+
+    protected static byte[] createDocument(int size) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(size + 1024);
+        writeDocument(buffer, size);
+        return buffer.toByteArray();
+    }
+
+    protected static long writeLargeDocument(File file, long size) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            return writeDocument(out, size);
+        }
+    }
+
+    protected static long writeDocument(OutputStream out, long size) throws IOException {
+        long written = 1;
+        out.write('[');
+        for (int i = 0; written < size; i++) {
+            String element = (i > 0 ? "," : "") + "{\"kind\":\"Pod\",\"metadata\":{\"name\":\"pod-" + i + "\",\"labels\":" +
+                    "{\"project\":\"caf\u00e9\",\"version\":\"1.0." + i + "\"}},\"spec\":{\"replicas\":" + (i % 10) +
+                    ",\"ratio\":" + (i / 7.0) + ",\"enabled\":" + (i % 2 == 0) + ",\"ports\":[8080,8443],\"notes\":null," +
+                    "\"command\":\"echo \\\"hello\\\"\\n\"}}";
+            byte[] bytes = element.getBytes(StandardCharsets.UTF_8);
+            out.write(bytes);
+            written += bytes.length;
+        }
+        out.write(']');
+        return written + 1;
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils.json;
+
+import io.fabric8.utils.json.JsonReader.Token;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class JsonReaderTest {
+    private static final String DOCUMENT = "{\n" +
+            "  \"name\": \"caf\\u00e9 \\\"quoted\\\"\\n\",\n" +
+            "  \"emoji\": \"\uD83D\uDE00 \u00fcber\",\n" +
+            "  \"count\": -12.5e2,\n" +
+            "  \"zero\": 0,\n" +
+            "  \"flags\": [true, false, null],\n" +
+            "  \"nested\": {\"empty\": {}, \"list\": [[], [1, {\"a\": \"b\"}]]}\n" +
+            "}";
+
+    @Test
+    public void testTreeFromAllInputs() throws Exception {
+        byte[] data = DOCUMENT.getBytes(StandardCharsets.UTF_8);
+        assertDocument(JsonReader.read(new StringReader(DOCUMENT)));
+        assertDocument(JsonReader.read(data));
+        assertDocument(JsonReader.read(new ByteArrayInputStream(data)));
+
+        // force every token and UTF-8 sequence to be split across buffer refills
+        assertDocument(JsonReader.read(new OneCharReader(new StringReader(DOCUMENT))));
+        assertDocument(JsonReader.read(new OneByteInputStream(new ByteArrayInputStream(data))));
+    }
+
+    @Test
+    public void testLargeStringsAreKeptWhole() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            builder.append("value").append(i).append(i % 100 == 0 ? "\\t" : "").append('\u00e9');
+        }
+        String json = "[\"" + builder + "\", 1234567890.25]";
+        String expected = builder.toString().replace("\\t", "\t");
+
+        List<?> list = (List<?>) JsonReader.read(json.getBytes(StandardCharsets.UTF_8));
+        assertEquals(expected, list.get(0));
+        assertEquals(1234567890.25, list.get(1));
+    }
+
+    @Test(timeout = 30000)
+    public void testSurrogatePairAtEndOfBuffer() throws Exception {
+        // a 4 byte UTF-8 sequence decodes to 2 chars so it can't be decoded into the last char of the buffer
+        for (int length = 8180; length < 16400; length += length == 8200 ? 8170 : 1) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < length; i++) {
+                builder.append('a');
+            }
+            String value = builder.append("\uD83D\uDE00").toString();
+            byte[] data = ("\"" + value + "\"").getBytes(StandardCharsets.UTF_8);
+            assertEquals(value, JsonReader.read(data));
+            assertEquals(value, new JsonReader(new ByteArrayInputStream(data)).parse());
+        }
+    }
+
+    @Test
+    public void testPullTokens() throws Exception {
+        JsonReader reader = new JsonReader(new StringReader("{\"a\": [1, \"x\", true, null], \"b\": {}}"));
+        Token[] expected = {Token.BEGIN_OBJECT, Token.NAME, Token.BEGIN_ARRAY, Token.NUMBER, Token.STRING, Token.TRUE, Token.NULL,
+                Token.END_ARRAY, Token.NAME, Token.BEGIN_OBJECT, Token.END_OBJECT, Token.END_OBJECT, Token.END_DOCUMENT};
+        String[] texts = {null, "a", null, "1", "x", null, null, null, "b", null, null, null, null};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("token " + i, expected[i], reader.nextToken());
+            assertEquals("text " + i, texts[i], reader.getText());
+        }
+    }
+
+    @Test
+    public void testSkipValueAndTypedReads() throws Exception {
+        String json = "{\"skip\": {\"deep\": [1, {\"x\": \"\\u0041\"}], \"s\": \"a\\\"b\"}, \"items\": [{\"id\": 1, \"name\": \"one\"}, " +
+                "{\"name\": \"two\", \"id\": 2}], \"tail\": false}";
+        JsonReader reader = new JsonReader(new OneCharReader(new StringReader(json)));
+        reader.beginObject();
+        assertEquals("skip", reader.readName());
+        reader.skipValue();
+        assertEquals("items", reader.readName());
+        reader.beginArray();
+        int total = 0;
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("id".equals(reader.readName())) {
+                    total += reader.readNumber().intValue();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+        // skipping a name skips its value too
+        reader.skipValue();
+        assertFalse(reader.hasNext());
+        reader.endObject();
+        assertEquals(Token.END_DOCUMENT, reader.peek());
+        assertEquals(3, total);
+    }
+
+    @Test
+    public void testReadRawValue() throws Exception {
+        String raw = "{\"a\" : [1, 2.5e3, \"x\\ny\"],  \"b\":null}";
+        String json = "[" + raw + ", true, \"s\", -0.5]";
+        for (JsonReader reader : Arrays.asList(new JsonReader(new StringReader(json)), new JsonReader(new OneCharReader(new StringReader(json))))) {
+            reader.beginArray();
+            assertEquals(raw, reader.readRawValue());
+            assertEquals("true", reader.readRawValue());
+            assertEquals("\"s\"", reader.readRawValue());
+            assertEquals("-0.5", reader.readRawValue());
+            reader.endArray();
+        }
+    }
+
+    @Test
+    public void testMultipleTopLevelValues() throws Exception {
+        JsonReader reader = new JsonReader("{\"a\":1}\n{\"a\":2}\n".getBytes(StandardCharsets.UTF_8), 0, 16);
+        assertEquals(Collections.singletonMap("a", 1.0), reader.readValue());
+        assertEquals(Collections.singletonMap("a", 2.0), reader.readValue());
+        assertEquals(Token.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        assertError("", "Unexpected end of input at 1:1");
+        assertError("{\"a\": 1", "Unexpected end of input");
+        assertError("{\"a\" 1}", "Expected ':' at 1:6");
+        assertError("[1,\n 2 3]", "Expected ',' or ']' at 2:4");
+        assertError("[tru]", "Expected 'e' at 1:5");
+        assertError("[1.]", "Expected digit at 1:4");
+        assertError("\"\\x\"", "Expected valid escape sequence at 1:3");
+        assertError("{} []", "Unexpected character at 1:4");
+        assertError("{}x", "Unexpected character at 1:3");
+        assertError("\"\\u00\uFF11\uFF12\"", "Expected hexadecimal digit at 1:6");
+        assertError("{\"a\":\"\u0001\"}", "Expected valid string character at 1:7");
+        try {
+            JsonReader.read(new byte[]{'"', (byte) 0xC3, '"'});
+            fail("Should have failed");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Malformed UTF-8 input"));
+        }
+    }
+
+    protected static void assertError(String json, String message) {
+        try {
+            JsonReader.read(new StringReader(json));
+            fail("Should have failed to parse " + json);
+        } catch (IOException e) {
+            assertTrue("Expected " + message + " but was " + e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+
+    protected static void assertDocument(Object value) {
+        Map<?, ?> map = (Map<?, ?>) value;
+        assertEquals("caf\u00e9 \"quoted\"\n", map.get("name"));
+        assertEquals("\uD83D\uDE00 \u00fcber", map.get("emoji"));
+        assertEquals(-1250.0, map.get("count"));
+        assertEquals(0.0, map.get("zero"));
+        assertEquals(Arrays.asList(true, false, null), map.get("flags"));
+        Map<?, ?> nested = (Map<?, ?>) map.get("nested");
+        assertEquals(Collections.emptyMap(), nested.get("empty"));
+        List<?> list = (List<?>) nested.get("list");
+        assertEquals(Collections.emptyList(), list.get(0));
+        assertEquals(Arrays.asList(1.0, Collections.singletonMap("a", "b")), list.get(1));
+        assertTrue(map.get("flags") instanceof Collection);
+    }
+
+    /**
+     * Returns at most one character per read
+     */
+    protected static class OneCharReader extends FilterReader {
+        public OneCharReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return super.read(cbuf, off, Math.min(len, 1));
+        }
+    }
+
+    /**
+     * Returns at most one byte per read
+     */
+    protected static class OneByteInputStream extends FilterInputStream {
+        public OneByteInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 1));
+        }
+    }
+}
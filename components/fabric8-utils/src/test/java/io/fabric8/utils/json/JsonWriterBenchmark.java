@@ -0,0 +1,164 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils.json;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A simple benchmark of the throughput and allocation of the streaming {@link JsonWriter} compared to writing
+ * the same tree to a {@link Writer}.
+ * <p/>
+ * Allocation is measured with the HotSpot specific <tt>com.sun.management.ThreadMXBean</tt> when it is available.
+ * Run with an optional argument for the number of iterations.
+ */
+public class JsonWriterBenchmark {
+
+    private static final int ELEMENTS = 1000;
+
+    public static void main(String... args) throws Exception {
+        int iterations = 2000;
+        if (args.length > 0) {
+            iterations = Integer.parseInt(args[0]);
+        }
+        List<Object> tree = createTree(ELEMENTS);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024 * 1024);
+
+        // warm up
+        for (int i = 0; i < iterations / 10; i++) {
+            writeTreeToWriter(tree, buffer);
+            writeTreeToStream(tree, buffer);
+            writeStreaming(buffer);
+        }
+
+        long bytes = buffer.size();
+        for (int run = 0; run < 3; run++) {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                writeTreeToWriter(tree, buffer);
+            }
+            report("tree to BufferedWriter", buffer.size(), iterations, start, allocated);
+
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                writeTreeToStream(tree, buffer);
+            }
+            report("tree to JsonWriter", buffer.size(), iterations, start, allocated);
+
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                writeStreaming(buffer);
+            }
+            report("streaming JsonWriter", buffer.size(), iterations, start, allocated);
+        }
+    }
+
+    protected static void writeTreeToWriter(Object tree, ByteArrayOutputStream buffer) throws IOException {
+        buffer.reset();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+        JsonWriter.write(writer, tree);
+        writer.flush();
+    }
+
+    protected static void writeTreeToStream(Object tree, ByteArrayOutputStream buffer) throws IOException {
+        buffer.reset();
+        JsonWriter.write(buffer, tree);
+    }
+
+    /**
+     * Writes the same document as {@link #createTree(int)} without creating the tree
+     */
+    protected static void writeStreaming(ByteArrayOutputStream buffer) throws IOException {
+        buffer.reset();
+        JsonWriter writer = new JsonWriter(buffer);
+        writer.beginArray();
+        for (int i = 0; i < ELEMENTS; i++) {
+            writer.beginObject();
+            writer.name("kind").value("Pod");
+            writer.name("metadata").beginObject().name("name").value(NAMES[i]).name("labels").beginObject()
+                    .name("project").value("caf\u00e9").name("provider").value("fabric8").endObject().endObject();
+            writer.name("spec").beginObject().name("replicas").value(i % 10).name("ratio").value(i / 8.0)
+                    .name("enabled").value(i % 2 == 0).name("ports").beginArray().value(8080).value(8443).endArray()
+                    .name("notes").nullValue().name("command").value("echo \"hello\"\n").endObject();
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.flush();
+    }
+
+    private static final String[] NAMES = new String[ELEMENTS];
+
+    static {
+        for (int i = 0; i < ELEMENTS; i++) {
+            NAMES[i] = "pod-" + i;
+        }
+    }
+
+    protected static List<Object> createTree(int count) {
+        List<Object> answer = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> labels = new LinkedHashMap<>();
+            labels.put("project", "caf\u00e9");
+            labels.put("provider", "fabric8");
+            Map<String, Object> metadata = new LinkedHashMap<>();
+            metadata.put("name", NAMES[i]);
+            metadata.put("labels", labels);
+            Map<String, Object> spec = new LinkedHashMap<>();
+            spec.put("replicas", i % 10);
+            spec.put("ratio", i / 8.0);
+            spec.put("enabled", i % 2 == 0);
+            spec.put("ports", Arrays.asList(8080, 8443));
+            spec.put("notes", null);
+            spec.put("command", "echo \"hello\"\n");
+            Map<String, Object> pod = new LinkedHashMap<>();
+            pod.put("kind", "Pod");
+            pod.put("metadata", metadata);
+            pod.put("spec", spec);
+            answer.add(pod);
+        }
+        return answer;
+    }
+
+    protected static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    protected static void report(String operation, long bytes, int iterations, long startNanos, long startAllocated) {
+        long nanos = System.nanoTime() - startNanos;
+        double megabytesPerSecond = bytes * (double) iterations / (1024 * 1024) / (nanos / 1000000000.0);
+        long allocated = startAllocated >= 0 ? (allocatedBytes() - startAllocated) / iterations : -1;
+        System.out.println(String.format("%-25s %10.1f MB/sec %12d bytes allocated per document", operation, megabytesPerSecond, allocated));
+    }
+}
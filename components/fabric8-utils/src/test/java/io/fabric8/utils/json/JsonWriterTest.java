@@ -0,0 +1,198 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.utils.json;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class JsonWriterTest {
+
+    @Test
+    public void testStreamingOutputMatchesWriterOutput() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            Object value = randomValue(random, 0);
+            String expected = writeToString(value);
+            for (int bufferSize : new int[]{64, 8192}) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                JsonWriter writer = new JsonWriter(buffer, bufferSize);
+                writer.value(value);
+                writer.flush();
+                assertEquals("value " + i + " with buffer " + bufferSize, expected, new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    public void testEscapes() throws Exception {
+        String value = "q\" s\\ b\b f\f n\n r\r t\t c\u0001 \u007f \u0085 \u00a0 \u2028 \u00e9 \uD83D\uDE00";
+        String expected = "\"q\\\" s\\\\ b\\b f\\f n\\n r\\r t\\t c\\u0001 \u007f \\u0085 \u00a0 \\u2028 \u00e9 \uD83D\uDE00\"";
+        assertEquals(expected, writeToString(value));
+        assertEquals(expected, writeToBytes(value));
+        assertEquals(value, JsonReader.read(writeToBytes(value).getBytes(StandardCharsets.UTF_8)));
+
+        // unpaired surrogates cannot be encoded so are replaced as the UTF-8 charset does
+        assertEquals("\"a?b\"", writeToBytes("a\uD800b"));
+    }
+
+    @Test
+    public void testNumbers() throws Exception {
+        List<Object> numbers = Arrays.<Object>asList(0, -1, 7L, Long.MAX_VALUE, Long.MIN_VALUE, Integer.MIN_VALUE, (short) 12, (byte) -3,
+                1.5, -0.0, 1e300, 0.1f);
+        assertEquals(writeToString(numbers), writeToBytes(numbers));
+        assertEquals("[0,-1,7,9223372036854775807,-9223372036854775808,-2147483648,12,-3,1.5,-0.0,1.0E300,0.1]", writeToBytes(numbers));
+    }
+
+    @Test
+    public void testStreamingLargeDocument() throws Exception {
+        int count = 100000;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (JsonWriter writer = new JsonWriter(buffer)) {
+            writer.beginObject().name("kind").value("List").name("items").beginArray();
+            for (int i = 0; i < count; i++) {
+                writer.beginObject().name("name").value("item-" + i).name("index").value(i).name("ratio").value(i / 4.0)
+                        .name("even").value(i % 2 == 0).name("tags").beginArray().endArray().name("extra").nullValue().endObject();
+            }
+            writer.endArray().endObject();
+        }
+
+        JsonReader reader = new JsonReader(buffer.toByteArray(), 0, buffer.size());
+        reader.beginObject();
+        assertEquals("kind", reader.readName());
+        assertEquals("List", reader.readString());
+        assertEquals("items", reader.readName());
+        reader.beginArray();
+        int index = 0;
+        while (reader.hasNext()) {
+            Map<?, ?> item = (Map<?, ?>) reader.readValue();
+            assertEquals("item-" + index, item.get("name"));
+            assertEquals((double) index, item.get("index"));
+            index++;
+        }
+        reader.endArray();
+        reader.endObject();
+        assertEquals(count, index);
+    }
+
+    @Test
+    public void testInvalidUsage() throws Exception {
+        JsonWriter writer = new JsonWriter(new ByteArrayOutputStream());
+        writer.beginObject();
+        try {
+            writer.value("no name");
+            fail("Should have failed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            writer.endArray();
+            fail("Should have failed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        writer.name("a");
+        try {
+            writer.endObject();
+            fail("Should have failed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            writer.close();
+            fail("Should have failed");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    protected static String writeToString(Object value) throws IOException {
+        StringWriter writer = new StringWriter();
+        JsonWriter.write(writer, value);
+        return writer.toString();
+    }
+
+    protected static String writeToBytes(Object value) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        JsonWriter.write(buffer, value);
+        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    protected static Object randomValue(Random random, int depth) {
+        switch (random.nextInt(depth < 4 ? 8 : 6)) {
+            case 0:
+                return random.nextInt();
+            case 1:
+                return random.nextLong();
+            case 2:
+                return random.nextDouble() * 1000;
+            case 3:
+                return randomString(random);
+            case 4:
+                return random.nextBoolean();
+            case 5:
+                return null;
+            case 6:
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = random.nextInt(6); i > 0; i--) {
+                    map.put(randomString(random), randomValue(random, depth + 1));
+                }
+                return map;
+            default:
+                List<Object> list = new ArrayList<>();
+                for (int i = random.nextInt(6); i > 0; i--) {
+                    list.add(randomValue(random, depth + 1));
+                }
+                return list;
+        }
+    }
+
+    protected static String randomString(Random random) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = random.nextInt(40); i > 0; i--) {
+            switch (random.nextInt(5)) {
+                case 0:
+                    // control characters, quotes and backslashes
+                    builder.append("\"\\/\b\f\n\r\t\u0000\u001f".charAt(random.nextInt(10)));
+                    break;
+                case 1:
+                    builder.append((char) random.nextInt(0x3000));
+                    break;
+                case 2:
+                    builder.appendCodePoint(0x10000 + random.nextInt(0x10000));
+                    break;
+                default:
+                    builder.append((char) (' ' + random.nextInt(95)));
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -23,6 +23,14 @@ public class Annotations {
         public static final String JSON_SCHEMA = "fabric8.io/json-schema";
     }
 
+    public static class Apply {
+        /**
+         * The canonical hash of the user supplied configuration stored by the {@link Controller} when
+         * {@link Controller#isContentHashMode()} is enabled
+         */
+        public static final String CONTENT_HASH = "fabric8.io/content-hash";
+    }
+
     public static class Service {
         public static final String EXPOSE_URL = "fabric8.io/exposeUrl";
     }
@@ -0,0 +1,289 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.Quantity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Calculates a canonical hash of the user supplied configuration of an entity so that the {@link Controller} can
+ * tell an entity has not changed without comparing it to the one on the server.
+ * <p/>
+ * The canonical form is the entity serialized to JSON with:
+ * <ul>
+ * <li>the <code>status</code>, the server managed <code>metadata</code> fields, the namespace and the
+ * {@link Annotations.Apply#CONTENT_HASH} annotation removed</li>
+ * <li>null values, empty objects and empty arrays removed</li>
+ * <li>object fields sorted by name; array elements keep their order</li>
+ * <li>{@link Quantity} values such as <code>1Gi</code> or <code>500m</code> converted to a plain decimal
+ * number of base units and other numbers written without trailing zeros</li>
+ * </ul>
+ * The hash is the lower case hex SHA-256 of the compact UTF-8 canonical JSON so it is stable across JVMs.
+ */
+public final class ContentHash {
+    private static final Pattern QUANTITY = Pattern.compile("([+-]?(?:[0-9]+\\.?[0-9]*|\\.[0-9]+)(?:[eE][+-]?[0-9]+)?)([a-zA-Z]*)");
+    private static final List<String> SERVER_MANAGED_METADATA = Arrays.asList(
+            "namespace", "resourceVersion", "uid", "selfLink", "creationTimestamp", "deletionTimestamp",
+            "deletionGracePeriodSeconds", "generation");
+
+    private static final ObjectMapper MAPPER = createMapper();
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private ContentHash() {
+        //Utility
+    }
+
+    /**
+     * Returns the canonical hash of the entity
+     */
+    public static String of(HasMetadata entity) {
+        byte[] json = canonicalJson(entity);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(json);
+            StringBuilder buffer = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                buffer.append(Character.forDigit((b >> 4) & 0xf, 16));
+                buffer.append(Character.forDigit(b & 0xf, 16));
+            }
+            return buffer.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Calculates the hash of the entity and stores it in its {@link Annotations.Apply#CONTENT_HASH} annotation
+     *
+     * @return the hash
+     */
+    public static String annotate(HasMetadata entity) {
+        String hash = of(entity);
+        KubernetesHelper.getOrCreateAnnotations(entity).put(Annotations.Apply.CONTENT_HASH, hash);
+        return hash;
+    }
+
+    /**
+     * Returns the hash stored in the {@link Annotations.Apply#CONTENT_HASH} annotation or null if there is none
+     */
+    public static String getAnnotation(HasMetadata entity) {
+        if (entity != null) {
+            ObjectMeta metadata = entity.getMetadata();
+            if (metadata != null) {
+                Map<String, String> annotations = metadata.getAnnotations();
+                if (annotations != null) {
+                    return annotations.get(Annotations.Apply.CONTENT_HASH);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the canonical JSON which is hashed
+     */
+    public static byte[] canonicalJson(HasMetadata entity) {
+        JsonNode tree = MAPPER.valueToTree(entity);
+        if (tree instanceof ObjectNode) {
+            ObjectNode object = (ObjectNode) tree;
+            object.remove("status");
+            JsonNode metadata = object.get("metadata");
+            if (metadata instanceof ObjectNode) {
+                ((ObjectNode) metadata).remove(SERVER_MANAGED_METADATA);
+                JsonNode annotations = metadata.get("annotations");
+                if (annotations instanceof ObjectNode) {
+                    ((ObjectNode) annotations).remove(Annotations.Apply.CONTENT_HASH);
+                }
+            }
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (JsonGenerator generator = FACTORY.createGenerator(buffer)) {
+            writeCanonical(generator, tree);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write canonical JSON of " + entity + ". " + e, e);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Converts a quantity such as <code>1Gi</code>, <code>500m</code> or <code>1e3</code> into a plain decimal number
+     * of base units without trailing zeros, or returns the text unchanged if it is not a valid quantity
+     */
+    public static String normalizeQuantity(String text) {
+        if (text == null) {
+            return null;
+        }
+        Matcher matcher = QUANTITY.matcher(text.trim());
+        if (!matcher.matches()) {
+            return text;
+        }
+        BigDecimal multiplier = multiplier(matcher.group(2));
+        if (multiplier == null) {
+            return text;
+        }
+        BigDecimal value = new BigDecimal(matcher.group(1)).multiply(multiplier);
+        if (value.signum() == 0) {
+            return "0";
+        }
+        return value.stripTrailingZeros().toPlainString();
+    }
+
+    private static BigDecimal multiplier(String suffix) {
+        switch (suffix) {
+            case "":
+                return BigDecimal.ONE;
+            case "n":
+                return BigDecimal.ONE.scaleByPowerOfTen(-9);
+            case "u":
+                return BigDecimal.ONE.scaleByPowerOfTen(-6);
+            case "m":
+                return BigDecimal.ONE.scaleByPowerOfTen(-3);
+            case "k":
+                return BigDecimal.ONE.scaleByPowerOfTen(3);
+            case "M":
+                return BigDecimal.ONE.scaleByPowerOfTen(6);
+            case "G":
+                return BigDecimal.ONE.scaleByPowerOfTen(9);
+            case "T":
+                return BigDecimal.ONE.scaleByPowerOfTen(12);
+            case "P":
+                return BigDecimal.ONE.scaleByPowerOfTen(15);
+            case "E":
+                return BigDecimal.ONE.scaleByPowerOfTen(18);
+            case "Ki":
+                return BigDecimal.valueOf(2).pow(10);
+            case "Mi":
+                return BigDecimal.valueOf(2).pow(20);
+            case "Gi":
+                return BigDecimal.valueOf(2).pow(30);
+            case "Ti":
+                return BigDecimal.valueOf(2).pow(40);
+            case "Pi":
+                return BigDecimal.valueOf(2).pow(50);
+            case "Ei":
+                return BigDecimal.valueOf(2).pow(60);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Writes the node with sorted object fields omitting nulls and empty containers
+     */
+    private static void writeCanonical(JsonGenerator generator, JsonNode node) throws IOException {
+        if (node.isObject()) {
+            List<String> names = new ArrayList<>();
+            Iterator<String> iter = node.fieldNames();
+            while (iter.hasNext()) {
+                String name = iter.next();
+                if (!isEmpty(node.get(name))) {
+                    names.add(name);
+                }
+            }
+            Collections.sort(names);
+            generator.writeStartObject();
+            for (String name : names) {
+                generator.writeFieldName(name);
+                writeCanonical(generator, node.get(name));
+            }
+            generator.writeEndObject();
+        } else if (node.isArray()) {
+            generator.writeStartArray();
+            for (JsonNode element : node) {
+                if (isEmpty(element)) {
+                    generator.writeNull();
+                } else {
+                    writeCanonical(generator, element);
+                }
+            }
+            generator.writeEndArray();
+        } else if (node.isNumber()) {
+            BigDecimal value = node.decimalValue();
+            generator.writeNumber(value.signum() == 0 ? "0" : value.stripTrailingZeros().toPlainString());
+        } else {
+            MAPPER.writeTree(generator, node);
+        }
+    }
+
+    /**
+     * Returns true if the node is null or an object or array which only contains empty values
+     */
+    private static boolean isEmpty(JsonNode node) {
+        if (node == null || node.isNull() || node.isMissingNode()) {
+            return true;
+        }
+        if (node.isContainerNode()) {
+            for (JsonNode child : node) {
+                if (!isEmpty(child)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static ObjectMapper createMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        // a mix-in is needed to replace the serializer annotated on Quantity itself
+        mapper.addMixIn(Quantity.class, QuantityMixIn.class);
+        return mapper;
+    }
+
+    @JsonSerialize(using = CanonicalQuantitySerializer.class)
+    private abstract static class QuantityMixIn {
+    }
+
+    /**
+     * Writes quantities as their normalized value so that equal amounts have the same hash
+     */
+    static class CanonicalQuantitySerializer extends JsonSerializer<Quantity> {
+        @Override
+        public void serialize(Quantity value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            String text = value.getAmount();
+            if (text != null && value.getFormat() != null) {
+                text += value.getFormat();
+            }
+            generator.writeString(normalizeQuantity(text));
+        }
+    }
+}
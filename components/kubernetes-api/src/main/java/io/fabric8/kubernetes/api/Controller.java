@@ -15,7 +15,6 @@
  */
 package io.fabric8.kubernetes.api;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import io.fabric8.kubernetes.api.extensions.Templates;
 import io.fabric8.kubernetes.api.model.ConfigMap;
 import io.fabric8.kubernetes.api.model.HasMetadata;
@@ -38,7 +37,8 @@ import io.fabric8.kubernetes.api.model.extensions.Deployment;
 import io.fabric8.kubernetes.api.model.extensions.Ingress;
 import io.fabric8.kubernetes.api.model.extensions.ReplicaSet;
 import io.fabric8.kubernetes.api.model.extensions.StatefulSet;
-import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.api.rollouts.RolloutOrchestrator;
+import io.fabric8.kubernetes.api.rollouts.RolloutResult;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClientException;
 import io.fabric8.kubernetes.client.dsl.MixedOperation;
@@ -59,8 +59,6 @@ import io.fabric8.openshift.api.model.Template;
 import io.fabric8.openshift.client.OpenShiftAPIGroups;
 import io.fabric8.openshift.client.OpenShiftClient;
 import io.fabric8.openshift.client.OpenShiftNotAvailableException;
-import io.fabric8.utils.Files;
-import io.fabric8.utils.IOHelpers;
 import io.fabric8.utils.Objects;
 import io.fabric8.utils.Strings;
 import io.fabric8.utils.Systems;
@@ -69,14 +67,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.yaml.snakeyaml.Yaml;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Predicate;
 
 import static io.fabric8.kubernetes.api.KubernetesHelper.getKind;
@@ -91,10 +93,11 @@ import static io.fabric8.kubernetes.api.KubernetesHelper.toItemList;
 /**
  * Applies DTOs to the current Kubernetes master
  */
-public class Controller {
+public class Controller implements Closeable {
     private static final transient Logger LOG = LoggerFactory.getLogger(Controller.class);
 
     private final KubernetesClient kubernetesClient;
+    private final boolean closeClient;
 
     private boolean throwExceptionOnError = true;
     private boolean allowCreate = true;
@@ -105,6 +108,8 @@ public class Controller {
     private boolean rollingUpgrade;
     private boolean processTemplatesLocally;
     private File logJsonDir;
+    private boolean logJsonNdjson;
+    private EntityJournal entityJournal;
     private File basedir;
     private boolean failOnMissingParameterValue;
     private boolean supportOAuthClients;
@@ -112,25 +117,59 @@ public class Controller {
     private String namesapce = KubernetesHelper.defaultNamespace();
     private boolean requireSecretsCreatedBeforeReplicationControllers;
     private boolean rollingUpgradePreserveScale = true;
+    private boolean contentHashMode;
+    private int rollingUpgradeParallelism = 1;
+    private int rollingUpgradeMaxUnavailable = RolloutOrchestrator.DEFAULT_MAX_UNAVAILABLE;
+    private RolloutOrchestrator rolloutOrchestrator;
+    private boolean createdRolloutOrchestrator;
+    private int applyBatchDepth;
 
+    /**
+     * Creates a controller using a client shared via {@link KubernetesClientRegistry#getDefault()};
+     * {@link #close()} the controller to return the client to the registry
+     */
     public Controller() {
-        this(new DefaultKubernetesClient());
+        this(KubernetesClientRegistry.getDefault().acquire(), true);
     }
 
     public Controller(KubernetesClient kubernetesClient) {
+        this(kubernetesClient, false);
+    }
+
+    private Controller(KubernetesClient kubernetesClient, boolean closeClient) {
         this.kubernetesClient = kubernetesClient;
+        this.closeClient = closeClient;
     }
 
-    public String apply(File file) throws Exception {
-        String ext = Files.getFileExtension(file);
+    /**
+     * Writes any entities queued for the {@link #getLogJsonDir()} and closes its files, stops the threads of the
+     * {@link RolloutOrchestrator} created by this controller then returns the client leased by the {@link #Controller()}
+     * constructor to the registry; a client or orchestrator passed to the controller is left open for the caller to close
+     */
+    @Override
+    public void close() {
+        closeEntityJournal();
+        synchronized (this) {
+            if (createdRolloutOrchestrator) {
+                rolloutOrchestrator.close();
+                rolloutOrchestrator = null;
+                createdRolloutOrchestrator = false;
+            }
+        }
+        if (closeClient) {
+            kubernetesClient.close();
+        }
+    }
 
-        if ("yaml".equalsIgnoreCase(ext)) {
-            return applyYaml(file);
-        } else if ("json".equalsIgnoreCase(ext)) {
-            return applyJson(file);
-        } else {
-            throw new IllegalArgumentException("Unknown file type " + ext);
+    /**
+     * Applies the resources in the given JSON or YAML file, parsing them one at a time so that large
+     * multi-document manifests do not need to be loaded into memory
+     */
+    public String apply(File file) throws Exception {
+        try (KubernetesResourceIterator iter = KubernetesResourceIterator.forFile(file)) {
+            apply(iter, file.getName());
         }
+        return "";
     }
 
     /**
@@ -212,20 +251,29 @@ public class Controller {
      * Applies the given DTOs onto the Kubernetes master
      */
     public void apply(Object dto, String sourceName) throws Exception {
-        if (dto instanceof List) {
-            List list = (List) dto;
-            for (Object element : list) {
-                if (dto == element) {
-                    LOG.warn("Found recursive nested object for " + dto + " of class: " + dto.getClass().getName());
-                    continue;
+        applyBatchDepth++;
+        try {
+            if (dto instanceof List) {
+                List list = (List) dto;
+                for (Object element : list) {
+                    if (dto == element) {
+                        LOG.warn("Found recursive nested object for " + dto + " of class: " + dto.getClass().getName());
+                        continue;
+                    }
+                    apply(element, sourceName);
                 }
-                apply(element, sourceName);
+            } else if (dto instanceof KubernetesList) {
+                applyList((KubernetesList) dto, sourceName);
+            } else if (dto instanceof Iterator) {
+                applyIterator((Iterator) dto, sourceName);
+            } else if (dto != null) {
+                applyEntity(dto, sourceName);
             }
-        } else if (dto instanceof KubernetesList) {
-            applyList((KubernetesList) dto, sourceName);
-        } else if (dto != null) {
-            applyEntity(dto, sourceName);
+        } catch (Throwable e) {
+            endApplyBatch(e);
+            throw e;
         }
+        endApplyBatch(null);
     }
 
     /**
@@ -290,6 +338,7 @@ public class Controller {
             applyPersistentVolumeClaim((PersistentVolumeClaim) dto, sourceName);
         } else if (dto instanceof HasMetadata) {
             HasMetadata entity = (HasMetadata) dto;
+            annotateContentHash(entity);
             try {
                 String namespace = getNamespace();
                 String resourceNamespace = getNamespace(entity);
@@ -307,6 +356,7 @@ public class Controller {
     }
 
     public void applyOAuthClient(OAuthClient entity, String sourceName) {
+        annotateContentHash(entity);
         OpenShiftClient openShiftClient = getOpenShiftClientOrNull();
         if (openShiftClient != null && openShiftClient.supportsOpenShiftAPIGroup(OpenShiftAPIGroups.OAUTH)) {
             if (supportOAuthClients) {
@@ -322,7 +372,7 @@ public class Controller {
                         LOG.info("Not updating the OAuthClient which are shared across namespaces as its already running");
                         return;
                     }
-                    if (UserConfigurationCompare.configEqual(entity, old)) {
+                    if (isUnchanged(entity, old)) {
                         LOG.info("OAuthClient has not changed so not doing anything");
                     } else {
                         if (isRecreateMode()) {
@@ -372,6 +422,7 @@ public class Controller {
      * Installs the template into the namespace without processing it
      */
     public void installTemplate(Template entity, String sourceName) {
+        annotateContentHash(entity);
         OpenShiftClient openShiftClient = getOpenShiftClientOrNull();
         if (openShiftClient == null || !openShiftClient.supportsOpenShiftAPIGroup(OpenShiftAPIGroups.TEMPLATE)) {
             // lets not install the template on Kubernetes!
@@ -383,7 +434,7 @@ public class Controller {
             Objects.notNull(id, "No name for " + entity + " " + sourceName);
             Template old = openShiftClient.templates().inNamespace(namespace).withName(id).get();
             if (isRunning(old)) {
-                if (UserConfigurationCompare.configEqual(entity, old)) {
+                if (isUnchanged(entity, old)) {
                     LOG.info("Template has not changed so not doing anything");
                 } else {
                     boolean recreateMode = isRecreateMode();
@@ -458,6 +509,7 @@ public class Controller {
      * Creates/updates a service account and processes it returning the processed DTOs
      */
     public void applyServiceAccount(ServiceAccount serviceAccount, String sourceName) throws Exception {
+        annotateContentHash(serviceAccount);
         String namespace = getNamespace();
         String id = getName(serviceAccount);
         Objects.notNull(id, "No name for " + serviceAccount + " " + sourceName);
@@ -467,7 +519,7 @@ public class Controller {
         }
         ServiceAccount old = kubernetesClient.serviceAccounts().inNamespace(namespace).withName(id).get();
         if (isRunning(old)) {
-            if (UserConfigurationCompare.configEqual(serviceAccount, old)) {
+            if (isUnchanged(serviceAccount, old)) {
                 LOG.info("ServiceAccount has not changed so not doing anything");
             } else {
                 if (isRecreateMode()) {
@@ -509,6 +561,7 @@ public class Controller {
     }
 
     public void applyPersistentVolumeClaim(PersistentVolumeClaim entity, String sourceName) throws Exception {
+        annotateContentHash(entity);
         // we cannot update PVCs
         boolean alwaysRecreate = true;
         String namespace = getNamespace();
@@ -520,7 +573,7 @@ public class Controller {
         }
         PersistentVolumeClaim old = kubernetesClient.persistentVolumeClaims().inNamespace(namespace).withName(id).get();
         if (isRunning(old)) {
-            if (UserConfigurationCompare.configEqual(entity, old)) {
+            if (isUnchanged(entity, old)) {
                 LOG.info("PersistentVolumeClaim has not changed so not doing anything");
             } else {
                 if (alwaysRecreate || isRecreateMode()) {
@@ -561,6 +614,7 @@ public class Controller {
     }
 
     public void applySecret(Secret secret, String sourceName) throws Exception {
+        annotateContentHash(secret);
         String namespace = getNamespace(secret);
         String id = getName(secret);
         Objects.notNull(id, "No name for " + secret + " " + sourceName);
@@ -573,7 +627,7 @@ public class Controller {
         // check if the secret already exists or not
         if (isRunning(old)) {
             // if the secret already exists and is the same, then do nothing
-            if (UserConfigurationCompare.configEqual(secret, old)) {
+            if (isUnchanged(secret, old)) {
                 LOG.info("Secret has not changed so not doing anything");
                 return;
             } else {
@@ -616,61 +670,33 @@ public class Controller {
     }
 
     protected void logGeneratedEntity(String message, String namespace, HasMetadata entity, Object result) {
-        if (logJsonDir != null) {
-            File namespaceDir = new File(logJsonDir, namespace);
-            namespaceDir.mkdirs();
-            String kind = getKind(entity);
-            String name = KubernetesHelper.getName(entity);
-            if (Strings.isNotBlank(kind)) {
-                name = kind.toLowerCase() + "-" + name;
-            }
-            if (Strings.isNullOrBlank(name)) {
-                LOG.warn("No name for the entity " + entity);
-            } else {
-                String fileName = name + ".json";
-                File file = new File(namespaceDir, fileName);
-                if (file.exists()) {
-                    int idx = 1;
-                    while (true) {
-                        fileName = name + "-" + idx++ + ".json";
-                        file = new File(namespaceDir, fileName);
-                        if (!file.exists()) {
-                            break;
-                        }
-                    }
-                }
-                String text;
-                if (result instanceof String) {
-                    text = result.toString();
-                } else {
-                    try {
-                        text = KubernetesHelper.toJson(result);
-                    } catch (JsonProcessingException e) {
-                        LOG.warn("Cannot convert " + result + " to JSON: " + e, e);
-                        if (result != null) {
-                            text = result.toString();
-                        } else {
-                            text = "null";
-                        }
-                    }
-                }
-                try {
-                    IOHelpers.writeFully(file, text);
-                    Object fileLocation = file;
-                    if (basedir != null) {
-                        String path = Files.getRelativePath(basedir, file);
-                        if (path != null) {
-                            fileLocation = Strings.stripPrefix(path, "/");
-                        }
-                    }
-                    LOG.info(message + fileLocation);
-                } catch (IOException e) {
-                    LOG.warn("Failed to write to file " + file + ". " + e, e);
-                }
-                return;
-            }
+        EntityJournal journal = getEntityJournal();
+        if (journal != null) {
+            journal.log(message, namespace, entity, result);
+        } else {
+            LOG.info(message + result);
+        }
+    }
+
+    protected synchronized EntityJournal getEntityJournal() {
+        if (entityJournal == null && logJsonDir != null) {
+            entityJournal = new EntityJournal(logJsonDir, logJsonNdjson, EntityJournal.DEFAULT_QUEUE_CAPACITY);
+            entityJournal.setBasedir(basedir);
+        }
+        return entityJournal;
+    }
+
+    /**
+     * Waits until all the entities logged to the {@link #getLogJsonDir()} have been written
+     */
+    public void flushLogJson() throws InterruptedException {
+        EntityJournal journal;
+        synchronized (this) {
+            journal = entityJournal;
+        }
+        if (journal != null) {
+            journal.flush();
         }
-        LOG.info(message + result);
     }
 
     public Object processTemplate(Template entity, String sourceName) {
@@ -754,6 +780,7 @@ public class Controller {
     }
 
     public void applyBuildConfig(BuildConfig entity, String sourceName) {
+        annotateContentHash(entity);
         OpenShiftClient openShiftClient = getOpenShiftClientOrJenkinshift();
         if (openShiftClient != null) {
             String id = getName(entity);
@@ -766,7 +793,7 @@ public class Controller {
             applyNamespace(namespace);
             BuildConfig old = openShiftClient.buildConfigs().inNamespace(namespace).withName(id).get();
             if (isRunning(old)) {
-                if (UserConfigurationCompare.configEqual(entity, old)) {
+                if (isUnchanged(entity, old)) {
                     LOG.info("BuildConfig has not changed so not doing anything");
                 } else {
                     if (isRecreateMode()) {
@@ -809,6 +836,7 @@ public class Controller {
     }
 
     public void applyRoleBinding(RoleBinding entity, String sourceName) {
+        annotateContentHash(entity);
         OpenShiftClient openShiftClient = getOpenShiftClientOrJenkinshift();
         if (openShiftClient != null) {
             String id = getName(entity);
@@ -821,7 +849,7 @@ public class Controller {
             applyNamespace(namespace);
             RoleBinding old = openShiftClient.roleBindings().inNamespace(namespace).withName(id).get();
             if (isRunning(old)) {
-                if (UserConfigurationCompare.configEqual(entity, old)) {
+                if (isUnchanged(entity, old)) {
                     LOG.info("RoleBinding has not changed so not doing anything");
                 } else {
                     if (isRecreateMode()) {
@@ -864,6 +892,7 @@ public class Controller {
     }
 
     public void applyPolicyBinding(PolicyBinding entity, String sourceName) {
+        annotateContentHash(entity);
         OpenShiftClient openShiftClient = getOpenShiftClientOrJenkinshift();
         if (openShiftClient != null) {
             String id = getName(entity);
@@ -876,7 +905,7 @@ public class Controller {
             applyNamespace(namespace);
             PolicyBinding old = openShiftClient.policyBindings().inNamespace(namespace).withName(id).get();
             if (isRunning(old)) {
-                if (UserConfigurationCompare.configEqual(entity, old)) {
+                if (isUnchanged(entity, old)) {
                     LOG.info("PolicyBinding has not changed so not doing anything");
                 } else {
                     if (isRecreateMode()) {
@@ -987,16 +1016,46 @@ public class Controller {
     }
 
 
+    /**
+     * Applies each entity returned by the iterator as it is returned so that the entities,
+     * such as those from a {@link KubernetesResourceIterator}, do not need to be collected into a list first
+     */
+    public void applyIterator(Iterator<?> iter, String sourceName) throws Exception {
+        applyBatchDepth++;
+        try {
+            while (iter.hasNext()) {
+                Object entity = iter.next();
+                if (entity == iter) {
+                    LOG.warn("Found recursive nested object for " + iter + " of class: " + iter.getClass().getName());
+                    continue;
+                }
+                apply(entity, sourceName);
+            }
+        } catch (Throwable e) {
+            endApplyBatch(e);
+            throw e;
+        }
+        endApplyBatch(null);
+    }
+
     public void applyList(KubernetesList list, String sourceName) throws Exception {
-        List<HasMetadata> entities = list.getItems();
-        if (entities != null) {
-            for (Object entity : entities) {
-                applyEntity(entity, sourceName);
+        applyBatchDepth++;
+        try {
+            List<HasMetadata> entities = list.getItems();
+            if (entities != null) {
+                for (Object entity : entities) {
+                    applyEntity(entity, sourceName);
+                }
             }
+        } catch (Throwable e) {
+            endApplyBatch(e);
+            throw e;
         }
+        endApplyBatch(null);
     }
 
     public void applyService(Service service, String sourceName) throws Exception {
+        annotateContentHash(service);
         String namespace = getNamespace();
         String id = getName(service);
         Objects.notNull(id, "No name for " + service + " " + sourceName);
@@ -1006,7 +1065,7 @@ public class Controller {
         }
         Service old = kubernetesClient.services().inNamespace(namespace).withName(id).get();
         if (isRunning(old)) {
-            if (UserConfigurationCompare.configEqual(service, old)) {
+            if (isUnchanged(service, old)) {
                 LOG.info("Service has not changed so not doing anything");
             } else {
                 if (isRecreateMode()) {
@@ -1033,6 +1092,7 @@ public class Controller {
     }
 
     public <T extends HasMetadata,L,D> void applyResource(T resource, String sourceName, MixedOperation<T, L, D, ? extends Resource<T, D>> resources) throws Exception {
+        annotateContentHash(resource);
         String namespace = getNamespace();
         String resourceNamespace = getNamespace(resource);
         if (Strings.isNotBlank(namespace) && Strings.isNullOrBlank(resourceNamespace)) {
@@ -1047,7 +1107,7 @@ public class Controller {
         }
         T old = resources.inNamespace(namespace).withName(id).get();
         if (isRunning(old)) {
-            if (UserConfigurationCompare.configEqual(resource, old)) {
+            if (isUnchanged(resource, old)) {
                 LOG.info(kind + " has not changed so not doing anything");
             } else {
                 if (isRecreateMode()) {
@@ -1226,6 +1286,7 @@ public class Controller {
     }
 
     public void applyReplicationController(ReplicationController replicationController, String sourceName) throws Exception {
+        annotateContentHash(replicationController);
         String namespace = getNamespace();
         String id = getName(replicationController);
         Objects.notNull(id, "No name for " + replicationController + " " + sourceName);
@@ -1235,7 +1296,7 @@ public class Controller {
         }
         ReplicationController old = kubernetesClient.replicationControllers().inNamespace(namespace).withName(id).get();
         if (isRunning(old)) {
-            if (UserConfigurationCompare.configEqual(replicationController, old)) {
+            if (isUnchanged(replicationController, old)) {
                 LOG.info("ReplicationController has not changed so not doing anything");
             } else {
                 ReplicationControllerSpec newSpec = replicationController.getSpec();
@@ -1250,7 +1311,12 @@ public class Controller {
                         }
                     }
                     LOG.info("rollingUpgradePreserveScale " + rollingUpgradePreserveScale + " new replicas is " + (newSpec != null ? newSpec.getReplicas() : "<null>"));
-                    kubernetesClient.replicationControllers().inNamespace(namespace).withName(id).rolling().replace(replicationController);
+                    if (rollingUpgradeParallelism > 1) {
+                        getRolloutOrchestrator().submit(namespace, replicationController);
+                        awaitBatchRollingUpgrades();
+                    } else {
+                        kubernetesClient.replicationControllers().inNamespace(namespace).withName(id).rolling().replace(replicationController);
+                    }
                 } else if (isRecreateMode()) {
                     LOG.info("Deleting ReplicationController: " + id);
                     kubernetesClient.replicationControllers().inNamespace(namespace).withName(id).delete();
@@ -1326,6 +1392,7 @@ public class Controller {
     }
 
     public void applyPod(Pod pod, String sourceName) throws Exception {
+        annotateContentHash(pod);
         String namespace = getNamespace();
         String id = getName(pod);
         Objects.notNull(id, "No name for " + pod + " " + sourceName);
@@ -1335,7 +1402,7 @@ public class Controller {
         }
         Pod old = kubernetesClient.pods().inNamespace(namespace).withName(id).get();
         if (isRunning(old)) {
-            if (UserConfigurationCompare.configEqual(pod, old)) {
+            if (isUnchanged(pod, old)) {
                 LOG.info("Pod has not changed so not doing anything");
             } else {
                 if (isRecreateMode()) {
@@ -1435,6 +1502,68 @@ public class Controller {
      */
     public void setLogJsonDir(File logJsonDir) {
         this.logJsonDir = logJsonDir;
+        closeEntityJournal();
+    }
+
+    public boolean isLogJsonNdjson() {
+        return logJsonNdjson;
+    }
+
+    /**
+     * Lets you append the entities of each namespace to a single <code>namespace.ndjson</code> file in the
+     * {@link #getLogJsonDir()} rather than writing a file per entity
+     */
+    public void setLogJsonNdjson(boolean logJsonNdjson) {
+        this.logJsonNdjson = logJsonNdjson;
+        closeEntityJournal();
+    }
+
+    public boolean isContentHashMode() {
+        return contentHashMode;
+    }
+
+    /**
+     * Lets you store a canonical hash of each applied entity in the {@link Annotations.Apply#CONTENT_HASH} annotation
+     * so that later applies of the same configuration can skip comparing the entity with the one on the server
+     * and avoid updating it.
+     * <p/>
+     * Existing entities without the annotation are updated once to store it.
+     */
+    public void setContentHashMode(boolean contentHashMode) {
+        this.contentHashMode = contentHashMode;
+    }
+
+    /**
+     * In {@link #isContentHashMode()} stores the hash of the entity in its annotation before it is created or
+     * replaced so that later applies can compare it
+     */
+    protected void annotateContentHash(HasMetadata entity) {
+        if (contentHashMode && entity != null) {
+            ContentHash.annotate(entity);
+        }
+    }
+
+    /**
+     * Returns true if the entity has the same user configuration as the old entity on the server.
+     * <p/>
+     * In {@link #isContentHashMode()} the hashes stored in the annotations are compared rather than the entities themselves
+     */
+    protected boolean isUnchanged(HasMetadata entity, HasMetadata old) {
+        if (contentHashMode) {
+            String hash = ContentHash.getAnnotation(entity);
+            if (hash == null) {
+                hash = ContentHash.of(entity);
+            }
+            return hash.equals(ContentHash.getAnnotation(old));
+        }
+        return UserConfigurationCompare.configEqual(entity, old);
+    }
+
+    private synchronized void closeEntityJournal() {
+        if (entityJournal != null) {
+            entityJournal.close();
+            entityJournal = null;
+        }
     }
 
     public File getBasedir() {
@@ -1443,6 +1572,11 @@ public class Controller {
 
     public void setBasedir(File basedir) {
         this.basedir = basedir;
+        synchronized (this) {
+            if (entityJournal != null) {
+                entityJournal.setBasedir(basedir);
+            }
+        }
     }
 
     protected boolean isRunning(HasMetadata entity) {
@@ -1547,6 +1681,147 @@ public class Controller {
         this.rollingUpgrade = rollingUpgrade;
     }
 
+    public int getRollingUpgradeParallelism() {
+        return rollingUpgradeParallelism;
+    }
+
+    /**
+     * Lets you perform up to the given number of rolling upgrades of ReplicationControllers concurrently.
+     * <p/>
+     * When greater than one the rolling upgrades are run by a {@link RolloutOrchestrator} so that the upgrades of the
+     * entities passed to one call of {@link #apply(Object, String)}, {@link #applyList(KubernetesList, String)} or
+     * {@link #applyIterator(Iterator, String)} overlap; the call returns once they have all completed.
+     * Changing this discards the orchestrator created by this controller so it must not be changed while rolling
+     * upgrades are in progress; it has no effect on an orchestrator passed to {@link #setRolloutOrchestrator(RolloutOrchestrator)}.
+     */
+    public synchronized void setRollingUpgradeParallelism(int rollingUpgradeParallelism) {
+        if (this.rollingUpgradeParallelism != rollingUpgradeParallelism) {
+            discardCreatedRolloutOrchestrator();
+        }
+        this.rollingUpgradeParallelism = rollingUpgradeParallelism;
+    }
+
+    public int getRollingUpgradeMaxUnavailable() {
+        return rollingUpgradeMaxUnavailable;
+    }
+
+    /**
+     * Lets you configure how many pods may be unavailable at once across all the concurrent rolling upgrades.
+     * Like {@link #setRollingUpgradeParallelism(int)} it must not be changed while rolling upgrades are in progress.
+     */
+    public synchronized void setRollingUpgradeMaxUnavailable(int rollingUpgradeMaxUnavailable) {
+        if (this.rollingUpgradeMaxUnavailable != rollingUpgradeMaxUnavailable) {
+            discardCreatedRolloutOrchestrator();
+        }
+        this.rollingUpgradeMaxUnavailable = rollingUpgradeMaxUnavailable;
+    }
+
+    /**
+     * Returns the orchestrator passed to {@link #setRolloutOrchestrator(RolloutOrchestrator)} or else creates one
+     * using the current parallelism and max unavailable settings which is closed by {@link #close()}
+     */
+    public synchronized RolloutOrchestrator getRolloutOrchestrator() {
+        if (rolloutOrchestrator == null) {
+            rolloutOrchestrator = new RolloutOrchestrator(kubernetesClient, rollingUpgradeParallelism, rollingUpgradeMaxUnavailable);
+            createdRolloutOrchestrator = true;
+        }
+        return rolloutOrchestrator;
+    }
+
+    public synchronized void setRolloutOrchestrator(RolloutOrchestrator rolloutOrchestrator) {
+        discardCreatedRolloutOrchestrator();
+        this.rolloutOrchestrator = rolloutOrchestrator;
+    }
+
+    private void discardCreatedRolloutOrchestrator() {
+        if (createdRolloutOrchestrator) {
+            if (rolloutOrchestrator.getPendingCount() > 0) {
+                throw new IllegalStateException("Cannot replace the RolloutOrchestrator while rolling upgrades are in progress");
+            }
+            rolloutOrchestrator.close();
+            rolloutOrchestrator = null;
+            createdRolloutOrchestrator = false;
+        }
+    }
+
+    /**
+     * Ends an apply call; once the outermost one ends this waits for the rolling upgrades it started even if it failed
+     * so that none are left running, adding their failures to the failure of the apply call rather than replacing it
+     */
+    private void endApplyBatch(Throwable applyFailure) throws Exception {
+        applyBatchDepth--;
+        if (applyFailure == null) {
+            awaitBatchRollingUpgrades();
+            return;
+        }
+        if (applyBatchDepth > 0) {
+            return;
+        }
+        RolloutOrchestrator orchestrator;
+        synchronized (this) {
+            orchestrator = rolloutOrchestrator;
+        }
+        int pending = orchestrator != null ? orchestrator.getPendingCount() : 0;
+        if (pending > 0) {
+            try {
+                for (RolloutResult result : orchestrator.awaitAll(orchestrator.getTimeoutMillis() * pending, TimeUnit.MILLISECONDS)) {
+                    Throwable failure = result.getFailure();
+                    if (failure != null) {
+                        LOG.error("Failed rolling upgrade of ReplicationController " + result.getNamespace() + "/" + result.getName() + ". " + failure, failure);
+                        applyFailure.addSuppressed(failure);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                applyFailure.addSuppressed(e);
+            } catch (Exception e) {
+                applyFailure.addSuppressed(e);
+            }
+        }
+    }
+
+    /**
+     * Waits for the rolling upgrades started by the outermost apply call so that their failures are reported to its caller
+     */
+    protected void awaitBatchRollingUpgrades() throws Exception {
+        if (applyBatchDepth > 0) {
+            return;
+        }
+        RolloutOrchestrator orchestrator;
+        synchronized (this) {
+            orchestrator = rolloutOrchestrator;
+        }
+        int pending = orchestrator != null ? orchestrator.getPendingCount() : 0;
+        if (pending > 0) {
+            // each rollout fails once it times out so they complete within this even if they run one after the other
+            awaitRollingUpgrades(orchestrator.getTimeoutMillis() * pending, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Waits for the rolling upgrades started when {@link #getRollingUpgradeParallelism()} is greater than one
+     * returning the result of each of them; the apply methods already wait for the upgrades they start so this is
+     * only needed for rollouts submitted directly to the {@link #getRolloutOrchestrator()}
+     */
+    public List<RolloutResult> awaitRollingUpgrades(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        RolloutOrchestrator orchestrator;
+        synchronized (this) {
+            orchestrator = rolloutOrchestrator;
+        }
+        if (orchestrator == null) {
+            return new ArrayList<>();
+        }
+        List<RolloutResult> results = orchestrator.awaitAll(timeout, unit);
+        for (RolloutResult result : results) {
+            Throwable failure = result.getFailure();
+            if (failure != null) {
+                Exception e = failure instanceof Exception ? (Exception) failure : new Exception(failure);
+                onApplyError("Failed rolling upgrade of ReplicationController " + result.getNamespace() + "/" + result.getName() + ". " + failure, e);
+            }
+        }
+        return results;
+    }
+
     public boolean isRollingUpgradePreserveScale() {
         return rollingUpgradePreserveScale;
     }
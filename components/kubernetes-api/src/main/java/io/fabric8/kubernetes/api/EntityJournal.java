@@ -0,0 +1,400 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.fabric8.kubernetes.api.KubernetesSerialization.Format;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.utils.Files;
+import io.fabric8.utils.IOHelpers;
+import io.fabric8.utils.Objects;
+import io.fabric8.utils.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static io.fabric8.kubernetes.api.KubernetesHelper.getKind;
+
+/**
+ * Asynchronously writes the entities created or updated by the {@link Controller} into a directory for debugging.
+ * <p/>
+ * Entities are queued on the applying thread and written by a background thread; if the bounded queue is full the
+ * applying thread waits. By default each entity is written to <code>namespace/kind-name.json</code>, or
+ * <code>kind-name-N.json</code> if that exists, using an in memory index of each directory which is seeded by listing it
+ * once, so that repeated applies do not probe the file system for a free name. Alternatively all the entities of a
+ * namespace can be appended to a single <code>namespace.ndjson</code> file with one JSON document per line.
+ * <p/>
+ * The writer thread exits, closing any <code>.ndjson</code> files, whenever the queue is drained so it does not keep
+ * the JVM alive or hold files open between applies.
+ */
+public class EntityJournal implements Closeable {
+    private static final transient Logger LOG = LoggerFactory.getLogger(EntityJournal.class);
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    private static final long IDLE_MILLIS = 1000;
+
+    private final File dir;
+    private final boolean ndjson;
+    private final BlockingQueue<Object> queue;
+    private final Map<File, DirectoryIndex> indexes = new HashMap<>();
+    private final Map<String, Writer> ndjsonWriters = new HashMap<>();
+    private File basedir;
+    private Thread writerThread;
+    private boolean closed;
+
+    public EntityJournal(File dir) {
+        this(dir, false, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param dir           the directory to write the entities into
+     * @param ndjson        whether to append the entities to one <code>namespace.ndjson</code> file per namespace
+     * @param queueCapacity the maximum number of entities waiting to be written
+     */
+    public EntityJournal(File dir, boolean ndjson, int queueCapacity) {
+        Objects.notNull(dir, "dir");
+        this.dir = dir;
+        this.ndjson = ndjson;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+    }
+
+    @Override
+    public String toString() {
+        return "EntityJournal{" +
+                "dir=" + dir +
+                ", ndjson=" + ndjson +
+                '}';
+    }
+
+    /**
+     * Queues the result of creating or updating the entity to be written, waiting if the queue is full.
+     * The result is converted to JSON before it is queued so the caller may modify it once this returns.
+     *
+     * @param result the entity returned by the API server or its JSON
+     */
+    public void log(String message, String namespace, HasMetadata entity, Object result) {
+        String kind = getKind(entity);
+        String name = KubernetesHelper.getName(entity);
+        if (Strings.isNotBlank(kind)) {
+            name = kind.toLowerCase() + "-" + name;
+        }
+        if (Strings.isNullOrBlank(name)) {
+            LOG.warn("No name for the entity " + entity);
+            LOG.info(message + result);
+            return;
+        }
+        enqueue(new Entry(message, namespace, name, ndjson ? toJsonLine(result) : toJson(result)));
+    }
+
+    /**
+     * Waits until all the queued entities have been written
+     */
+    public void flush() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        if (enqueue(latch)) {
+            latch.await();
+        }
+    }
+
+    /**
+     * Writes any queued entities then closes the files
+     */
+    @Override
+    public void close() {
+        try {
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            closed = true;
+            closeWriters();
+        }
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    public boolean isNdjson() {
+        return ndjson;
+    }
+
+    public File getBasedir() {
+        return basedir;
+    }
+
+    /**
+     * Sets the directory which logged file names are made relative to
+     */
+    public void setBasedir(File basedir) {
+        this.basedir = basedir;
+    }
+
+    /**
+     * Returns the number of <code>.ndjson</code> files which are open
+     */
+    public synchronized int getOpenFileCount() {
+        return ndjsonWriters.size();
+    }
+
+    protected boolean enqueue(Object item) {
+        synchronized (this) {
+            if (closed) {
+                LOG.warn("Cannot write to " + dir + " as the journal is closed");
+                return false;
+            }
+        }
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted queueing entity to write to " + dir);
+            return false;
+        }
+        startWriterIfRequired();
+        return true;
+    }
+
+    protected synchronized void startWriterIfRequired() {
+        if (writerThread == null) {
+            writerThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            }, "fabric8-entity-journal");
+            writerThread.start();
+        }
+    }
+
+    protected void drain() {
+        List<Object> batch = new ArrayList<>();
+        while (true) {
+            try {
+                Object first = queue.poll(IDLE_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    synchronized (this) {
+                        // an item may have been queued after the poll timed out so only exit if there are none
+                        if (queue.isEmpty()) {
+                            writerThread = null;
+                            closeWriters();
+                            return;
+                        }
+                    }
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch);
+                List<CountDownLatch> latches = new ArrayList<>();
+                for (Object item : batch) {
+                    if (item instanceof CountDownLatch) {
+                        latches.add((CountDownLatch) item);
+                    } else {
+                        try {
+                            write((Entry) item);
+                        } catch (RuntimeException e) {
+                            LOG.warn("Failed to write entity to " + dir + ". " + e, e);
+                        }
+                    }
+                }
+                batch.clear();
+                flushWriters();
+                for (CountDownLatch latch : latches) {
+                    latch.countDown();
+                }
+            } catch (InterruptedException e) {
+                synchronized (this) {
+                    writerThread = null;
+                    closeWriters();
+                }
+                return;
+            } catch (Throwable e) {
+                LOG.warn("Failed to write entities to " + dir + ". " + e, e);
+                batch.clear();
+            }
+        }
+    }
+
+    protected void write(Entry entry) {
+        File namespaceDir = new File(dir, entry.namespace);
+        if (ndjson) {
+            appendNdjson(entry);
+            return;
+        }
+        DirectoryIndex index = indexes.get(namespaceDir);
+        if (index == null) {
+            index = new DirectoryIndex(namespaceDir);
+            indexes.put(namespaceDir, index);
+        }
+        File file = new File(namespaceDir, index.nextFileName(entry.name));
+        try {
+            IOHelpers.writeFully(file, entry.json);
+            Object fileLocation = file;
+            if (basedir != null) {
+                String path = Files.getRelativePath(basedir, file);
+                if (path != null) {
+                    fileLocation = Strings.stripPrefix(path, "/");
+                }
+            }
+            LOG.info(entry.message + fileLocation);
+        } catch (IOException e) {
+            LOG.warn("Failed to write to file " + file + ". " + e, e);
+        }
+    }
+
+    protected void appendNdjson(Entry entry) {
+        File file = new File(dir, entry.namespace + ".ndjson");
+        try {
+            Writer writer;
+            synchronized (this) {
+                writer = ndjsonWriters.get(entry.namespace);
+                if (writer == null) {
+                    dir.mkdirs();
+                    writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+                    ndjsonWriters.put(entry.namespace, writer);
+                }
+            }
+            writer.write(entry.json);
+            writer.write('\n');
+            LOG.info(entry.message + entry.name + " in " + file.getName());
+        } catch (IOException e) {
+            LOG.warn("Failed to append to file " + file + ". " + e, e);
+        }
+    }
+
+    protected synchronized void flushWriters() {
+        for (Map.Entry<String, Writer> entry : ndjsonWriters.entrySet()) {
+            try {
+                entry.getValue().flush();
+            } catch (IOException e) {
+                LOG.warn("Failed to flush " + entry.getKey() + ".ndjson. " + e, e);
+            }
+        }
+    }
+
+    protected synchronized void closeWriters() {
+        for (Writer writer : ndjsonWriters.values()) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOG.debug("Failed to close writer. " + e, e);
+            }
+        }
+        ndjsonWriters.clear();
+    }
+
+    protected static String toJson(Object result) {
+        if (result instanceof String) {
+            return result.toString();
+        }
+        try {
+            return KubernetesHelper.toJson(result);
+        } catch (JsonProcessingException e) {
+            LOG.warn("Cannot convert " + result + " to JSON: " + e, e);
+            return result != null ? result.toString() : "null";
+        }
+    }
+
+    /**
+     * Returns the JSON on a single line
+     */
+    protected static String toJsonLine(Object result) {
+        try {
+            if (result instanceof String) {
+                JsonNode tree = KubernetesSerialization.reader(Format.JSON, JsonNode.class).readTree(result.toString());
+                return KubernetesSerialization.toJson(tree);
+            }
+            return KubernetesSerialization.toJson(result);
+        } catch (IOException e) {
+            try {
+                return KubernetesSerialization.toJson(String.valueOf(result));
+            } catch (JsonProcessingException e2) {
+                return "null";
+            }
+        }
+    }
+
+    /**
+     * The file names used in a directory so that a free name can be found without touching the file system
+     */
+    protected static class DirectoryIndex {
+        private final Set<String> fileNames = new HashSet<>();
+        private final Map<String, Integer> nextIndexes = new HashMap<>();
+
+        DirectoryIndex(File dir) {
+            dir.mkdirs();
+            String[] names = dir.list();
+            if (names != null) {
+                for (String name : names) {
+                    fileNames.add(name);
+                }
+            }
+        }
+
+        /**
+         * Returns <code>name.json</code> if it is not used, otherwise the first free <code>name-N.json</code>
+         */
+        String nextFileName(String name) {
+            Integer next = nextIndexes.get(name);
+            int idx = next != null ? next : 0;
+            String fileName = fileName(name, idx);
+            while (!fileNames.add(fileName)) {
+                fileName = fileName(name, ++idx);
+            }
+            nextIndexes.put(name, idx + 1);
+            return fileName;
+        }
+
+        private static String fileName(String name, int idx) {
+            return idx == 0 ? name + ".json" : name + "-" + idx + ".json";
+        }
+    }
+
+    private static final class Entry {
+        private final String message;
+        private final String namespace;
+        private final String name;
+        private final String json;
+
+        Entry(String message, String namespace, String name, String json) {
+            this.message = message;
+            this.namespace = namespace;
+            this.name = name;
+            this.json = json;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import io.fabric8.kubernetes.client.Config;
+import io.fabric8.kubernetes.client.ConfigBuilder;
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.NamespacedKubernetesClient;
+import io.fabric8.kubernetes.client.utils.HttpClientUtils;
+import io.fabric8.openshift.client.DefaultOpenShiftClient;
+import io.fabric8.openshift.client.NamespacedOpenShiftClient;
+import io.fabric8.openshift.client.OpenShiftConfig;
+import io.fabric8.utils.Objects;
+import io.fabric8.utils.ThreadFactory;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A process wide registry of {@link KubernetesClient} instances keyed by the effective {@link Config} so that the
+ * static helper methods which need a client for a single call do not parse the kube config, set up TLS and create a new
+ * connection pool each time.
+ * <p/>
+ * Clients are leased with {@link #acquire()} or {@link #acquire(Config)} and returned by closing them, so the usual
+ * try-with-resources blocks keep working. Clients derived from a leased client via <code>adapt()</code>,
+ * <code>inNamespace()</code> or <code>inAnyNamespace()</code> share its lease, so closing any of them returns it.
+ * All clients share one connection pool and dispatcher which are never closed; a client for a {@link Config} which
+ * has not been leased for the idle timeout is discarded.
+ */
+public class KubernetesClientRegistry {
+    private static final transient Logger LOG = LoggerFactory.getLogger(KubernetesClientRegistry.class);
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+
+    private static final KubernetesClientRegistry DEFAULT = new KubernetesClientRegistry(DEFAULT_IDLE_TIMEOUT_MILLIS);
+
+    private final long idleTimeoutMillis;
+    private final ConnectionPool connectionPool = new ConnectionPool();
+    private final Dispatcher dispatcher = new Dispatcher();
+    private final Map<List<Object>, Entry> entries = new HashMap<>();
+    private ScheduledExecutorService executor;
+    private Config defaultConfig;
+    private long defaultConfigLoadedAt;
+
+    public KubernetesClientRegistry(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * Returns the shared registry
+     */
+    public static KubernetesClientRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    @Override
+    public String toString() {
+        return "KubernetesClientRegistry{" +
+                "clients=" + getClientCount() +
+                ", idleTimeoutMillis=" + idleTimeoutMillis +
+                '}';
+    }
+
+    /**
+     * Leases a client for the default configuration; close it when you are done to return it to the registry
+     */
+    public KubernetesClient acquire() {
+        return acquire(getDefaultConfig());
+    }
+
+    /**
+     * Leases a client for the given configuration; close it when you are done to return it to the registry
+     */
+    public synchronized KubernetesClient acquire(Config config) {
+        Objects.notNull(config, "config");
+        List<Object> key = createKey(config);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(key, createHttpClient(config));
+            entries.put(key, entry);
+            LOG.debug("Created shared client for " + config.getMasterUrl() + " namespace " + config.getNamespace());
+        }
+        entry.leases++;
+        entry.generation++;
+        return new LeasedClient(new Lease(entry), config);
+    }
+
+    /**
+     * Returns the number of clients in the registry including idle ones
+     */
+    public synchronized int getClientCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of leases of the client for the given configuration which have not been closed yet
+     */
+    public synchronized int getLeaseCount(Config config) {
+        Entry entry = entries.get(createKey(config));
+        return entry != null ? entry.leases : 0;
+    }
+
+    /**
+     * Discards all the idle clients straight away
+     */
+    public synchronized void evictIdle() {
+        entries.values().removeIf(entry -> entry.leases == 0);
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * Returns the auto configured {@link Config}; this is reloaded once it is older than the idle timeout
+     * so that changes to the kube config are picked up
+     */
+    protected synchronized Config getDefaultConfig() {
+        long now = System.currentTimeMillis();
+        if (defaultConfig == null || now - defaultConfigLoadedAt >= idleTimeoutMillis) {
+            defaultConfig = new ConfigBuilder().build();
+            defaultConfigLoadedAt = now;
+        }
+        return defaultConfig;
+    }
+
+    protected synchronized void release(final Entry entry) {
+        entry.leases--;
+        if (entry.leases > 0) {
+            return;
+        }
+        final long generation = entry.generation;
+        getExecutor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                removeIfIdle(entry, generation);
+            }
+        }, idleTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    protected synchronized void removeIfIdle(Entry entry, long generation) {
+        if (entry.leases == 0 && entry.generation == generation && entries.get(entry.key) == entry) {
+            entries.remove(entry.key);
+            LOG.debug("Discarded idle shared client " + entry.key.get(0));
+        }
+    }
+
+    protected OkHttpClient createHttpClient(Config config) {
+        OkHttpClient httpClient = HttpClientUtils.createHttpClient(config);
+        dispatcher.setMaxRequests(Math.max(dispatcher.getMaxRequests(), config.getMaxConcurrentRequests()));
+        dispatcher.setMaxRequestsPerHost(Math.max(dispatcher.getMaxRequestsPerHost(), config.getMaxConcurrentRequestsPerHost()));
+        return httpClient.newBuilder().connectionPool(connectionPool).dispatcher(dispatcher).build();
+    }
+
+    protected static List<Object> createKey(Config config) {
+        return Arrays.<Object>asList(config.getMasterUrl(), config.getApiVersion(), config.getNamespace(),
+                config.getUsername(), config.getPassword(), config.getOauthToken(),
+                config.getCaCertFile(), config.getCaCertData(), config.getClientCertFile(), config.getClientCertData(),
+                config.getClientKeyFile(), config.getClientKeyData(), config.getClientKeyAlgo(), config.getClientKeyPassphrase(),
+                config.getTrustStoreFile(), config.getKeyStoreFile(), config.isTrustCerts(),
+                config.getHttpProxy(), config.getHttpsProxy(), config.getProxyUsername(), config.getProxyPassword(),
+                config.getConnectionTimeout(), config.getRequestTimeout(), config.getUserAgent());
+    }
+
+    private ScheduledExecutorService getExecutor() {
+        if (executor == null) {
+            ScheduledThreadPoolExecutor answer = new ScheduledThreadPoolExecutor(1, new ThreadFactory("fabric8-client-registry", true));
+            answer.setRemoveOnCancelPolicy(true);
+            executor = answer;
+        }
+        return executor;
+    }
+
+    protected static final class Entry {
+        private final List<Object> key;
+        private final OkHttpClient httpClient;
+        private int leases;
+        private long generation;
+
+        Entry(List<Object> key, OkHttpClient httpClient) {
+            this.key = key;
+            this.httpClient = httpClient;
+        }
+    }
+
+    /**
+     * A lease of a registry entry which is returned once however many of the clients sharing it are closed
+     */
+    private final class Lease {
+        private final Entry entry;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Lease(Entry entry) {
+            this.entry = entry;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                KubernetesClientRegistry.this.release(entry);
+            }
+        }
+
+        /**
+         * Returns a client sharing this lease in place of a client the underlying client created around the shared HTTP client,
+         * as closing that would cancel the shared dispatcher and evict the shared connection pool
+         */
+        <C> C wrap(C client) {
+            if (client instanceof LeasedClient || client instanceof LeasedOpenShiftClient) {
+                return client;
+            }
+            if (client instanceof DefaultOpenShiftClient) {
+                DefaultOpenShiftClient openShiftClient = (DefaultOpenShiftClient) client;
+                @SuppressWarnings("unchecked")
+                C answer = (C) new LeasedOpenShiftClient(this, OpenShiftConfig.wrap(openShiftClient.getConfiguration()));
+                return answer;
+            }
+            if (client instanceof DefaultKubernetesClient) {
+                DefaultKubernetesClient kubernetesClient = (DefaultKubernetesClient) client;
+                @SuppressWarnings("unchecked")
+                C answer = (C) new LeasedClient(this, kubernetesClient.getConfiguration());
+                return answer;
+            }
+            return client;
+        }
+    }
+
+    /**
+     * A client sharing the HTTP client of a registry entry which returns its lease rather than closing the HTTP client
+     */
+    private final class LeasedClient extends DefaultKubernetesClient {
+        private final Lease lease;
+
+        LeasedClient(Lease lease, Config config) {
+            super(lease.entry.httpClient, config);
+            this.lease = lease;
+        }
+
+        @Override
+        public <C> C adapt(Class<C> type) {
+            return lease.wrap(super.adapt(type));
+        }
+
+        @Override
+        public NamespacedKubernetesClient inNamespace(String namespace) {
+            return lease.wrap(super.inNamespace(namespace));
+        }
+
+        @Override
+        public NamespacedKubernetesClient inAnyNamespace() {
+            return lease.wrap(super.inAnyNamespace());
+        }
+
+        @Override
+        public void close() {
+            lease.release();
+        }
+    }
+
+    /**
+     * An OpenShift client adapted from a {@link LeasedClient} which shares its lease
+     */
+    private final class LeasedOpenShiftClient extends DefaultOpenShiftClient {
+        private final Lease lease;
+
+        LeasedOpenShiftClient(Lease lease, OpenShiftConfig config) {
+            super(lease.entry.httpClient, config);
+            this.lease = lease;
+        }
+
+        @Override
+        public <C> C adapt(Class<C> type) {
+            return lease.wrap(super.adapt(type));
+        }
+
+        @Override
+        public NamespacedOpenShiftClient inNamespace(String namespace) {
+            return lease.wrap(super.inNamespace(namespace));
+        }
+
+        @Override
+        public NamespacedOpenShiftClient inAnyNamespace() {
+            return lease.wrap(super.inAnyNamespace());
+        }
+
+        @Override
+        public void close() {
+            lease.release();
+        }
+    }
+}
@@ -15,14 +15,12 @@
  */
 package io.fabric8.kubernetes.api;
 
-import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import io.fabric8.kubernetes.api.dns.SrvRecordCache;
 import io.fabric8.kubernetes.api.extensions.Templates;
 import io.fabric8.kubernetes.api.model.*;
 import io.fabric8.kubernetes.api.model.extensions.HTTPIngressPath;
@@ -70,9 +68,7 @@ import org.slf4j.LoggerFactory;
 import org.xbill.DNS.ARecord;
 import org.xbill.DNS.Lookup;
 import org.xbill.DNS.Record;
-import org.xbill.DNS.SRVRecord;
 import org.xbill.DNS.TextParseException;
-import org.xbill.DNS.Type;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLException;
@@ -98,7 +94,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -108,6 +103,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
@@ -128,7 +124,6 @@ public final class KubernetesHelper {
     public static final String DEFAULT_NAMESPACE = "default";
 
     private static final transient Logger LOG = LoggerFactory.getLogger(KubernetesHelper.class);
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
     public static final int INTORSTRING_KIND_INT = 0;
     public static final int INTORSTRING_KIND_STRING = 1;
@@ -410,21 +405,11 @@ public final class KubernetesHelper {
     }
 
     public static String toJson(Object dto) throws JsonProcessingException {
-        if (dto == null) {
-            return "null";
-        }
-        Class<?> clazz = dto.getClass();
-        return OBJECT_MAPPER.writerFor(clazz).writeValueAsString(dto);
+        return KubernetesSerialization.toJson(dto);
     }
 
     public static String toPrettyJson(Object dto) throws JsonProcessingException {
-        if (dto == null) {
-            return "null";
-        }
-        Class<?> clazz = dto.getClass();
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
-        return objectMapper.writerFor(clazz).writeValueAsString(dto);
+        return KubernetesSerialization.toPrettyJson(dto);
     }
 
     /**
@@ -462,7 +447,7 @@ public final class KubernetesHelper {
      */
     public static Object loadJson(byte[] json) throws IOException {
         if (json != null && json.length > 0) {
-            return OBJECT_MAPPER.readerFor(KubernetesResource.class).readValue(json);
+            return KubernetesSerialization.read(KubernetesSerialization.Format.JSON, json, KubernetesResource.class);
         }
         return null;
     }
@@ -509,31 +494,29 @@ public final class KubernetesHelper {
      * Loads the YAML file for the given DTO class
      */
     public static <T> T loadYaml(byte[] data, Class<T> clazz) throws IOException {
-        ObjectMapper mapper = createYamlObjectMapper();
-        return mapper.readValue(data, clazz);
+        return KubernetesSerialization.read(KubernetesSerialization.Format.YAML, data, clazz);
     }
 
     public static void saveYaml(Object data, File file) throws IOException {
-        ObjectMapper mapper = createYamlObjectMapper();
-        mapper.writeValue(file, data);
+        KubernetesSerialization.writer(KubernetesSerialization.Format.YAML, Object.class, false).writeValue(file, data);
     }
 
     public static void saveYaml(Object data, FileObject fileObject) throws IOException{
-        ObjectMapper mapper = createYamlObjectMapper();
         try (Writer writer = fileObject.openWriter()) {
-            mapper.writeValue(writer, data);
+            KubernetesSerialization.writer(KubernetesSerialization.Format.YAML, Object.class, false).writeValue(writer, data);
         }
     }
 
     public static String toYaml(Object data) throws IOException {
-        ObjectMapper mapper = createYamlObjectMapper();
-        return mapper.writeValueAsString(data);
+        return KubernetesSerialization.writer(KubernetesSerialization.Format.YAML, Object.class, false).writeValueAsString(data);
     }
 
+    /**
+     * Creates a new YAML mapper; prefer the cached readers and writers in {@link KubernetesSerialization}
+     * unless you need to configure the mapper
+     */
     public static ObjectMapper createYamlObjectMapper() {
-        ObjectMapper objectMapper = new ObjectMapper(new YAMLFactory());
-        objectMapper.setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
-        return objectMapper;
+        return KubernetesSerialization.createYamlObjectMapper();
     }
 
     /**
@@ -565,7 +548,7 @@ public final class KubernetesHelper {
      * Saves the json object to the given file
      */
     public static void saveJson(File json, Object object) throws IOException {
-        OBJECT_MAPPER.writer().withDefaultPrettyPrinter().writeValue(json, object);
+        KubernetesSerialization.writer(KubernetesSerialization.Format.JSON, Object.class, true).writeValue(json, object);
     }
 
     /**
@@ -1777,40 +1760,21 @@ public final class KubernetesHelper {
      * endpoints in the format "host:port". This is a list as SRV records are ordered
      * by priority & weight before being returned to the client.
      * <p/>
+     * The results are cached for the TTL of the records by {@link SrvRecordCache#getDefault()}.
+     * <p/>
      * See https://github.com/GoogleCloudPlatform/kubernetes/blob/master/cluster/addons/dns/README.md
      */
     public static List<String> lookupServiceEndpointsInDns(String serviceName) throws IllegalArgumentException, UnknownHostException {
-        try {
-            Lookup l = new Lookup(serviceName, Type.SRV);
-            Record[] records = l.run();
-            if (l.getResult() == Lookup.SUCCESSFUL) {
-
-                SRVRecord[] srvRecords = Arrays.copyOf(records, records.length, SRVRecord[].class);
-                Arrays.sort(srvRecords, new Comparator<SRVRecord>() {
-                    @Override
-                    public int compare(SRVRecord a, SRVRecord b) {
-                        int ret = Integer.compare(b.getPriority(), a.getPriority());
-                        if (ret == 0) {
-                            ret = Integer.compare(b.getWeight(), a.getWeight());
-                        }
-                        return ret;
-                    }
-                });
+        return SrvRecordCache.getDefault().lookup(serviceName);
+    }
 
-                List<String> endpointAddresses = new ArrayList<>(srvRecords.length);
-                for (SRVRecord srvRecord : srvRecords) {
-                    endpointAddresses.add(srvRecord.getTarget().toString(true).concat(":").concat(String.valueOf(srvRecord.getPort())));
-                }
-                return endpointAddresses;
-            } else {
-                LOG.warn("Lookup {} result: {}", serviceName, l.getErrorString());
-            }
-        } catch (TextParseException e) {
-            LOG.error("Unparseable service name: {}", serviceName, e);
-        } catch (ClassCastException e) {
-            LOG.error("Invalid response from DNS server - should have been A records", e);
-        }
-        return Collections.EMPTY_LIST;
+    /**
+     * Looks up the service endpoints in DNS without blocking the caller, completing immediately if they are cached.
+     *
+     * @see #lookupServiceEndpointsInDns(String)
+     */
+    public static CompletableFuture<List<String>> lookupServiceEndpointsInDnsAsync(String serviceName) {
+        return SrvRecordCache.getDefault().lookupAsync(serviceName);
     }
 
     /**
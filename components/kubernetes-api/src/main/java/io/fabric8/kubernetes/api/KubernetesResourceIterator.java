@@ -0,0 +1,273 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.KubernetesResource;
+import io.fabric8.utils.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily parses the Kubernetes resources in a JSON or multi-document YAML stream one at a time so that
+ * large manifests can be processed without loading them all into memory.
+ * <p/>
+ * Each document (or each top level JSON value) may be a single resource or a list such as
+ * {@link io.fabric8.kubernetes.api.model.KubernetesList}; the <tt>items</tt> of a list, whose <tt>kind</tt> ends
+ * with <tt>List</tt>, are returned one at a time without creating the list itself. If the <tt>kind</tt> follows the
+ * <tt>items</tt> they are buffered until the <tt>kind</tt> is known. A top level JSON array of resources is also supported.
+ * <p/>
+ * Instances are not thread safe and must be closed when not fully consumed.
+ */
+public class KubernetesResourceIterator implements Iterator<HasMetadata>, Closeable {
+    private static final transient Logger LOG = LoggerFactory.getLogger(KubernetesResourceIterator.class);
+
+    private static final String ITEMS = "items";
+    private static final String KIND = "kind";
+
+    private static final ObjectReader JSON_READER = KubernetesSerialization.reader(KubernetesSerialization.Format.JSON, KubernetesResource.class);
+    private static final ObjectReader YAML_READER = KubernetesSerialization.reader(KubernetesSerialization.Format.YAML, KubernetesResource.class);
+
+    private final ObjectReader reader;
+    private final JsonParser parser;
+    private final String sourceName;
+    private HasMetadata next;
+    private boolean inArray;
+    private boolean inItems;
+    private JsonParser bufferedItems;
+    private boolean closed;
+
+    protected KubernetesResourceIterator(ObjectReader reader, InputStream in, String sourceName) throws IOException {
+        this.reader = reader;
+        this.parser = reader.getFactory().createParser(in);
+        this.sourceName = sourceName;
+    }
+
+    /**
+     * Returns an iterator over the resources in the given JSON or YAML file using the file extension to detect the format
+     */
+    public static KubernetesResourceIterator forFile(File file) throws IOException {
+        String ext = Files.getFileExtension(file);
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        if ("yaml".equalsIgnoreCase(ext) || "yml".equalsIgnoreCase(ext)) {
+            return new KubernetesResourceIterator(YAML_READER, in, file.getPath());
+        } else if ("json".equalsIgnoreCase(ext)) {
+            return new KubernetesResourceIterator(JSON_READER, in, file.getPath());
+        } else {
+            in.close();
+            throw new IllegalArgumentException("Unknown file type " + ext);
+        }
+    }
+
+    /**
+     * Returns an iterator over the resources in the given JSON stream
+     */
+    public static KubernetesResourceIterator forJson(InputStream in) throws IOException {
+        return new KubernetesResourceIterator(JSON_READER, in, "JSON stream");
+    }
+
+    /**
+     * Returns an iterator over the resources in the given, possibly multi-document, YAML stream
+     */
+    public static KubernetesResourceIterator forYaml(InputStream in) throws IOException {
+        return new KubernetesResourceIterator(YAML_READER, in, "YAML stream");
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !closed) {
+            try {
+                next = readNext();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to parse " + sourceName + ". " + e, e);
+            }
+            if (next == null) {
+                close();
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public HasMetadata next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        HasMetadata answer = next;
+        next = null;
+        return answer;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            try {
+                if (bufferedItems != null) {
+                    bufferedItems.close();
+                }
+                parser.close();
+            } catch (IOException e) {
+                LOG.debug("Failed to close parser for " + sourceName + ". " + e, e);
+            }
+        }
+    }
+
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    protected HasMetadata readNext() throws IOException {
+        while (true) {
+            if (bufferedItems != null) {
+                JsonToken token = bufferedItems.nextToken();
+                if (token == null || token == JsonToken.END_ARRAY) {
+                    bufferedItems.close();
+                    bufferedItems = null;
+                    continue;
+                }
+                HasMetadata answer = toEntity(reader.readValue(bufferedItems));
+                if (answer != null) {
+                    return answer;
+                }
+                continue;
+            }
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                return null;
+            }
+            if (inItems || inArray) {
+                if (token == JsonToken.END_ARRAY) {
+                    if (inItems) {
+                        inItems = false;
+                        skipToEndOfObject();
+                    } else {
+                        inArray = false;
+                    }
+                    continue;
+                }
+                HasMetadata answer = toEntity(reader.readValue(parser));
+                if (answer != null) {
+                    return answer;
+                }
+            } else if (token == JsonToken.START_ARRAY) {
+                inArray = true;
+            } else if (token == JsonToken.START_OBJECT) {
+                HasMetadata answer = readDocument();
+                if (answer != null) {
+                    return answer;
+                }
+            } else if (token != JsonToken.VALUE_NULL) {
+                // empty YAML documents and scalars are not resources
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Reads the object at the current START_OBJECT token; if we find the <tt>items</tt> array of a list we start iterating
+     * through it rather than creating the list, otherwise the buffered object is returned as a single resource.
+     * Other resources may have an <tt>items</tt> field too so it is only treated as a list once we know its <tt>kind</tt>.
+     */
+    protected HasMetadata readDocument() throws IOException {
+        TokenBuffer buffer = new TokenBuffer(parser);
+        buffer.writeStartObject();
+        String kind = null;
+        TokenBuffer items = null;
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken valueToken = parser.nextToken();
+            if (ITEMS.equals(fieldName) && valueToken == JsonToken.START_ARRAY) {
+                if (kind != null && isListKind(kind)) {
+                    inItems = true;
+                    return null;
+                }
+                if (kind == null) {
+                    // we cannot tell if this is a list until we find the kind
+                    items = new TokenBuffer(parser);
+                    items.copyCurrentStructure(parser);
+                    continue;
+                }
+            } else if (KIND.equals(fieldName) && valueToken == JsonToken.VALUE_STRING) {
+                kind = parser.getText();
+            }
+            buffer.writeFieldName(fieldName);
+            buffer.copyCurrentStructure(parser);
+        }
+        if (token != JsonToken.END_OBJECT) {
+            throw new IOException("Unexpected token " + token + " in " + sourceName + " at " + parser.getCurrentLocation());
+        }
+        if (items != null) {
+            JsonParser itemsParser = items.asParser();
+            itemsParser.nextToken();
+            if (kind != null && isListKind(kind)) {
+                bufferedItems = itemsParser;
+                return null;
+            }
+            buffer.writeFieldName(ITEMS);
+            buffer.copyCurrentStructure(itemsParser);
+            itemsParser.close();
+        }
+        buffer.writeEndObject();
+        try (JsonParser bufferParser = buffer.asParser()) {
+            return toEntity(reader.readValue(bufferParser));
+        }
+    }
+
+    protected static boolean isListKind(String kind) {
+        return kind.endsWith("List");
+    }
+
+    protected void skipToEndOfObject() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            parser.nextToken();
+            parser.skipChildren();
+        }
+        if (token != JsonToken.END_OBJECT) {
+            throw new IOException("Unexpected token " + token + " in " + sourceName + " at " + parser.getCurrentLocation());
+        }
+    }
+
+    protected HasMetadata toEntity(Object value) {
+        if (value instanceof HasMetadata) {
+            return (HasMetadata) value;
+        } else if (value != null) {
+            LOG.warn("Ignoring " + value.getClass().getSimpleName() + " in " + sourceName + " as it is not a Kubernetes resource with metadata");
+        }
+        return null;
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import io.fabric8.kubernetes.api.model.KubernetesResource;
+import io.fabric8.utils.Objects;
+import io.fabric8.utils.Systems;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shared, preconfigured JSON and YAML serializers for the Kubernetes DTOs.
+ * <p/>
+ * Creating an {@link ObjectMapper} and discovering the serializers for a type is expensive so this class
+ * creates one mapper per format and caches the immutable, thread safe {@link ObjectReader} and {@link ObjectWriter}
+ * for each combination of format, type and pretty printing.
+ * <p/>
+ * If the optional Jackson Afterburner module is on the classpath it is registered to generate bytecode for the
+ * property accessors; this can be disabled by setting the system property or environment variable
+ * <tt>FABRIC8_JACKSON_AFTERBURNER</tt> to <tt>false</tt>.
+ */
+public final class KubernetesSerialization {
+    private static final transient Logger LOG = LoggerFactory.getLogger(KubernetesSerialization.class);
+
+    public static final String AFTERBURNER_ENV = "FABRIC8_JACKSON_AFTERBURNER";
+    public static final String AFTERBURNER_MODULE_CLASS = "com.fasterxml.jackson.module.afterburner.AfterburnerModule";
+
+    public enum Format {
+        JSON, YAML
+    }
+
+    private static boolean afterburnerEnabled;
+    private static final ObjectMapper JSON_MAPPER = configure(new ObjectMapper());
+    private static final ObjectMapper YAML_MAPPER = configure(createYamlObjectMapper());
+
+    private static final ConcurrentMap<Key, ObjectReader> READERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Key, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+
+    private KubernetesSerialization() {
+        //Utility
+    }
+
+    /**
+     * Creates a new YAML mapper which does not output empty values
+     */
+    public static ObjectMapper createYamlObjectMapper() {
+        ObjectMapper objectMapper = new ObjectMapper(new YAMLFactory());
+        objectMapper.setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
+        return objectMapper;
+    }
+
+    /**
+     * Returns the cached reader for the given format and type
+     */
+    public static ObjectReader reader(Format format, Class<?> type) {
+        Key key = new Key(format, type, false);
+        ObjectReader answer = READERS.get(key);
+        if (answer == null) {
+            answer = mapper(format).readerFor(type);
+            ObjectReader old = READERS.putIfAbsent(key, answer);
+            if (old != null) {
+                answer = old;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the cached writer for the given format and type
+     */
+    public static ObjectWriter writer(Format format, Class<?> type, boolean pretty) {
+        Key key = new Key(format, type, pretty);
+        ObjectWriter answer = WRITERS.get(key);
+        if (answer == null) {
+            answer = mapper(format).writerFor(type);
+            if (pretty && format == Format.JSON) {
+                answer = answer.withDefaultPrettyPrinter();
+            }
+            ObjectWriter old = WRITERS.putIfAbsent(key, answer);
+            if (old != null) {
+                answer = old;
+            }
+        }
+        return answer;
+    }
+
+    public static String toJson(Object dto) throws JsonProcessingException {
+        return toString(Format.JSON, dto, false);
+    }
+
+    public static String toPrettyJson(Object dto) throws JsonProcessingException {
+        return toString(Format.JSON, dto, true);
+    }
+
+    public static String toYaml(Object dto) throws JsonProcessingException {
+        return toString(Format.YAML, dto, false);
+    }
+
+    public static String toString(Format format, Object dto, boolean pretty) throws JsonProcessingException {
+        if (dto == null) {
+            return "null";
+        }
+        return writer(format, dto.getClass(), pretty).writeValueAsString(dto);
+    }
+
+    /**
+     * Writes the DTO as JSON to the given stream without closing it
+     */
+    public static void writeJson(Object dto, OutputStream out, boolean pretty) throws IOException {
+        write(Format.JSON, dto, out, pretty);
+    }
+
+    /**
+     * Writes the DTO as YAML to the given stream without closing it
+     */
+    public static void writeYaml(Object dto, OutputStream out) throws IOException {
+        write(Format.YAML, dto, out, false);
+    }
+
+    /**
+     * Writes the DTO to the given stream without closing it
+     */
+    public static void write(Format format, Object dto, OutputStream out, boolean pretty) throws IOException {
+        Objects.notNull(out, "out");
+        Class<?> type = dto != null ? dto.getClass() : Object.class;
+        if (format == Format.YAML) {
+            // the YAML generator closes its target regardless of AUTO_CLOSE_TARGET
+            out = new NonClosingOutputStream(out);
+        }
+        writer(format, type, pretty).writeValue(out, dto);
+    }
+
+    /**
+     * Reads a Kubernetes resource such as a {@link io.fabric8.kubernetes.api.model.Pod} or
+     * {@link io.fabric8.kubernetes.api.model.KubernetesList} using the <tt>kind</tt> to find the type
+     */
+    public static KubernetesResource<?> read(Format format, InputStream in) throws IOException {
+        return read(format, in, KubernetesResource.class);
+    }
+
+    public static <T> T read(Format format, InputStream in, Class<T> type) throws IOException {
+        return reader(format, type).readValue(in);
+    }
+
+    public static <T> T read(Format format, byte[] data, Class<T> type) throws IOException {
+        return reader(format, type).readValue(data);
+    }
+
+    /**
+     * Returns true if the Afterburner module has been registered with the shared mappers
+     */
+    public static boolean isAfterburnerEnabled() {
+        return afterburnerEnabled;
+    }
+
+    protected static ObjectMapper mapper(Format format) {
+        return format == Format.YAML ? YAML_MAPPER : JSON_MAPPER;
+    }
+
+    private static ObjectMapper configure(ObjectMapper mapper) {
+        // callers own the streams passed to the write methods
+        mapper.getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        if (Systems.getEnvVarOrSystemProperty(AFTERBURNER_ENV, Boolean.TRUE)) {
+            Module module = createAfterburnerModule();
+            if (module != null) {
+                mapper.registerModule(module);
+                afterburnerEnabled = true;
+            }
+        }
+        return mapper;
+    }
+
+    /**
+     * Creates the Afterburner module if it is on the classpath; it is an optional dependency so it is loaded by name
+     */
+    private static Module createAfterburnerModule() {
+        Class<?> type;
+        try {
+            type = KubernetesSerialization.class.getClassLoader().loadClass(AFTERBURNER_MODULE_CLASS);
+        } catch (ClassNotFoundException | NoClassDefFoundError e) {
+            return null;
+        }
+        try {
+            return type.asSubclass(Module.class).getConstructor().newInstance();
+        } catch (Exception | LinkageError e) {
+            LOG.warn("Failed to create " + AFTERBURNER_MODULE_CLASS + ". " + e, e);
+            return null;
+        }
+    }
+
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    private static final class Key {
+        private final Format format;
+        private final Class<?> type;
+        private final boolean pretty;
+
+        Key(Format format, Class<?> type, boolean pretty) {
+            this.format = format;
+            this.type = type;
+            this.pretty = pretty;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return pretty == key.pretty && format == key.format && type.equals(key.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * format.hashCode() + type.hashCode()) + (pretty ? 1 : 0);
+        }
+    }
+}
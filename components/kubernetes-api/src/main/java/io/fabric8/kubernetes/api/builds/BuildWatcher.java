@@ -16,72 +16,158 @@
 package io.fabric8.kubernetes.api.builds;
 
 
+import io.fabric8.kubernetes.api.model.ListMeta;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
 import io.fabric8.openshift.api.model.Build;
 import io.fabric8.openshift.api.model.BuildList;
 import io.fabric8.openshift.client.OpenShiftClient;
+import io.fabric8.utils.Closeables;
 import io.fabric8.utils.Strings;
+import io.fabric8.utils.ThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collections;
-import java.util.HashSet;
+import java.net.HttpURLConnection;
 import java.util.List;
-import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Watches the builds in a namespace and notifies the {@link BuildListener} of each build which completes.
+ * <p/>
+ * The builds are listed once on {@link #start()} then a watch is opened from the resourceVersion of that list;
+ * if the watch is dropped it is resumed from the last resourceVersion seen and the builds are only listed again
+ * if the server reports that the resourceVersion has expired.
+ * <p/>
+ * The keys of completed builds are remembered in a bounded, time based LRU so that memory does not grow
+ * without limit; builds which are found again after a relist are notified with {@link BuildFinishedEvent#isLoading()}
+ * set to true so that the listener can check if it has already processed them.
+ */
 public class BuildWatcher {
     private static final transient Logger LOG = LoggerFactory.getLogger(BuildWatcher.class);
 
+    public static final int DEFAULT_MAX_SEEN_BUILDS = 10000;
+    public static final long DEFAULT_SEEN_BUILD_EXPIRY_MILLIS = TimeUnit.HOURS.toMillis(6);
+    public static final long DEFAULT_RETRY_DELAY_MILLIS = 5000;
+
     private final OpenShiftClient client;
     private final BuildListener buildListener;
     private final String namespace;
     private final String fabric8ConsoleLink;
-    private boolean loading = true;
-    private Set<String> seenBuildIds = Collections.<String>synchronizedSet(new HashSet<String>());
+    private final RecentBuildKeys seenBuildIds;
+    private final AtomicReference<String> resourceVersion = new AtomicReference<>();
+    private final AtomicReference<Watch> watch = new AtomicReference<>();
+    private final CountDownLatch closedLatch = new CountDownLatch(1);
+    private long retryDelayMillis = DEFAULT_RETRY_DELAY_MILLIS;
+    private ScheduledExecutorService executor;
+    private volatile boolean loading = true;
+    private volatile boolean closed;
+    private final AtomicLong watchGeneration = new AtomicLong();
+    private volatile int listCount;
 
     public BuildWatcher(OpenShiftClient client, BuildListener buildListener, String namespace, String fabric8ConsoleLink) {
+        this(client, buildListener, namespace, fabric8ConsoleLink, DEFAULT_MAX_SEEN_BUILDS, DEFAULT_SEEN_BUILD_EXPIRY_MILLIS);
+    }
+
+    public BuildWatcher(OpenShiftClient client, BuildListener buildListener, String namespace, String fabric8ConsoleLink, int maxSeenBuilds, long seenBuildExpiryMillis) {
         this.client = client;
         this.buildListener = buildListener;
         this.namespace = namespace;
         this.fabric8ConsoleLink = fabric8ConsoleLink;
+        this.seenBuildIds = new RecentBuildKeys(maxSeenBuilds, seenBuildExpiryMillis);
+    }
+
+    /**
+     * Lists the current builds then watches for changes until {@link #close()} is called
+     */
+    public synchronized void start() {
+        if (closed) {
+            throw new IllegalStateException("BuildWatcher has been closed");
+        }
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory("fabric8-build-watcher"));
+        }
+        relistAndWatch();
     }
 
+    /**
+     * Stops watching builds and releases any threads blocked in {@link #join()}
+     */
+    public void close() {
+        closed = true;
+        Closeables.closeQuietly(watch.getAndSet(null));
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+        closedLatch.countDown();
+    }
 
+    /**
+     * Starts watching the builds after the given delay.
+     *
+     * @deprecated builds are now watched rather than polled; use {@link #start()} instead
+     */
+    @Deprecated
     public TimerTask schedule(long delay) {
         Timer timer = new Timer();
         return schedule(timer, delay);
     }
 
+    /**
+     * Starts watching the builds after the given delay.
+     *
+     * @deprecated builds are now watched rather than polled; use {@link #start()} instead
+     */
+    @Deprecated
     public TimerTask schedule(Timer timer, long delay) {
         TimerTask task = new TimerTask() {
             @Override
             public void run() {
-                poll();
+                start();
             }
         };
-        timer.schedule(task, delay, delay);
+        timer.schedule(task, delay);
         return task;
     }
 
+    /**
+     * Lists all the builds in the namespace notifying the listener of any completed builds
+     * and remembering the resourceVersion of the list so that a watch can be resumed from it
+     */
     public void poll() {
-        boolean foundBuild = false;
         BuildList buildList = client.builds().inNamespace(namespace).list();
+        listCount++;
         if (buildList != null) {
+            ListMeta metadata = buildList.getMetadata();
+            if (metadata != null) {
+                resourceVersion.set(metadata.getResourceVersion());
+            }
             List<Build> items = buildList.getItems();
             if (items != null) {
                 for (Build build : items) {
                     buildPolled(build);
-                    foundBuild = true;
                 }
             }
         }
-        if (foundBuild) {
-            loading = false;
-        }
+        loading = false;
     }
 
     protected void buildPolled(Build build) {
+        if (build.getStatus() == null) {
+            return;
+        }
         String status = build.getStatus().getPhase();
         if (status != null) {
             if (Builds.isFinished(status)) {
@@ -101,18 +187,157 @@ public class BuildWatcher {
     }
 
     /**
-     * Waits until this watcher is finished (which by default is forever)
+     * Waits until this watcher is closed
      */
     public void join() {
-        Object lock = new Object();
-        while (true) {
-            synchronized(lock) {
-                try {
-                    lock.wait();
-                } catch (InterruptedException e) {
-                    // ignore
+        while (!closed) {
+            try {
+                closedLatch.await();
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Waits up to the given timeout for this watcher to be closed
+     *
+     * @return true if the watcher was closed or false if the timeout expired first
+     */
+    public boolean join(long timeout, TimeUnit unit) throws InterruptedException {
+        return closedLatch.await(timeout, unit);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns the number of times the builds have been listed
+     */
+    public int getListCount() {
+        return listCount;
+    }
+
+    /**
+     * Returns the number of completed build keys currently remembered
+     */
+    public int getSeenBuildCount() {
+        return seenBuildIds.size();
+    }
+
+    public String getResourceVersion() {
+        return resourceVersion.get();
+    }
+
+    public long getRetryDelayMillis() {
+        return retryDelayMillis;
+    }
+
+    public void setRetryDelayMillis(long retryDelayMillis) {
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    protected void relistAndWatch() {
+        if (closed) {
+            return;
+        }
+        try {
+            loading = true;
+            poll();
+            watch();
+        } catch (Exception e) {
+            if (closed) {
+                return;
+            }
+            LOG.warn("Failed to list builds in namespace " + namespace + ". " + e, e);
+            scheduleRetry(true, retryDelayMillis);
+        }
+    }
+
+    // withResourceVersion(version).watch(watcher) drops the resourceVersion for builds in this
+    // version of the OpenShift client so we have to use the deprecated overload
+    @SuppressWarnings("deprecation")
+    protected void watch() {
+        if (closed) {
+            return;
+        }
+        String version = resourceVersion.get();
+        // only the latest watch is resumed when closed; the ones we replace are closed by us
+        final long generation = watchGeneration.incrementAndGet();
+        Watch newWatch = client.builds().inNamespace(namespace).watch(version, new Watcher<Build>() {
+            @Override
+            public void eventReceived(Action action, Build build) {
+                onBuildEvent(action, build);
+            }
+
+            @Override
+            public void onClose(KubernetesClientException cause) {
+                if (generation == watchGeneration.get()) {
+                    onWatchClosed(cause);
                 }
             }
+        });
+        Closeables.closeQuietly(watch.getAndSet(newWatch));
+        if (closed) {
+            Closeables.closeQuietly(watch.getAndSet(null));
         }
     }
+
+    protected void onBuildEvent(Watcher.Action action, Build build) {
+        if (build == null) {
+            return;
+        }
+        ObjectMeta metadata = build.getMetadata();
+        if (metadata != null && Strings.isNotBlank(metadata.getResourceVersion())) {
+            resourceVersion.set(metadata.getResourceVersion());
+        }
+        if (action == Watcher.Action.ADDED || action == Watcher.Action.MODIFIED) {
+            buildPolled(build);
+        }
+    }
+
+    protected void onWatchClosed(KubernetesClientException cause) {
+        if (closed) {
+            return;
+        }
+        if (cause == null) {
+            // the server closed the watch normally so lets resume it straight away
+            LOG.debug("Watch of builds in namespace " + namespace + " closed so resuming from resourceVersion " + resourceVersion.get());
+            scheduleRetry(false, 0);
+            return;
+        }
+        boolean expired = cause.getCode() == HttpURLConnection.HTTP_GONE;
+        if (expired) {
+            LOG.info("Watch of builds in namespace " + namespace + " expired at resourceVersion " + resourceVersion.get() + " so relisting");
+        } else {
+            LOG.warn("Watch of builds in namespace " + namespace + " closed: " + cause + " so resuming from resourceVersion " + resourceVersion.get());
+        }
+        // relisting after an expired watch can happen straight away; otherwise back off before resuming
+        scheduleRetry(expired, expired ? 0 : retryDelayMillis);
+    }
+
+    private synchronized void scheduleRetry(final boolean relist, long delayMillis) {
+        if (closed || executor == null) {
+            return;
+        }
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                if (relist) {
+                    relistAndWatch();
+                } else {
+                    try {
+                        watch();
+                    } catch (KubernetesClientException e) {
+                        onWatchClosed(e);
+                    } catch (Exception e) {
+                        LOG.warn("Failed to watch builds in namespace " + namespace + ". " + e, e);
+                        scheduleRetry(true, retryDelayMillis);
+                    }
+                }
+            }
+        };
+        executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
 }
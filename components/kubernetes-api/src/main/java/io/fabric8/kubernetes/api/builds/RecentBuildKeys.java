@@ -0,0 +1,95 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api.builds;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, time based LRU set of the keys of builds which have already been processed
+ * so that the memory used by a long running {@link BuildWatcher} does not grow forever.
+ * <p/>
+ * Keys are evicted when there are more than <tt>maxSize</tt> of them or when they have not been
+ * seen for longer than <tt>expiryMillis</tt>.
+ */
+class RecentBuildKeys {
+    private final int maxSize;
+    private final long expiryMillis;
+    private final LinkedHashMap<String, Long> keys;
+
+    RecentBuildKeys(final int maxSize, long expiryMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive but was " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.expiryMillis = expiryMillis;
+        this.keys = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Adds the given key returning true if it was not already present
+     */
+    public boolean add(String key) {
+        return add(key, System.currentTimeMillis());
+    }
+
+    synchronized boolean add(String key, long now) {
+        expire(now);
+        return keys.put(key, now) == null;
+    }
+
+    public synchronized boolean contains(String key) {
+        expire(System.currentTimeMillis());
+        return keys.containsKey(key);
+    }
+
+    public synchronized int size() {
+        return keys.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getExpiryMillis() {
+        return expiryMillis;
+    }
+
+    /**
+     * Removes the least recently used keys which have expired; as the map is in access order
+     * we can stop at the first key which is still valid
+     */
+    protected void expire(long now) {
+        if (expiryMillis <= 0) {
+            return;
+        }
+        long oldest = now - expiryMillis;
+        Iterator<Map.Entry<String, Long>> iter = keys.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<String, Long> entry = iter.next();
+            if (entry.getValue() > oldest) {
+                break;
+            }
+            iter.remove();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api.dns;
+
+import org.xbill.DNS.Lookup;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.SRVRecord;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries SRV records using dnsjava; the dnsjava cache is bypassed as the TTLs are honoured by {@link SrvRecordCache}
+ * <p/>
+ * See https://github.com/GoogleCloudPlatform/kubernetes/blob/master/cluster/addons/dns/README.md
+ */
+public class DnsSrvRecordLookup implements SrvRecordLookup {
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = 5000;
+
+    private final Resolver resolver;
+    private long negativeTtlMillis = DEFAULT_NEGATIVE_TTL_MILLIS;
+
+    /**
+     * Creates a lookup using the default resolver
+     */
+    public DnsSrvRecordLookup() {
+        this(null);
+    }
+
+    public DnsSrvRecordLookup(Resolver resolver) {
+        this.resolver = resolver;
+    }
+
+    @Override
+    public Result lookup(String serviceName) throws IOException {
+        Lookup l;
+        try {
+            l = new Lookup(serviceName, Type.SRV);
+        } catch (TextParseException e) {
+            throw new IllegalArgumentException("Unparseable service name: " + serviceName, e);
+        }
+        if (resolver != null) {
+            l.setResolver(resolver);
+        }
+        // use a temporary cache
+        l.setCache(null);
+        Record[] records = l.run();
+        int result = l.getResult();
+        if (result == Lookup.SUCCESSFUL) {
+            SRVRecord[] srvRecords;
+            try {
+                srvRecords = Arrays.copyOf(records, records.length, SRVRecord[].class);
+            } catch (ArrayStoreException e) {
+                throw new IOException("Invalid response from DNS server for " + serviceName + " - should have been SRV records", e);
+            }
+            Arrays.sort(srvRecords, new Comparator<SRVRecord>() {
+                @Override
+                public int compare(SRVRecord a, SRVRecord b) {
+                    int ret = Integer.compare(b.getPriority(), a.getPriority());
+                    if (ret == 0) {
+                        ret = Integer.compare(b.getWeight(), a.getWeight());
+                    }
+                    return ret;
+                }
+            });
+
+            long ttlSeconds = Long.MAX_VALUE;
+            List<String> endpointAddresses = new ArrayList<>(srvRecords.length);
+            for (SRVRecord srvRecord : srvRecords) {
+                endpointAddresses.add(srvRecord.getTarget().toString(true).concat(":").concat(String.valueOf(srvRecord.getPort())));
+                ttlSeconds = Math.min(ttlSeconds, srvRecord.getTTL());
+            }
+            if (srvRecords.length == 0) {
+                ttlSeconds = 0;
+            }
+            return new Result(endpointAddresses, TimeUnit.SECONDS.toMillis(ttlSeconds));
+        } else if (result == Lookup.HOST_NOT_FOUND || result == Lookup.TYPE_NOT_FOUND) {
+            return new Result(Collections.<String>emptyList(), negativeTtlMillis);
+        } else {
+            throw new IOException("Lookup " + serviceName + " result: " + l.getErrorString());
+        }
+    }
+
+    public Resolver getResolver() {
+        return resolver;
+    }
+
+    public long getNegativeTtlMillis() {
+        return negativeTtlMillis;
+    }
+
+    /**
+     * Sets how long a name or record type which does not exist is cached for
+     */
+    public void setNegativeTtlMillis(long negativeTtlMillis) {
+        this.negativeTtlMillis = negativeTtlMillis;
+    }
+}
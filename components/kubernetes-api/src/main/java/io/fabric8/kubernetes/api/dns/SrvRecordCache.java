@@ -0,0 +1,340 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api.dns;
+
+import io.fabric8.utils.Objects;
+import io.fabric8.utils.ThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the endpoints of services found via DNS SRV records for the TTL of the records.
+ * <p/>
+ * Concurrent lookups of the same name share a single query and entries which have been used since they were last
+ * resolved are refreshed in the background just before they expire, so that callers of a busy service never wait on DNS.
+ * Entries which are not used between refreshes are dropped when they expire.
+ * <p/>
+ * Failed queries are not cached; lookups for names which do not exist are cached for
+ * {@link DnsSrvRecordLookup#getNegativeTtlMillis()}.
+ */
+public class SrvRecordCache implements Closeable {
+    private static final transient Logger LOG = LoggerFactory.getLogger(SrvRecordCache.class);
+
+    public static final long DEFAULT_REFRESH_AHEAD_MILLIS = 1000;
+
+    private static SrvRecordCache defaultCache;
+
+    private final SrvRecordLookup lookup;
+    private final ScheduledExecutorService executor;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<List<String>>> inflight = new ConcurrentHashMap<>();
+    private long refreshAheadMillis = DEFAULT_REFRESH_AHEAD_MILLIS;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong totalQueryNanos = new AtomicLong();
+    private final AtomicLong maxQueryNanos = new AtomicLong();
+
+    public SrvRecordCache() {
+        this(new DnsSrvRecordLookup());
+    }
+
+    public SrvRecordCache(SrvRecordLookup lookup) {
+        this(lookup, 2);
+    }
+
+    public SrvRecordCache(SrvRecordLookup lookup, int threads) {
+        Objects.notNull(lookup, "lookup");
+        this.lookup = lookup;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threads, new ThreadFactory("fabric8-dns", true));
+        executor.setRemoveOnCancelPolicy(true);
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the shared cache which uses the default DNS resolver
+     */
+    public static synchronized SrvRecordCache getDefault() {
+        if (defaultCache == null) {
+            defaultCache = new SrvRecordCache();
+        }
+        return defaultCache;
+    }
+
+    @Override
+    public String toString() {
+        return "SrvRecordCache{" +
+                "entries=" + entries.size() +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", queries=" + queries +
+                '}';
+    }
+
+    /**
+     * Returns the endpoints of the service in the format "host:port" ordered by priority then weight, completing
+     * immediately if they are cached
+     */
+    public CompletableFuture<List<String>> lookupAsync(String serviceName) {
+        Entry entry = entries.get(serviceName);
+        if (entry != null && entry.isValid(System.currentTimeMillis())) {
+            hits.incrementAndGet();
+            entry.accessed = true;
+            return CompletableFuture.completedFuture(entry.endpoints);
+        }
+        misses.incrementAndGet();
+        return resolve(serviceName);
+    }
+
+    /**
+     * Returns the endpoints of the service in the format "host:port" ordered by priority then weight
+     * or an empty list if the query failed
+     */
+    public List<String> lookup(String serviceName) {
+        try {
+            return lookupAsync(serviceName).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted looking up " + serviceName);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            LOG.warn("Failed to lookup " + serviceName + ". " + cause, cause);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Removes all the cached entries; queries in progress still complete
+     */
+    public void clear() {
+        for (Entry entry : entries.values()) {
+            entry.cancelRefresh();
+        }
+        entries.clear();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        clear();
+    }
+
+    /**
+     * Returns the shared query for the name, starting one if there is none in progress
+     */
+    protected CompletableFuture<List<String>> resolve(final String serviceName) {
+        final CompletableFuture<List<String>> future = new CompletableFuture<>();
+        CompletableFuture<List<String>> existing = inflight.putIfAbsent(serviceName, future);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        List<String> endpoints = query(serviceName);
+                        // the entry is stored before the query is removed so new callers see one or the other
+                        inflight.remove(serviceName, future);
+                        future.complete(endpoints);
+                    } catch (Throwable e) {
+                        inflight.remove(serviceName, future);
+                        future.completeExceptionally(e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inflight.remove(serviceName, future);
+            future.completeExceptionally(new IllegalStateException("SrvRecordCache is closed", e));
+        }
+        return future;
+    }
+
+    protected List<String> query(String serviceName) throws Exception {
+        queries.incrementAndGet();
+        long start = System.nanoTime();
+        SrvRecordLookup.Result result;
+        try {
+            result = lookup.lookup(serviceName);
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            throw e;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            totalQueryNanos.addAndGet(nanos);
+            long max;
+            while (nanos > (max = maxQueryNanos.get()) && !maxQueryNanos.compareAndSet(max, nanos)) {
+                // retry
+            }
+        }
+        long ttl = result.getTtlMillis();
+        if (ttl > 0 && !executor.isShutdown()) {
+            Entry entry = new Entry(result.getEndpoints(), System.currentTimeMillis() + ttl);
+            Entry old = entries.put(serviceName, entry);
+            if (old != null) {
+                old.cancelRefresh();
+            }
+            scheduleRefresh(serviceName, entry, ttl);
+        } else {
+            Entry old = entries.remove(serviceName);
+            if (old != null) {
+                old.cancelRefresh();
+            }
+        }
+        return result.getEndpoints();
+    }
+
+    protected void scheduleRefresh(final String serviceName, final Entry entry, long ttl) {
+        long delay = Math.max(ttl - refreshAheadMillis, ttl / 2);
+        try {
+            entry.refresh = executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    refresh(serviceName, entry);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // we are closed
+        }
+    }
+
+    protected void refresh(String serviceName, Entry entry) {
+        if (entries.get(serviceName) != entry) {
+            return;
+        }
+        if (!entry.accessed) {
+            // nobody is using it so let it go rather than keep querying DNS
+            entries.remove(serviceName, entry);
+            return;
+        }
+        if (inflight.containsKey(serviceName)) {
+            return;
+        }
+        refreshes.incrementAndGet();
+        resolve(serviceName).whenComplete((endpoints, error) -> {
+            if (error != null) {
+                // keep serving the old entry until it expires
+                LOG.debug("Failed to refresh " + serviceName + ". " + error, error);
+            }
+        });
+    }
+
+    // Metrics
+    //-------------------------------------------------------------------------
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the ratio of lookups answered from the cache
+     */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /**
+     * Returns the number of DNS queries made including background refreshes
+     */
+    public long getQueryCount() {
+        return queries.get();
+    }
+
+    public long getQueryFailureCount() {
+        return failures.get();
+    }
+
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    public double getAverageQueryMillis() {
+        long count = queries.get();
+        return count == 0 ? 0.0 : totalQueryNanos.get() / (count * 1000000.0);
+    }
+
+    public double getMaxQueryMillis() {
+        return maxQueryNanos.get() / 1000000.0;
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    // Properties
+    //-------------------------------------------------------------------------
+
+    public SrvRecordLookup getLookup() {
+        return lookup;
+    }
+
+    public long getRefreshAheadMillis() {
+        return refreshAheadMillis;
+    }
+
+    /**
+     * Sets how long before an entry expires it is refreshed; at most half the TTL
+     */
+    public void setRefreshAheadMillis(long refreshAheadMillis) {
+        this.refreshAheadMillis = refreshAheadMillis;
+    }
+
+    protected static class Entry {
+        private final List<String> endpoints;
+        private final long expiresAt;
+        private volatile boolean accessed;
+        private volatile ScheduledFuture<?> refresh;
+
+        Entry(List<String> endpoints, long expiresAt) {
+            this.endpoints = endpoints;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isValid(long now) {
+            return now < expiresAt;
+        }
+
+        void cancelRefresh() {
+            ScheduledFuture<?> future = refresh;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api.dns;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A strategy for querying the SRV records of a service
+ */
+public interface SrvRecordLookup {
+
+    /**
+     * Queries the SRV records for the given service name returning the endpoints in the format "host:port"
+     * along with the time to live of the records.
+     *
+     * @return the endpoints which may be empty if the name or record type does not exist
+     * @throws IOException if the query failed and should not be cached
+     */
+    Result lookup(String serviceName) throws IOException;
+
+    /**
+     * The endpoints found for a service along with how long they may be cached
+     */
+    class Result {
+        private final List<String> endpoints;
+        private final long ttlMillis;
+
+        public Result(List<String> endpoints, long ttlMillis) {
+            this.endpoints = Collections.unmodifiableList(endpoints);
+            this.ttlMillis = ttlMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "endpoints=" + endpoints +
+                    ", ttlMillis=" + ttlMillis +
+                    '}';
+        }
+
+        public List<String> getEndpoints() {
+            return endpoints;
+        }
+
+        public long getTtlMillis() {
+            return ttlMillis;
+        }
+    }
+}
@@ -16,9 +16,9 @@
  */
 package io.fabric8.kubernetes.api.environments;
 
+import io.fabric8.kubernetes.api.KubernetesClientRegistry;
 import io.fabric8.kubernetes.api.KubernetesHelper;
 import io.fabric8.kubernetes.api.model.ConfigMap;
-import io.fabric8.kubernetes.client.DefaultKubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.utils.Strings;
 import org.slf4j.Logger;
@@ -52,13 +52,13 @@ public class Environments {
 
 
     public static Environments load() {
-        try (KubernetesClient kubernetesClient = new DefaultKubernetesClient()) {
+        try (KubernetesClient kubernetesClient = KubernetesClientRegistry.getDefault().acquire()) {
             String namespace = findSpaceNamespace(kubernetesClient);
             return load(kubernetesClient, namespace);
         }
     }
     public static Environments load(String namespace) {
-        try (KubernetesClient kubernetesClient = new DefaultKubernetesClient()) {
+        try (KubernetesClient kubernetesClient = KubernetesClientRegistry.getDefault().acquire()) {
             return load(kubernetesClient, namespace);
         }
     }
@@ -120,7 +120,7 @@ public class Environments {
      * Returns the namespace for the given environment name
      */
     public static String namespaceForEnvironment(String environmentKey) {
-        try (KubernetesClient kubernetesClient = new DefaultKubernetesClient()) {
+        try (KubernetesClient kubernetesClient = KubernetesClientRegistry.getDefault().acquire()) {
             String namespace = KubernetesHelper.getNamespace(kubernetesClient);
             return namespaceForEnvironment(kubernetesClient, environmentKey, namespace);
         }
@@ -130,7 +130,7 @@ public class Environments {
      * Returns the namespace for the given environment name if its defined or null if one cannot be found
      */
     public static String namespaceForEnvironment(String environmentKey, String namespace) {
-        try (KubernetesClient kubernetesClient = new DefaultKubernetesClient()) {
+        try (KubernetesClient kubernetesClient = KubernetesClientRegistry.getDefault().acquire()) {
             return namespaceForEnvironment(kubernetesClient, environmentKey, namespace);
         }
     }
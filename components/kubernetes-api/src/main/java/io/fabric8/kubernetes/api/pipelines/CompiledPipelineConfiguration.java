@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.kubernetes.api.pipelines;
+
+import io.fabric8.utils.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.beans.IntrospectionException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * An immutable snapshot of a {@link PipelineConfiguration} with each list of branch patterns precompiled
+ * into a single {@link Pattern} so that resolving the {@link Pipeline} for a job does no regex compilation.
+ * <p/>
+ * Create one via {@link PipelineConfiguration#compile()}; instances are thread safe.
+ */
+public class CompiledPipelineConfiguration {
+    private static final transient Logger LOG = LoggerFactory.getLogger(CompiledPipelineConfiguration.class);
+
+    private final PipelineConfiguration configuration;
+    private final Map<String, PipelineKind> jobNameToKindMap;
+    private final BranchPatterns ciBranchPatterns;
+    private final BranchPatterns cdBranchPatterns;
+    private final Map<String, BranchPatterns> cdGitHostAndOrganisationToBranchPatterns;
+
+    public CompiledPipelineConfiguration(PipelineConfiguration configuration) {
+        this.configuration = configuration.copy();
+        this.jobNameToKindMap = Collections.unmodifiableMap(new HashMap<>(configuration.getJobNameToKindMap()));
+        this.ciBranchPatterns = compilePatterns(configuration.getCiBranchPatterns());
+        this.cdBranchPatterns = compilePatterns(configuration.getCdBranchPatterns());
+        Map<String, BranchPatterns> organisationPatterns = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : configuration.getCdGitHostAndOrganisationToBranchPatterns().entrySet()) {
+            organisationPatterns.put(entry.getKey(), compilePatterns(entry.getValue()));
+        }
+        this.cdGitHostAndOrganisationToBranchPatterns = Collections.unmodifiableMap(organisationPatterns);
+    }
+
+    /**
+     * Compiles the list of patterns into a matcher which matches the whole of a text if any of the patterns would.
+     * Invalid patterns are logged and ignored.
+     */
+    public static BranchPatterns compilePatterns(List<String> patterns) {
+        return new BranchPatterns(patterns);
+    }
+
+    public Pipeline getPipeline(Map<String, String> jobEnvironmentMap) throws IntrospectionException {
+        JobEnvironment jobEnvironment = JobEnvironment.create(jobEnvironmentMap);
+        Pipeline pipeline = getPipeline(jobEnvironment);
+        pipeline.setConfiguration(configuration.copy());
+        return pipeline;
+    }
+
+    public Pipeline getPipeline(JobEnvironment jobEnvironment) {
+        String jobName = jobEnvironment.getJobName();
+        PipelineKind kind = jobNameToKindMap.get(jobName);
+        if (kind != null) {
+            return new Pipeline(kind, jobName);
+        }
+
+        // lets figure out the defaults instead
+        String branchName = jobEnvironment.getBranchName();
+        kind = PipelineKind.Developer;
+        if (Strings.isNullOrBlank(branchName)) {
+            LOG.warn("No BranchName from the environment so cannot detect CI / PR jobs!");
+        } else {
+            String gitUrl = jobEnvironment.getGitUrl();
+            if (Strings.isNotBlank(gitUrl)) {
+                String hostOrganisation = PipelineConfiguration.getGitHostOrganisationString(gitUrl);
+                if (Strings.isNotBlank(hostOrganisation)) {
+                    BranchPatterns branchPatterns = cdGitHostAndOrganisationToBranchPatterns.get(hostOrganisation);
+                    if (branchPatterns != null && branchPatterns.matches(branchName)) {
+                        return new Pipeline(PipelineKind.CD, jobName);
+                    }
+                }
+            }
+
+            // lets use the default branch patterns
+            if (ciBranchPatterns.matches(branchName)) {
+                kind = PipelineKind.CI;
+            } else if (cdBranchPatterns.matches(branchName)) {
+                kind = PipelineKind.CD;
+            }
+        }
+        return new Pipeline(kind, jobName);
+    }
+
+    /**
+     * Returns a copy of the configuration this snapshot was compiled from so that modifying it does not affect
+     * this snapshot or anyone else sharing it
+     */
+    public PipelineConfiguration getConfiguration() {
+        return configuration.copy();
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledPipelineConfiguration{" + configuration + "}";
+    }
+
+    /**
+     * A list of regular expressions combined into a single alternation so a branch name is matched in one pass.
+     * Patterns using numbered back references, named groups, comments or quoting cannot be combined as their group
+     * numbers or names would clash, or the comment or quote would swallow the rest of the alternation, so they are
+     * kept separately.
+     */
+    public static final class BranchPatterns {
+        private static final Pattern BACK_REFERENCE = Pattern.compile("(?<!\\\\)(?:\\\\\\\\)*\\\\[1-9]");
+        private static final Pattern COMMENTS_FLAG = Pattern.compile("\\(\\?[a-zA-Z]*x");
+        private static final Pattern NAMED_GROUP = Pattern.compile("\\(\\?<[a-zA-Z]");
+        private static final Pattern QUOTE = Pattern.compile("(?<!\\\\)(?:\\\\\\\\)*\\\\Q");
+
+        private final Pattern combined;
+        private final List<Pattern> separate = new ArrayList<>();
+
+        BranchPatterns(List<String> patterns) {
+            List<Pattern> combinable = new ArrayList<>();
+            if (patterns != null) {
+                for (String pattern : patterns) {
+                    if (pattern == null) {
+                        continue;
+                    }
+                    Pattern compiled;
+                    try {
+                        compiled = Pattern.compile(pattern);
+                    } catch (PatternSyntaxException e) {
+                        LOG.warn("Ignoring invalid branch pattern " + pattern + ". " + e, e);
+                        continue;
+                    }
+                    if (BACK_REFERENCE.matcher(pattern).find() || COMMENTS_FLAG.matcher(pattern).find() ||
+                            NAMED_GROUP.matcher(pattern).find() || QUOTE.matcher(pattern).find()) {
+                        separate.add(compiled);
+                    } else {
+                        combinable.add(compiled);
+                    }
+                }
+            }
+            this.combined = combine(combinable);
+            if (combined == null) {
+                separate.addAll(combinable);
+            }
+        }
+
+        /**
+         * Returns the alternation of the given patterns or null if there are none or they cannot be combined
+         */
+        static Pattern combine(List<Pattern> patterns) {
+            if (patterns.isEmpty()) {
+                return null;
+            }
+            StringBuilder buffer = new StringBuilder();
+            for (Pattern pattern : patterns) {
+                if (buffer.length() > 0) {
+                    buffer.append('|');
+                }
+                buffer.append("(?:").append(pattern.pattern()).append(')');
+            }
+            try {
+                return Pattern.compile(buffer.toString());
+            } catch (PatternSyntaxException e) {
+                LOG.warn("Matching branch patterns " + patterns + " separately as they cannot be combined. " + e, e);
+                return null;
+            }
+        }
+
+        public boolean matches(String text) {
+            if (combined != null && combined.matcher(text).matches()) {
+                return true;
+            }
+            for (Pattern pattern : separate) {
+                if (pattern.matcher(text).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "BranchPatterns{" +
+                    "combined=" + combined +
+                    ", separate=" + separate +
+                    '}';
+        }
+    }
+}
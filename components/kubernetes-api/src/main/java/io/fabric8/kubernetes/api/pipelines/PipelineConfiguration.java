@@ -17,10 +17,10 @@
 package io.fabric8.kubernetes.api.pipelines;
 
 
+import io.fabric8.kubernetes.api.KubernetesClientRegistry;
 import io.fabric8.kubernetes.api.KubernetesHelper;
 import io.fabric8.kubernetes.api.model.ConfigMap;
 import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
-import io.fabric8.kubernetes.client.DefaultKubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.utils.Strings;
 import org.slf4j.Logger;
@@ -156,7 +156,7 @@ public class PipelineConfiguration {
     }
 
     public static PipelineConfiguration loadPipelineConfiguration() {
-        try (KubernetesClient kubernetesClient = new DefaultKubernetesClient()) {
+        try (KubernetesClient kubernetesClient = KubernetesClientRegistry.getDefault().acquire()) {
             String namespace = findSpaceNamespace(kubernetesClient);
             return loadPipelineConfiguration(kubernetesClient, namespace);
         }
@@ -164,7 +164,7 @@ public class PipelineConfiguration {
 
 
     public static PipelineConfiguration loadPipelineConfiguration(String namespace) {
-        try (KubernetesClient kubernetesClient = new DefaultKubernetesClient()) {
+        try (KubernetesClient kubernetesClient = KubernetesClientRegistry.getDefault().acquire()) {
             return loadPipelineConfiguration(kubernetesClient, namespace);
         }
     }
@@ -347,6 +347,38 @@ public class PipelineConfiguration {
         this.disableITestsCI = disableITestsCI;
     }
 
+    /**
+     * Returns a copy of this configuration which can be modified without affecting this one
+     */
+    public PipelineConfiguration copy() {
+        PipelineConfiguration answer = new PipelineConfiguration();
+        answer.data = data != null ? new HashMap<>(data) : null;
+        answer.jobNameToKindMap = jobNameToKindMap != null ? new HashMap<>(jobNameToKindMap) : null;
+        answer.ciBranchPatterns = ciBranchPatterns != null ? new ArrayList<>(ciBranchPatterns) : null;
+        answer.cdBranchPatterns = cdBranchPatterns != null ? new ArrayList<>(cdBranchPatterns) : null;
+        if (cdGitHostAndOrganisationToBranchPatterns != null) {
+            for (Map.Entry<String, List<String>> entry : cdGitHostAndOrganisationToBranchPatterns.entrySet()) {
+                List<String> branchPatterns = entry.getValue();
+                answer.cdGitHostAndOrganisationToBranchPatterns.put(entry.getKey(), branchPatterns != null ? new ArrayList<>(branchPatterns) : null);
+            }
+        } else {
+            answer.cdGitHostAndOrganisationToBranchPatterns = null;
+        }
+        answer.disableITestsCD = disableITestsCD;
+        answer.disableITestsCI = disableITestsCI;
+        answer.useDockerSocketFlag = useDockerSocketFlag;
+        answer.spaceNamespace = spaceNamespace;
+        return answer;
+    }
+
+    /**
+     * Returns an immutable snapshot of this configuration with the branch patterns precompiled which is much faster
+     * to use for resolving many pipelines
+     */
+    public CompiledPipelineConfiguration compile() {
+        return new CompiledPipelineConfiguration(this);
+    }
+
     public Pipeline getPipeline(Map<String, String> jobEnvironmentMap) throws IntrospectionException {
         JobEnvironment jobEnvironment = JobEnvironment.create(jobEnvironmentMap);
         Pipeline pipeline = getPipeline(jobEnvironment);
@@ -0,0 +1,290 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.kubernetes.api.pipelines;
+
+import io.fabric8.kubernetes.api.KubernetesClientRegistry;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.utils.Closeables;
+import io.fabric8.utils.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static io.fabric8.kubernetes.api.environments.Environments.findSpaceNamespace;
+import static io.fabric8.kubernetes.api.pipelines.PipelineConfiguration.FABRIC8_PIPELINES;
+
+/**
+ * Caches the {@link CompiledPipelineConfiguration} of a namespace so that resolving pipelines does not query
+ * the <code>fabric8-pipelines</code> {@link ConfigMap} each time.
+ * <p/>
+ * The cached snapshot is reloaded once its time to live expires or, if watching is enabled, is replaced as soon as the
+ * {@link ConfigMap} changes; if the watch closes, however it was closed, the snapshot is reloaded and the watch
+ * reopened on the next call. Snapshots are swapped atomically so readers only block while a snapshot is reloaded.
+ */
+public class PipelineConfigurationCache implements Closeable {
+    private static final transient Logger LOG = LoggerFactory.getLogger(PipelineConfigurationCache.class);
+
+    public static final long DEFAULT_TTL_MILLIS = 30000;
+
+    private static final ConcurrentMap<String, PipelineConfigurationCache> CACHES = new ConcurrentHashMap<>();
+    private static KubernetesClient sharedClient;
+    private static volatile String spaceNamespace;
+
+    private final KubernetesClient kubernetesClient;
+    private final String namespace;
+    private final long ttlMillis;
+    private final boolean watchEnabled;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final AtomicReference<Watch> watch = new AtomicReference<>();
+    private final AtomicLong watchGeneration = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong updateCount = new AtomicLong();
+    private volatile boolean closed;
+
+    public PipelineConfigurationCache(KubernetesClient kubernetesClient, String namespace) {
+        this(kubernetesClient, namespace, DEFAULT_TTL_MILLIS, false);
+    }
+
+    /**
+     * @param ttlMillis    how long a snapshot is used before it is reloaded when it is not being watched; a negative value means forever
+     * @param watchEnabled whether to watch the {@link ConfigMap} for changes
+     */
+    public PipelineConfigurationCache(KubernetesClient kubernetesClient, String namespace, long ttlMillis, boolean watchEnabled) {
+        Objects.notNull(kubernetesClient, "kubernetesClient");
+        Objects.notNull(namespace, "namespace");
+        this.kubernetesClient = kubernetesClient;
+        this.namespace = namespace;
+        this.ttlMillis = ttlMillis;
+        this.watchEnabled = watchEnabled;
+    }
+
+    /**
+     * Returns the shared cache for the given namespace which uses a time to live rather than a watch so that
+     * short lived processes are not kept waiting on a watch connection
+     */
+    public static PipelineConfigurationCache getInstance(String namespace) {
+        PipelineConfigurationCache answer = CACHES.get(namespace);
+        if (answer == null) {
+            answer = new PipelineConfigurationCache(getSharedClient(), namespace);
+            PipelineConfigurationCache old = CACHES.putIfAbsent(namespace, answer);
+            if (old != null) {
+                answer = old;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the shared cache for the space namespace of the current namespace
+     */
+    public static PipelineConfigurationCache getInstance() {
+        String answer = spaceNamespace;
+        if (answer == null) {
+            answer = findSpaceNamespace(getSharedClient());
+            spaceNamespace = answer;
+        }
+        return getInstance(answer);
+    }
+
+    protected static synchronized KubernetesClient getSharedClient() {
+        if (sharedClient == null) {
+            // lets keep the lease for the life of the process
+            sharedClient = KubernetesClientRegistry.getDefault().acquire();
+        }
+        return sharedClient;
+    }
+
+    @Override
+    public String toString() {
+        return "PipelineConfigurationCache{" +
+                "namespace='" + namespace + '\'' +
+                ", watching=" + isWatching() +
+                ", loadCount=" + loadCount +
+                '}';
+    }
+
+    /**
+     * Returns the current snapshot, loading it if there is none or it has expired
+     */
+    public CompiledPipelineConfiguration getConfiguration() {
+        Snapshot current = snapshot.get();
+        if (current == null || isExpired(current)) {
+            current = reload(current);
+        }
+        return current.configuration;
+    }
+
+    /**
+     * Forces the next call to {@link #getConfiguration()} to reload the configuration
+     */
+    public void invalidate() {
+        snapshot.set(null);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Closeables.closeQuietly(watch.getAndSet(null));
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public boolean isWatching() {
+        return watch.get() != null;
+    }
+
+    /**
+     * Returns the number of times the configuration has been loaded from the API server
+     */
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    /**
+     * Returns the number of times the configuration has been replaced due to a watch event
+     */
+    public long getUpdateCount() {
+        return updateCount.get();
+    }
+
+    protected synchronized Snapshot reload(Snapshot expected) {
+        Snapshot current = snapshot.get();
+        if (current != null && current != expected && !isExpired(current)) {
+            // another thread got here first
+            return current;
+        }
+        ConfigMap configMap = kubernetesClient.configMaps().inNamespace(namespace).withName(FABRIC8_PIPELINES).get();
+        loadCount.incrementAndGet();
+        Snapshot answer = new Snapshot(compile(configMap), System.currentTimeMillis(), isWatching());
+        // set the snapshot before watching so that we do not overwrite an event received as soon as the watch opens
+        snapshot.set(answer);
+        if (watchEnabled && !closed && watch.get() == null) {
+            startWatch(configMap != null ? configMap.getMetadata().getResourceVersion() : null);
+            if (isWatching()) {
+                Snapshot watched = new Snapshot(answer.configuration, answer.loadedAt, true);
+                if (snapshot.compareAndSet(answer, watched)) {
+                    answer = watched;
+                }
+            }
+        }
+        Snapshot latest = snapshot.get();
+        return latest != null ? latest : answer;
+    }
+
+    // BuildWatcher found that withResourceVersion(version).watch(watcher) drops the resourceVersion in this
+    // version of the client so we resume from the resourceVersion the same way, via the deprecated overload
+    @SuppressWarnings("deprecation")
+    protected void startWatch(String resourceVersion) {
+        // only the latest watch is reported as closed; the ones we replace are closed by us
+        final long generation = watchGeneration.incrementAndGet();
+        try {
+            Watcher<ConfigMap> watcher = new Watcher<ConfigMap>() {
+                @Override
+                public void eventReceived(Action action, ConfigMap configMap) {
+                    onConfigMapEvent(action, configMap);
+                }
+
+                @Override
+                public void onClose(KubernetesClientException cause) {
+                    if (generation == watchGeneration.get()) {
+                        onWatchClosed(cause);
+                    }
+                }
+            };
+            Watch newWatch;
+            if (resourceVersion != null) {
+                newWatch = kubernetesClient.configMaps().inNamespace(namespace).withName(FABRIC8_PIPELINES).watch(resourceVersion, watcher);
+            } else {
+                newWatch = kubernetesClient.configMaps().inNamespace(namespace).withName(FABRIC8_PIPELINES).watch(watcher);
+            }
+            Closeables.closeQuietly(watch.getAndSet(newWatch));
+            if (closed) {
+                Closeables.closeQuietly(watch.getAndSet(null));
+            }
+        } catch (Exception e) {
+            LOG.warn("Failed to watch ConfigMap " + FABRIC8_PIPELINES + " in namespace " + namespace + " so using a time to live instead. " + e, e);
+        }
+    }
+
+    protected void onConfigMapEvent(Watcher.Action action, ConfigMap configMap) {
+        if (closed || action == Watcher.Action.ERROR) {
+            return;
+        }
+        CompiledPipelineConfiguration configuration = compile(action == Watcher.Action.DELETED ? null : configMap);
+        snapshot.set(new Snapshot(configuration, System.currentTimeMillis(), true));
+        updateCount.incrementAndGet();
+        LOG.debug("Updated pipeline configuration in namespace " + namespace + " due to " + action);
+    }
+
+    protected void onWatchClosed(KubernetesClientException cause) {
+        if (closed) {
+            return;
+        }
+        // the server may close the watch without an error so lets reload and reopen it on the next call either way
+        Watch old = watch.getAndSet(null);
+        LOG.info("Watch of ConfigMap " + FABRIC8_PIPELINES + " in namespace " + namespace + " closed" + (cause != null ? ": " + cause : "") + " so reloading it on the next call");
+        Closeables.closeQuietly(old);
+    }
+
+    protected boolean isExpired(Snapshot current) {
+        if (watch.get() != null) {
+            return false;
+        }
+        if (current.watched) {
+            // we may have missed changes since the watch closed
+            return true;
+        }
+        if (ttlMillis < 0) {
+            return false;
+        }
+        return System.currentTimeMillis() - current.loadedAt >= ttlMillis;
+    }
+
+    protected CompiledPipelineConfiguration compile(ConfigMap configMap) {
+        PipelineConfiguration configuration;
+        if (configMap != null) {
+            configuration = PipelineConfiguration.getPipelineConfiguration(configMap);
+        } else {
+            configuration = PipelineConfiguration.createDefault();
+        }
+        configuration.setSpaceNamespace(namespace);
+        return configuration.compile();
+    }
+
+    private static final class Snapshot {
+        private final CompiledPipelineConfiguration configuration;
+        private final long loadedAt;
+        private final boolean watched;
+
+        Snapshot(CompiledPipelineConfiguration configuration, long loadedAt, boolean watched) {
+            this.configuration = configuration;
+            this.loadedAt = loadedAt;
+            this.watched = watched;
+        }
+    }
+}
@@ -17,7 +17,6 @@
 package io.fabric8.kubernetes.api.pipelines;
 
 import io.fabric8.kubernetes.api.KubernetesHelper;
-import io.fabric8.kubernetes.client.DefaultKubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.utils.Strings;
 import org.slf4j.Logger;
@@ -27,8 +26,6 @@ import java.beans.IntrospectionException;
 import java.util.Arrays;
 import java.util.Map;
 
-import static io.fabric8.kubernetes.api.environments.Environments.findSpaceNamespace;
-
 /**
  */
 public class Pipelines {
@@ -44,11 +41,9 @@ public class Pipelines {
      * so that this function can properly detect if a build should be a <code>CD</code> build or not!
      */
     public static Pipeline getPipeline(Map<String, String> jobEnvironment) throws IntrospectionException {
-        try (KubernetesClient kubernetesClient = new DefaultKubernetesClient()) {
-            String namespace = findSpaceNamespace(kubernetesClient);
-            return getPipeline(kubernetesClient, namespace, jobEnvironment);
-        }
+        return getPipeline(PipelineConfigurationCache.getInstance(), jobEnvironment);
     }
+
     /**
      * Looks up the pipeline kind based on the configuration in the given kubernetes namespace.
      * <p>
@@ -56,9 +51,22 @@ public class Pipelines {
      * so that this function can properly detect if a build should be a <code>CD</code> build or not!
      */
     public static Pipeline getPipeline(String namespace, Map<String, String> jobEnvironment) throws IntrospectionException {
-        try (KubernetesClient kubernetesClient = new DefaultKubernetesClient()) {
-            return getPipeline(kubernetesClient, namespace, jobEnvironment);
+        return getPipeline(PipelineConfigurationCache.getInstance(namespace), jobEnvironment);
+    }
+
+    /**
+     * Looks up the pipeline kind based on the cached configuration.
+     * <p>
+     * <b>NOTE</b> that you should pass in the <code>BRANCH_NAME</code> and <code>GIT_URL</code> environment variables
+     * so that this function can properly detect if a build should be a <code>CD</code> build or not!
+     */
+    public static Pipeline getPipeline(PipelineConfigurationCache cache, Map<String, String> jobEnvironment) throws IntrospectionException {
+        Pipeline pipeline = getPipelineFromEnvironment(jobEnvironment);
+        if (pipeline == null) {
+            pipeline = cache.getConfiguration().getPipeline(jobEnvironment);
+            jobEnvironment.put(PIPELINE_KIND, pipeline.getKind().toString());
         }
+        return pipeline;
     }
 
     /**
@@ -68,16 +76,9 @@ public class Pipelines {
      * so that this function can properly detect if a build should be a <code>CD</code> build or not!
      */
     public static Pipeline getPipeline(KubernetesClient kubernetesClient, String namespace, Map<String, String> jobEnvironment) throws IntrospectionException {
-        String kind = jobEnvironment.get(PIPELINE_KIND);
-        String jobName = jobEnvironment.get(JOB_NAME);
-        if (Strings.isNotBlank(jobName) && Strings.isNotBlank(kind)) {
-            try {
-                PipelineKind pipelineKind = PipelineKind.valueOf(kind);
-                return new Pipeline(pipelineKind, jobName);
-            } catch (IllegalArgumentException e) {
-                LOG.warn("$PIPELINE_KIND has a value of " + kind +
-                        " which is not a valid value. Available values are: " + Arrays.asList(PipelineKind.values()) + ". " + e, e);
-            }
+        Pipeline answer = getPipelineFromEnvironment(jobEnvironment);
+        if (answer != null) {
+            return answer;
         }
         PipelineConfiguration configuration = PipelineConfiguration.loadPipelineConfiguration(kubernetesClient, namespace);
         Pipeline pipeline = configuration.getPipeline(jobEnvironment);
@@ -97,4 +98,22 @@ public class Pipelines {
         PipelineConfiguration configuration = PipelineConfiguration.loadPipelineConfiguration(kubernetesClient, namespace);
         return configuration.getPipeline(jobEnvironment);
     }
+
+    /**
+     * Returns the pipeline if it has already been resolved and stored in the environment
+     */
+    protected static Pipeline getPipelineFromEnvironment(Map<String, String> jobEnvironment) {
+        String kind = jobEnvironment.get(PIPELINE_KIND);
+        String jobName = jobEnvironment.get(JOB_NAME);
+        if (Strings.isNotBlank(jobName) && Strings.isNotBlank(kind)) {
+            try {
+                PipelineKind pipelineKind = PipelineKind.valueOf(kind);
+                return new Pipeline(pipelineKind, jobName);
+            } catch (IllegalArgumentException e) {
+                LOG.warn("$PIPELINE_KIND has a value of " + kind +
+                        " which is not a valid value. Available values are: " + Arrays.asList(PipelineKind.values()) + ". " + e, e);
+            }
+        }
+        return null;
+    }
 }
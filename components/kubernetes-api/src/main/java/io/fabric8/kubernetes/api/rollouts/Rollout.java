@@ -0,0 +1,220 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api.rollouts;
+
+import io.fabric8.kubernetes.api.KubernetesHelper;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.api.model.ReplicationControllerSpec;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Performs the rolling upgrade of a single ReplicationController in place; the new template is stored in the
+ * ReplicationController then the pods which existed beforehand are deleted one at a time, within the
+ * {@link UnavailableBudget}, so that the ReplicationController recreates them from the new template.
+ * <p/>
+ * Progress is tracked by watching the pods of the ReplicationController from the resourceVersion of the initial list;
+ * a budget permit is returned each time a new pod becomes ready. The old pods are found with the selector of the
+ * ReplicationController on the server so that they are still replaced if the new template changes the selector.
+ */
+class Rollout implements Watcher<Pod> {
+    private static final transient Logger LOG = LoggerFactory.getLogger(Rollout.class);
+
+    private final KubernetesClient client;
+    private final String namespace;
+    private final String name;
+    private final ReplicationController replicationController;
+    private final UnavailableBudget budget;
+    private final long timeoutMillis;
+    private final BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+
+    private final Set<String> oldPodNames = new HashSet<>();
+    private final Deque<String> podsToDelete = new ArrayDeque<>();
+    private final Set<String> readyNewPods = new HashSet<>();
+
+    Rollout(KubernetesClient client, String namespace, ReplicationController replicationController, UnavailableBudget budget, long timeoutMillis) {
+        this.client = client;
+        this.namespace = namespace;
+        this.name = KubernetesHelper.getName(replicationController);
+        this.replicationController = replicationController;
+        this.budget = budget;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ReplicationController getReplicationController() {
+        return replicationController;
+    }
+
+    @Override
+    public void eventReceived(Action action, Pod pod) {
+        events.add(new PodEvent(action, pod));
+    }
+
+    @Override
+    public void onClose(KubernetesClientException cause) {
+        if (cause != null) {
+            events.add(cause);
+        }
+    }
+
+    /**
+     * Performs the rollout returning the result rather than throwing any failure
+     */
+    public RolloutResult run() {
+        long start = System.currentTimeMillis();
+        int replacedPods = 0;
+        Throwable failure = null;
+        try {
+            replacedPods = rollout(start + timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } catch (Throwable e) {
+            failure = e;
+        }
+        RolloutResult answer = new RolloutResult(namespace, name, start, System.currentTimeMillis(), replacedPods, failure);
+        if (failure != null) {
+            LOG.warn("Rolling upgrade of ReplicationController " + namespace + "/" + name + " failed after "
+                    + answer.getDurationMillis() + " millis. " + failure, failure);
+        } else {
+            LOG.info("Rolling upgrade of ReplicationController " + namespace + "/" + name + " replaced "
+                    + replacedPods + " pod(s) in " + answer.getDurationMillis() + " millis");
+        }
+        return answer;
+    }
+
+    protected int rollout(long deadline) throws Exception {
+        ReplicationControllerSpec spec = replicationController.getSpec();
+        Map<String, String> selector = spec != null ? spec.getSelector() : null;
+        if (selector == null || selector.isEmpty()) {
+            throw new IllegalArgumentException("No selector for ReplicationController " + namespace + "/" + name);
+        }
+        Integer specReplicas = spec.getReplicas();
+        int replicas = specReplicas != null ? specReplicas : 1;
+
+        // if the selector changes the old pods no longer match the new one so find them using the old one
+        Map<String, String> oldSelector = selector;
+        ReplicationController old = client.replicationControllers().inNamespace(namespace).withName(name).get();
+        if (old != null && old.getSpec() != null && old.getSpec().getSelector() != null && !old.getSpec().getSelector().isEmpty()) {
+            oldSelector = old.getSpec().getSelector();
+        }
+        PodList pods = client.pods().inNamespace(namespace).withLabels(oldSelector).list();
+        List<Pod> items = pods.getItems();
+        if (items != null) {
+            for (Pod pod : items) {
+                String podName = KubernetesHelper.getName(pod);
+                oldPodNames.add(podName);
+                if (pod.getMetadata().getDeletionTimestamp() == null) {
+                    podsToDelete.add(podName);
+                }
+            }
+        }
+        String resourceVersion = pods.getMetadata() != null ? pods.getMetadata().getResourceVersion() : null;
+
+        int deleted = 0;
+        int held = 0;
+        Watch watch = client.pods().inNamespace(namespace).withLabels(selector).withResourceVersion(resourceVersion).watch(this);
+        try {
+            // a cascading replace would scale the ReplicationController down to zero first
+            client.replicationControllers().inNamespace(namespace).withName(name).cascading(false).replace(replicationController);
+            while (true) {
+                int unavailable = Math.max(0, deleted - readyNewPods.size());
+                for (; held > unavailable; held--) {
+                    budget.release();
+                }
+                if (podsToDelete.isEmpty() && readyNewPods.size() >= replicas) {
+                    return deleted;
+                }
+                if (!podsToDelete.isEmpty() && budget.tryAcquire()) {
+                    held++;
+                    String podName = podsToDelete.poll();
+                    LOG.debug("Deleting pod " + namespace + "/" + podName + " of ReplicationController " + name);
+                    client.pods().inNamespace(namespace).withName(podName).delete();
+                    deleted++;
+                    continue;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new TimeoutException("Timed out waiting for " + replicas + " new pod(s) to be ready; " + readyNewPods.size()
+                            + " ready and " + podsToDelete.size() + " old pod(s) still to be replaced");
+                }
+                // wake up periodically to retry the budget even if no events arrive
+                Object event = events.poll(Math.min(remaining, 500), TimeUnit.MILLISECONDS);
+                if (event instanceof KubernetesClientException) {
+                    throw (KubernetesClientException) event;
+                } else if (event instanceof PodEvent) {
+                    onPodEvent((PodEvent) event);
+                }
+            }
+        } finally {
+            watch.close();
+            for (; held > 0; held--) {
+                budget.release();
+            }
+        }
+    }
+
+    protected void onPodEvent(PodEvent event) {
+        String podName = KubernetesHelper.getName(event.pod);
+        if (event.action == Action.DELETED) {
+            readyNewPods.remove(podName);
+            podsToDelete.remove(podName);
+        } else if (event.action == Action.ERROR) {
+            LOG.warn("Error watching pods of ReplicationController " + namespace + "/" + name + ": " + event.pod);
+        } else if (!oldPodNames.contains(podName)) {
+            if (KubernetesHelper.isPodReady(event.pod) && event.pod.getMetadata().getDeletionTimestamp() == null) {
+                readyNewPods.add(podName);
+            } else {
+                readyNewPods.remove(podName);
+            }
+        }
+    }
+
+    private static final class PodEvent {
+        private final Action action;
+        private final Pod pod;
+
+        PodEvent(Action action, Pod pod) {
+            this.action = action;
+            this.pod = pod;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api.rollouts;
+
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.PodTemplateSpec;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.api.model.ReplicationControllerSpec;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.utils.Objects;
+import io.fabric8.utils.ThreadFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Performs the rolling upgrades of many ReplicationControllers concurrently.
+ * <p/>
+ * Up to <code>parallelism</code> rollouts run at once and at most <code>maxUnavailable</code> pods are
+ * unavailable at any time across all of them. ReplicationControllers in the same namespace whose selectors
+ * match each other's pods are not independent so they are rolled out one after the other in the order submitted.
+ * <p/>
+ * Each rollout tracks its pods with a watch rather than polling and reports its duration in its {@link RolloutResult}.
+ */
+public class RolloutOrchestrator implements Closeable {
+    public static final int DEFAULT_PARALLELISM = 4;
+    public static final int DEFAULT_MAX_UNAVAILABLE = 1;
+    public static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final KubernetesClient client;
+    private final UnavailableBudget budget;
+    private final ThreadPoolExecutor executor;
+    private final List<Submission> submissions = new ArrayList<>();
+    private long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+    public RolloutOrchestrator(KubernetesClient client) {
+        this(client, DEFAULT_PARALLELISM, DEFAULT_MAX_UNAVAILABLE);
+    }
+
+    public RolloutOrchestrator(KubernetesClient client, int parallelism, int maxUnavailable) {
+        Objects.notNull(client, "client");
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1 but was " + parallelism);
+        }
+        if (maxUnavailable < 1) {
+            throw new IllegalArgumentException("maxUnavailable must be at least 1 but was " + maxUnavailable);
+        }
+        this.client = client;
+        this.budget = new UnavailableBudget(maxUnavailable);
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new ThreadFactory("fabric8-rollout"));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts the rolling upgrade of the given ReplicationController once any rollouts it depends on have completed
+     *
+     * @return the future result which completes normally even if the rollout fails
+     */
+    public synchronized CompletableFuture<RolloutResult> submit(String namespace, ReplicationController replicationController) {
+        Objects.notNull(replicationController, "replicationController");
+        Rollout rollout = new Rollout(client, namespace, replicationController, budget, timeoutMillis);
+        List<CompletableFuture<RolloutResult>> dependencies = new ArrayList<>();
+        for (Submission submission : submissions) {
+            if (!submission.future.isDone() && conflicts(submission.rollout, rollout)) {
+                dependencies.add(submission.future);
+            }
+        }
+        CompletableFuture<RolloutResult> future;
+        if (dependencies.isEmpty()) {
+            future = CompletableFuture.supplyAsync(rollout::run, executor);
+        } else {
+            future = CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[dependencies.size()]))
+                    .thenApplyAsync(ignore -> rollout.run(), executor);
+        }
+        submissions.add(new Submission(rollout, future));
+        return future;
+    }
+
+    /**
+     * Waits for all the submitted rollouts to complete returning their results in the order they were submitted
+     */
+    public List<RolloutResult> awaitAll(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        List<Submission> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(submissions);
+            submissions.clear();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<RolloutResult> answer = new ArrayList<>(pending.size());
+        for (Submission submission : pending) {
+            try {
+                answer.add(submission.future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                synchronized (this) {
+                    // keep the outstanding rollouts so they can be awaited again
+                    submissions.addAll(0, pending.subList(pending.indexOf(submission), pending.size()));
+                }
+                throw e;
+            } catch (ExecutionException e) {
+                Rollout rollout = submission.rollout;
+                long now = System.currentTimeMillis();
+                answer.add(new RolloutResult(rollout.getNamespace(), rollout.getName(), now, now, 0, e.getCause()));
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the number of rollouts which have been submitted but whose results have not yet been returned by
+     * {@link #awaitAll(long, TimeUnit)}
+     */
+    public synchronized int getPendingCount() {
+        return submissions.size();
+    }
+
+    /**
+     * Returns the largest number of pods which were unavailable at once
+     */
+    public int getPeakUnavailable() {
+        return budget.getPeakUnavailable();
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Sets how long each rollout may take before it fails
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Stops any rollouts which are in progress
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns true if the two ReplicationControllers could select each other's pods
+     */
+    protected static boolean conflicts(Rollout a, Rollout b) {
+        if (!Objects.equal(a.getNamespace(), b.getNamespace())) {
+            return false;
+        }
+        if (Objects.equal(a.getName(), b.getName())) {
+            return true;
+        }
+        ReplicationControllerSpec specA = a.getReplicationController().getSpec();
+        ReplicationControllerSpec specB = b.getReplicationController().getSpec();
+        return selects(specA, podLabels(specB)) || selects(specB, podLabels(specA));
+    }
+
+    private static boolean selects(ReplicationControllerSpec spec, Map<String, String> labels) {
+        Map<String, String> selector = spec != null ? spec.getSelector() : null;
+        if (selector == null || selector.isEmpty() || labels == null) {
+            return false;
+        }
+        return labels.entrySet().containsAll(selector.entrySet());
+    }
+
+    private static Map<String, String> podLabels(ReplicationControllerSpec spec) {
+        if (spec == null) {
+            return Collections.emptyMap();
+        }
+        PodTemplateSpec template = spec.getTemplate();
+        ObjectMeta metadata = template != null ? template.getMetadata() : null;
+        if (metadata != null && metadata.getLabels() != null) {
+            return metadata.getLabels();
+        }
+        return spec.getSelector();
+    }
+
+    private static final class Submission {
+        private final Rollout rollout;
+        private final CompletableFuture<RolloutResult> future;
+
+        Submission(Rollout rollout, CompletableFuture<RolloutResult> future) {
+            this.rollout = rollout;
+            this.future = future;
+        }
+    }
+}
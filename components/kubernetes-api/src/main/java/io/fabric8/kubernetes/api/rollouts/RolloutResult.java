@@ -0,0 +1,86 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api.rollouts;
+
+/**
+ * The outcome of the rolling upgrade of a single ReplicationController
+ */
+public class RolloutResult {
+    private final String namespace;
+    private final String name;
+    private final long startTimeMillis;
+    private final long endTimeMillis;
+    private final int replacedPods;
+    private final Throwable failure;
+
+    public RolloutResult(String namespace, String name, long startTimeMillis, long endTimeMillis, int replacedPods, Throwable failure) {
+        this.namespace = namespace;
+        this.name = name;
+        this.startTimeMillis = startTimeMillis;
+        this.endTimeMillis = endTimeMillis;
+        this.replacedPods = replacedPods;
+        this.failure = failure;
+    }
+
+    @Override
+    public String toString() {
+        return "RolloutResult{" +
+                "namespace='" + namespace + '\'' +
+                ", name='" + name + '\'' +
+                ", durationMillis=" + getDurationMillis() +
+                ", replacedPods=" + replacedPods +
+                (failure != null ? ", failure=" + failure : "") +
+                '}';
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    public long getEndTimeMillis() {
+        return endTimeMillis;
+    }
+
+    public long getDurationMillis() {
+        return endTimeMillis - startTimeMillis;
+    }
+
+    /**
+     * Returns the number of old pods which were deleted so that they were recreated from the new template
+     */
+    public int getReplacedPods() {
+        return replacedPods;
+    }
+
+    public boolean isSuccessful() {
+        return failure == null;
+    }
+
+    /**
+     * Returns the reason the rollout failed or null if it was successful
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api.rollouts;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The number of pods which may be unavailable at once across all the rollouts of a {@link RolloutOrchestrator}
+ */
+class UnavailableBudget {
+    private final Semaphore permits;
+    private final AtomicInteger unavailable = new AtomicInteger();
+    private final AtomicInteger peakUnavailable = new AtomicInteger();
+
+    UnavailableBudget(int maxUnavailable) {
+        this.permits = new Semaphore(maxUnavailable);
+    }
+
+    public boolean tryAcquire() {
+        if (permits.tryAcquire()) {
+            int value = unavailable.incrementAndGet();
+            peakUnavailable.accumulateAndGet(value, Math::max);
+            return true;
+        }
+        return false;
+    }
+
+    public void release() {
+        unavailable.decrementAndGet();
+        permits.release();
+    }
+
+    public int getUnavailable() {
+        return unavailable.get();
+    }
+
+    public int getPeakUnavailable() {
+        return peakUnavailable.get();
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.Quantity;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class ContentHashTest {
+    private String basedir = System.getProperty("basedir", ".");
+
+    /**
+     * The expected hashes in <code>hashes.properties</code> were calculated once so this test fails if the
+     * canonical form changes between JVMs or releases
+     */
+    @Test
+    public void testCorpusHashesAreStable() throws Exception {
+        File dir = new File(basedir, "src/test/resources/content-hash");
+        Properties expected = new Properties();
+        try (InputStream in = new FileInputStream(new File(dir, "hashes.properties"))) {
+            expected.load(in);
+        }
+        assertTrue("No expected hashes", expected.size() > 0);
+        for (String name : new TreeSet<>(expected.stringPropertyNames())) {
+            File file = new File(dir, name);
+            try (KubernetesResourceIterator iter = KubernetesResourceIterator.forFile(file)) {
+                HasMetadata entity = iter.next();
+                assertEquals("hash of " + name, expected.getProperty(name), ContentHash.of(entity));
+            }
+        }
+    }
+
+    @Test
+    public void testMapOrderAndServerFieldsAreIgnored() throws Exception {
+        Pod pod = new PodBuilder().
+                withNewMetadata().withName("cheese").addToLabels("a", "1").addToLabels("b", "2").endMetadata().
+                withNewSpec().addNewContainer().withName("cheese").withImage("fabric8/cheese:1.0").endContainer().endSpec().
+                build();
+        Pod other = new PodBuilder().
+                withNewMetadata().withName("cheese").addToLabels("b", "2").addToLabels("a", "1").
+                withNamespace("default").withResourceVersion("42").withUid("1234").endMetadata().
+                withNewSpec().addNewContainer().withImage("fabric8/cheese:1.0").withName("cheese").endContainer().endSpec().
+                withNewStatus().withPhase("Running").endStatus().
+                build();
+        assertEquals(ContentHash.of(pod), ContentHash.of(other));
+
+        other.getMetadata().getLabels().put("b", "3");
+        assertNotEquals(ContentHash.of(pod), ContentHash.of(other));
+    }
+
+    @Test
+    public void testListOrderMatters() throws Exception {
+        Pod pod = new PodBuilder().withNewMetadata().withName("cheese").endMetadata().
+                withNewSpec().addNewContainer().withName("a").endContainer().addNewContainer().withName("b").endContainer().endSpec().
+                build();
+        Pod other = new PodBuilder().withNewMetadata().withName("cheese").endMetadata().
+                withNewSpec().addNewContainer().withName("b").endContainer().addNewContainer().withName("a").endContainer().endSpec().
+                build();
+        assertNotEquals(ContentHash.of(pod), ContentHash.of(other));
+    }
+
+    @Test
+    public void testQuantitiesAreNormalized() throws Exception {
+        assertEquals("1073741824", ContentHash.normalizeQuantity("1Gi"));
+        assertEquals("1073741824", ContentHash.normalizeQuantity("1024Mi"));
+        assertEquals("0.5", ContentHash.normalizeQuantity("500m"));
+        assertEquals("0.5", ContentHash.normalizeQuantity("0.5"));
+        assertEquals("128000000", ContentHash.normalizeQuantity("128e6"));
+        assertEquals("128000000", ContentHash.normalizeQuantity("128M"));
+        assertEquals("0", ContentHash.normalizeQuantity("0Mi"));
+        assertEquals("cheese", ContentHash.normalizeQuantity("cheese"));
+
+        Pod pod = createPodWithMemory(new Quantity("1Gi"));
+        Pod other = createPodWithMemory(new Quantity("1024Mi"));
+        assertEquals(ContentHash.of(pod), ContentHash.of(other));
+    }
+
+    @Test
+    public void testAnnotate() throws Exception {
+        ConfigMap configMap = new ConfigMapBuilder().withNewMetadata().withName("cheese").endMetadata().addToData("key", "value").build();
+        String hash = ContentHash.of(configMap);
+        assertEquals(hash, ContentHash.annotate(configMap));
+        assertEquals(hash, ContentHash.getAnnotation(configMap));
+
+        // the annotation itself is not part of the hash
+        assertEquals(hash, ContentHash.of(configMap));
+        assertEquals(64, hash.length());
+        assertNotNull(configMap.getMetadata().getAnnotations().get(Annotations.Apply.CONTENT_HASH));
+    }
+
+    protected static Pod createPodWithMemory(Quantity memory) {
+        return new PodBuilder().withNewMetadata().withName("cheese").endMetadata().
+                withNewSpec().addNewContainer().withName("cheese").
+                withNewResources().addToLimits("memory", memory).endResources().
+                endContainer().endSpec().
+                build();
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import io.fabric8.openshift.api.model.ProjectListBuilder;
+import io.fabric8.openshift.client.server.mock.OpenShiftServer;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class ControllerContentHashTest {
+    private static final String NAMESPACE = "test";
+    private static final String CONFIG_MAP_PATH = "/api/v1/namespaces/" + NAMESPACE + "/configmaps/cheese";
+    private static final String SERVICE_PATH = "/api/v1/namespaces/" + NAMESPACE + "/services/cheese";
+
+    @Rule
+    public OpenShiftServer server = new OpenShiftServer();
+
+    private String lastBody;
+
+    @Before
+    public void expectProject() {
+        server.expect().withPath("/oapi/v1/projects").andReturn(200, new ProjectListBuilder().
+                addNewItem().withNewMetadata().withName(NAMESPACE).endMetadata().endItem().
+                build()).always();
+    }
+
+    @Test
+    public void testUnchangedEntityIsNotUpdated() throws Exception {
+        ConfigMap old = createConfigMap();
+        ContentHash.annotate(old);
+        old.getMetadata().setResourceVersion("7");
+        server.expect().withPath(CONFIG_MAP_PATH).andReturn(200, old).always();
+
+        createController().applyEntity(createConfigMap(), "test");
+
+        // any PUT would fail anyway as there is no expectation for it
+        assertEquals(Arrays.asList("GET " + CONFIG_MAP_PATH), configMapRequests());
+    }
+
+    @Test
+    public void testEntityWithoutHashIsUpdatedOnce() throws Exception {
+        ConfigMap old = createConfigMap();
+        old.getMetadata().setResourceVersion("7");
+        server.expect().get().withPath(CONFIG_MAP_PATH).andReturn(200, old).always();
+        server.expect().put().withPath(CONFIG_MAP_PATH).andReturn(200, old).once();
+
+        ConfigMap configMap = createConfigMap();
+        createController().applyEntity(configMap, "test");
+
+        List<String> requests = configMapRequests();
+        assertEquals("PUT " + CONFIG_MAP_PATH, requests.get(requests.size() - 1));
+        assertTrue("Should store the hash: " + lastBody, lastBody.contains(ContentHash.of(createConfigMap())));
+        assertEquals(ContentHash.of(configMap), ContentHash.getAnnotation(configMap));
+    }
+
+    @Test
+    public void testApplyServiceStoresHash() throws Exception {
+        Service old = createService();
+        old.getMetadata().setResourceVersion("7");
+        server.expect().get().withPath(SERVICE_PATH).andReturn(200, old).always();
+        server.expect().put().withPath(SERVICE_PATH).andReturn(200, old).once();
+
+        Service service = createService();
+        createController().applyService(service, "test");
+
+        List<String> requests = requests(SERVICE_PATH);
+        assertEquals("PUT " + SERVICE_PATH, requests.get(requests.size() - 1));
+        assertTrue("Should store the hash: " + lastBody, lastBody.contains(ContentHash.of(createService())));
+        assertEquals(ContentHash.of(service), ContentHash.getAnnotation(service));
+    }
+
+    protected Controller createController() {
+        Controller controller = new Controller(server.getOpenshiftClient());
+        controller.setNamespace(NAMESPACE);
+        controller.setContentHashMode(true);
+        return controller;
+    }
+
+    /**
+     * Returns the method and path of the requests for the config map
+     */
+    protected List<String> configMapRequests() throws InterruptedException {
+        return requests(CONFIG_MAP_PATH);
+    }
+
+    /**
+     * Returns the method and path of the requests for the given path
+     */
+    protected List<String> requests(String path) throws InterruptedException {
+        List<String> answer = new ArrayList<>();
+        MockWebServer mockServer = server.getMockServer();
+        RecordedRequest request;
+        while ((request = mockServer.takeRequest(100, TimeUnit.MILLISECONDS)) != null) {
+            if (request.getPath().equals(path)) {
+                answer.add(request.getMethod() + " " + request.getPath());
+                lastBody = request.getBody().readUtf8();
+            }
+        }
+        return answer;
+    }
+
+    protected static ConfigMap createConfigMap() {
+        return new ConfigMapBuilder().withNewMetadata().withName("cheese").endMetadata().
+                addToData("key", "value").
+                build();
+    }
+
+    protected static Service createService() {
+        return new ServiceBuilder().withNewMetadata().withName("cheese").endMetadata().
+                withNewSpec().addNewPort().withPort(80).endPort().endSpec().
+                build();
+    }
+}
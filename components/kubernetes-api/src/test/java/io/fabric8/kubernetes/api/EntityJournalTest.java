@@ -0,0 +1,132 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import io.fabric8.utils.Files;
+import io.fabric8.utils.IOHelpers;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class EntityJournalTest {
+    private String basedir = System.getProperty("basedir", ".");
+    private File dir;
+
+    @Before
+    public void init() throws Exception {
+        dir = new File(basedir, "target/test-data/entity-journal");
+        Files.recursiveDelete(dir);
+    }
+
+    @Test
+    public void testFileNamesContinueFromExistingFiles() throws Exception {
+        File namespaceDir = new File(dir, "cheese");
+        namespaceDir.mkdirs();
+        IOHelpers.writeFully(new File(namespaceDir, "configmap-foo.json"), "{}");
+        IOHelpers.writeFully(new File(namespaceDir, "configmap-foo-1.json"), "{}");
+        IOHelpers.writeFully(new File(namespaceDir, "configmap-foo-3.json"), "{}");
+
+        try (EntityJournal journal = new EntityJournal(dir)) {
+            for (int i = 0; i < 3; i++) {
+                journal.log("Created ConfigMap: ", "cheese", createConfigMap("foo", i), createConfigMap("foo", i));
+            }
+            journal.log("Created ConfigMap: ", "cheese", createConfigMap("bar", 0), "{\"kind\":\"ConfigMap\"}");
+        }
+
+        assertTrue(new File(namespaceDir, "configmap-foo-2.json").isFile());
+        assertTrue(new File(namespaceDir, "configmap-foo-4.json").isFile());
+        assertTrue(new File(namespaceDir, "configmap-foo-5.json").isFile());
+        assertEquals("{\"kind\":\"ConfigMap\"}", IOHelpers.readFully(new File(namespaceDir, "configmap-bar.json")));
+        ConfigMap configMap = (ConfigMap) KubernetesHelper.loadJson(new File(namespaceDir, "configmap-foo-5.json"));
+        assertEquals("2", configMap.getData().get("index"));
+    }
+
+    @Test
+    public void testNdjsonAppendsOneLinePerEntity() throws Exception {
+        try (EntityJournal journal = new EntityJournal(dir, true, 10)) {
+            for (int i = 0; i < 100; i++) {
+                journal.log("Updated ConfigMap: ", i % 2 == 0 ? "even" : "odd", createConfigMap("foo", i), createConfigMap("foo", i));
+            }
+            journal.log("Template processed into: ", "even", createConfigMap("foo", 100), "{\n  \"kind\" : \"Template\"\n}");
+        }
+        List<String> lines = Files.readLines(new File(dir, "even.ndjson"));
+        assertEquals(51, lines.size());
+        assertEquals("{\"kind\":\"Template\"}", lines.get(50));
+        ConfigMap configMap = (ConfigMap) KubernetesHelper.loadJson(lines.get(49));
+        assertEquals("98", configMap.getData().get("index"));
+        assertEquals(50, Files.readLines(new File(dir, "odd.ndjson")).size());
+    }
+
+    @Test
+    public void testNdjsonFilesClosedWhenIdle() throws Exception {
+        try (EntityJournal journal = new EntityJournal(dir, true, 10)) {
+            ConfigMap configMap = createConfigMap("foo", 1);
+            journal.log("Updated ConfigMap: ", "cheese", configMap, configMap);
+            // the entity is converted to JSON when it is logged so later changes must not be written
+            configMap.getData().put("index", "2");
+            journal.flush();
+            for (int i = 0; i < 100 && journal.getOpenFileCount() > 0; i++) {
+                Thread.sleep(100);
+            }
+            assertEquals("open files once idle", 0, journal.getOpenFileCount());
+
+            journal.log("Updated ConfigMap: ", "cheese", configMap, configMap);
+        }
+        List<String> lines = Files.readLines(new File(dir, "cheese.ndjson"));
+        assertEquals(2, lines.size());
+        assertEquals("1", ((ConfigMap) KubernetesHelper.loadJson(lines.get(0))).getData().get("index"));
+        assertEquals("2", ((ConfigMap) KubernetesHelper.loadJson(lines.get(1))).getData().get("index"));
+    }
+
+    @Test
+    public void testConstantCostForRepeatedApplies() throws Exception {
+        int batches = 10;
+        int batchSize = 1000;
+        Controller controller = new Controller(null);
+        controller.setLogJsonDir(dir);
+        ConfigMap configMap = createConfigMap("same", 0);
+
+        long[] nanos = new long[batches];
+        for (int batch = 0; batch < batches; batch++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < batchSize; i++) {
+                controller.logGeneratedEntity("Updated ConfigMap: ", "cheese", configMap, configMap);
+            }
+            controller.flushLogJson();
+            nanos[batch] = System.nanoTime() - start;
+        }
+        assertEquals(batches * batchSize, new File(dir, "cheese").list().length);
+        assertTrue(new File(dir, "cheese/configmap-same-9999.json").isFile());
+
+        // probing for a free name would make the last batch roughly 20 times slower than the second one
+        long warm = Math.min(nanos[1], nanos[2]);
+        long last = Math.min(nanos[batches - 1], nanos[batches - 2]);
+        assertTrue("last batch took " + last / 1000000 + "ms compared to " + warm / 1000000 + "ms", last < warm * 5);
+    }
+
+    protected static ConfigMap createConfigMap(String name, int index) {
+        return new ConfigMapBuilder().withNewMetadata().withName(name).endMetadata().addToData("index", "" + index).build();
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import io.fabric8.kubernetes.client.Config;
+import io.fabric8.kubernetes.client.ConfigBuilder;
+import io.fabric8.kubernetes.client.HttpClientAware;
+import io.fabric8.kubernetes.api.model.RootPathsBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.NamespacedKubernetesClient;
+import io.fabric8.openshift.client.OpenShiftClient;
+import io.fabric8.openshift.client.server.mock.OpenShiftServer;
+import okhttp3.OkHttpClient;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ */
+public class KubernetesClientRegistryTest {
+    @Rule
+    public OpenShiftServer server = new OpenShiftServer();
+
+    @Test
+    public void testClientsAreSharedAndReferenceCounted() throws Exception {
+        server.expect().withPath("/api/v1/namespaces/test/configmaps/cheese").andReturn(200, "{\"kind\":\"ConfigMap\",\"apiVersion\":\"v1\",\"metadata\":{\"name\":\"cheese\"}}").always();
+
+        KubernetesClientRegistry registry = new KubernetesClientRegistry(200);
+        Config config = server.getKubernetesClient().getConfiguration();
+        Config sameConfig = new ConfigBuilder(config).build();
+
+        KubernetesClient first = registry.acquire(config);
+        OkHttpClient httpClient = httpClient(first);
+        try (KubernetesClient second = registry.acquire(sameConfig)) {
+            assertSame("should share the HTTP client", httpClient, httpClient(second));
+            assertEquals("clients", 1, registry.getClientCount());
+            assertEquals("leases", 2, registry.getLeaseCount(config));
+            assertNotNull(second.configMaps().inNamespace("test").withName("cheese").get());
+        }
+
+        // closing a lease must not close the shared HTTP client
+        assertEquals("leases", 1, registry.getLeaseCount(config));
+        assertNotNull(first.configMaps().inNamespace("test").withName("cheese").get());
+        first.close();
+        first.close();
+        assertEquals("leases", 0, registry.getLeaseCount(config));
+
+        // reacquiring before the idle timeout reuses the client
+        try (KubernetesClient third = registry.acquire(config)) {
+            assertSame(httpClient, httpClient(third));
+        }
+
+        Thread.sleep(500);
+        assertEquals("idle clients should be discarded", 0, registry.getClientCount());
+        try (KubernetesClient fourth = registry.acquire(config)) {
+            assertNotSame(httpClient, httpClient(fourth));
+            assertSame("should share the connection pool", httpClient.connectionPool(), httpClient(fourth).connectionPool());
+            assertNotNull(fourth.configMaps().inNamespace("test").withName("cheese").get());
+        }
+    }
+
+    @Test
+    public void testDifferentConfigsGetDifferentClients() throws Exception {
+        KubernetesClientRegistry registry = new KubernetesClientRegistry(60000);
+        Config config = server.getKubernetesClient().getConfiguration();
+        Config otherNamespace = new ConfigBuilder(config).withNamespace("other").build();
+        Config otherUser = new ConfigBuilder(config).withOauthToken("secret").build();
+
+        try (KubernetesClient a = registry.acquire(config);
+             KubernetesClient b = registry.acquire(otherNamespace);
+             KubernetesClient c = registry.acquire(otherUser)) {
+            assertEquals("clients", 3, registry.getClientCount());
+            assertEquals("namespace", "other", b.getNamespace());
+            assertNotSame(httpClient(a), httpClient(c));
+        }
+        registry.evictIdle();
+        assertEquals("clients", 0, registry.getClientCount());
+    }
+
+    @Test
+    public void testClosingDerivedClientsReturnsTheLease() throws Exception {
+        server.expect().withPath("/").andReturn(200, new RootPathsBuilder().addToPaths("/api", "/oapi").build()).always();
+        server.expect().withPath("/api/v1/namespaces/test/configmaps/cheese").andReturn(200, "{\"kind\":\"ConfigMap\",\"apiVersion\":\"v1\",\"metadata\":{\"name\":\"cheese\"}}").always();
+
+        KubernetesClientRegistry registry = new KubernetesClientRegistry(60000);
+        Config config = server.getKubernetesClient().getConfiguration();
+
+        KubernetesClient client = registry.acquire(config);
+        OkHttpClient httpClient = httpClient(client);
+        try (OpenShiftClient openShiftClient = client.adapt(OpenShiftClient.class)) {
+            assertSame("should share the HTTP client", httpClient, httpClient(openShiftClient));
+        }
+        // closing an adapted client must return the lease rather than close the shared HTTP client
+        assertEquals("leases", 0, registry.getLeaseCount(config));
+        assertFalse("dispatcher should not be shut down", httpClient.dispatcher().executorService().isShutdown());
+
+        client.close();
+
+        KubernetesClient namespaced = ((NamespacedKubernetesClient) registry.acquire(config)).inNamespace("other");
+        namespaced.close();
+        assertEquals("leases", 0, registry.getLeaseCount(config));
+        assertFalse("dispatcher should not be shut down", httpClient.dispatcher().executorService().isShutdown());
+        try (KubernetesClient other = registry.acquire(config)) {
+            assertSame(httpClient, httpClient(other));
+            assertNotNull(other.configMaps().inNamespace("test").withName("cheese").get());
+        }
+    }
+
+    protected static OkHttpClient httpClient(KubernetesClient client) {
+        return ((HttpClientAware) client).getHttpClient();
+    }
+}
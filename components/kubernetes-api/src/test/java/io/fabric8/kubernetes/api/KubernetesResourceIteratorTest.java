@@ -0,0 +1,178 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.Service;
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class KubernetesResourceIteratorTest {
+    private String basedir = System.getProperty("basedir", ".");
+
+    @Test
+    public void testMultiDocumentYaml() throws Exception {
+        String yaml = "apiVersion: v1\n" +
+                "kind: ConfigMap\n" +
+                "metadata:\n" +
+                "  name: first\n" +
+                "---\n" +
+                "---\n" +
+                "apiVersion: v1\n" +
+                "kind: List\n" +
+                "metadata: {}\n" +
+                "items:\n" +
+                "- apiVersion: v1\n" +
+                "  kind: Service\n" +
+                "  metadata:\n" +
+                "    name: second\n" +
+                "- apiVersion: v1\n" +
+                "  kind: Pod\n" +
+                "  metadata:\n" +
+                "    name: third\n" +
+                "---\n" +
+                "metadata:\n" +
+                "  name: fourth\n" +
+                "kind: ConfigMap\n" +
+                "apiVersion: v1\n";
+
+        List<HasMetadata> entities = toList(KubernetesResourceIterator.forYaml(new ByteArrayInputStream(yaml.getBytes("UTF-8"))));
+        assertEquals(4, entities.size());
+        assertEntity(entities.get(0), ConfigMap.class, "first");
+        assertEntity(entities.get(1), Service.class, "second");
+        assertEntity(entities.get(2), Pod.class, "third");
+        assertEntity(entities.get(3), ConfigMap.class, "fourth");
+    }
+
+    @Test
+    public void testJsonListAndArray() throws Exception {
+        String json = "{\"kind\":\"List\",\"apiVersion\":\"v1\",\"items\":[" +
+                "{\"kind\":\"Service\",\"apiVersion\":\"v1\",\"metadata\":{\"name\":\"first\"}}," +
+                "{\"kind\":\"Pod\",\"apiVersion\":\"v1\",\"metadata\":{\"name\":\"second\"}}" +
+                "],\"metadata\":{}}\n" +
+                "[{\"kind\":\"ConfigMap\",\"apiVersion\":\"v1\",\"metadata\":{\"name\":\"third\"}}]";
+
+        List<HasMetadata> entities = toList(KubernetesResourceIterator.forJson(new ByteArrayInputStream(json.getBytes("UTF-8"))));
+        assertEquals(3, entities.size());
+        assertEntity(entities.get(0), Service.class, "first");
+        assertEntity(entities.get(1), Pod.class, "second");
+        assertEntity(entities.get(2), ConfigMap.class, "third");
+    }
+
+    @Test
+    public void testItemsOnlyExpandedForLists() throws Exception {
+        String json = "{\"items\":[" +
+                "{\"kind\":\"Service\",\"apiVersion\":\"v1\",\"metadata\":{\"name\":\"first\"}}," +
+                "{\"kind\":\"Pod\",\"apiVersion\":\"v1\",\"metadata\":{\"name\":\"second\"}}" +
+                "],\"kind\":\"List\",\"apiVersion\":\"v1\"}\n" +
+                "{\"kind\":\"ConfigMap\",\"apiVersion\":\"v1\",\"metadata\":{\"name\":\"third\"},\"items\":[{\"name\":\"a\"}]}\n" +
+                "{\"items\":[{\"name\":\"b\"}],\"kind\":\"ConfigMap\",\"apiVersion\":\"v1\",\"metadata\":{\"name\":\"fourth\"}}";
+
+        List<HasMetadata> entities = toList(KubernetesResourceIterator.forJson(new ByteArrayInputStream(json.getBytes("UTF-8"))));
+        assertEquals(4, entities.size());
+        assertEntity(entities.get(0), Service.class, "first");
+        assertEntity(entities.get(1), Pod.class, "second");
+        // resources which merely have an items field are returned whole
+        assertEntity(entities.get(2), ConfigMap.class, "third");
+        assertEntity(entities.get(3), ConfigMap.class, "fourth");
+        assertTrue(((ConfigMap) entities.get(3)).getAdditionalProperties().get("items") instanceof List);
+    }
+
+    @Test
+    public void testLargeFileUsesBoundedHeap() throws Exception {
+        int count = 100000;
+        File file = new File(basedir, "target/test-data/large-manifest.yml");
+        file.getParentFile().mkdirs();
+        writeLargeYaml(file, count);
+
+        Runtime runtime = Runtime.getRuntime();
+        long baseline = usedHeap(runtime);
+        long maxUsed = 0;
+
+        // lets keep weak references to each entity so we can check they are not all kept in memory
+        List<WeakReference<HasMetadata>> references = new ArrayList<>(count);
+        int index = 0;
+        try (KubernetesResourceIterator iter = KubernetesResourceIterator.forFile(file)) {
+            while (iter.hasNext()) {
+                HasMetadata entity = iter.next();
+                assertEntity(entity, ConfigMap.class, "config-" + index);
+                references.add(new WeakReference<>(entity));
+                if (++index % 25000 == 0) {
+                    maxUsed = Math.max(maxUsed, usedHeap(runtime) - baseline);
+                }
+            }
+        }
+        assertEquals(count, index);
+
+        System.gc();
+        int live = 0;
+        for (WeakReference<HasMetadata> reference : references) {
+            if (reference.get() != null) {
+                live++;
+            }
+        }
+        assertTrue("Too many entities still reachable: " + live, live < count / 10);
+
+        // the weak references take a few MB so allow for them; materializing the file would need hundreds of MB
+        long limit = 64L * 1024 * 1024;
+        assertTrue("Heap grew by " + maxUsed + " bytes while iterating which is more than " + limit, maxUsed < limit);
+        file.delete();
+    }
+
+    protected static void writeLargeYaml(File file, int count) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            for (int i = 0; i < count; i++) {
+                writer.write("---\napiVersion: v1\nkind: ConfigMap\nmetadata:\n  name: config-" + i +
+                        "\n  labels:\n    project: large\ndata:\n  key: value-" + i + "\n");
+            }
+        }
+    }
+
+    protected static long usedHeap(Runtime runtime) {
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    protected static List<HasMetadata> toList(KubernetesResourceIterator iter) {
+        List<HasMetadata> answer = new ArrayList<>();
+        while (iter.hasNext()) {
+            answer.add(iter.next());
+        }
+        assertFalse(iter.hasNext());
+        return answer;
+    }
+
+    protected static void assertEntity(HasMetadata entity, Class<?> expectedClass, String expectedName) {
+        assertEquals("class", expectedClass, entity.getClass());
+        assertEquals("name", expectedName, KubernetesHelper.getName(entity));
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.fabric8.kubernetes.api.KubernetesSerialization.Format;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.utils.Systems;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+/**
+ */
+public class KubernetesSerializationTest {
+
+    @Test
+    public void testReadersAndWritersAreCached() throws Exception {
+        assertSame(KubernetesSerialization.reader(Format.JSON, Pod.class), KubernetesSerialization.reader(Format.JSON, Pod.class));
+        assertSame(KubernetesSerialization.writer(Format.YAML, Pod.class, false), KubernetesSerialization.writer(Format.YAML, Pod.class, false));
+        assertFalse(KubernetesSerialization.writer(Format.JSON, Pod.class, true) == KubernetesSerialization.writer(Format.JSON, Pod.class, false));
+    }
+
+    @Test
+    public void testAfterburnerRegisteredWhenOnClasspath() throws Exception {
+        boolean available;
+        try {
+            Class.forName(KubernetesSerialization.AFTERBURNER_MODULE_CLASS);
+            available = true;
+        } catch (ClassNotFoundException e) {
+            available = false;
+        }
+        boolean enabled = Systems.getEnvVarOrSystemProperty(KubernetesSerialization.AFTERBURNER_ENV, Boolean.TRUE);
+        assertEquals(available && enabled, KubernetesSerialization.isAfterburnerEnabled());
+
+        // the accessors generated by Afterburner must give the same output
+        Pod pod = createPod();
+        assertEquals(new ObjectMapper().writeValueAsString(pod), KubernetesHelper.toJson(pod));
+        Pod copy = KubernetesSerialization.read(Format.JSON, new ByteArrayInputStream(KubernetesHelper.toJson(pod).getBytes("UTF-8")), Pod.class);
+        assertEquals(pod, copy);
+    }
+
+    @Test
+    public void testPrettyJsonMatchesObjectMapper() throws Exception {
+        Pod pod = createPod();
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+
+        assertEquals(objectMapper.writeValueAsString(pod), KubernetesHelper.toPrettyJson(pod));
+        assertEquals(new ObjectMapper().writeValueAsString(pod), KubernetesHelper.toJson(pod));
+        assertEquals("null", KubernetesHelper.toJson(null));
+    }
+
+    @Test
+    public void testStreamingRoundTrip() throws Exception {
+        Pod pod = createPod();
+        for (Format format : Format.values()) {
+            ClosedTrackingOutputStream out = new ClosedTrackingOutputStream();
+            KubernetesSerialization.write(format, pod, out, true);
+            assertFalse("The stream should not be closed for " + format, out.closed);
+
+            Object answer = KubernetesSerialization.read(format, new ByteArrayInputStream(out.toByteArray()));
+            assertEquals("Round trip of " + format, pod, answer);
+        }
+    }
+
+    protected static Pod createPod() {
+        return new PodBuilder().
+                withNewMetadata().withName("foo").addToLabels("project", "bar").endMetadata().
+                withNewSpec().addNewContainer().withName("cheese").withImage("cheese:1.0").endContainer().endSpec().
+                build();
+    }
+
+    protected static class ClosedTrackingOutputStream extends ByteArrayOutputStream {
+        private boolean closed;
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.fabric8.kubernetes.api.KubernetesSerialization.Format;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import io.fabric8.openshift.api.model.DeploymentConfig;
+import io.fabric8.openshift.api.model.DeploymentConfigBuilder;
+import io.fabric8.openshift.api.model.Template;
+import io.fabric8.openshift.api.model.TemplateBuilder;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * A simple benchmark of the serialize and deserialize throughput of {@link KubernetesSerialization}
+ * compared to creating a new mapper per call as {@link KubernetesHelper} used to do.
+ * <p/>
+ * Run with an optional argument for the number of iterations. The Afterburner module is used when it is on the
+ * classpath; compare against the plain mappers by running with <tt>-DFABRIC8_JACKSON_AFTERBURNER=false</tt>.
+ */
+public class SerializationBenchmark {
+
+    public static void main(String... args) throws Exception {
+        int iterations = 20000;
+        if (args.length > 0) {
+            iterations = Integer.parseInt(args[0]);
+        }
+        System.out.println("Afterburner enabled: " + KubernetesSerialization.isAfterburnerEnabled());
+
+        HasMetadata[] entities = {createPod(), createDeploymentConfig(), createTemplate()};
+        for (HasMetadata entity : entities) {
+            String name = entity.getClass().getSimpleName();
+            // warm up
+            run(entity, iterations / 10);
+
+            for (Format format : Format.values()) {
+                byte[] data = KubernetesSerialization.toString(format, entity, false).getBytes("UTF-8");
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length * 2);
+
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    buffer.reset();
+                    KubernetesSerialization.write(format, entity, buffer, false);
+                }
+                report(name, format + " serialize", iterations, start);
+
+                start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    KubernetesSerialization.read(format, data, entity.getClass());
+                }
+                report(name, format + " deserialize", iterations, start);
+            }
+
+            int uncachedIterations = Math.max(1, iterations / 10);
+            long start = System.nanoTime();
+            for (int i = 0; i < uncachedIterations; i++) {
+                ObjectMapper objectMapper = new ObjectMapper();
+                objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+                objectMapper.writerFor(entity.getClass()).writeValueAsString(entity);
+            }
+            report(name, "JSON pretty serialize with new ObjectMapper", uncachedIterations, start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                KubernetesHelper.toPrettyJson(entity);
+            }
+            report(name, "JSON pretty serialize cached", iterations, start);
+        }
+    }
+
+    protected static void run(HasMetadata entity, int iterations) throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            for (Format format : Format.values()) {
+                String text = KubernetesSerialization.toString(format, entity, false);
+                KubernetesSerialization.read(format, text.getBytes("UTF-8"), entity.getClass());
+            }
+        }
+    }
+
+    protected static void report(String name, String operation, int iterations, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        double perSecond = iterations * 1000000000.0 / nanos;
+        System.out.println(String.format("%-20s %-45s %12.0f ops/sec", name, operation, perSecond));
+    }
+
+    protected static Pod createPod() {
+        return new PodBuilder().
+                withNewMetadata().withName("cheese").addToLabels("project", "cheese").addToLabels("provider", "fabric8").endMetadata().
+                withNewSpec().addNewContainer().withName("cheese").withImage("fabric8/cheese:1.0").
+                addNewPort().withContainerPort(8080).withName("http").endPort().
+                addNewEnv().withName("JAVA_OPTIONS").withValue("-Xmx256m").endEnv().
+                endContainer().endSpec().
+                build();
+    }
+
+    protected static DeploymentConfig createDeploymentConfig() {
+        return new DeploymentConfigBuilder().
+                withNewMetadata().withName("cheese").addToLabels("project", "cheese").endMetadata().
+                withNewSpec().withReplicas(2).addToSelector("project", "cheese").
+                withNewTemplate().withNewMetadata().addToLabels("project", "cheese").endMetadata().
+                withNewSpec().addNewContainer().withName("cheese").withImage("fabric8/cheese:1.0").
+                addNewPort().withContainerPort(8080).withName("http").endPort().
+                endContainer().endSpec().endTemplate().endSpec().
+                build();
+    }
+
+    protected static Template createTemplate() {
+        return new TemplateBuilder().
+                withNewMetadata().withName("cheese").endMetadata().
+                addNewParameter().withName("REPLICAS").withValue("1").endParameter().
+                addToObjects(createDeploymentConfig()).
+                addToObjects(new ServiceBuilder().withNewMetadata().withName("cheese").endMetadata().
+                        withNewSpec().addToSelector("project", "cheese").addNewPort().withPort(80).endPort().endSpec().build()).
+                build();
+    }
+}
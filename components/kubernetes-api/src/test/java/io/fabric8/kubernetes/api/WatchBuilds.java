@@ -45,10 +45,8 @@ public class WatchBuilds {
             }
         };
 
-      BuildWatcher watcher = new BuildWatcher(client, buildListener, namespace, consoleLink);
-
-        long pollTime = 3000;
-        watcher.schedule(pollTime);
+        BuildWatcher watcher = new BuildWatcher(client, buildListener, namespace, consoleLink);
+        watcher.start();
 
         watcher.join();
     }
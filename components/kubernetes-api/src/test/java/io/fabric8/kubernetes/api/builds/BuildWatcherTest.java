@@ -0,0 +1,223 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api.builds;
+
+import io.fabric8.kubernetes.api.model.StatusBuilder;
+import io.fabric8.kubernetes.api.model.WatchEvent;
+import io.fabric8.openshift.api.model.Build;
+import io.fabric8.openshift.api.model.BuildBuilder;
+import io.fabric8.openshift.api.model.BuildList;
+import io.fabric8.openshift.api.model.BuildListBuilder;
+import io.fabric8.openshift.client.OpenShiftClient;
+import io.fabric8.openshift.client.server.mock.OpenShiftServer;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class BuildWatcherTest {
+    private static final String NAMESPACE = "test";
+    private static final String BUILDS_PATH = "/oapi/v1/namespaces/" + NAMESPACE + "/builds";
+
+    @Rule
+    public OpenShiftServer server = new OpenShiftServer();
+
+    @Test
+    public void testWatchThousandsOfBuilds() throws Exception {
+        int listedBuilds = 2000;
+        int watchedBuilds = 3000;
+        int total = listedBuilds + watchedBuilds;
+
+        server.expect().withPath(BUILDS_PATH).andReturn(200, createBuildList("10", 0, listedBuilds)).once();
+
+        List<Object> events = new ArrayList<>();
+        for (int i = listedBuilds; i < total; i++) {
+            // each build is seen running then finished; the running event must be ignored
+            events.add(new WatchEvent(createBuild(i, "Running"), "ADDED"));
+            events.add(new WatchEvent(createBuild(i, Builds.Status.COMPLETE), "MODIFIED"));
+        }
+        // replay some already completed builds which should not be notified again
+        for (int i = 0; i < 100; i++) {
+            events.add(new WatchEvent(createBuild(i, Builds.Status.COMPLETE), "MODIFIED"));
+        }
+        server.expect().withPath(BUILDS_PATH + "?resourceVersion=10&watch=true")
+                .andUpgradeToWebSocket().open(events.toArray()).done().once();
+
+        RecordingListener listener = new RecordingListener(total);
+        BuildWatcher watcher = new BuildWatcher(getOpenShiftClient(), listener, NAMESPACE, null);
+        try {
+            watcher.start();
+            assertTrue("Timed out waiting for builds, received " + listener.events.size(), listener.await(30));
+            // give any duplicates a chance to arrive
+            Thread.sleep(200);
+
+            assertEquals("notified builds", total, listener.events.size());
+            assertEquals("list count", 1, watcher.getListCount());
+            assertTrue("listed builds should be loading", listener.events.get(uid(0)).isLoading());
+            assertFalse("watched builds should not be loading", listener.events.get(uid(total - 1)).isLoading());
+        } finally {
+            watcher.close();
+        }
+        assertTrue("join should return once closed", watcher.join(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSeenBuildsAreBounded() throws Exception {
+        int total = 5000;
+        int maxSeenBuilds = 100;
+        server.expect().withPath(BUILDS_PATH).andReturn(200, createBuildList("1", 0, total)).once();
+        server.expect().withPath(BUILDS_PATH + "?resourceVersion=1&watch=true")
+                .andUpgradeToWebSocket().open().done().once();
+
+        RecordingListener listener = new RecordingListener(total);
+        BuildWatcher watcher = new BuildWatcher(getOpenShiftClient(), listener, NAMESPACE, null, maxSeenBuilds, TimeUnit.HOURS.toMillis(1));
+        try {
+            watcher.start();
+            assertTrue(listener.await(30));
+            assertEquals("notified builds", total, listener.events.size());
+            assertEquals("seen build count", maxSeenBuilds, watcher.getSeenBuildCount());
+        } finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void testRelistWhenWatchExpires() throws Exception {
+        server.expect().withPath(BUILDS_PATH).andReturn(200, createBuildList("1", 0, 1)).once();
+        server.expect().withPath(BUILDS_PATH + "?resourceVersion=1&watch=true")
+                .andUpgradeToWebSocket()
+                .open(new WatchEvent(new StatusBuilder().withCode(410).withMessage("too old resource version").build(), "ERROR"))
+                .done().once();
+        server.expect().withPath(BUILDS_PATH).andReturn(200, createBuildList("5", 0, 2)).once();
+        server.expect().withPath(BUILDS_PATH + "?resourceVersion=5&watch=true")
+                .andUpgradeToWebSocket().open().done().once();
+
+        RecordingListener listener = new RecordingListener(2);
+        BuildWatcher watcher = new BuildWatcher(getOpenShiftClient(), listener, NAMESPACE, null);
+        try {
+            watcher.start();
+            assertTrue(listener.await(30));
+
+            assertEquals("notified builds", 2, listener.events.size());
+            assertEquals("list count", 2, watcher.getListCount());
+            assertEquals("resourceVersion", "5", watcher.getResourceVersion());
+            assertTrue("relisted builds should be loading", listener.events.get(uid(1)).isLoading());
+        } finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void testResumeWhenWatchClosedNormally() throws Exception {
+        server.expect().withPath(BUILDS_PATH).andReturn(200, createBuildList("1", 0, 1)).once();
+        server.expect().withPath(BUILDS_PATH + "?resourceVersion=1&watch=true")
+                .andUpgradeToWebSocket().open().done().once();
+        server.expect().withPath(BUILDS_PATH + "?resourceVersion=1&watch=true")
+                .andUpgradeToWebSocket().open(new WatchEvent(createBuild(1, Builds.Status.COMPLETE), "ADDED")).done().once();
+
+        RecordingListener listener = new RecordingListener(2);
+        BuildWatcher watcher = new BuildWatcher(getOpenShiftClient(), listener, NAMESPACE, null);
+        try {
+            watcher.start();
+            for (int i = 0; i < 300 && listener.events.isEmpty(); i++) {
+                Thread.sleep(100);
+            }
+            // the server closing the watch without an error should resume rather than relist
+            watcher.onWatchClosed(null);
+            assertTrue(listener.await(30));
+            assertEquals("list count", 1, watcher.getListCount());
+        } finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void testJoinTimesOut() throws Exception {
+        BuildWatcher watcher = new BuildWatcher(getOpenShiftClient(), new RecordingListener(0), NAMESPACE, null);
+        assertFalse("join should time out", watcher.join(50, TimeUnit.MILLISECONDS));
+        watcher.close();
+        assertTrue("join should return once closed", watcher.join(50, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRecentBuildKeysExpire() throws Exception {
+        RecentBuildKeys keys = new RecentBuildKeys(1000, 100);
+        assertTrue(keys.add("a", 0));
+        assertTrue(keys.add("b", 50));
+        assertFalse(keys.add("a", 60));
+
+        // "b" was last touched at 50 so expires at 150 but "a" was touched at 60
+        assertTrue(keys.add("c", 155));
+        assertEquals(2, keys.size());
+        assertFalse(keys.add("a", 156));
+        assertTrue(keys.add("b", 157));
+    }
+
+    protected OpenShiftClient getOpenShiftClient() {
+        return server.getOpenshiftClient();
+    }
+
+    protected static BuildList createBuildList(String resourceVersion, int from, int to) {
+        List<Build> builds = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            builds.add(createBuild(i, Builds.Status.COMPLETE));
+        }
+        return new BuildListBuilder().withNewMetadata().withResourceVersion(resourceVersion).endMetadata().withItems(builds).build();
+    }
+
+    protected static Build createBuild(int i, String phase) {
+        return new BuildBuilder().
+                withNewMetadata().withName("build-" + i).withNamespace(NAMESPACE).withUid(uid(i)).withResourceVersion(String.format("%08d", i)).endMetadata().
+                withNewStatus().withPhase(phase).endStatus().
+                build();
+    }
+
+    protected static String uid(int i) {
+        return "uid-" + i;
+    }
+
+    protected static class RecordingListener implements BuildListener {
+        private final Map<String, BuildFinishedEvent> events = new ConcurrentHashMap<>();
+        private final CountDownLatch latch;
+
+        public RecordingListener(int expected) {
+            this.latch = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onBuildFinished(BuildFinishedEvent event) {
+            if (events.put(event.getUid(), event) != null) {
+                throw new AssertionError("Build " + event.getUid() + " notified more than once");
+            }
+            latch.countDown();
+        }
+
+        public boolean await(long seconds) throws InterruptedException {
+            return latch.await(seconds, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api.dns;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SRVRecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.SimpleResolver;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class SrvRecordCacheTest {
+    private static final String SERVICE = "_http._tcp.cheese.default.svc.cluster.local.";
+
+    private FakeDnsServer dnsServer;
+    private SrvRecordCache cache;
+
+    @Before
+    public void init() throws Exception {
+        dnsServer = new FakeDnsServer();
+        dnsServer.start();
+        SimpleResolver resolver = new SimpleResolver("127.0.0.1");
+        resolver.setPort(dnsServer.getPort());
+        resolver.setTimeout(5);
+        cache = new SrvRecordCache(new DnsSrvRecordLookup(resolver), 4);
+    }
+
+    @After
+    public void destroy() throws Exception {
+        cache.close();
+        dnsServer.close();
+    }
+
+    @Test
+    public void testCachedForTtl() throws Exception {
+        dnsServer.ttlSeconds = 60;
+        List<String> expected = Arrays.asList("b.cluster.local:8080", "a.cluster.local:8081");
+        assertEquals(expected, cache.lookup(SERVICE));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(expected, cache.lookup(SERVICE));
+        }
+        assertEquals("DNS queries", 1, dnsServer.queries(SERVICE));
+        assertEquals("hits", 1000, cache.getHitCount());
+        assertEquals("misses", 1, cache.getMissCount());
+        assertTrue("hit ratio " + cache.getHitRatio(), cache.getHitRatio() > 0.99);
+        assertTrue("max query millis " + cache.getMaxQueryMillis(), cache.getMaxQueryMillis() > 0);
+    }
+
+    @Test
+    public void testConcurrentLookupsShareQuery() throws Exception {
+        dnsServer.ttlSeconds = 60;
+        dnsServer.delayMillis = 200;
+        List<CompletableFuture<List<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(cache.lookupAsync(SERVICE));
+        }
+        for (CompletableFuture<List<String>> future : futures) {
+            assertEquals(2, future.get(10, TimeUnit.SECONDS).size());
+        }
+        assertEquals("DNS queries", 1, dnsServer.queries(SERVICE));
+        assertEquals("cache queries", 1, cache.getQueryCount());
+    }
+
+    @Test
+    public void testRefreshedInBackgroundWhenUsed() throws Exception {
+        dnsServer.ttlSeconds = 1;
+        cache.setRefreshAheadMillis(300);
+        assertEquals(2, cache.lookup(SERVICE).size());
+
+        // keep using the entry; the refresh should happen before it expires so we never miss
+        long end = System.currentTimeMillis() + 2500;
+        while (System.currentTimeMillis() < end) {
+            assertEquals(2, cache.lookup(SERVICE).size());
+            Thread.sleep(20);
+        }
+        assertTrue("refreshes " + cache.getRefreshCount(), cache.getRefreshCount() >= 2);
+        assertTrue("DNS queries " + dnsServer.queries(SERVICE), dnsServer.queries(SERVICE) >= 3);
+        assertEquals("misses", 1, cache.getMissCount());
+    }
+
+    @Test
+    public void testUnusedEntriesExpire() throws Exception {
+        dnsServer.ttlSeconds = 1;
+        cache.setRefreshAheadMillis(300);
+        assertEquals(2, cache.lookup(SERVICE).size());
+        assertEquals(1, cache.getSize());
+
+        Thread.sleep(1500);
+        assertEquals("size", 0, cache.getSize());
+        assertEquals("refreshes", 0, cache.getRefreshCount());
+
+        assertEquals(2, cache.lookup(SERVICE).size());
+        assertEquals("DNS queries", 2, dnsServer.queries(SERVICE));
+        assertEquals("misses", 2, cache.getMissCount());
+    }
+
+    @Test
+    public void testZeroTtlNotCached() throws Exception {
+        dnsServer.ttlSeconds = 0;
+        cache.lookup(SERVICE);
+        cache.lookup(SERVICE);
+        assertEquals("DNS queries", 2, dnsServer.queries(SERVICE));
+        assertEquals("size", 0, cache.getSize());
+    }
+
+    @Test
+    public void testUnknownServiceIsNegativelyCached() throws Exception {
+        String name = "_ftp._tcp.missing.default.svc.cluster.local.";
+        assertEquals(0, cache.lookup(name).size());
+        assertEquals(0, cache.lookup(name).size());
+        assertEquals("DNS queries", 1, dnsServer.queries(name));
+    }
+
+    /**
+     * A minimal DNS server which answers every SRV query for names starting with <tt>_http.</tt> with two records
+     */
+    protected static class FakeDnsServer extends Thread {
+        private final DatagramSocket socket;
+        private final Map<String, AtomicInteger> queries = new ConcurrentHashMap<>();
+        private volatile long ttlSeconds = 60;
+        private volatile long delayMillis;
+
+        public FakeDnsServer() throws IOException {
+            super("fake-dns-server");
+            setDaemon(true);
+            socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        }
+
+        public int getPort() {
+            return socket.getLocalPort();
+        }
+
+        public int queries(String name) {
+            AtomicInteger count = queries.get(name);
+            return count != null ? count.get() : 0;
+        }
+
+        public void close() {
+            socket.close();
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[512];
+            while (!socket.isClosed()) {
+                try {
+                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    socket.receive(packet);
+                    Message query = new Message(Arrays.copyOf(packet.getData(), packet.getLength()));
+                    byte[] answer = answer(query).toWire();
+                    if (delayMillis > 0) {
+                        Thread.sleep(delayMillis);
+                    }
+                    socket.send(new DatagramPacket(answer, answer.length, packet.getSocketAddress()));
+                } catch (Exception e) {
+                    if (!socket.isClosed()) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+
+        protected Message answer(Message query) throws Exception {
+            Record question = query.getQuestion();
+            Name name = question.getName();
+            AtomicInteger count = queries.get(name.toString());
+            if (count == null) {
+                queries.putIfAbsent(name.toString(), new AtomicInteger());
+                count = queries.get(name.toString());
+            }
+            count.incrementAndGet();
+
+            Message response = new Message(query.getHeader().getID());
+            response.getHeader().setFlag(Flags.QR);
+            response.getHeader().setFlag(Flags.AA);
+            response.addRecord(question, Section.QUESTION);
+            if (name.toString().startsWith("_http.")) {
+                response.addRecord(new SRVRecord(name, DClass.IN, ttlSeconds, 10, 50, 8081, Name.fromString("a.cluster.local.")), Section.ANSWER);
+                response.addRecord(new SRVRecord(name, DClass.IN, ttlSeconds, 10, 60, 8080, Name.fromString("b.cluster.local.")), Section.ANSWER);
+            } else {
+                response.getHeader().setRcode(Rcode.NXDOMAIN);
+            }
+            return response;
+        }
+    }
+}
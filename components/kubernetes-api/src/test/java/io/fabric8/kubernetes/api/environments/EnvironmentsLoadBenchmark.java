@@ -0,0 +1,86 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api.environments;
+
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import io.fabric8.kubernetes.client.Config;
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.openshift.client.server.mock.OpenShiftServer;
+import okhttp3.mockwebserver.MockWebServer;
+
+import java.util.logging.Level;
+
+/**
+ * A simple benchmark of 1000 calls to {@link Environments#load(String)} against the mock server which uses the shared
+ * client registry, compared to creating a new client for each call as it used to do.
+ * <p/>
+ * Run with an optional argument for the number of calls.
+ */
+public class EnvironmentsLoadBenchmark {
+    private static final String NAMESPACE = "myproject";
+
+    public static void main(String... args) throws Exception {
+        int calls = 1000;
+        if (args.length > 0) {
+            calls = Integer.parseInt(args[0]);
+        }
+        // the mock server logs every request which would dominate the timings
+        java.util.logging.Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+
+        OpenShiftServer server = new OpenShiftServer();
+        server.before();
+        try {
+            ConfigMap configMap = new ConfigMapBuilder().withNewMetadata().withName(Environments.ENVIRONMENTS_CONFIGMAP_NAME).endMetadata().
+                    addToData("staging", "name: Staging\nnamespace: myproject-staging\norder: 0").
+                    addToData("production", "name: Production\nnamespace: myproject-production\norder: 1").
+                    build();
+            server.expect().withPath("/api/v1/namespaces/" + NAMESPACE + "/configmaps/" + Environments.ENVIRONMENTS_CONFIGMAP_NAME).andReturn(200, configMap).always();
+
+            // point the default configuration at the mock server
+            Config config = server.getKubernetesClient().getConfiguration();
+            System.setProperty(Config.KUBERNETES_MASTER_SYSTEM_PROPERTY, config.getMasterUrl());
+            System.setProperty(Config.KUBERNETES_TRUST_CERT_SYSTEM_PROPERTY, "true");
+            System.setProperty(Config.KUBERNETES_NAMESPACE_SYSTEM_PROPERTY, NAMESPACE);
+            System.setProperty(Config.KUBERNETES_AUTH_TRYKUBECONFIG_SYSTEM_PROPERTY, "false");
+            System.setProperty(Config.KUBERNETES_AUTH_TRYSERVICEACCOUNT_SYSTEM_PROPERTY, "false");
+
+            for (int round = 0; round < 2; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < calls; i++) {
+                    try (KubernetesClient kubernetesClient = new DefaultKubernetesClient()) {
+                        Environments.load(kubernetesClient, NAMESPACE);
+                    }
+                }
+                report("new client per call", calls, start);
+
+                start = System.nanoTime();
+                for (int i = 0; i < calls; i++) {
+                    Environments.load(NAMESPACE);
+                }
+                report("shared client registry", calls, start);
+            }
+        } finally {
+            server.after();
+        }
+    }
+
+    protected static void report(String name, int calls, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        System.out.println(String.format("%-25s %d calls in %8.2f ms (%6.3f ms per call)", name, calls, nanos / 1000000.0, nanos / (calls * 1000000.0)));
+    }
+}
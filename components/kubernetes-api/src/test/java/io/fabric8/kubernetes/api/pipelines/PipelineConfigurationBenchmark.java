@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.kubernetes.api.pipelines;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.fabric8.kubernetes.api.pipelines.PipelinesTest.createJobEnvironment;
+
+/**
+ * A simple benchmark of resolving the {@link Pipeline} for 10k job names using a {@link PipelineConfiguration}
+ * which compiles each branch pattern on every match compared to a {@link CompiledPipelineConfiguration}.
+ * <p/>
+ * Run with optional arguments for the number of job names and the number of branch patterns.
+ */
+public class PipelineConfigurationBenchmark {
+
+    public static void main(String... args) throws Exception {
+        int jobCount = 10000;
+        int patternCount = 20;
+        if (args.length > 0) {
+            jobCount = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            patternCount = Integer.parseInt(args[1]);
+        }
+
+        PipelineConfiguration configuration = PipelineConfiguration.createDefault();
+        List<String> cdPatterns = new ArrayList<>();
+        for (int i = 0; i < patternCount; i++) {
+            configuration.getCiBranchPatterns().add("ci-" + i + "-.*");
+            cdPatterns.add("release-" + i + "\\.[0-9]+");
+            configuration.setJobNamesCD("cd-job-" + i);
+        }
+        configuration.setCdBranchPatterns(cdPatterns);
+        configuration.setCDGitOrganisation("github.com/fabric8io", "master", "release-.*");
+
+        List<JobEnvironment> jobs = new ArrayList<>(jobCount);
+        for (int i = 0; i < jobCount; i++) {
+            String branch;
+            switch (i % 4) {
+                case 0:
+                    branch = "PR-" + i;
+                    break;
+                case 1:
+                    branch = "release-" + (i % patternCount) + "." + i;
+                    break;
+                case 2:
+                    branch = "feature-" + i;
+                    break;
+                default:
+                    branch = "master";
+            }
+            jobs.add(createJobEnvironment("job-" + i, branch, "https://github.com/fabric8io/job-" + i + ".git"));
+        }
+
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            int cd = 0;
+            for (JobEnvironment job : jobs) {
+                if (configuration.getPipeline(job).isCd()) {
+                    cd++;
+                }
+            }
+            report("PipelineConfiguration", jobCount, start, cd);
+
+            start = System.nanoTime();
+            CompiledPipelineConfiguration compiled = configuration.compile();
+            cd = 0;
+            for (JobEnvironment job : jobs) {
+                if (compiled.getPipeline(job).isCd()) {
+                    cd++;
+                }
+            }
+            report("CompiledPipelineConfiguration", jobCount, start, cd);
+        }
+    }
+
+    protected static void report(String name, int jobCount, long startNanos, int cdCount) {
+        long nanos = System.nanoTime() - startNanos;
+        System.out.println(String.format("%-30s resolved %d jobs (%d CD) in %8.2f ms", name, jobCount, cdCount, nanos / 1000000.0));
+    }
+}
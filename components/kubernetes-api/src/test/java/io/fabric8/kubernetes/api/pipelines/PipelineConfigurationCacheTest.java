@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.fabric8.kubernetes.api.pipelines;
+
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import io.fabric8.kubernetes.api.model.WatchEvent;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.openshift.client.server.mock.OpenShiftServer;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static io.fabric8.kubernetes.api.pipelines.PipelineConfiguration.FABRIC8_PIPELINES;
+import static io.fabric8.kubernetes.api.pipelines.PipelinesTest.createJobEnvironment;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class PipelineConfigurationCacheTest {
+    private static final String NAMESPACE = "myproject";
+    private static final String CONFIGMAP_PATH = "/api/v1/namespaces/" + NAMESPACE + "/configmaps/" + FABRIC8_PIPELINES;
+
+    @Rule
+    public OpenShiftServer server = new OpenShiftServer();
+
+    @Test
+    public void testReloadedAfterTimeToLive() throws Exception {
+        server.expect().withPath(CONFIGMAP_PATH).andReturn(200, createConfigMap("1", PipelineKind.CD)).once();
+        server.expect().withPath(CONFIGMAP_PATH).andReturn(200, createConfigMap("2", PipelineKind.CI)).once();
+
+        try (PipelineConfigurationCache cache = new PipelineConfigurationCache(server.getKubernetesClient(), NAMESPACE, 500, false)) {
+            CompiledPipelineConfiguration configuration = cache.getConfiguration();
+            assertKind(configuration, PipelineKind.CD);
+            for (int i = 0; i < 100; i++) {
+                assertSame(configuration, cache.getConfiguration());
+            }
+            assertEquals("load count", 1, cache.getLoadCount());
+            assertEquals("namespace", NAMESPACE, configuration.getConfiguration().getSpaceNamespace());
+
+            Thread.sleep(600);
+            assertKind(cache.getConfiguration(), PipelineKind.CI);
+            assertEquals("load count", 2, cache.getLoadCount());
+        }
+    }
+
+    @Test
+    public void testDefaultWhenNoConfigMap() throws Exception {
+        try (PipelineConfigurationCache cache = new PipelineConfigurationCache(server.getKubernetesClient(), NAMESPACE, -1, false)) {
+            assertKind(cache.getConfiguration(), PipelineKind.Developer);
+            assertEquals(PipelineKind.CI, cache.getConfiguration().getPipeline(createJobEnvironment("foo", "PR-1")).getKind());
+            assertEquals("load count", 1, cache.getLoadCount());
+        }
+    }
+
+    @Test
+    public void testSwappedOnWatchEvent() throws Exception {
+        server.expect().withPath(CONFIGMAP_PATH).andReturn(200, createConfigMap("1", PipelineKind.CD)).once();
+        server.expect().withPath("/api/v1/namespaces/" + NAMESPACE + "/configmaps?fieldSelector=metadata.name%3D" + FABRIC8_PIPELINES + "&resourceVersion=1&watch=true")
+                .andUpgradeToWebSocket().open()
+                .waitFor(500).andEmit(new WatchEvent(createConfigMap("2", PipelineKind.CI), "MODIFIED"))
+                .done().once();
+
+        try (PipelineConfigurationCache cache = new PipelineConfigurationCache(server.getKubernetesClient(), NAMESPACE, 0, true)) {
+            assertKind(cache.getConfiguration(), PipelineKind.CD);
+            assertTrue("should be watching", cache.isWatching());
+
+            long end = System.currentTimeMillis() + 10000;
+            while (cache.getUpdateCount() == 0 && System.currentTimeMillis() < end) {
+                // with a watch the zero time to live must not cause reloads
+                cache.getConfiguration();
+                Thread.sleep(10);
+            }
+            assertKind(cache.getConfiguration(), PipelineKind.CI);
+            assertEquals("load count", 1, cache.getLoadCount());
+        }
+    }
+
+    @Test
+    public void testEventReceivedWhileReloadingIsKept() throws Exception {
+        server.expect().withPath(CONFIGMAP_PATH).andReturn(200, createConfigMap("1", PipelineKind.CD)).once();
+        server.expect().withPath("/api/v1/namespaces/" + NAMESPACE + "/configmaps?fieldSelector=metadata.name%3D" + FABRIC8_PIPELINES + "&resourceVersion=1&watch=true")
+                .andUpgradeToWebSocket().open().done().once();
+
+        try (PipelineConfigurationCache cache = new PipelineConfigurationCache(server.getKubernetesClient(), NAMESPACE, 0, true) {
+            @Override
+            protected void startWatch(String resourceVersion) {
+                super.startWatch(resourceVersion);
+                // the ConfigMap changes as soon as the watch opens, before the reload has returned
+                onConfigMapEvent(Watcher.Action.MODIFIED, createConfigMap("2", PipelineKind.CI));
+            }
+        }) {
+            assertKind(cache.getConfiguration(), PipelineKind.CI);
+            assertTrue("should be watching", cache.isWatching());
+            assertKind(cache.getConfiguration(), PipelineKind.CI);
+            assertEquals("load count", 1, cache.getLoadCount());
+        }
+    }
+
+    @Test
+    public void testReloadedWhenWatchClosedNormally() throws Exception {
+        String watchPath = "/api/v1/namespaces/" + NAMESPACE + "/configmaps?fieldSelector=metadata.name%3D" + FABRIC8_PIPELINES + "&resourceVersion=";
+        server.expect().withPath(CONFIGMAP_PATH).andReturn(200, createConfigMap("1", PipelineKind.CD)).once();
+        server.expect().withPath(watchPath + "1&watch=true").andUpgradeToWebSocket().open().done().once();
+        server.expect().withPath(CONFIGMAP_PATH).andReturn(200, createConfigMap("2", PipelineKind.CI)).once();
+        server.expect().withPath(watchPath + "2&watch=true").andUpgradeToWebSocket().open().done().once();
+
+        // a negative time to live must not stop the reload once the watch is lost
+        try (PipelineConfigurationCache cache = new PipelineConfigurationCache(server.getKubernetesClient(), NAMESPACE, -1, true)) {
+            assertKind(cache.getConfiguration(), PipelineKind.CD);
+            assertTrue("should be watching", cache.isWatching());
+
+            // the server closing the watch without an error
+            cache.onWatchClosed(null);
+            assertFalse("should not be watching", cache.isWatching());
+            assertKind(cache.getConfiguration(), PipelineKind.CI);
+            assertEquals("load count", 2, cache.getLoadCount());
+        }
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        server.expect().withPath(CONFIGMAP_PATH).andReturn(200, createConfigMap("1", PipelineKind.CD)).once();
+        server.expect().withPath(CONFIGMAP_PATH).andReturn(200, createConfigMap("2", PipelineKind.CI)).once();
+
+        try (PipelineConfigurationCache cache = new PipelineConfigurationCache(server.getKubernetesClient(), NAMESPACE, -1, false)) {
+            assertKind(cache.getConfiguration(), PipelineKind.CD);
+            cache.invalidate();
+            assertKind(cache.getConfiguration(), PipelineKind.CI);
+            assertFalse(cache.isWatching());
+        }
+    }
+
+    protected static void assertKind(CompiledPipelineConfiguration configuration, PipelineKind expected) {
+        assertEquals("kind of job foo", expected, configuration.getPipeline(createJobEnvironment("foo", "master")).getKind());
+    }
+
+    protected static ConfigMap createConfigMap(String resourceVersion, PipelineKind fooKind) {
+        return new ConfigMapBuilder().
+                withNewMetadata().withName(FABRIC8_PIPELINES).withNamespace(NAMESPACE).withResourceVersion(resourceVersion).endMetadata().
+                addToData(PipelineConfiguration.JOB_NAME_TO_KIND, "foo: " + fooKind + "\n").
+                build();
+    }
+}
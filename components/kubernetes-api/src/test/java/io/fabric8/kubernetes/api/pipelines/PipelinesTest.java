@@ -18,7 +18,16 @@ package io.fabric8.kubernetes.api.pipelines;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  */
@@ -27,6 +36,11 @@ public class PipelinesTest {
         Pipeline pipeline = configuration.getPipeline(jobEnvironment);
         assertEquals("jobName", jobName, pipeline.getJobName());
         assertEquals("pipelineKind", expectedKind, pipeline.getKind());
+
+        // the compiled configuration must give the same answer
+        Pipeline compiledPipeline = configuration.compile().getPipeline(jobEnvironment);
+        assertEquals("compiled jobName", jobName, compiledPipeline.getJobName());
+        assertEquals("compiled pipelineKind", expectedKind, compiledPipeline.getKind());
     }
 
     public static void assertJobName(PipelineConfiguration configuration, String jobName, String branchName, PipelineKind expectedKind) {
@@ -86,4 +100,69 @@ public class PipelinesTest {
         // lets show we can opt out of CD pipelines for specific builds in an organisation if required
         assertJobName(configuration, "whatnot", "master", "https://github.com/fabric8io/whatnot.git", PipelineKind.Developer);
     }
+
+    @Test
+    public void testCompiledBranchPatterns() throws Exception {
+        CompiledPipelineConfiguration.BranchPatterns patterns = CompiledPipelineConfiguration.compilePatterns(
+                Arrays.asList("PR-.*", "release|hotfix", "(?i)feature-[a-z]+", "(a+)-\\1", "[invalid", "x(?x) a b # comment"));
+
+        assertTrue(patterns.matches("PR-123"));
+        assertTrue(patterns.matches("release"));
+        assertTrue(patterns.matches("hotfix"));
+        assertTrue(patterns.matches("FEATURE-abc"));
+        assertTrue(patterns.matches("aa-aa"));
+        assertTrue(patterns.matches("xab"));
+
+        // patterns must match the whole name
+        assertFalse(patterns.matches("my-PR-123"));
+        assertFalse(patterns.matches("releases"));
+        assertFalse(patterns.matches("aa-a"));
+        // the case insensitive flag must not leak into the other alternatives
+        assertFalse(patterns.matches("pr-123"));
+        assertFalse(patterns.matches("[invalid"));
+
+        assertFalse(CompiledPipelineConfiguration.compilePatterns(new ArrayList<String>()).matches("master"));
+    }
+
+    @Test
+    public void testBranchPatternsWhichCannotBeCombined() throws Exception {
+        CompiledPipelineConfiguration.BranchPatterns patterns = CompiledPipelineConfiguration.compilePatterns(
+                Arrays.asList("(?<v>v[0-9]+)-release", "(?<v>hotfix)-[0-9]+", "\\Qa.b", "PR-.*"));
+
+        // the same group name in two patterns must not make the whole configuration fail
+        assertTrue(patterns.matches("v1-release"));
+        assertTrue(patterns.matches("hotfix-2"));
+        // an unterminated quote must not swallow the patterns after it
+        assertTrue(patterns.matches("a.b"));
+        assertFalse(patterns.matches("axb"));
+        assertTrue(patterns.matches("PR-1"));
+        assertFalse(patterns.matches("a.b|(?:PR-.*)"));
+
+        // patterns which fail to compile as one alternation are matched separately
+        assertNull(CompiledPipelineConfiguration.BranchPatterns.combine(Arrays.asList(Pattern.compile("(?<v>a)"), Pattern.compile("(?<v>b)"))));
+        assertEquals("(?:a)|(?:b)", CompiledPipelineConfiguration.BranchPatterns.combine(Arrays.asList(Pattern.compile("a"), Pattern.compile("b"))).pattern());
+    }
+
+    @Test
+    public void testCompiledConfigurationIsNotSharedWithPipelines() throws Exception {
+        PipelineConfiguration configuration = new PipelineConfiguration();
+        configuration.getCiBranchPatterns().add("PR-.*");
+        CompiledPipelineConfiguration compiled = configuration.compile();
+
+        // changes to the original after compiling must not leak into the snapshot
+        configuration.getCiBranchPatterns().add("master");
+        assertEquals(Arrays.asList("PR-.*"), compiled.getConfiguration().getCiBranchPatterns());
+
+        Map<String, String> jobEnvironment = new HashMap<>();
+        jobEnvironment.put("JOB_NAME", "foo");
+        jobEnvironment.put("BRANCH_NAME", "PR-1");
+        Pipeline pipeline = compiled.getPipeline(jobEnvironment);
+        pipeline.getConfiguration().getCiBranchPatterns().clear();
+        pipeline.getConfiguration().setJobNamesCD("foo");
+
+        Pipeline another = compiled.getPipeline(jobEnvironment);
+        assertEquals(Arrays.asList("PR-.*"), another.getConfiguration().getCiBranchPatterns());
+        assertTrue(another.getConfiguration().getJobNameToKindMap().isEmpty());
+        assertEquals(Arrays.asList("PR-.*"), compiled.getConfiguration().getCiBranchPatterns());
+    }
 }
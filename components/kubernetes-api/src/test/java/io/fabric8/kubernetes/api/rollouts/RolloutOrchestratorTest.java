@@ -0,0 +1,329 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.kubernetes.api.rollouts;
+
+import io.fabric8.kubernetes.api.Controller;
+import io.fabric8.kubernetes.api.model.KubernetesListBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.PodListBuilder;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.api.model.ReplicationControllerBuilder;
+import io.fabric8.kubernetes.api.model.WatchEvent;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.mockwebserver.dsl.EventDoneable;
+import io.fabric8.mockwebserver.dsl.TimesOnceableOrHttpHeaderable;
+import io.fabric8.openshift.api.model.ProjectListBuilder;
+import io.fabric8.openshift.client.server.mock.OpenShiftServer;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ */
+public class RolloutOrchestratorTest {
+    private static final String NAMESPACE = "test";
+    private static final String PATH = "/api/v1/namespaces/" + NAMESPACE;
+
+    @Rule
+    public OpenShiftServer server = new OpenShiftServer();
+
+    @Test
+    public void testIndependentRolloutsRunConcurrently() throws Exception {
+        expectRollout("a", "a", 2, 300, 100);
+        expectRollout("b", "b", 2, 300, 100);
+
+        try (RolloutOrchestrator orchestrator = new RolloutOrchestrator(getClient(), 2, 4)) {
+            orchestrator.submit(NAMESPACE, createReplicationController("a", "a", 2));
+            orchestrator.submit(NAMESPACE, createReplicationController("b", "b", 2));
+            List<RolloutResult> results = orchestrator.awaitAll(30, TimeUnit.SECONDS);
+
+            assertEquals(2, results.size());
+            RolloutResult a = assertSuccessful(results.get(0), "a", 2);
+            RolloutResult b = assertSuccessful(results.get(1), "b", 2);
+            assertTrue("rollouts should overlap: " + results, a.getStartTimeMillis() < b.getEndTimeMillis() && b.getStartTimeMillis() < a.getEndTimeMillis());
+            assertEquals(0, orchestrator.getPendingCount());
+        }
+    }
+
+    @Test
+    public void testMaxUnavailableBudget() throws Exception {
+        expectRollout("a", "a", 3, 200, 200);
+
+        try (RolloutOrchestrator orchestrator = new RolloutOrchestrator(getClient(), 2, 1)) {
+            orchestrator.submit(NAMESPACE, createReplicationController("a", "a", 3));
+            List<RolloutResult> results = orchestrator.awaitAll(30, TimeUnit.SECONDS);
+
+            assertSuccessful(results.get(0), "a", 3);
+            assertEquals("peak unavailable", 1, orchestrator.getPeakUnavailable());
+        }
+    }
+
+    @Test
+    public void testDependentRolloutsRunInOrder() throws Exception {
+        // the selector of "a" matches the pods of "b" so they must not be rolled out at the same time
+        ReplicationController a = createReplicationController("a", "shared", 1);
+        ReplicationController b = createReplicationController("b", "shared", 1);
+        b.getSpec().getSelector().put("track", "canary");
+        b.getSpec().getTemplate().getMetadata().getLabels().put("track", "canary");
+        expectRollout(a, "app%3Dshared", 200, 0);
+        expectRollout(b, "app%3Dshared,track%3Dcanary", 200, 0);
+
+        try (RolloutOrchestrator orchestrator = new RolloutOrchestrator(getClient(), 2, 4)) {
+            orchestrator.submit(NAMESPACE, a);
+            orchestrator.submit(NAMESPACE, b);
+            List<RolloutResult> results = orchestrator.awaitAll(30, TimeUnit.SECONDS);
+
+            RolloutResult resultA = assertSuccessful(results.get(0), "a", 1);
+            RolloutResult resultB = assertSuccessful(results.get(1), "b", 1);
+            assertTrue("rollouts should not overlap: " + results, resultB.getStartTimeMillis() >= resultA.getEndTimeMillis());
+        }
+    }
+
+    @Test
+    public void testOldPodsFoundWhenSelectorChanges() throws Exception {
+        ReplicationController old = createReplicationController("a", "a", 2);
+        old.getSpec().getSelector().put("version", "1");
+        old.getSpec().getTemplate().getMetadata().getLabels().put("version", "1");
+        ReplicationController replicationController = createReplicationController("a", "a", 2);
+        replicationController.getSpec().getSelector().put("version", "2");
+        replicationController.getSpec().getTemplate().getMetadata().getLabels().put("version", "2");
+        expectRollout(old, replicationController, "app%3Da,version%3D1", "app%3Da,version%3D2", 100, 100, createNewPods(replicationController));
+
+        try (RolloutOrchestrator orchestrator = new RolloutOrchestrator(getClient())) {
+            orchestrator.submit(NAMESPACE, replicationController);
+            List<RolloutResult> results = orchestrator.awaitAll(30, TimeUnit.SECONDS);
+
+            // the pods of the old selector must be deleted rather than orphaned
+            assertSuccessful(results.get(0), "a", 2);
+        }
+    }
+
+    @Test
+    public void testRolloutTimesOut() throws Exception {
+        expectRollout(createReplicationController("a", "a", 1), "app%3Da", 0, 0, new ArrayList<>());
+
+        try (RolloutOrchestrator orchestrator = new RolloutOrchestrator(getClient())) {
+            orchestrator.setTimeoutMillis(300);
+            orchestrator.submit(NAMESPACE, createReplicationController("a", "a", 1));
+            RolloutResult result = orchestrator.awaitAll(30, TimeUnit.SECONDS).get(0);
+
+            assertFalse(result.isSuccessful());
+            assertTrue("failure " + result.getFailure(), result.getFailure() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void testControllerRollsOutConcurrently() throws Exception {
+        server.expect().withPath("/oapi/v1/projects").andReturn(200, new ProjectListBuilder().
+                addNewItem().withNewMetadata().withName(NAMESPACE).endMetadata().endItem().
+                build()).always();
+        expectRollout("a", "a", 1, 300, 0);
+        expectRollout("b", "b", 1, 300, 0);
+
+        final List<RolloutResult> results = new ArrayList<>();
+        try (Controller controller = new Controller(server.getOpenshiftClient())) {
+            controller.setNamespace(NAMESPACE);
+            controller.setRollingUpgrade(true);
+            controller.setRollingUpgradeParallelism(2);
+            controller.setRolloutOrchestrator(new RolloutOrchestrator(getClient(), 2, 2) {
+                @Override
+                public List<RolloutResult> awaitAll(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+                    List<RolloutResult> answer = super.awaitAll(timeout, unit);
+                    results.addAll(answer);
+                    return answer;
+                }
+            });
+            // the apply call returns once the rollouts it started have completed
+            controller.applyList(new KubernetesListBuilder().
+                    addToItems(createReplicationController("a", "a", 1), createReplicationController("b", "b", 1)).
+                    build(), "test");
+            assertEquals(0, controller.getRolloutOrchestrator().getPendingCount());
+        }
+        assertEquals(2, results.size());
+        RolloutResult a = assertSuccessful(results.get(0), "a", 1);
+        RolloutResult b = assertSuccessful(results.get(1), "b", 1);
+        assertTrue("rollouts should overlap: " + results, a.getStartTimeMillis() < b.getEndTimeMillis() && b.getStartTimeMillis() < a.getEndTimeMillis());
+    }
+
+    @Test
+    public void testControllerReportsFailedRollout() throws Exception {
+        server.expect().withPath("/oapi/v1/projects").andReturn(200, new ProjectListBuilder().
+                addNewItem().withNewMetadata().withName(NAMESPACE).endMetadata().endItem().
+                build()).always();
+        expectRollout(createReplicationController("a", "a", 1), "app%3Da", 0, 0, new ArrayList<>());
+
+        try (Controller controller = new Controller(server.getOpenshiftClient())) {
+            controller.setNamespace(NAMESPACE);
+            controller.setRollingUpgrade(true);
+            controller.setRollingUpgradeParallelism(2);
+            controller.getRolloutOrchestrator().setTimeoutMillis(300);
+            try {
+                controller.apply(createReplicationController("a", "a", 1), "test");
+                fail("the failed rollout should be reported by apply");
+            } catch (RuntimeException e) {
+                assertTrue("failure " + e.getCause(), e.getCause() instanceof TimeoutException);
+            }
+        }
+    }
+
+    @Test
+    public void testControllerAwaitsRolloutsWhenApplyFails() throws Exception {
+        server.expect().withPath("/oapi/v1/projects").andReturn(200, new ProjectListBuilder().
+                addNewItem().withNewMetadata().withName(NAMESPACE).endMetadata().endItem().
+                build()).always();
+        expectRollout(createReplicationController("a", "a", 1), "app%3Da", 0, 0, new ArrayList<>());
+
+        try (Controller controller = new Controller(server.getOpenshiftClient())) {
+            controller.setNamespace(NAMESPACE);
+            controller.setRollingUpgrade(true);
+            controller.setRollingUpgradeParallelism(2);
+            controller.getRolloutOrchestrator().setTimeoutMillis(300);
+            try {
+                controller.apply(Arrays.asList(createReplicationController("a", "a", 1), "not an entity"), "test");
+                fail("the entity after the rollout should fail");
+            } catch (IllegalArgumentException e) {
+                Throwable[] suppressed = e.getSuppressed();
+                assertEquals("suppressed failures", 1, suppressed.length);
+                assertTrue("failure " + suppressed[0], suppressed[0] instanceof TimeoutException);
+            }
+            assertEquals(0, controller.getRolloutOrchestrator().getPendingCount());
+            // no rollouts are left running so the settings can still be changed
+            controller.setRollingUpgradeParallelism(3);
+        }
+    }
+
+    @Test
+    public void testControllerRecreatesOrchestratorWhenSettingsChange() throws Exception {
+        try (Controller controller = new Controller(server.getOpenshiftClient())) {
+            controller.setRollingUpgradeParallelism(2);
+            RolloutOrchestrator orchestrator = controller.getRolloutOrchestrator();
+            assertSame(orchestrator, controller.getRolloutOrchestrator());
+            controller.setRollingUpgradeMaxUnavailable(3);
+            assertNotSame(orchestrator, controller.getRolloutOrchestrator());
+        }
+    }
+
+    protected KubernetesClient getClient() {
+        return server.getKubernetesClient();
+    }
+
+    protected void expectRollout(String name, String app, int replicas, long firstDelay, long delay) {
+        expectRollout(createReplicationController(name, app, replicas), "app%3D" + app, firstDelay, delay);
+    }
+
+    protected void expectRollout(ReplicationController replicationController, String labelSelector, long firstDelay, long delay) {
+        expectRollout(replicationController, labelSelector, firstDelay, delay, createNewPods(replicationController));
+    }
+
+    /**
+     * Expects the requests made by a rollout where the watch emits the given new pods after the delays
+     */
+    protected void expectRollout(ReplicationController replicationController, String labelSelector, long firstDelay, long delay, List<Pod> newPods) {
+        ReplicationController old = new ReplicationControllerBuilder(replicationController).build();
+        expectRollout(old, replicationController, labelSelector, labelSelector, firstDelay, delay, newPods);
+    }
+
+    /**
+     * Expects the requests made by a rollout replacing the given old ReplicationController where the old pods are
+     * listed with the old label selector and the watch of the new label selector emits the given new pods after the delays
+     */
+    protected void expectRollout(ReplicationController old, ReplicationController replicationController, String oldLabelSelector, String labelSelector,
+                                 long firstDelay, long delay, List<Pod> newPods) {
+        String name = replicationController.getMetadata().getName();
+        String query = "?labelSelector=" + labelSelector;
+        PodListBuilder oldPods = new PodListBuilder().withNewMetadata().withResourceVersion("1").endMetadata();
+        for (int i = 0; i < old.getSpec().getReplicas(); i++) {
+            Pod pod = createPod(name + "-" + i, old);
+            oldPods.addToItems(pod);
+            server.expect().delete().withPath(PATH + "/pods/" + name + "-" + i).andReturn(200, pod).once();
+        }
+        server.expect().get().withPath(PATH + "/pods?labelSelector=" + oldLabelSelector).andReturn(200, oldPods.build()).once();
+
+        old = new ReplicationControllerBuilder(old).build();
+        old.getSpec().getTemplate().getSpec().getContainers().get(0).setImage("fabric8/old:0.9");
+        old.getMetadata().setResourceVersion("1");
+        // the client reads then patches the ReplicationController to replace it
+        server.expect().withPath(PATH + "/replicationcontrollers/" + name).andReturn(200, old).always();
+
+        TimesOnceableOrHttpHeaderable<Void> watch;
+        if (newPods.isEmpty()) {
+            watch = server.expect().withPath(PATH + "/pods" + query + "&resourceVersion=1&watch=true")
+                    .andUpgradeToWebSocket().open().done();
+        } else {
+            EventDoneable<TimesOnceableOrHttpHeaderable<Void>> events = server.expect().withPath(PATH + "/pods" + query + "&resourceVersion=1&watch=true")
+                    .andUpgradeToWebSocket().open()
+                    .waitFor(firstDelay).andEmit(new WatchEvent(newPods.get(0), "ADDED"));
+            for (int i = 1; i < newPods.size(); i++) {
+                events = events.waitFor(delay).andEmit(new WatchEvent(newPods.get(i), "ADDED"));
+            }
+            watch = events.done();
+        }
+        watch.once();
+    }
+
+    protected static List<Pod> createNewPods(ReplicationController replicationController) {
+        String name = replicationController.getMetadata().getName();
+        List<Pod> answer = new ArrayList<>();
+        for (int i = 0; i < replicationController.getSpec().getReplicas(); i++) {
+            Pod pod = createPod(name + "-new-" + i, replicationController);
+            // the watch expects increasing resource versions
+            pod.getMetadata().setResourceVersion(String.format("%08d", i + 2));
+            answer.add(pod);
+        }
+        return answer;
+    }
+
+    protected static RolloutResult assertSuccessful(RolloutResult result, String name, int replacedPods) {
+        assertTrue("rollout failed: " + result, result.isSuccessful());
+        assertEquals("name", name, result.getName());
+        assertEquals("replaced pods of " + name, replacedPods, result.getReplacedPods());
+        assertTrue("duration", result.getDurationMillis() >= 0);
+        return result;
+    }
+
+    protected static ReplicationController createReplicationController(String name, String app, int replicas) {
+        return new ReplicationControllerBuilder().
+                withNewMetadata().withName(name).withNamespace(NAMESPACE).endMetadata().
+                withNewSpec().withReplicas(replicas).addToSelector("app", app).
+                withNewTemplate().withNewMetadata().addToLabels("app", app).endMetadata().
+                withNewSpec().addNewContainer().withName(app).withImage("fabric8/" + app + ":1.0").endContainer().endSpec().
+                endTemplate().endSpec().
+                build();
+    }
+
+    protected static Pod createPod(String name, ReplicationController replicationController) {
+        return new PodBuilder().
+                withNewMetadata().withName(name).withNamespace(NAMESPACE).
+                withLabels(replicationController.getSpec().getTemplate().getMetadata().getLabels()).endMetadata().
+                withNewStatus().withPhase("Running").
+                addNewCondition().withType("Ready").withStatus("True").endCondition().
+                endStatus().
+                build();
+    }
+}